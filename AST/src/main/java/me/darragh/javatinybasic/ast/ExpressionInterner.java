@@ -0,0 +1,154 @@
+package me.darragh.javatinybasic.ast;
+
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares structurally equal expressions between the tokens of a program, so that each distinct expression is only
+ * held in memory once.
+ * <br/>
+ * Small literals and single letter variables, which make up most values, are shared by every interner. Any other
+ * expression is hash-consed: the first instance seen becomes the canonical one, and later equal expressions are
+ * replaced by it. Since the children of an interned expression are themselves interned, comparing an expression with
+ * its canonical instance stops at the children, which are identical, rather than walking the whole tree.
+ * <br/>
+ * Interners are not thread-safe, and are intended to be used for a single parse. Once they hold
+ * {@link #DEFAULT_CAPACITY} expressions, they are emptied, so long streams do not hold on to every expression seen.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class ExpressionInterner {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int MAX_SHARED_LITERAL = 255;
+    private static final LiteralValueExpression[] LITERALS = new LiteralValueExpression[MAX_SHARED_LITERAL + 1];
+    private static final String[] NAMES = new String[26];
+    private static final VariableValueExpression[] VARIABLES = new VariableValueExpression[26];
+    private static final VariableNameExpression[] VARIABLE_NAMES = new VariableNameExpression[26];
+
+    static {
+        for (int i = 0; i <= MAX_SHARED_LITERAL; i++) {
+            LITERALS[i] = new LiteralValueExpression(i);
+        }
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = String.valueOf((char) ('A' + i));
+            VARIABLES[i] = new VariableValueExpression(NAMES[i]);
+            VARIABLE_NAMES[i] = new VariableNameExpression(NAMES[i]);
+        }
+    }
+
+    private final Map<Expression, Expression> expressions = new HashMap<>();
+    private final int capacity;
+
+    public ExpressionInterner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ExpressionInterner(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets a literal number value expression.
+     *
+     * @param value The value of the literal.
+     * @return The value expression.
+     */
+    public @NotNull LiteralValueExpression literal(int value) {
+        return value >= 0 && value <= MAX_SHARED_LITERAL ? LITERALS[value] : this.intern(new LiteralValueExpression(value));
+    }
+
+    /**
+     * Gets a variable value expression.
+     *
+     * @param variableName The name of the variable.
+     * @return The value expression.
+     */
+    public @NotNull VariableValueExpression variable(@NotNull String variableName) {
+        int letter = letterOf(variableName);
+        return letter != -1 ? VARIABLES[letter] : this.intern(new VariableValueExpression(name(variableName)));
+    }
+
+    /**
+     * Gets a mathematical value expression.
+     *
+     * @param valueExpressions The values of the expression, which should already be interned.
+     * @param operators The operators between the values.
+     * @return The value expression.
+     */
+    public @NotNull MathematicalExpression mathematical(@NotNull ValueExpression[] valueExpressions, @NotNull LArithmeticOperator[] operators) {
+        return this.intern(new MathematicalExpression(valueExpressions, operators));
+    }
+
+    /**
+     * Gets the canonical instance of the given expression, which becomes canonical itself if none is held yet.
+     *
+     * @param expression The expression, whose children should already be interned.
+     * @return The canonical instance of the expression.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Expression> @NotNull T intern(@NotNull T expression) {
+        Expression canonical = this.expressions.get(expression);
+        if (canonical != null) {
+            return (T) canonical;
+        }
+        if (this.expressions.size() >= this.capacity) {
+            this.expressions.clear();
+        }
+        this.expressions.put(expression, expression);
+        return expression;
+    }
+
+    /**
+     * Gets a copy of the given token with its expression interned.
+     *
+     * @param token The token.
+     * @return The token, or a copy sharing the canonical instance of its expression.
+     */
+    public @NotNull Token intern(@NotNull Token token) {
+        Expression expression = token.expression();
+        if (expression == null) {
+            return token;
+        }
+        Expression canonical = this.intern(expression);
+        return canonical == expression ? token : new Token(token.lineNumber(), token.statement(), canonical);
+    }
+
+    /**
+     * Gets the shared instance of a variable name, so that each name is only held in memory once.
+     *
+     * @param variableName The name of the variable.
+     * @return The shared name.
+     */
+    public static @NotNull String name(@NotNull String variableName) {
+        int letter = letterOf(variableName);
+        return letter != -1 ? NAMES[letter] : variableName.intern();
+    }
+
+    /**
+     * Gets a shared variable name expression.
+     *
+     * @param variableName The name of the variable.
+     * @return The variable name expression.
+     */
+    public static @NotNull VariableNameExpression variableName(@NotNull String variableName) {
+        int letter = letterOf(variableName);
+        return letter != -1 ? VARIABLE_NAMES[letter] : new VariableNameExpression(variableName.intern());
+    }
+
+    private static int letterOf(String variableName) {
+        if (variableName.length() != 1) {
+            return -1;
+        }
+        char c = variableName.charAt(0);
+        return c >= 'A' && c <= 'Z' ? c - 'A' : -1;
+    }
+}
@@ -0,0 +1,145 @@
+package me.darragh.javatinybasic.ast;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Maps line numbers to jump targets in constant time, for statements such as {@code GOTO A * 10} whose target is
+ * only known once it is evaluated.
+ * <br/>
+ * Line numbers which are close together, such as the usual 10, 20, 30..., are looked up directly in an array spanning
+ * them, whilst sparse line numbers are looked up in an open-addressed hash table, so the table stays small either
+ * way. Generated bytecode can make the same choice between {@code tableswitch} and {@code lookupswitch} with
+ * {@link #isDense(int, int, int)}.
+ * <br/>
+ * Tables are immutable, so they are safe to share between threads.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class JumpTable {
+    /**
+     * Represents the absence of a target, i.e. a line number which does not exist.
+     */
+    public static final int NO_TARGET = -1;
+
+    private static final int EMPTY = 0; // line numbers are always positive
+    private static final int MAX_SPAN_PER_LINE = 16;
+
+    private final int minLineNumber;
+    private final int[] keys; // null if dense
+    private final int[] targets;
+    private final int mask;
+
+    private JumpTable(int minLineNumber, int[] keys, int[] targets, int mask) {
+        this.minLineNumber = minLineNumber;
+        this.keys = keys;
+        this.targets = targets;
+        this.mask = mask;
+    }
+
+    /**
+     * Creates a table from line numbers and their targets.
+     *
+     * @param lineNumbers The line numbers, in ascending order without duplicates.
+     * @param targets The target of each line number, such as its instruction index.
+     * @return The jump table.
+     */
+    public static @NotNull JumpTable of(int @NotNull [] lineNumbers, int @NotNull [] targets) {
+        if (lineNumbers.length != targets.length) {
+            throw new IllegalArgumentException("Expected %s targets, got %s".formatted(lineNumbers.length, targets.length));
+        }
+        if (lineNumbers.length == 0) {
+            return new JumpTable(0, null, new int[0], 0);
+        }
+
+        int min = lineNumbers[0],
+                max = lineNumbers[lineNumbers.length - 1];
+        if (isDense(min, max, lineNumbers.length)) {
+            int[] table = new int[max - min + 1];
+            Arrays.fill(table, NO_TARGET);
+            for (int i = 0; i < lineNumbers.length; i++) {
+                table[lineNumbers[i] - min] = targets[i];
+            }
+            return new JumpTable(min, null, table, 0);
+        }
+
+        // Keep the load factor at or below a half, so probes stay short
+        int capacity = Integer.highestOneBit(lineNumbers.length) << 2;
+        int[] keys = new int[capacity],
+                values = new int[capacity];
+        for (int i = 0; i < lineNumbers.length; i++) {
+            int slot = hash(lineNumbers[i]) & (capacity - 1);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            keys[slot] = lineNumbers[i];
+            values[slot] = targets[i];
+        }
+        return new JumpTable(0, keys, values, capacity - 1);
+    }
+
+    /**
+     * Creates a table which maps each line number to its index.
+     *
+     * @param lineNumbers The line numbers, in ascending order without duplicates.
+     * @return The jump table.
+     */
+    public static @NotNull JumpTable ofIndices(int @NotNull [] lineNumbers) {
+        int[] indices = new int[lineNumbers.length];
+        Arrays.setAll(indices, i -> i);
+        return of(lineNumbers, indices);
+    }
+
+    /**
+     * Decides whether line numbers spanning the given range should be looked up in a table indexed by line number,
+     * which is the case unless more than 15 in 16 of its entries would be empty.
+     *
+     * @param min The lowest line number.
+     * @param max The highest line number.
+     * @param count The number of line numbers.
+     * @return Whether to use a direct table.
+     */
+    public static boolean isDense(int min, int max, int count) {
+        return (long) max - min + 1 <= (long) count * MAX_SPAN_PER_LINE;
+    }
+
+    /**
+     * Gets the target of the given line number.
+     *
+     * @param lineNumber The line number to look up.
+     * @return The target, or {@link #NO_TARGET} if the line does not exist.
+     */
+    public int get(int lineNumber) {
+        if (this.keys == null) {
+            int offset = lineNumber - this.minLineNumber;
+            return offset >= 0 && offset < this.targets.length ? this.targets[offset] : NO_TARGET;
+        } else if (lineNumber == EMPTY) {
+            return NO_TARGET;
+        }
+
+        for (int slot = hash(lineNumber) & this.mask; ; slot = (slot + 1) & this.mask) {
+            int key = this.keys[slot];
+            if (key == lineNumber) {
+                return this.targets[slot];
+            } else if (key == EMPTY) {
+                return NO_TARGET;
+            }
+        }
+    }
+
+    /**
+     * Gets whether the table is indexed directly by line number.
+     *
+     * @return Whether the table is dense.
+     */
+    public boolean isDense() {
+        return this.keys == null;
+    }
+
+    private static int hash(int lineNumber) {
+        int hash = lineNumber * 0x9E3779B9; // spreads runs of line numbers such as 10, 20, 30...
+        return hash ^ hash >>> 16;
+    }
+}
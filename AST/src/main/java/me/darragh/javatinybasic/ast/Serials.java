@@ -11,15 +11,18 @@ public class Serials {
     public static final long TOKEN_SERIAL_VERSION_UID = 1L;
 
     // Expression
-    public static final long EXPRESSION_SERIAL_VERSION_UID = 2L;
     public static final long LINE_EXPRESSION_SERIAL_VERSION_UID = 3L;
     public static final long MATHEMATICAL_EXPRESSION_SERIAL_VERSION_UID = 4L;
     public static final long STRING_VALUE_EXPRESSION_SERIAL_VERSION_UID = 5L;
-    public static final long VALUE_EXPRESSION_SERIAL_VERSION_UID = 6L;
     public static final long VARIABLE_NAME_EXPRESSION_SERIAL_VERSION_UID = 7L;
     public static final long FOR_STATEMENT_EXPRESSION_SERIAL_VERSION_UID = 8L;
     public static final long IF_STATEMENT_EXPRESSION_SERIAL_VERSION_UID = 9L;
     public static final long LET_STATEMENT_EXPRESSION_SERIAL_VERSION_UID = 10L;
     public static final long PRINT_STATEMENT_EXPRESSION_SERIAL_VERSION_UID = 11L;
+    public static final long LITERAL_VALUE_EXPRESSION_SERIAL_VERSION_UID = 12L;
+    public static final long VARIABLE_VALUE_EXPRESSION_SERIAL_VERSION_UID = 13L;
+
+    // Binary format (see BinaryProgram), to be bumped whenever the layout or the order of the language enums changes
+    public static final short BINARY_PROGRAM_VERSION = 2;
 
 }
@@ -4,7 +4,6 @@ import lombok.experimental.UtilityClass;
 import me.darragh.javatinybasic.ast.expression.Expression;
 import me.darragh.javatinybasic.ast.expression.LineNumberExpression;
 import me.darragh.javatinybasic.ast.expression.ValueExpression;
-import me.darragh.javatinybasic.ast.expression.VariableNameExpression;
 import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
 import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
 import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
@@ -15,6 +14,7 @@ import org.jetbrains.annotations.NotNull;
 
 /**
  * A utility class that standardises the creation of {@link Token}s.
+ * Variable names are shared with {@link ExpressionInterner}, so that each name is only held in memory once.
  *
  * @author darraghd493
  * @since 1.0.0
@@ -34,7 +34,7 @@ public class TokenFactory {
                 lineNumber,
                 LStatement.LET,
                 new LETExpression(
-                        variableName,
+                        ExpressionInterner.name(variableName),
                         valueExpression
                 )
         );
@@ -68,9 +68,7 @@ public class TokenFactory {
         return new Token(
                 lineNumber,
                 LStatement.INPUT,
-                new VariableNameExpression(
-                        variableName
-                )
+                ExpressionInterner.variableName(variableName)
         );
     }
 
@@ -112,7 +110,7 @@ public class TokenFactory {
                 lineNumber,
                 LStatement.FOR,
                 new FORExpression(
-                        variableName,
+                        ExpressionInterner.name(variableName),
                         startValue,
                         endValue,
                         stepValue
@@ -131,9 +129,7 @@ public class TokenFactory {
         return new Token(
                 lineNumber,
                 LStatement.NEXT,
-                new VariableNameExpression(
-                        variableName
-                )
+                ExpressionInterner.variableName(variableName)
         );
     }
 
@@ -152,6 +148,22 @@ public class TokenFactory {
         );
     }
 
+    /**
+     * Creates a {@link Token} for a computed {@link LStatement#GOTO} statement, which goes to the line number its
+     * value evaluates to.
+     *
+     * @param lineNumber The line number of the statement.
+     * @param lineNumberToGoto The value of the line number to go to.
+     * @return A {@link Token} representing the GOTO statement.
+     */
+    public static @NotNull Token createGotoToken(int lineNumber, @NotNull ValueExpression lineNumberToGoto) {
+        return new Token(
+                lineNumber,
+                LStatement.GOTO,
+                lineNumberToGoto
+        );
+    }
+
     /**
      * Creates a {@link Token} for a {@link LStatement#GOSUB} statement.
      *
@@ -167,6 +179,22 @@ public class TokenFactory {
         );
     }
 
+    /**
+     * Creates a {@link Token} for a computed {@link LStatement#GOSUB} statement, which calls the subroutine at the line
+     * number its value evaluates to.
+     *
+     * @param lineNumber The line number of the statement.
+     * @param lineNumberToGoto The value of the line number to go to in the subroutine.
+     * @return A {@link Token} representing the GOSUB statement.
+     */
+    public static @NotNull Token createGosubToken(int lineNumber, @NotNull ValueExpression lineNumberToGoto) {
+        return new Token(
+                lineNumber,
+                LStatement.GOSUB,
+                lineNumberToGoto
+        );
+    }
+
     /**
      * Creates a {@link Token} for a {@link LStatement#RETURN} statement.
      *
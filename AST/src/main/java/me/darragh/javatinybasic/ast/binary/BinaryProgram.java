@@ -0,0 +1,391 @@
+package me.darragh.javatinybasic.ast.binary;
+
+import me.darragh.javatinybasic.ast.ExpressionInterner;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.TokenFactory;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.darragh.javatinybasic.ast.Serials.BINARY_PROGRAM_VERSION;
+
+/**
+ * A parsed program in a compact, columnar binary format, as a replacement for Java serialization of {@link Token}s.
+ * <br/>
+ * The format is a fixed header followed by flat columns, all little-endian:
+ * <ul>
+ *  <li>Header: magic, version, and the line, value, string, operand and string data counts.</li>
+ *  <li>Line numbers: one int per line.</li>
+ *  <li>Operand offsets: one int per line, the start of the line's operands.</li>
+ *  <li>Value offsets: one int per distinct value expression, the start of the value's operands.</li>
+ *  <li>String offsets: one int per distinct string, plus one, giving the range of each string's data.</li>
+ *  <li>Opcodes: one byte per line, the statement of the line.</li>
+ *  <li>Operands: variable-length ints describing each value and statement, which refer to values and strings by index.</li>
+ *  <li>String data: the UTF-8 bytes of every distinct variable name and string literal.</li>
+ * </ul>
+ * A program is read in place, so loading one only validates its header: mapping a file with {@link #map(Path)} costs
+ * the same however large the program is. Tokens are decoded on demand, each from its own operands only, and each
+ * distinct value expression is decoded once and then shared. Every index and length is checked as it is decoded, so a
+ * corrupt program fails with a {@link BinaryProgramFormatException} rather than reading outside of its columns.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class BinaryProgram {
+    static final int MAGIC = 0x53414254; // "TBAS" when read as little-endian bytes
+    static final short VERSION = BINARY_PROGRAM_VERSION;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final int HEADER_SIZE = 28;
+
+    //region Value Tags
+    static final int VALUE_LITERAL = 0,
+            VALUE_VARIABLE = 1,
+            VALUE_MATHEMATICAL = 2;
+    //endregion
+
+    private static final LStatement[] STATEMENTS = LStatement.values();
+    private static final LRelationalOperator[] RELATIONAL_OPERATORS = LRelationalOperator.values();
+    private static final LArithmeticOperator[] ARITHMETIC_OPERATORS = LArithmeticOperator.values();
+
+    private final ByteBuffer buffer;
+    private final int lineCount;
+    private final int lineNumbersOffset, operandStartsOffset, valueStartsOffset, stringOffsetsOffset, opcodesOffset, operandsOffset, stringDataOffset;
+    private final ValueExpression[] values; // decoded on first use
+    private final String[] strings; // decoded on first use
+
+    private BinaryProgram(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(BYTE_ORDER);
+        if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+            throw new BinaryProgramFormatException("Not a binary program");
+        }
+        short version = this.buffer.getShort(4);
+        if (version != VERSION) {
+            throw new BinaryProgramFormatException("Unsupported binary program version: %s (expected %s)".formatted(version, VERSION));
+        }
+
+        this.lineCount = this.buffer.getInt(8);
+        int valueCount = this.buffer.getInt(12),
+                stringCount = this.buffer.getInt(16),
+                operandLength = this.buffer.getInt(20),
+                stringDataLength = this.buffer.getInt(24);
+        long length = HEADER_SIZE + (long) Integer.BYTES * (2L * this.lineCount + valueCount + stringCount + 1)
+                + this.lineCount + operandLength + stringDataLength;
+        if ((this.lineCount | valueCount | stringCount | operandLength | stringDataLength) < 0 || length != this.buffer.limit()) {
+            throw new BinaryProgramFormatException("Binary program is truncated or corrupt");
+        }
+
+        this.lineNumbersOffset = HEADER_SIZE;
+        this.operandStartsOffset = this.lineNumbersOffset + Integer.BYTES * this.lineCount;
+        this.valueStartsOffset = this.operandStartsOffset + Integer.BYTES * this.lineCount;
+        this.stringOffsetsOffset = this.valueStartsOffset + Integer.BYTES * valueCount;
+        this.opcodesOffset = this.stringOffsetsOffset + Integer.BYTES * (stringCount + 1);
+        this.operandsOffset = this.opcodesOffset + this.lineCount;
+        this.stringDataOffset = this.operandsOffset + operandLength;
+        this.values = new ValueExpression[valueCount];
+        this.strings = new String[stringCount];
+    }
+
+    //region Loading
+    /**
+     * Reads a binary program in place from the given buffer, which must not be modified whilst the program is used.
+     *
+     * @param buffer The buffer, from its position to its limit.
+     * @return The binary program.
+     * @throws BinaryProgramFormatException If the buffer does not hold a binary program of the supported version.
+     */
+    public static @NotNull BinaryProgram of(@NotNull ByteBuffer buffer) {
+        return new BinaryProgram(buffer);
+    }
+
+    /**
+     * Maps a binary program file into memory, and reads it in place.
+     *
+     * @param path The file to map.
+     * @return The binary program.
+     * @throws IOException If the file cannot be read.
+     * @throws BinaryProgramFormatException If the file does not hold a binary program of the supported version.
+     */
+    public static @NotNull BinaryProgram map(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BinaryProgram(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    //endregion
+
+    //region Encoding
+    /**
+     * Encodes the given tokens as a binary program.
+     *
+     * @param tokens The tokens to encode.
+     * @return A buffer holding the binary program.
+     */
+    public static @NotNull ByteBuffer encode(@NotNull List<Token> tokens) {
+        return new BinaryProgramEncoder().encode(tokens);
+    }
+
+    /**
+     * Encodes the given tokens as a binary program, and writes it to a channel.
+     *
+     * @param tokens The tokens to encode.
+     * @param channel The channel to write to, which is not closed.
+     * @throws IOException If the channel fails.
+     */
+    public static void write(@NotNull List<Token> tokens, @NotNull WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = encode(tokens);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Encodes the given tokens as a binary program, and writes it to a stream.
+     *
+     * @param tokens The tokens to encode.
+     * @param stream The stream to write to, which is not closed.
+     * @throws IOException If the stream fails.
+     */
+    public static void write(@NotNull List<Token> tokens, @NotNull OutputStream stream) throws IOException {
+        write(tokens, Channels.newChannel(stream));
+    }
+
+    /**
+     * Encodes the given tokens as a binary program, and writes it to a file, replacing any existing file.
+     *
+     * @param tokens The tokens to encode.
+     * @param path The file to write to.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(@NotNull List<Token> tokens, @NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(tokens, channel);
+        }
+    }
+    //endregion
+
+    //region Accessors
+    /**
+     * Gets the number of lines in the program.
+     *
+     * @return The number of lines.
+     */
+    public int size() {
+        return this.lineCount;
+    }
+
+    /**
+     * Gets the line number of the given line.
+     *
+     * @param index The index of the line.
+     * @return The line number.
+     */
+    public int lineNumber(int index) {
+        return this.buffer.getInt(this.lineNumbersOffset + Integer.BYTES * this.checkIndex(index));
+    }
+
+    /**
+     * Gets the statement of the given line.
+     *
+     * @param index The index of the line.
+     * @return The statement.
+     * @throws BinaryProgramFormatException If the line's opcode is corrupt.
+     */
+    public @NotNull LStatement statement(int index) {
+        return element(STATEMENTS, this.buffer.get(this.opcodesOffset + this.checkIndex(index)), "statement");
+    }
+
+    /**
+     * Decodes the given line into a token.
+     *
+     * @param index The index of the line.
+     * @return The token.
+     * @throws BinaryProgramFormatException If the line is corrupt.
+     */
+    public @NotNull Token token(int index) {
+        return this.decode(index);
+    }
+
+    /**
+     * Decodes every line into a list of tokens, sharing equal statements between them.
+     *
+     * @return The tokens, in the order they were encoded.
+     * @throws BinaryProgramFormatException If any line is corrupt.
+     */
+    public @NotNull List<Token> toTokens() {
+        ExpressionInterner interner = new ExpressionInterner();
+        List<Token> tokens = new ArrayList<>(this.lineCount);
+        for (int i = 0; i < this.lineCount; i++) {
+            tokens.add(interner.intern(this.decode(i)));
+        }
+        return tokens;
+    }
+    //endregion
+
+    //region Decoding
+    private Token decode(int index) {
+        int lineNumber = this.lineNumber(index);
+        Reader reader = new Reader(this.buffer.getInt(this.operandStartsOffset + Integer.BYTES * index));
+        return switch (this.statement(index)) {
+            case LET -> TokenFactory.createLetToken(lineNumber, this.string(reader.next()), this.value(reader.next()));
+            case PRINT -> {
+                Expression[] values = new Expression[reader.nextCount(0)];
+                for (int i = 0; i < values.length; i++) {
+                    int operand = reader.next();
+                    values[i] = (operand & 1) != 0 ? new StringValueExpression(this.string(operand >>> 1)) : this.value(operand >>> 1);
+                }
+                yield TokenFactory.createPrintToken(lineNumber, values);
+            }
+            case INPUT -> TokenFactory.createInputToken(lineNumber, this.string(reader.next()));
+            case IF -> {
+                ValueExpression valueA = this.value(reader.next());
+                LRelationalOperator relationalOperator = element(RELATIONAL_OPERATORS, reader.next(), "relational operator");
+                ValueExpression valueB = this.value(reader.next());
+                yield TokenFactory.createIfToken(lineNumber, valueA, valueB, relationalOperator, reader.next());
+            }
+            case FOR -> TokenFactory.createForToken(lineNumber, this.string(reader.next()),
+                    this.value(reader.next()), this.value(reader.next()), this.value(reader.next()));
+            case NEXT -> TokenFactory.createNextToken(lineNumber, this.string(reader.next()));
+            case GOTO -> {
+                int operand = reader.next();
+                yield (operand & 1) != 0
+                        ? TokenFactory.createGotoToken(lineNumber, this.value(operand >>> 1))
+                        : TokenFactory.createGotoToken(lineNumber, operand >>> 1);
+            }
+            case GOSUB -> {
+                int operand = reader.next();
+                yield (operand & 1) != 0
+                        ? TokenFactory.createGosubToken(lineNumber, this.value(operand >>> 1))
+                        : TokenFactory.createGosubToken(lineNumber, operand >>> 1);
+            }
+            case RETURN -> TokenFactory.createReturnToken(lineNumber);
+            case END -> TokenFactory.createEndToken(lineNumber);
+            case REM -> new Token(lineNumber, LStatement.REM, null);
+        };
+    }
+
+    private ValueExpression value(int index) {
+        if (index < 0 || index >= this.values.length) {
+            throw new BinaryProgramFormatException("Value index out of range: " + index);
+        }
+        ValueExpression value = this.values[index];
+        if (value != null) {
+            return value;
+        }
+
+        Reader reader = new Reader(this.buffer.getInt(this.valueStartsOffset + Integer.BYTES * index));
+        int tag = reader.next();
+        value = switch (tag) {
+            case VALUE_LITERAL -> {
+                int literal = reader.next();
+                yield new LiteralValueExpression(literal >>> 1 ^ -(literal & 1));
+            }
+            case VALUE_VARIABLE -> new VariableValueExpression(this.string(reader.next()));
+            case VALUE_MATHEMATICAL -> {
+                ValueExpression[] valueExpressions = new ValueExpression[reader.nextCount(1)];
+                LArithmeticOperator[] operators = new LArithmeticOperator[valueExpressions.length - 1];
+                for (int i = 0; i < valueExpressions.length; i++) {
+                    if (i > 0) {
+                        operators[i - 1] = element(ARITHMETIC_OPERATORS, reader.next(), "arithmetic operator");
+                    }
+
+                    // A value only ever refers to values before it, which also bounds how deeply they are decoded
+                    int child = reader.next();
+                    if (child < 0 || child >= index) {
+                        throw new BinaryProgramFormatException("Value %s refers to value %s, which does not precede it".formatted(index, child));
+                    }
+                    valueExpressions[i] = this.value(child);
+                }
+                yield new MathematicalExpression(valueExpressions, operators);
+            }
+            default -> throw new BinaryProgramFormatException("Unknown value tag: " + tag);
+        };
+        return this.values[index] = value; // racing threads decode the same value, which is harmless
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= this.strings.length) {
+            throw new BinaryProgramFormatException("String index out of range: " + index);
+        }
+        String string = this.strings[index];
+        if (string == null) { // racing threads decode the same string, which is harmless
+            int start = this.buffer.getInt(this.stringOffsetsOffset + Integer.BYTES * index),
+                    end = this.buffer.getInt(this.stringOffsetsOffset + Integer.BYTES * (index + 1));
+            if (start < 0 || start > end || end > this.buffer.limit() - this.stringDataOffset) {
+                throw new BinaryProgramFormatException("String %s has a corrupt range: %s to %s".formatted(index, start, end));
+            }
+            byte[] bytes = new byte[end - start];
+            this.buffer.get(this.stringDataOffset + start, bytes);
+            string = this.strings[index] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    private static <T> T element(T[] elements, int ordinal, String kind) {
+        if (ordinal < 0 || ordinal >= elements.length) {
+            throw new BinaryProgramFormatException("Unknown %s: %s".formatted(kind, ordinal));
+        }
+        return elements[ordinal];
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= this.lineCount) {
+            throw new IndexOutOfBoundsException("Line index out of range: " + index);
+        }
+        return index;
+    }
+    //endregion
+
+    /**
+     * A cursor over the variable-length operands of a line or value, which never leaves the operands column.
+     */
+    private final class Reader {
+        private int position;
+
+        private Reader(int position) {
+            if (position < 0 || position > BinaryProgram.this.stringDataOffset - BinaryProgram.this.operandsOffset) {
+                throw new BinaryProgramFormatException("Operand offset out of range: " + position);
+            }
+            this.position = BinaryProgram.this.operandsOffset + position;
+        }
+
+        private int next() {
+            int value = 0;
+            for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+                if (this.position >= BinaryProgram.this.stringDataOffset) {
+                    throw new BinaryProgramFormatException("Operands are truncated");
+                }
+                byte b = BinaryProgram.this.buffer.get(this.position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new BinaryProgramFormatException("Operand is longer than an int");
+        }
+
+        /**
+         * Reads the number of operands which follow, each of which takes at least a byte.
+         */
+        private int nextCount(int minimum) {
+            int count = this.next();
+            if (count < minimum || count > BinaryProgram.this.stringDataOffset - this.position) {
+                throw new BinaryProgramFormatException("Operand count out of range: " + count);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package me.darragh.javatinybasic.ast.binary;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static me.darragh.javatinybasic.ast.binary.BinaryProgram.*;
+
+/**
+ * Encodes a list of {@link Token}s in the format read by {@link BinaryProgram}.
+ * <br/>
+ * Equal value expressions and strings are only encoded once, and are referred to by index everywhere else.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+final class BinaryProgramEncoder {
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<ValueExpression, Integer> values = new HashMap<>();
+    private byte[][] stringBytes = new byte[16][];
+    private int[] valueStarts = new int[64];
+    private byte[] operands = new byte[1024];
+    private int operandLength;
+
+    ByteBuffer encode(List<Token> tokens) {
+        // Encode the values each line uses ahead of the line, so their indices are known
+        int lineCount = tokens.size();
+        int[] lineNumbers = new int[lineCount],
+                operandStarts = new int[lineCount];
+        byte[] opcodes = new byte[lineCount];
+        int[][] lineOperands = new int[lineCount][];
+        for (int i = 0; i < lineCount; i++) {
+            Token token = tokens.get(i);
+            lineNumbers[i] = token.lineNumber();
+            opcodes[i] = (byte) token.statement().ordinal();
+            lineOperands[i] = this.statementOperands(token);
+        }
+        for (int i = 0; i < lineCount; i++) {
+            operandStarts[i] = this.operandLength;
+            for (int operand : lineOperands[i]) {
+                this.addVarInt(operand);
+            }
+        }
+
+        int valueCount = this.values.size(),
+                stringCount = this.strings.size();
+        int[] stringOffsets = new int[stringCount + 1];
+        for (int i = 0; i < stringCount; i++) {
+            stringOffsets[i + 1] = stringOffsets[i] + this.stringBytes[i].length;
+        }
+
+        int columnsLength = Integer.BYTES * (lineCount + lineCount + valueCount + stringCount + 1);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + columnsLength + lineCount + this.operandLength + stringOffsets[stringCount])
+                .order(BYTE_ORDER);
+        buffer.putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) 0) // reserved
+                .putInt(lineCount)
+                .putInt(valueCount)
+                .putInt(stringCount)
+                .putInt(this.operandLength)
+                .putInt(stringOffsets[stringCount]);
+        buffer.asIntBuffer()
+                .put(lineNumbers)
+                .put(operandStarts)
+                .put(this.valueStarts, 0, valueCount)
+                .put(stringOffsets);
+        buffer.position(HEADER_SIZE + columnsLength)
+                .put(opcodes)
+                .put(this.operands, 0, this.operandLength);
+        for (int i = 0; i < stringCount; i++) {
+            buffer.put(this.stringBytes[i]);
+        }
+        return buffer.flip();
+    }
+
+    //region Operands
+    private int[] statementOperands(Token token) {
+        return switch (token.expression()) {
+            case LETExpression(String variableName, ValueExpression value) -> new int[] {this.stringIndex(variableName), this.valueIndex(value)};
+            case PRINTExpression(Expression[] values) -> {
+                int[] operands = new int[values.length + 1];
+                operands[0] = values.length;
+                for (int i = 0; i < values.length; i++) {
+                    operands[i + 1] = switch (values[i]) {
+                        case StringValueExpression(String value) -> this.stringIndex(value) << 1 | 1;
+                        case ValueExpression valueExpression -> this.valueIndex(valueExpression) << 1;
+                        default -> throw new IllegalStateException("Unsupported expression type: " + values[i]);
+                    };
+                }
+                yield operands;
+            }
+            case VariableNameExpression(String variableName) -> new int[] {this.stringIndex(variableName)}; // INPUT and NEXT
+            case IFExpression(ValueExpression valueA, ValueExpression valueB, LRelationalOperator relationalOperator, int lineNumberToGoto) -> new int[] {
+                    this.valueIndex(valueA),
+                    relationalOperator.ordinal(),
+                    this.valueIndex(valueB),
+                    lineNumberToGoto
+            };
+            case FORExpression(String variableName, ValueExpression startValue, ValueExpression endValue, ValueExpression stepValue) -> new int[] {
+                    this.stringIndex(variableName),
+                    this.valueIndex(startValue),
+                    this.valueIndex(endValue),
+                    this.valueIndex(stepValue)
+            };
+            case LineNumberExpression(int lineNumber) -> new int[] {lineNumber << 1}; // GOTO and GOSUB
+            case ValueExpression value -> new int[] {this.valueIndex(value) << 1 | 1}; // computed GOTO and GOSUB
+            case null -> switch (token.statement()) {
+                case REM, RETURN, END -> new int[0];
+                default -> throw new IllegalStateException("Missing expression for %s on line %s".formatted(token.statement(), token.lineNumber()));
+            };
+            default -> throw new IllegalStateException("Unsupported expression for %s: %s".formatted(token.statement(), token.expression()));
+        };
+    }
+
+    private int valueIndex(ValueExpression value) {
+        Integer index = this.values.get(value);
+        if (index != null) {
+            return index;
+        }
+
+        // Children are encoded first, so a value only ever refers to values before it
+        int[] operands = switch (value) {
+            case LiteralValueExpression(int literal) -> new int[] {VALUE_LITERAL, literal << 1 ^ literal >> 31}; // zigzag, so small negatives stay small
+            case VariableValueExpression(String variableName) -> new int[] {VALUE_VARIABLE, this.stringIndex(variableName)};
+            case MathematicalExpression mathematicalExpression -> {
+                ValueExpression[] valueExpressions = mathematicalExpression.valueExpressions();
+                LArithmeticOperator[] operators = mathematicalExpression.operators();
+                int[] mathematicalOperands = new int[valueExpressions.length * 2 + 1];
+                mathematicalOperands[0] = VALUE_MATHEMATICAL;
+                mathematicalOperands[1] = valueExpressions.length;
+                for (int i = 0, position = 2; i < valueExpressions.length; i++) {
+                    if (i > 0) {
+                        mathematicalOperands[position++] = operators[i - 1].ordinal();
+                    }
+                    mathematicalOperands[position++] = this.valueIndex(valueExpressions[i]);
+                }
+                yield mathematicalOperands;
+            }
+        };
+
+        index = this.values.size();
+        if (index == this.valueStarts.length) {
+            this.valueStarts = Arrays.copyOf(this.valueStarts, index * 2);
+        }
+        this.valueStarts[index] = this.operandLength;
+        for (int operand : operands) {
+            this.addVarInt(operand);
+        }
+        this.values.put(value, index);
+        return index;
+    }
+
+    private int stringIndex(String string) {
+        return this.strings.computeIfAbsent(string, key -> {
+            int index = this.strings.size();
+            if (index == this.stringBytes.length) {
+                this.stringBytes = Arrays.copyOf(this.stringBytes, index * 2);
+            }
+            this.stringBytes[index] = key.getBytes(StandardCharsets.UTF_8);
+            return index;
+        });
+    }
+
+    private void addVarInt(int value) {
+        if (this.operands.length - this.operandLength < 5) {
+            this.operands = Arrays.copyOf(this.operands, this.operands.length * 2);
+        }
+        while ((value & ~0x7F) != 0) {
+            this.operands[this.operandLength++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        this.operands[this.operandLength++] = (byte) value;
+    }
+    //endregion
+}
@@ -0,0 +1,16 @@
+package me.darragh.javatinybasic.ast.binary;
+
+/**
+ * Thrown when a {@link BinaryProgram} is not in the supported format, whether it is truncated, corrupt, or from another
+ * version of the format.
+ * <br/>
+ * As a program is read in place, a corrupt line or value may only be found when it is decoded.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public class BinaryProgramFormatException extends IllegalArgumentException {
+    public BinaryProgramFormatException(String message) {
+        super(message);
+    }
+}
@@ -1,17 +1,26 @@
 package me.darragh.javatinybasic.ast.expression;
 
-import java.io.Serial;
-import java.io.Serializable;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
 
-import static me.darragh.javatinybasic.ast.Serials.EXPRESSION_SERIAL_VERSION_UID;
+import java.io.Serializable;
 
 /**
- * An abstract base class for expressions in Java Tiny BASIC.
+ * The base of every expression in Java Tiny BASIC.
+ * <br/>
+ * Expressions form a closed hierarchy, so that they can be taken apart with exhaustive pattern matching rather than
+ * casts and null checks. Every expression is a record apart from {@link MathematicalExpression}, which is a final
+ * class so that it can cache its hash code.
+ * <br/>
+ * Expressions must not be modified once built, and are compared structurally, so structurally equal expressions can
+ * be shared between tokens with an {@link me.darragh.javatinybasic.ast.ExpressionInterner}.
  *
  * @author darraghd493
  * @since 1.0.0
  */
-public abstract class Expression implements Serializable {
-    @Serial
-    private static final long serialVersionUID = EXPRESSION_SERIAL_VERSION_UID;
+public sealed interface Expression extends Serializable
+        permits ValueExpression, StringValueExpression, VariableNameExpression, LineNumberExpression,
+        LETExpression, PRINTExpression, IFExpression, FORExpression {
 }
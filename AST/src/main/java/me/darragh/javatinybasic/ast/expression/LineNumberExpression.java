@@ -1,8 +1,5 @@
 package me.darragh.javatinybasic.ast.expression;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-
 import java.io.Serial;
 
 import static me.darragh.javatinybasic.ast.Serials.LINE_EXPRESSION_SERIAL_VERSION_UID;
@@ -13,11 +10,7 @@ import static me.darragh.javatinybasic.ast.Serials.LINE_EXPRESSION_SERIAL_VERSIO
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-public class LineNumberExpression extends Expression { // Used for explicit definition
+public record LineNumberExpression(int lineNumber) implements Expression { // Used for explicit definition
     @Serial
     private static final long serialVersionUID = LINE_EXPRESSION_SERIAL_VERSION_UID;
-
-    private final int lineNumber;
 }
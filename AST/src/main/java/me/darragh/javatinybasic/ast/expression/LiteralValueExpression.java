@@ -0,0 +1,16 @@
+package me.darragh.javatinybasic.ast.expression;
+
+import java.io.Serial;
+
+import static me.darragh.javatinybasic.ast.Serials.LITERAL_VALUE_EXPRESSION_SERIAL_VERSION_UID;
+
+/**
+ * Represents a literal number value.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public record LiteralValueExpression(int value) implements ValueExpression {
+    @Serial
+    private static final long serialVersionUID = LITERAL_VALUE_EXPRESSION_SERIAL_VERSION_UID;
+}
@@ -1,41 +1,73 @@
 package me.darragh.javatinybasic.ast.expression;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
 import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.Serial;
+import java.util.Arrays;
 
 import static me.darragh.javatinybasic.ast.Serials.MATHEMATICAL_EXPRESSION_SERIAL_VERSION_UID;
 
 /**
  * Represents a mathematical expression, composed of a chain of: literal -> operator -> literal, ...
- * Must always end with a literal.
+ * Must always end with a literal. The chain is evaluated from left to right.
+ * <br/>
+ * Unlike the other expressions, this is not a record, so that it can cache its hash code. It is hashed over arrays, and
+ * again as part of every statement expression which holds it, so interning would otherwise rehash the whole chain.
  *
+ * @apiNote No value in the chain should itself be a {@link MathematicalExpression}, as brackets do not exist in the
+ * core language.
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-public class MathematicalExpression extends Expression {
+public final class MathematicalExpression implements ValueExpression {
     @Serial
     private static final long serialVersionUID = MATHEMATICAL_EXPRESSION_SERIAL_VERSION_UID; // Serial version UID for this class
 
-    /**
-     * @apiNote No {@link ValueExpression} should contain another {@link MathematicalExpression} as
-     * brackets do not exist in the core language.
-     */
-    private final ValueExpression[] valueExpressions;
-    private final LArithmeticOperator[] operators;
+    private final @NotNull ValueExpression[] valueExpressions;
+    private final @NotNull LArithmeticOperator[] operators;
+    private transient int hash; // computed on first use, as String does
 
     /**
-     * Constructs a MathematicalExpression with the given value expressions and operators.
-     *
-     * @param valueExpressions An array of ValueExpression objects representing the values in the expression.
-     * @param arithmeticOperators An array of strings representing the arithmetic operators between the values.
+     * @param valueExpressions The values in the expression.
+     * @param operators The arithmetic operators between the values.
      */
-    public MathematicalExpression(ValueExpression[] valueExpressions, LArithmeticOperator[] arithmeticOperators) {
+    public MathematicalExpression(@NotNull ValueExpression[] valueExpressions, @NotNull LArithmeticOperator[] operators) {
         this.valueExpressions = valueExpressions;
-        this.operators = arithmeticOperators;
+        this.operators = operators;
+    }
+
+    public @NotNull ValueExpression[] valueExpressions() {
+        return this.valueExpressions;
+    }
+
+    public @NotNull LArithmeticOperator[] operators() {
+        return this.operators;
+    }
+
+    // Arrays are compared by content, rather than by identity
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof MathematicalExpression that
+                && this.hashCode() == that.hashCode()
+                && Arrays.equals(this.valueExpressions, that.valueExpressions)
+                && Arrays.equals(this.operators, that.operators);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.hash;
+        if (hash == 0) {
+            this.hash = hash = 31 * Arrays.hashCode(this.valueExpressions) + Arrays.hashCode(this.operators);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "MathematicalExpression[valueExpressions=%s, operators=%s]".formatted(
+                Arrays.toString(this.valueExpressions),
+                Arrays.toString(this.operators)
+        );
     }
 }
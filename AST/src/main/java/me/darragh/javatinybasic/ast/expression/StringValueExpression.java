@@ -1,8 +1,5 @@
 package me.darragh.javatinybasic.ast.expression;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serial;
@@ -15,12 +12,7 @@ import static me.darragh.javatinybasic.ast.Serials.STRING_VALUE_EXPRESSION_SERIA
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-@RequiredArgsConstructor
-public class StringValueExpression extends Expression {
+public record StringValueExpression(@NotNull String value) implements Expression {
     @Serial
     private static final long serialVersionUID = STRING_VALUE_EXPRESSION_SERIAL_VERSION_UID;
-
-    private final @NotNull String value;
 }
@@ -1,7 +1,5 @@
 package me.darragh.javatinybasic.ast.expression;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serial;
@@ -14,11 +12,7 @@ import static me.darragh.javatinybasic.ast.Serials.VARIABLE_NAME_EXPRESSION_SERI
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-public class VariableNameExpression extends Expression { // Used for explicit definition
+public record VariableNameExpression(@NotNull String variableName) implements Expression { // Used for explicit definition
     @Serial
     private static final long serialVersionUID = VARIABLE_NAME_EXPRESSION_SERIAL_VERSION_UID;
-
-    private final @NotNull String variableName;
 }
@@ -0,0 +1,18 @@
+package me.darragh.javatinybasic.ast.expression;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serial;
+
+import static me.darragh.javatinybasic.ast.Serials.VARIABLE_VALUE_EXPRESSION_SERIAL_VERSION_UID;
+
+/**
+ * Represents the value of a variable.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public record VariableValueExpression(@NotNull String variableName) implements ValueExpression {
+    @Serial
+    private static final long serialVersionUID = VARIABLE_VALUE_EXPRESSION_SERIAL_VERSION_UID;
+}
@@ -1,8 +1,5 @@
 package me.darragh.javatinybasic.ast.expression.statement;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import me.darragh.javatinybasic.ast.expression.Expression;
 import me.darragh.javatinybasic.ast.expression.ValueExpression;
 import org.jetbrains.annotations.NotNull;
@@ -17,15 +14,10 @@ import static me.darragh.javatinybasic.ast.Serials.FOR_STATEMENT_EXPRESSION_SERI
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-@RequiredArgsConstructor
-public class FORExpression extends Expression {
+public record FORExpression(@NotNull String variableName,
+                            @NotNull ValueExpression startValue,
+                            @NotNull ValueExpression endValue,
+                            @NotNull ValueExpression stepValue) implements Expression {
     @Serial
     private static final long serialVersionUID = FOR_STATEMENT_EXPRESSION_SERIAL_VERSION_UID;
-
-    private final @NotNull String variableName;
-    private final @NotNull ValueExpression startValue;
-    private final @NotNull ValueExpression endValue;
-    private final @NotNull ValueExpression stepValue;
 }
@@ -1,8 +1,5 @@
 package me.darragh.javatinybasic.ast.expression.statement;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import me.darragh.javatinybasic.ast.expression.Expression;
 import me.darragh.javatinybasic.ast.expression.ValueExpression;
 import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
@@ -18,15 +15,10 @@ import static me.darragh.javatinybasic.ast.Serials.IF_STATEMENT_EXPRESSION_SERIA
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-@RequiredArgsConstructor
-public class IFExpression extends Expression {
+public record IFExpression(@NotNull ValueExpression valueA,
+                           @NotNull ValueExpression valueB,
+                           @NotNull LRelationalOperator relationalOperator,
+                           int lineNumberToGoto) implements Expression {
     @Serial
     private static final long serialVersionUID = IF_STATEMENT_EXPRESSION_SERIAL_VERSION_UID;
-
-    private final @NotNull ValueExpression valueA;
-    private final @NotNull ValueExpression valueB;
-    private final @NotNull LRelationalOperator relationalOperator;
-    private final int lineNumberToGoto;
 }
@@ -1,8 +1,5 @@
 package me.darragh.javatinybasic.ast.expression.statement;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import me.darragh.javatinybasic.ast.expression.Expression;
 import me.darragh.javatinybasic.ast.expression.ValueExpression;
 import org.jetbrains.annotations.NotNull;
@@ -17,13 +14,7 @@ import static me.darragh.javatinybasic.ast.Serials.LET_STATEMENT_EXPRESSION_SERI
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-@RequiredArgsConstructor
-public class LETExpression extends Expression {
+public record LETExpression(@NotNull String variableName, @NotNull ValueExpression value) implements Expression {
     @Serial
     private static final long serialVersionUID = LET_STATEMENT_EXPRESSION_SERIAL_VERSION_UID;
-
-    private final @NotNull String variableName;
-    private final @NotNull ValueExpression value;
 }
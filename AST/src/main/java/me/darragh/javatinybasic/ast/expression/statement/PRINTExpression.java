@@ -1,33 +1,41 @@
 package me.darragh.javatinybasic.ast.expression.statement;
 
-import lombok.Data;
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
 import me.darragh.javatinybasic.ast.expression.Expression;
 import me.darragh.javatinybasic.ast.expression.StringValueExpression;
 import me.darragh.javatinybasic.ast.expression.ValueExpression;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serial;
+import java.util.Arrays;
 
 import static me.darragh.javatinybasic.ast.Serials.PRINT_STATEMENT_EXPRESSION_SERIAL_VERSION_UID;
 
 /**
  * Represents a PRINT expression, which consists of one or more values to be printed.
  *
+ * @param values The values to print.
+ * @apiNote Each value should be either a {@link ValueExpression} or a {@link StringValueExpression}.
  * @author darraghd493
  * @since 1.0.0
  */
-@EqualsAndHashCode(callSuper = true)
-@Data
-@RequiredArgsConstructor
-public class PRINTExpression extends Expression {
+// TODO: Validation
+public record PRINTExpression(@NotNull Expression[] values) implements Expression {
     @Serial
     private static final long serialVersionUID = PRINT_STATEMENT_EXPRESSION_SERIAL_VERSION_UID;
 
-    /**
-     * @apiNote Should be either a {@link ValueExpression} or a {@link StringValueExpression}.
-     */
-    // TODO: Validation
-    private final @NotNull Expression[] values;
+    // Arrays are compared by content, rather than by identity as records would otherwise
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof PRINTExpression that && Arrays.equals(this.values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.values);
+    }
+
+    @Override
+    public String toString() {
+        return "PRINTExpression[values=%s]".formatted(Arrays.toString(this.values));
+    }
 }
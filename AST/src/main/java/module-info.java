@@ -0,0 +1,19 @@
+/**
+ * The abstract syntax tree of Java Tiny BASIC.
+ * <br/>
+ * This is a named module so that {@link me.darragh.javatinybasic.ast.expression.Expression} may permit the statement
+ * expressions, which live in their own package.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+module me.darragh.javatinybasic.ast {
+    requires static lombok;
+    requires static org.jetbrains.annotations;
+
+    exports me.darragh.javatinybasic.ast;
+    exports me.darragh.javatinybasic.ast.binary;
+    exports me.darragh.javatinybasic.ast.expression;
+    exports me.darragh.javatinybasic.ast.expression.statement;
+    exports me.darragh.javatinybasic.ast.langauge;
+}
@@ -0,0 +1,81 @@
+package me.darragh.javatinybasic.ast;
+
+import me.darragh.javatinybasic.ast.expression.LiteralValueExpression;
+import me.darragh.javatinybasic.ast.expression.MathematicalExpression;
+import me.darragh.javatinybasic.ast.expression.ValueExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the expression interner, which must hand out a single instance for every structurally equal expression, and
+ * only replace an expression with one equal to it.
+ */
+class ExpressionInternerTest {
+    @Test
+    void smallLiteralsAndLettersAreSharedByEveryInterner() {
+        ExpressionInterner first = new ExpressionInterner(),
+                second = new ExpressionInterner();
+        assertSame(first.literal(0), second.literal(0));
+        assertSame(first.literal(255), second.literal(255));
+        assertSame(first.variable("Z"), second.variable(new String(new char[] { 'Z' })));
+        assertSame(ExpressionInterner.variableName("A"), ExpressionInterner.variableName(new String("A")));
+
+        // Anything else is only shared within an interner
+        assertSame(first.literal(256), first.literal(256));
+        assertNotSame(first.literal(256), second.literal(256));
+        assertEquals(first.literal(-1), second.literal(-1));
+        assertSame(first.variable("TOTAL"), first.variable(new String("TOTAL")));
+    }
+
+    @Test
+    void equalExpressionsAreHashConsed() {
+        ExpressionInterner interner = new ExpressionInterner();
+        MathematicalExpression expression = sum(interner, 1000, 2000),
+                equal = sum(interner, 1000, 2000),
+                different = sum(interner, 1000, 2001);
+        assertSame(expression, equal);
+        assertNotSame(expression, different);
+        assertNotEquals(expression, different);
+
+        // Their children are interned too, so are shared between the expressions containing them
+        assertSame(expression.valueExpressions()[0], different.valueExpressions()[0]);
+        LETExpression let = interner.intern(new LETExpression("A", sum(interner, 1000, 2000)));
+        assertSame(expression, let.value());
+        assertSame(let, interner.intern(new LETExpression("A", expression)));
+    }
+
+    @Test
+    void tokensShareTheCanonicalExpression() {
+        ExpressionInterner interner = new ExpressionInterner();
+        Token first = interner.intern(new Token(10, LStatement.LET, new LETExpression("A", sum(interner, 300, 400)))),
+                second = interner.intern(new Token(20, LStatement.LET, new LETExpression("A", sum(interner, 300, 400))));
+        assertSame(first.expression(), second.expression());
+        assertEquals(20, second.lineNumber());
+        assertEquals(LStatement.LET, second.statement());
+
+        Token end = new Token(30, LStatement.END, null);
+        assertSame(end, interner.intern(end));
+        assertSame(first, interner.intern(first)); // already canonical
+    }
+
+    @Test
+    void fullInternersAreEmptied() {
+        ExpressionInterner interner = new ExpressionInterner(2);
+        LiteralValueExpression first = interner.literal(1000);
+        interner.literal(1001);
+        interner.literal(1002); // empties the interner, dropping the first
+        assertNotSame(first, interner.literal(1000));
+        assertEquals(first, interner.literal(1000));
+
+        assertThrows(IllegalArgumentException.class, () -> new ExpressionInterner(0));
+    }
+
+    private static MathematicalExpression sum(ExpressionInterner interner, int left, int right) {
+        return interner.mathematical(new ValueExpression[] { interner.literal(left), interner.literal(right) },
+                new LArithmeticOperator[] { LArithmeticOperator.ADD });
+    }
+}
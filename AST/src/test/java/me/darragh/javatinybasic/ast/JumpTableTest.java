@@ -0,0 +1,66 @@
+package me.darragh.javatinybasic.ast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the jump table, which must find the target of every line number, however they are spread, and no target for
+ * any other.
+ */
+class JumpTableTest {
+    @Test
+    void denseLinesAreLookedUpDirectly() {
+        int[] lineNumbers = IntStream.rangeClosed(1, 50).map(i -> i * 10).toArray();
+        JumpTable table = JumpTable.ofIndices(lineNumbers);
+        assertTrue(table.isDense());
+        assertTargets(table, lineNumbers);
+    }
+
+    @Test
+    void sparseLinesAreLookedUpByHash() {
+        // Spread far enough apart that a direct table would be mostly empty, and colliding in the low bits
+        int[] lineNumbers = IntStream.rangeClosed(1, 50).map(i -> i * 4096).toArray();
+        JumpTable table = JumpTable.ofIndices(lineNumbers);
+        assertFalse(table.isDense());
+        assertTargets(table, lineNumbers);
+    }
+
+    @Test
+    void missingLinesHaveNoTarget() {
+        JumpTable dense = JumpTable.of(new int[] { 10, 20, 30 }, new int[] { 7, 8, 9 });
+        JumpTable sparse = JumpTable.of(new int[] { 10, 100_000, 2_000_000 }, new int[] { 7, 8, 9 });
+        assertTrue(dense.isDense());
+        assertFalse(sparse.isDense());
+        for (JumpTable table : new JumpTable[] { dense, sparse }) {
+            assertEquals(8, table.get(table.isDense() ? 20 : 100_000));
+            for (int lineNumber : new int[] { Integer.MIN_VALUE, -10, 0, 9, 15, 31, 99_999, Integer.MAX_VALUE }) {
+                assertEquals(JumpTable.NO_TARGET, table.get(lineNumber), "line " + lineNumber);
+            }
+        }
+
+        JumpTable empty = JumpTable.ofIndices(new int[0]);
+        assertEquals(JumpTable.NO_TARGET, empty.get(10));
+    }
+
+    @Test
+    void mismatchedTargetsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> JumpTable.of(new int[] { 10, 20 }, new int[] { 0 }));
+    }
+
+    @Test
+    void densityFollowsTheSpanPerLine() {
+        assertTrue(JumpTable.isDense(10, 160, 10));
+        assertFalse(JumpTable.isDense(10, 170, 10));
+        assertFalse(JumpTable.isDense(1, Integer.MAX_VALUE, 2)); // must not overflow
+    }
+
+    private static void assertTargets(JumpTable table, int[] lineNumbers) {
+        for (int i = 0; i < lineNumbers.length; i++) {
+            assertEquals(i, table.get(lineNumbers[i]), "line " + lineNumbers[i]);
+            assertEquals(JumpTable.NO_TARGET, table.get(lineNumbers[i] + 1), "line " + (lineNumbers[i] + 1));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package me.darragh.javatinybasic.ast.binary;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.TokenFactory;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the binary program format, which must decode exactly what was encoded, and reject anything else with a
+ * {@link BinaryProgramFormatException}.
+ */
+class BinaryProgramTest {
+    private static final ValueExpression I_TIMES_STEP = new MathematicalExpression(
+            new ValueExpression[] { new VariableValueExpression("I"), new LiteralValueExpression(-70000) },
+            new LArithmeticOperator[] { LArithmeticOperator.MULTIPLY }
+    );
+
+    private static final List<Token> EVERY_STATEMENT = List.of(
+            new Token(5, LStatement.REM, null),
+            TokenFactory.createLetToken(10, "TOTAL", I_TIMES_STEP),
+            TokenFactory.createPrintToken(20, new StringValueExpression("Σ ="), I_TIMES_STEP, new VariableValueExpression("TOTAL")),
+            TokenFactory.createInputToken(30, "N"),
+            TokenFactory.createIfToken(40, new VariableValueExpression("N"), new LiteralValueExpression(0), LRelationalOperator.LESS_THAN_OR_EQUAL, 130),
+            TokenFactory.createForToken(50, "I", new LiteralValueExpression(1), new VariableValueExpression("N"), new LiteralValueExpression(-1)),
+            TokenFactory.createNextToken(60, "I"),
+            TokenFactory.createGotoToken(70, 90),
+            TokenFactory.createGotoToken(80, I_TIMES_STEP),
+            TokenFactory.createGosubToken(90, 120),
+            TokenFactory.createGosubToken(100, new VariableValueExpression("N")),
+            TokenFactory.createEndToken(110),
+            TokenFactory.createReturnToken(120)
+    );
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyStatementRoundTrips() throws Exception {
+        BinaryProgram program = BinaryProgram.of(BinaryProgram.encode(EVERY_STATEMENT));
+        assertEquals(EVERY_STATEMENT, program.toTokens());
+        assertEquals(EVERY_STATEMENT.size(), program.size());
+        for (int i = 0; i < EVERY_STATEMENT.size(); i++) {
+            assertEquals(EVERY_STATEMENT.get(i).lineNumber(), program.lineNumber(i));
+            assertEquals(EVERY_STATEMENT.get(i).statement(), program.statement(i));
+            assertEquals(EVERY_STATEMENT.get(i), program.token(i));
+        }
+
+        Path path = this.directory.resolve("program.bin");
+        BinaryProgram.write(EVERY_STATEMENT, path);
+        assertEquals(EVERY_STATEMENT, BinaryProgram.map(path).toTokens());
+    }
+
+    @Test
+    void tokenWithoutItsExpressionIsNotEncoded() {
+        Token token = new Token(10, LStatement.LET, null);
+        assertThrows(IllegalStateException.class, () -> BinaryProgram.encode(List.of(token)));
+    }
+
+    @Test
+    void truncatedInputIsRejected() {
+        byte[] bytes = bytesOf(BinaryProgram.encode(EVERY_STATEMENT));
+        for (int length : new int[] { 0, 3, BinaryProgram.HEADER_SIZE - 1, BinaryProgram.HEADER_SIZE, bytes.length - 1 }) {
+            ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(bytes, length));
+            assertThrows(BinaryProgramFormatException.class, () -> BinaryProgram.of(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void versionMismatchIsRejected() {
+        ByteBuffer buffer = corrupt(EVERY_STATEMENT, corrupted -> corrupted.putShort(4, (short) (BinaryProgram.VERSION + 1)));
+        BinaryProgramFormatException exception = assertThrows(BinaryProgramFormatException.class, () -> BinaryProgram.of(buffer));
+        assertTrue(exception.getMessage().startsWith("Unsupported binary program version"), exception.getMessage());
+    }
+
+    @Test
+    void corruptLengthsAreRejected() {
+        // A line count which does not match the columns
+        ByteBuffer lines = corrupt(EVERY_STATEMENT, corrupted -> corrupted.putInt(8, corrupted.getInt(8) + 1));
+        assertThrows(BinaryProgramFormatException.class, () -> BinaryProgram.of(lines));
+
+        // A string which ends before it starts
+        List<Token> input = List.of(TokenFactory.createInputToken(10, "N"));
+        BinaryProgram string = BinaryProgram.of(corrupt(input, corrupted -> corrupted.putInt(stringOffsetsOffset(corrupted), 5)));
+        assertThrows(BinaryProgramFormatException.class, string::toTokens);
+
+        // A PRINT of more values than there are operands
+        List<Token> print = List.of(TokenFactory.createPrintToken(10, new LiteralValueExpression(1)));
+        BinaryProgram values = BinaryProgram.of(corrupt(print, corrupted -> corrupted.put(operandsOffset(corrupted) + lineOperandStart(corrupted, 0), (byte) 0x7F)));
+        assertThrows(BinaryProgramFormatException.class, values::toTokens);
+
+        // An opcode which is not a statement
+        BinaryProgram opcode = BinaryProgram.of(corrupt(input, corrupted -> corrupted.put(opcodesOffset(corrupted), (byte) 100)));
+        assertThrows(BinaryProgramFormatException.class, () -> opcode.statement(0));
+        assertThrows(BinaryProgramFormatException.class, () -> opcode.token(0));
+    }
+
+    @Test
+    void valueWhichRefersToItselfIsRejected() {
+        // A + 1 is the third value, after A and 1: its tag, count and then the index of A
+        List<Token> let = List.of(TokenFactory.createLetToken(10, "B", new MathematicalExpression(
+                new ValueExpression[] { new VariableValueExpression("A"), new LiteralValueExpression(1) },
+                new LArithmeticOperator[] { LArithmeticOperator.ADD }
+        )));
+        BinaryProgram program = BinaryProgram.of(corrupt(let, corrupted -> {
+            int first = operandsOffset(corrupted) + valueStart(corrupted, 2) + 2;
+            assertEquals(0, corrupted.get(first));
+            corrupted.put(first, (byte) 2);
+        }));
+        assertThrows(BinaryProgramFormatException.class, program::toTokens);
+    }
+
+    //region Layout
+    private static ByteBuffer corrupt(List<Token> tokens, Consumer<ByteBuffer> corruption) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytesOf(BinaryProgram.encode(tokens))).order(BinaryProgram.BYTE_ORDER);
+        corruption.accept(buffer);
+        return buffer;
+    }
+
+    private static byte[] bytesOf(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int lineOperandStart(ByteBuffer buffer, int index) {
+        return buffer.getInt(BinaryProgram.HEADER_SIZE + Integer.BYTES * (buffer.getInt(8) + index));
+    }
+
+    private static int valueStart(ByteBuffer buffer, int index) {
+        return buffer.getInt(BinaryProgram.HEADER_SIZE + Integer.BYTES * (2 * buffer.getInt(8) + index));
+    }
+
+    private static int stringOffsetsOffset(ByteBuffer buffer) {
+        return BinaryProgram.HEADER_SIZE + Integer.BYTES * (2 * buffer.getInt(8) + buffer.getInt(12));
+    }
+
+    private static int opcodesOffset(ByteBuffer buffer) {
+        return stringOffsetsOffset(buffer) + Integer.BYTES * (buffer.getInt(16) + 1);
+    }
+
+    private static int operandsOffset(ByteBuffer buffer) {
+        return opcodesOffset(buffer) + buffer.getInt(8);
+    }
+    //endregion
+}
@@ -0,0 +1,47 @@
+package me.darragh.javatinybasic.ast.expression;
+
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests mathematical expressions, which must compare and hash by the content of their chains, as records would if
+ * they compared arrays by content.
+ */
+class MathematicalExpressionTest {
+    @Test
+    void equalChainsAreEqualWithEqualHashes() {
+        MathematicalExpression expression = chain(LArithmeticOperator.ADD, 1),
+                same = chain(LArithmeticOperator.ADD, 1);
+        assertEquals(expression, same);
+        assertEquals(expression.hashCode(), same.hashCode());
+        assertEquals(expression.hashCode(), expression.hashCode()); // cached after the first call
+        assertEquals(same, expression);
+    }
+
+    @Test
+    void differentChainsAreNotEqual() {
+        MathematicalExpression expression = chain(LArithmeticOperator.ADD, 1);
+        assertNotEquals(expression, chain(LArithmeticOperator.SUBTRACT, 1));
+        assertNotEquals(expression, chain(LArithmeticOperator.ADD, 2));
+        assertNotEquals(expression, new LiteralValueExpression(1));
+        assertNotEquals(null, expression);
+    }
+
+    @Test
+    void statementsHoldingEqualChainsAreEqual() {
+        LETExpression let = new LETExpression("B", chain(LArithmeticOperator.MULTIPLY, 3)),
+                same = new LETExpression("B", chain(LArithmeticOperator.MULTIPLY, 3));
+        assertEquals(let, same);
+        assertEquals(let.hashCode(), same.hashCode());
+    }
+
+    private static MathematicalExpression chain(LArithmeticOperator operator, int literal) {
+        return new MathematicalExpression(
+                new ValueExpression[] { new VariableValueExpression("A"), new LiteralValueExpression(literal) },
+                new LArithmeticOperator[] { operator }
+        );
+    }
+}
@@ -0,0 +1,99 @@
+package me.darragh.javatinybasic.analysis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A run of consecutive lines which always execute one after another: control only enters at its first line, and only
+ * its last line can jump elsewhere.
+ * <br/>
+ * Lines are referred to by their instruction index, i.e. their position in line number order, which matches the
+ * instruction indices of a linked program.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class BasicBlock {
+    private final int index;
+    private final int start;
+    private final int end;
+    final List<Edge> successors = new ArrayList<>(2);
+    final List<Edge> predecessors = new ArrayList<>(2);
+
+    BasicBlock(int index, int start, int end) {
+        this.index = index;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Gets the index of this block within its graph.
+     *
+     * @return The block index.
+     */
+    public int index() {
+        return this.index;
+    }
+
+    /**
+     * Gets the instruction index of the first line of this block.
+     *
+     * @return The first instruction index.
+     */
+    public int start() {
+        return this.start;
+    }
+
+    /**
+     * Gets the instruction index following the last line of this block.
+     *
+     * @return The exclusive end instruction index.
+     */
+    public int end() {
+        return this.end;
+    }
+
+    /**
+     * Gets the instruction index of the last line of this block, which is the only one which may jump.
+     *
+     * @return The last instruction index.
+     */
+    public int last() {
+        return this.end - 1;
+    }
+
+    /**
+     * Gets the number of lines in this block.
+     *
+     * @return The number of lines.
+     */
+    public int size() {
+        return this.end - this.start;
+    }
+
+    /**
+     * Gets the edges by which control may leave this block.
+     *
+     * @return The outgoing edges.
+     */
+    public @NotNull List<Edge> successors() {
+        return Collections.unmodifiableList(this.successors);
+    }
+
+    /**
+     * Gets the edges by which control may enter this block.
+     *
+     * @return The incoming edges.
+     */
+    public @NotNull List<Edge> predecessors() {
+        return Collections.unmodifiableList(this.predecessors);
+    }
+
+    @Override
+    public String toString() {
+        return "BasicBlock[index=%s, start=%s, end=%s, successors=%s]".formatted(this.index, this.start, this.end, this.successors);
+    }
+}
@@ -0,0 +1,529 @@
+package me.darragh.javatinybasic.analysis;
+
+import me.darragh.javatinybasic.ast.JumpTable;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.expression.LineNumberExpression;
+import me.darragh.javatinybasic.ast.expression.ValueExpression;
+import me.darragh.javatinybasic.ast.expression.VariableNameExpression;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * The control-flow graph of a Tiny BASIC program, dividing its lines into {@link BasicBlock}s connected by
+ * {@link Edge}s.
+ * <br/>
+ * A block ends at every IF, FOR, NEXT, GOTO, GOSUB, RETURN and END, and a new block starts at the target of every
+ * jump and at every FOR, which its NEXT loops back to. As a computed GOTO or GOSUB, such as {@code GOTO A * 10}, could reach
+ * any line, every line of a program which has one starts a block of its own.
+ * <br/>
+ * A GOSUB has a {@link EdgeKind#CALL} edge to its subroutine, and each RETURN has a {@link EdgeKind#RETURN} edge to
+ * the block following every GOSUB whose subroutine may reach it, found by following the subroutine from where it
+ * starts, stepping over any GOSUBs within it. Control only reaches the block following a GOSUB by returning to it.
+ * Each NEXT has a {@link EdgeKind#LOOP} edge back to every FOR of the same variable. As the transpiler pairs each FOR
+ * with the NEXT which closes it in the source, checking the loop before its first iteration, each NEXT also loops back
+ * to that FOR, and the FOR has an {@link EdgeKind#EXIT} edge to the block following it.
+ * <br/>
+ * The dominators of every reachable block are found as the graph is built, from which its {@link NaturalLoop}s are
+ * found: each edge to a block which dominates its source jumps back to the header of a loop.
+ * <br/>
+ * Graphs are immutable, so they are safe to share between threads.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class ControlFlowGraph {
+    /**
+     * Represents the absence of a block, i.e. the end of the program.
+     */
+    public static final int NO_BLOCK = -1;
+
+    private final Token[] instructions;
+    private final BasicBlock[] blocks;
+    private final int[] blockIndices; // indexed by instruction index
+    private final boolean[] reachable;
+    private final int[] dominators; // the immediate dominator of each block
+    private final List<NaturalLoop> loops;
+    private final boolean computed;
+
+    private ControlFlowGraph(Token[] instructions, BasicBlock[] blocks, int[] blockIndices, boolean[] reachable, boolean computed) {
+        this.instructions = instructions;
+        this.blocks = blocks;
+        this.blockIndices = blockIndices;
+        this.reachable = reachable;
+        this.dominators = findDominators(blocks);
+        this.loops = findLoops(blocks, this.dominators, reachable);
+        this.computed = computed;
+    }
+
+    //region Building
+    /**
+     * Builds the control-flow graph of the given tokens.
+     * Duplicate line numbers keep the first occurrence, matching the order of the source.
+     *
+     * @param tokens The tokens of the program.
+     * @return The control-flow graph.
+     * @throws IllegalArgumentException If a GOTO, GOSUB or IF statement targets a line that does not exist.
+     */
+    public static @NotNull ControlFlowGraph of(@NotNull List<Token> tokens) {
+        Map<Integer, Token> sorted = new TreeMap<>();
+        for (Token token : tokens) {
+            sorted.putIfAbsent(token.lineNumber(), token);
+        }
+        Token[] instructions = sorted.values().toArray(new Token[0]);
+        int size = instructions.length;
+
+        // Resolve the target of every jump
+        int[] lineNumbers = new int[size];
+        for (int i = 0; i < size; i++) {
+            lineNumbers[i] = instructions[i].lineNumber();
+        }
+        JumpTable indices = JumpTable.ofIndices(lineNumbers);
+        int[] targets = new int[size];
+        boolean computed = false;
+        for (int i = 0; i < size; i++) {
+            Token token = instructions[i];
+            computed |= token.expression() instanceof ValueExpression;
+            int targetLineNumber = targetLineNumberOf(token);
+            targets[i] = targetLineNumber != JumpTable.NO_TARGET ? indices.get(targetLineNumber) : JumpTable.NO_TARGET;
+            if (targetLineNumber != JumpTable.NO_TARGET && targets[i] == JumpTable.NO_TARGET) {
+                throw new IllegalArgumentException("%s on line %s targets a line that does not exist: %s".formatted(
+                        token.statement(), token.lineNumber(), targetLineNumber));
+            }
+        }
+
+        // Find the first line of every block
+        boolean[] leaders = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            Token token = instructions[i];
+            leaders[i] |= i == 0 || computed || token.statement() == LStatement.FOR;
+            if (targets[i] != JumpTable.NO_TARGET) {
+                leaders[targets[i]] = true;
+            }
+            if (isTerminator(token.statement()) && i + 1 < size) {
+                leaders[i + 1] = true;
+            }
+        }
+
+        List<BasicBlock> blocks = new ArrayList<>();
+        int[] blockIndices = new int[size];
+        for (int i = 0; i < size; ) {
+            int end = i + 1;
+            while (end < size && !leaders[end]) {
+                end++;
+            }
+            BasicBlock block = new BasicBlock(blocks.size(), i, end);
+            Arrays.fill(blockIndices, i, end, block.index());
+            blocks.add(block);
+            i = end;
+        }
+
+        BasicBlock[] blockArray = blocks.toArray(new BasicBlock[0]);
+        connect(instructions, blockArray, blockIndices, targets);
+        connectReturns(instructions, blockArray);
+        for (BasicBlock block : blockArray) {
+            for (Edge edge : block.successors) {
+                blockArray[edge.target()].predecessors.add(edge);
+            }
+        }
+        return new ControlFlowGraph(instructions, blockArray, blockIndices, findReachable(blockArray), computed);
+    }
+
+    private static void connect(Token[] instructions, BasicBlock[] blocks, int[] blockIndices, int[] targets) {
+        Map<String, List<Integer>> loops = new HashMap<>(); // the blocks starting at each variable's FORs
+        int[] pairs = new int[instructions.length]; // the NEXT closing each FOR, and the FOR opened by each NEXT
+        Arrays.fill(pairs, JumpTable.NO_TARGET);
+        Deque<Integer> open = new ArrayDeque<>();
+        for (int i = 0; i < instructions.length; i++) {
+            if (instructions[i].expression() instanceof FORExpression forExpression) {
+                loops.computeIfAbsent(forExpression.variableName(), variableName -> new ArrayList<>()).add(blockIndices[i]);
+                open.push(i);
+            } else if (instructions[i].statement() == LStatement.NEXT && !open.isEmpty()) {
+                pairs[i] = open.pop();
+                pairs[pairs[i]] = i;
+            }
+        }
+
+        for (BasicBlock block : blocks) {
+            int last = block.last(),
+                    next = block.index() + 1 < blocks.length ? block.index() + 1 : NO_BLOCK;
+            Token token = instructions[last];
+            switch (token.statement()) {
+                case GOTO, GOSUB -> {
+                    EdgeKind kind = token.statement() == LStatement.GOTO ? EdgeKind.JUMP : EdgeKind.CALL;
+                    if (targets[last] != JumpTable.NO_TARGET) {
+                        addEdge(block, blockIndices[targets[last]], kind);
+                    } else {
+                        for (BasicBlock target : blocks) {
+                            addEdge(block, target.index(), EdgeKind.COMPUTED);
+                        }
+                    }
+                }
+                case IF -> {
+                    addEdge(block, next, EdgeKind.FALL_THROUGH);
+                    addEdge(block, blockIndices[targets[last]], EdgeKind.JUMP);
+                }
+                case FOR -> {
+                    addEdge(block, next, EdgeKind.FALL_THROUGH);
+                    if (pairs[last] != JumpTable.NO_TARGET && pairs[last] + 1 < instructions.length) {
+                        addEdge(block, blockIndices[pairs[last] + 1], EdgeKind.EXIT);
+                    }
+                }
+                case NEXT -> {
+                    String variableName = ((VariableNameExpression) Objects.requireNonNull(token.expression())).variableName();
+                    List<Integer> targetLoops = loops.getOrDefault(variableName, List.of());
+                    for (int loop : targetLoops) {
+                        addEdge(block, loop, EdgeKind.LOOP);
+                    }
+                    if (pairs[last] != JumpTable.NO_TARGET && !targetLoops.contains(blockIndices[pairs[last]])) {
+                        addEdge(block, blockIndices[pairs[last]], EdgeKind.LOOP);
+                    }
+                    addEdge(block, next, EdgeKind.FALL_THROUGH);
+                }
+                case RETURN, END -> {
+                } // RETURNs are connected once every subroutine is known
+                default -> addEdge(block, next, EdgeKind.FALL_THROUGH);
+            }
+        }
+    }
+
+    /**
+     * Connects each RETURN to the block following every GOSUB whose subroutine may reach it.
+     */
+    private static void connectReturns(Token[] instructions, BasicBlock[] blocks) {
+        Map<Integer, BitSet> returnsBySubroutine = new HashMap<>();
+        for (BasicBlock block : blocks) {
+            if (instructions[block.last()].statement() != LStatement.GOSUB || block.index() + 1 == blocks.length) {
+                continue; // a GOSUB on the last line returns to the end of the program
+            }
+
+            BitSet returns = new BitSet();
+            if (instructions[block.last()].expression() instanceof ValueExpression) {
+                // A computed GOSUB may call any line, so may reach every RETURN
+                for (BasicBlock other : blocks) {
+                    returns.set(other.index(), instructions[other.last()].statement() == LStatement.RETURN);
+                }
+            } else {
+                int start = block.successors.getFirst().target();
+                returns = returnsBySubroutine.computeIfAbsent(start, subroutine -> findReturns(instructions, blocks, subroutine));
+            }
+            for (int returnBlock = returns.nextSetBit(0); returnBlock >= 0; returnBlock = returns.nextSetBit(returnBlock + 1)) {
+                addEdge(blocks[returnBlock], block.index() + 1, EdgeKind.RETURN);
+            }
+        }
+    }
+
+    /**
+     * Finds every RETURN a subroutine starting at the given block may reach, stepping over any GOSUBs within it.
+     */
+    private static BitSet findReturns(Token[] instructions, BasicBlock[] blocks, int start) {
+        BitSet returns = new BitSet(),
+                visited = new BitSet();
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(start);
+        visited.set(start);
+        while (!pending.isEmpty()) {
+            BasicBlock block = blocks[pending.pop()];
+            switch (instructions[block.last()].statement()) {
+                case RETURN -> returns.set(block.index());
+                case GOSUB -> visit(visited, pending, block.index() + 1 < blocks.length ? block.index() + 1 : NO_BLOCK);
+                default -> block.successors.forEach(edge -> visit(visited, pending, edge.target()));
+            }
+        }
+        return returns;
+    }
+
+    private static boolean[] findReachable(BasicBlock[] blocks) {
+        boolean[] reachable = new boolean[blocks.length];
+        Deque<Integer> pending = new ArrayDeque<>();
+        if (blocks.length > 0) {
+            reachable[0] = true;
+            pending.push(0);
+        }
+        while (!pending.isEmpty()) {
+            for (Edge edge : blocks[pending.pop()].successors) {
+                if (!reachable[edge.target()]) {
+                    reachable[edge.target()] = true;
+                    pending.push(edge.target());
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Finds the immediate dominator of every reachable block, visiting them in reverse postorder until nothing changes.
+     * The entry block dominates itself, and unreachable blocks have none.
+     */
+    private static int[] findDominators(BasicBlock[] blocks) {
+        int size = blocks.length;
+        int[] dominators = new int[size];
+        Arrays.fill(dominators, NO_BLOCK);
+        if (size == 0) {
+            return dominators;
+        }
+
+        // Number every reachable block in postorder
+        int[] postorder = new int[size], // the block at each position
+                positions = new int[size]; // the position of each block
+        Arrays.fill(positions, NO_BLOCK);
+        int count = 0;
+        int[] stack = new int[size],
+                nextEdges = new int[size];
+        BitSet visited = new BitSet(size);
+        int depth = 0;
+        stack[depth++] = 0;
+        visited.set(0);
+        while (depth > 0) {
+            int block = stack[depth - 1];
+            List<Edge> successors = blocks[block].successors;
+            if (nextEdges[block] < successors.size()) {
+                int target = successors.get(nextEdges[block]++).target();
+                if (!visited.get(target)) {
+                    visited.set(target);
+                    stack[depth++] = target;
+                }
+                continue;
+            }
+            depth--;
+            positions[block] = count;
+            postorder[count++] = block;
+        }
+
+        dominators[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = count - 1; i >= 0; i--) {
+                int block = postorder[i];
+                if (block == 0) {
+                    continue;
+                }
+
+                int dominator = NO_BLOCK;
+                for (Edge edge : blocks[block].predecessors) {
+                    int predecessor = edge.source();
+                    if (dominators[predecessor] != NO_BLOCK) {
+                        dominator = dominator == NO_BLOCK ? predecessor : intersect(dominators, positions, predecessor, dominator);
+                    }
+                }
+                if (dominators[block] != dominator) {
+                    dominators[block] = dominator;
+                    changed = true;
+                }
+            }
+        }
+        return dominators;
+    }
+
+    private static int intersect(int[] dominators, int[] positions, int a, int b) {
+        while (a != b) {
+            while (positions[a] < positions[b]) {
+                a = dominators[a];
+            }
+            while (positions[b] < positions[a]) {
+                b = dominators[b];
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Finds every natural loop, merging the loops of back edges which share a header.
+     */
+    private static List<NaturalLoop> findLoops(BasicBlock[] blocks, int[] dominators, boolean[] reachable) {
+        Map<Integer, List<Integer>> latches = new TreeMap<>(); // by header
+        for (BasicBlock block : blocks) {
+            if (!reachable[block.index()]) {
+                continue;
+            }
+            for (Edge edge : block.successors) {
+                if (dominates(dominators, edge.target(), block.index())
+                        && !latches.computeIfAbsent(edge.target(), header -> new ArrayList<>()).contains(block.index())) {
+                    latches.get(edge.target()).add(block.index());
+                }
+            }
+        }
+
+        List<NaturalLoop> loops = new ArrayList<>(latches.size());
+        for (Map.Entry<Integer, List<Integer>> entry : latches.entrySet()) {
+            int header = entry.getKey();
+            BitSet body = new BitSet(blocks.length);
+            body.set(header);
+            Deque<Integer> pending = new ArrayDeque<>();
+            for (int latch : entry.getValue()) {
+                visit(body, pending, latch);
+            }
+            while (!pending.isEmpty()) {
+                for (Edge edge : blocks[pending.pop()].predecessors) {
+                    if (reachable[edge.source()]) {
+                        visit(body, pending, edge.source());
+                    }
+                }
+            }
+            List<Integer> sorted = new ArrayList<>(entry.getValue());
+            Collections.sort(sorted);
+            loops.add(new NaturalLoop(header, sorted, body));
+        }
+        return Collections.unmodifiableList(loops);
+    }
+
+    private static boolean dominates(int[] dominators, int dominator, int block) {
+        if (dominators[block] == NO_BLOCK) {
+            return false; // unreachable
+        }
+        while (block != dominator) {
+            if (block == 0) {
+                return false;
+            }
+            block = dominators[block];
+        }
+        return true;
+    }
+
+    private static void visit(BitSet visited, Deque<Integer> pending, int block) {
+        if (block != NO_BLOCK && !visited.get(block)) {
+            visited.set(block);
+            pending.push(block);
+        }
+    }
+
+    private static void addEdge(BasicBlock source, int target, EdgeKind kind) {
+        if (target != NO_BLOCK) {
+            source.successors.add(new Edge(source.index(), target, kind));
+        }
+    }
+
+    private static boolean isTerminator(LStatement statement) {
+        return switch (statement) {
+            case IF, FOR, NEXT, GOTO, GOSUB, RETURN, END -> true;
+            default -> false;
+        };
+    }
+
+    private static int targetLineNumberOf(Token token) {
+        return switch (token.expression()) {
+            case LineNumberExpression(int lineNumber) when token.statement() == LStatement.GOTO
+                    || token.statement() == LStatement.GOSUB -> lineNumber;
+            case IFExpression ifExpression -> ifExpression.lineNumberToGoto();
+            case null, default -> JumpTable.NO_TARGET;
+        };
+    }
+    //endregion
+
+    //region Accessors
+    /**
+     * Gets the number of blocks.
+     *
+     * @return The number of blocks.
+     */
+    public int size() {
+        return this.blocks.length;
+    }
+
+    /**
+     * Gets the given block.
+     *
+     * @param index The index of the block.
+     * @return The block.
+     */
+    public @NotNull BasicBlock block(int index) {
+        return this.blocks[index];
+    }
+
+    /**
+     * Gets every block, in line number order. The first block is the entry point of the program.
+     *
+     * @return The blocks.
+     */
+    public @NotNull List<BasicBlock> blocks() {
+        return List.of(this.blocks);
+    }
+
+    /**
+     * Gets the index of the block containing the given line.
+     *
+     * @param instruction The instruction index of the line.
+     * @return The block index.
+     */
+    public int blockIndexOf(int instruction) {
+        return this.blockIndices[instruction];
+    }
+
+    /**
+     * Gets the number of lines in the program.
+     *
+     * @return The number of lines.
+     */
+    public int instructionCount() {
+        return this.instructions.length;
+    }
+
+    /**
+     * Gets the token of the given line.
+     *
+     * @param instruction The instruction index of the line.
+     * @return The token.
+     */
+    public @NotNull Token instruction(int instruction) {
+        return this.instructions[instruction];
+    }
+
+    /**
+     * Gets whether control can ever reach the given block from the start of the program.
+     *
+     * @param index The index of the block.
+     * @return Whether the block is reachable.
+     */
+    public boolean isReachable(int index) {
+        return this.reachable[index];
+    }
+
+    /**
+     * Gets whether the program has a computed GOTO or GOSUB, in which case every line is a block of its own.
+     *
+     * @return Whether the program has a computed jump.
+     */
+    public boolean hasComputedJumps() {
+        return this.computed;
+    }
+    //endregion
+
+    //region Dominators
+    /**
+     * Gets the immediate dominator of the given block: the closest block through which control must pass to reach it
+     * from the start of the program.
+     *
+     * @param index The index of the block.
+     * @return The immediate dominator, or {@link #NO_BLOCK} for the entry block and unreachable blocks.
+     */
+    public int immediateDominator(int index) {
+        return index == 0 ? NO_BLOCK : this.dominators[index];
+    }
+
+    /**
+     * Gets whether control must pass through one block to reach another from the start of the program.
+     * Every reachable block dominates itself.
+     *
+     * @param dominator The index of the block which may dominate the other.
+     * @param index The index of the block which may be dominated.
+     * @return Whether the first block dominates the second.
+     */
+    public boolean dominates(int dominator, int index) {
+        return dominates(this.dominators, dominator, index);
+    }
+
+    /**
+     * Gets every natural loop of the program, in order of their headers.
+     * Loops which share a header are merged, so each header starts exactly one loop.
+     *
+     * @return The natural loops.
+     */
+    public @NotNull List<NaturalLoop> loops() {
+        return this.loops;
+    }
+    //endregion
+}
@@ -0,0 +1,15 @@
+package me.darragh.javatinybasic.analysis;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An edge between two {@link BasicBlock}s of a {@link ControlFlowGraph}.
+ *
+ * @param source The index of the block control leaves.
+ * @param target The index of the block control enters.
+ * @param kind How control passes between them.
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public record Edge(int source, int target, @NotNull EdgeKind kind) {
+}
@@ -0,0 +1,38 @@
+package me.darragh.javatinybasic.analysis;
+
+/**
+ * The ways in which control can pass from one {@link BasicBlock} to another.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public enum EdgeKind {
+    /**
+     * Falling through to the following block, including when an IF is not taken or a FOR loop ends.
+     */
+    FALL_THROUGH,
+    /**
+     * A GOTO, or an IF which is taken.
+     */
+    JUMP,
+    /**
+     * A GOSUB to the start of its subroutine.
+     */
+    CALL,
+    /**
+     * A RETURN to the block following a GOSUB which may have called it.
+     */
+    RETURN,
+    /**
+     * A NEXT back to the FOR which began its loop.
+     */
+    LOOP,
+    /**
+     * A FOR skipping past the NEXT which ends its loop, as a transpiled loop is checked before its first iteration.
+     */
+    EXIT,
+    /**
+     * A computed GOTO or GOSUB, such as {@code GOTO A * 10}, to any line it could evaluate to.
+     */
+    COMPUTED
+}
@@ -0,0 +1,80 @@
+package me.darragh.javatinybasic.analysis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A loop in a {@link ControlFlowGraph}: a header block which dominates every block of the loop, and the blocks which
+ * can reach one of its latches, the blocks which jump back to the header, without passing through the header.
+ * <br/>
+ * Both the loop formed by a FOR and its NEXT, and one formed by an IF or GOTO jumping back to an earlier line, are
+ * natural loops. Control can only enter a natural loop through its header, so anything computed before the header is
+ * reached holds for the whole loop, unless the loop itself changes it.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class NaturalLoop {
+    private final int header;
+    private final List<Integer> latches;
+    private final BitSet blocks;
+
+    NaturalLoop(int header, @NotNull List<Integer> latches, @NotNull BitSet blocks) {
+        this.header = header;
+        this.latches = List.copyOf(latches);
+        this.blocks = blocks;
+    }
+
+    /**
+     * Gets the index of the header block, which every iteration starts from.
+     *
+     * @return The header block index.
+     */
+    public int header() {
+        return this.header;
+    }
+
+    /**
+     * Gets the indices of the blocks which jump back to the header, in ascending order.
+     *
+     * @return The latch block indices.
+     */
+    public @NotNull List<Integer> latches() {
+        return this.latches;
+    }
+
+    /**
+     * Gets the indices of every block in the loop, including its header, in ascending order.
+     *
+     * @return The block indices.
+     */
+    public @NotNull List<Integer> blocks() {
+        return this.blocks.stream().boxed().toList();
+    }
+
+    /**
+     * Gets whether the given block is part of the loop.
+     *
+     * @param block The index of the block.
+     * @return Whether the block is in the loop.
+     */
+    public boolean contains(int block) {
+        return block >= 0 && this.blocks.get(block);
+    }
+
+    /**
+     * Gets the number of blocks in the loop.
+     *
+     * @return The number of blocks.
+     */
+    public int size() {
+        return this.blocks.cardinality();
+    }
+
+    @Override
+    public String toString() {
+        return "NaturalLoop[header=%s, latches=%s, blocks=%s]".formatted(this.header, this.latches, this.blocks);
+    }
+}
@@ -0,0 +1,396 @@
+package me.darragh.javatinybasic.cache;
+
+import lombok.Getter;
+import me.darragh.javatinybasic.analysis.ControlFlowGraph;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.binary.BinaryProgram;
+import me.darragh.javatinybasic.parser.Parser;
+import me.darragh.javatinybasic.parser.ParserInvalidLineException;
+import me.darragh.javatinybasic.transpiler.TranspiledProgram;
+import me.darragh.javatinybasic.transpiler.Transpiler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static me.darragh.javatinybasic.ast.Serials.BINARY_PROGRAM_VERSION;
+
+/**
+ * A content-addressed cache of parsed programs and transpiled classes on disk, which lets a process skip parsing and
+ * transpiling a program that any process sharing the directory has already built.
+ * <br/>
+ * Entries are keyed by the SHA-256 hash of the toolchain version, the kind of artifact and the source, so a change to
+ * any of them is a miss rather than a stale hit. By default, the toolchain version is derived from every class file of
+ * the AST, Analysis, Parser and Transpiler modules, which between them produce every artifact, so any rebuild which
+ * changes one of them changes the key. Parsed programs are stored as {@link BinaryProgram}s, and transpiled programs as
+ * the class file bytes of {@link Transpiler#toBytes()}.
+ * <br/>
+ * Entries are written to a temporary file and atomically moved into place, so readers never see a partial entry, even
+ * across processes. Once the directory grows beyond its maximum size, the least recently used entries are evicted.
+ * Temporary files left behind by a process which died whilst writing are deleted when the directory is next scanned.
+ * <br/>
+ * The cache is best-effort: an entry which cannot be read is treated as a miss and rebuilt, and an entry which cannot
+ * be written is simply not cached. A class entry which does not start like a class file is always rebuilt, but one
+ * which is otherwise corrupt is only found, and rebuilt, by {@link #load(String)}, as that defines it.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class ArtifactCache {
+    public static final long DEFAULT_MAX_SIZE = 256L << 20; // 256 MiB
+
+    private static final String PROGRAM_EXTENSION = ".program",
+            CLASS_EXTENSION = ".class",
+            TEMPORARY_EXTENSION = ".tmp";
+    private static final Duration STALE_TEMPORARY_AGE = Duration.ofMinutes(10);
+    private static final int CLASS_MAGIC = 0xCAFEBABE,
+            CLASS_HEADER_LENGTH = 10; // magic, versions and constant pool count
+
+    private static volatile String defaultToolchainVersion; // derived when first needed; racing threads derive the same one
+
+    @Getter
+    private final Path directory;
+    @Getter
+    private final long maxSize;
+    @Getter
+    private final String toolchainVersion;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Opens a cache directory with the default maximum size and the toolchain version of the loaded modules, creating
+     * it if it does not exist.
+     *
+     * @param directory The cache directory, which may be shared between processes.
+     * @throws IOException If the directory cannot be created or read.
+     * @throws IllegalStateException If the class files of the modules cannot be found.
+     * @see #defaultToolchainVersion()
+     */
+    public ArtifactCache(@NotNull Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_SIZE, defaultToolchainVersion());
+    }
+
+    /**
+     * Opens a cache directory, creating it if it does not exist.
+     *
+     * @param directory The cache directory, which may be shared between processes.
+     * @param maxSize The size in bytes the directory may grow to before entries are evicted.
+     * @param toolchainVersion The version of the parser and transpiler, which should change whenever their output does.
+     * @throws IOException If the directory cannot be created or read.
+     */
+    public ArtifactCache(@NotNull Path directory, long maxSize, @NotNull String toolchainVersion) throws IOException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maxSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+        this.toolchainVersion = toolchainVersion;
+        this.size.set(this.entries().stream().mapToLong(Entry::size).sum());
+    }
+
+    /**
+     * Gets the toolchain version derived from every class file of the AST, Analysis, Parser and Transpiler modules.
+     * It is only derived the first time it is needed, so that a cache given its own version never reads the modules.
+     *
+     * @return The default toolchain version.
+     * @throws IOException If the class files of the modules cannot be read.
+     * @throws IllegalStateException If the class files of the modules cannot be found.
+     */
+    public static @NotNull String defaultToolchainVersion() throws IOException {
+        String version = defaultToolchainVersion;
+        if (version == null) {
+            version = "%s+binary.%s".formatted(
+                    hashModules(Token.class, ControlFlowGraph.class, Parser.class, Transpiler.class),
+                    BINARY_PROGRAM_VERSION
+            );
+            defaultToolchainVersion = version;
+        }
+        return version;
+    }
+
+    /**
+     * Parses the given source, or loads the program parsed from it previously.
+     *
+     * @param source The source code to parse.
+     * @return A list of tokens representing the parsed source code.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     */
+    public @NotNull List<Token> parse(@NotNull String source) throws ParserInvalidLineException {
+        Path path = this.pathOf("program", source, PROGRAM_EXTENSION);
+        List<Token> tokens = this.read(path);
+        if (tokens == null) {
+            tokens = Parser.parse(source);
+            this.write(path, BinaryProgram.encode(tokens));
+        }
+        return tokens;
+    }
+
+    /**
+     * Transpiles the given source into class file bytes, or loads the bytes transpiled from it previously.
+     * A hit skips both parsing and transpiling. Only the header of cached bytes is checked, so unlike
+     * {@link #load(String)}, the bytes of a corrupt entry which still starts like a class file may be returned.
+     *
+     * @param source The source code to transpile.
+     * @return The class file bytes.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     */
+    public byte @NotNull [] transpile(@NotNull String source) throws ParserInvalidLineException {
+        Path path = this.pathOf("class", source, CLASS_EXTENSION);
+        byte[] bytes = this.readBytes(path);
+        return bytes != null ? bytes : this.rebuild(path, source);
+    }
+
+    /**
+     * Transpiles the given source and defines it within the current JVM, loading the transpiled class from the cache
+     * if it has been transpiled previously.
+     *
+     * @param source The source code to transpile.
+     * @return The loaded program.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     */
+    public @NotNull TranspiledProgram load(@NotNull String source) throws ParserInvalidLineException {
+        Path path = this.pathOf("class", source, CLASS_EXTENSION);
+        byte[] bytes = this.readBytes(path);
+        if (bytes != null) {
+            try {
+                return TranspiledProgram.define(bytes);
+            } catch (LinkageError | IllegalStateException e) { // corrupt, despite starting like a class file
+                this.delete(path);
+            }
+        }
+        return TranspiledProgram.define(this.rebuild(path, source));
+    }
+
+    /**
+     * Gets the total size of the entries in the cache, as last seen by this process.
+     *
+     * @return The size in bytes.
+     */
+    public long size() {
+        return this.size.get();
+    }
+
+    //region Entries
+    private @Nullable List<Token> read(Path path) {
+        try {
+            List<Token> tokens = BinaryProgram.map(path).toTokens();
+            touch(path);
+            return tokens;
+        } catch (IOException | RuntimeException e) { // missing, or corrupt and about to be replaced
+            return null;
+        }
+    }
+
+    private byte @Nullable [] readBytes(Path path) {
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            if (bytes.length < CLASS_HEADER_LENGTH || ByteBuffer.wrap(bytes).getInt() != CLASS_MAGIC) {
+                return null; // corrupt and about to be replaced
+            }
+            touch(path);
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] rebuild(Path path, String source) throws ParserInvalidLineException {
+        byte[] bytes = new Transpiler(this.parse(source)).toBytes();
+        this.write(path, ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    private void write(Path path, ByteBuffer buffer) {
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(this.directory, path.getFileName().toString(), TEMPORARY_EXTENSION);
+            long length = buffer.remaining();
+            try (var channel = Files.newByteChannel(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            long replaced = sizeOf(path); // a corrupt entry, or one written by another process
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            if (this.size.addAndGet(length - replaced) > this.maxSize) {
+                this.evict();
+            }
+        } catch (IOException e) {
+            // Not cached, so it will be built again next time
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is within three quarters of its maximum size, so that
+     * eviction is not repeated on every write. The directory is rescanned, as it may be shared with other processes.
+     */
+    private synchronized void evict() throws IOException {
+        List<Entry> entries = this.entries();
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+
+        long size = entries.stream().mapToLong(Entry::size).sum(),
+                target = this.maxSize - this.maxSize / 4;
+        for (int i = 0; i < entries.size() && size > target; i++) {
+            try {
+                Files.deleteIfExists(entries.get(i).path());
+                size -= entries.get(i).size();
+            } catch (IOException ignored) { // in use, so left for a later eviction
+            }
+        }
+        this.size.set(size);
+    }
+
+    /**
+     * Lists the entries in the directory, deleting any temporary files left behind by writers which did not finish.
+     */
+    private List<Entry> entries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_AGE.toMillis();
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                boolean temporary = name.endsWith(TEMPORARY_EXTENSION);
+                if (!temporary && !name.endsWith(PROGRAM_EXTENSION) && !name.endsWith(CLASS_EXTENSION)) {
+                    continue;
+                }
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (!temporary) {
+                        entries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+                    } else if (attributes.lastModifiedTime().toMillis() < staleBefore) { // recent ones may still be being written
+                        Files.deleteIfExists(path);
+                    }
+                } catch (NoSuchFileException ignored) { // evicted or moved into place by another process
+                }
+            }
+        }
+        return entries;
+    }
+
+    private Path pathOf(String kind, String source, String extension) {
+        MessageDigest digest = sha256();
+        digest.update(this.toolchainVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(kind.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source.getBytes(StandardCharsets.UTF_8));
+        return this.directory.resolve(HexFormat.of().formatHex(digest.digest()) + extension);
+    }
+
+    private void delete(Path path) {
+        long size = sizeOf(path);
+        try {
+            if (Files.deleteIfExists(path)) {
+                this.size.addAndGet(-size);
+            }
+        } catch (IOException ignored) { // replaced when it is rebuilt anyway
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis())); // marks the entry as recently used
+        } catch (IOException ignored) { // evicted since it was read
+        }
+    }
+
+    /**
+     * Hashes every class file of the modules which the given classes belong to, whether each is a jar or a directory.
+     */
+    private static String hashModules(Class<?>... classes) throws IOException {
+        // The jars carry no version, and one would not change with every build anyway, whilst the timestamps of their
+        // entries change even when the classes do not, so only the names and contents of the classes are hashed
+        Set<Path> locations = new LinkedHashSet<>();
+        for (Class<?> type : classes) {
+            locations.add(locationOf(type));
+        }
+
+        MessageDigest digest = sha256();
+        for (Path location : locations) {
+            try {
+                if (Files.isDirectory(location)) {
+                    try (Stream<Path> paths = Files.walk(location)) {
+                        for (Path path : paths.filter(path -> path.toString().endsWith(CLASS_EXTENSION)).sorted().toList()) {
+                            digest.update(location.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+                            digest.update(Files.readAllBytes(path));
+                        }
+                    }
+                } else {
+                    try (JarFile jar = new JarFile(location.toFile())) {
+                        List<JarEntry> entries = jar.stream()
+                                .filter(entry -> entry.getName().endsWith(CLASS_EXTENSION))
+                                .sorted(Comparator.comparing(JarEntry::getName))
+                                .toList();
+                        for (JarEntry entry : entries) {
+                            digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                            try (InputStream stream = jar.getInputStream(entry)) {
+                                digest.update(stream.readAllBytes());
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IOException("Failed to read class files: " + location, e);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+
+    private static Path locationOf(Class<?> type) {
+        CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IllegalStateException("Class location not found: " + type.getName());
+        }
+        try {
+            return Path.of(codeSource.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Class location not found: " + type.getName(), e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+    //endregion
+
+    private record Entry(Path path, long size, FileTime lastUsed) {
+    }
+}
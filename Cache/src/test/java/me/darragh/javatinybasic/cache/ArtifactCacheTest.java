@@ -0,0 +1,91 @@
+package me.darragh.javatinybasic.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static me.darragh.javatinybasic.ast.Serials.BINARY_PROGRAM_VERSION;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the on-disk artifact cache, which must rebuild any entry it cannot use and keep track of its own size.
+ */
+class ArtifactCacheTest {
+    private static final String SOURCE = """
+            10 LET A = 5
+            20 PRINT A
+            30 END
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void classEntryWithoutTheMagicNumberIsRebuilt() throws Exception {
+        ArtifactCache cache = new ArtifactCache(this.directory);
+        byte[] expected = cache.transpile(SOURCE);
+
+        Files.write(this.classEntry(), new byte[] { 1, 2, 3 });
+        assertArrayEquals(expected, cache.transpile(SOURCE));
+        assertArrayEquals(expected, Files.readAllBytes(this.classEntry()));
+    }
+
+    @Test
+    void truncatedClassEntryIsRebuiltWhenLoaded() throws Exception {
+        ArtifactCache cache = new ArtifactCache(this.directory);
+        byte[] expected = cache.transpile(SOURCE);
+
+        Files.write(this.classEntry(), Arrays.copyOf(expected, 16));
+        assertNotNull(cache.load(SOURCE));
+        assertArrayEquals(expected, Files.readAllBytes(this.classEntry()));
+    }
+
+    @Test
+    void replacedEntryIsNotCountedTwice() throws Exception {
+        new ArtifactCache(this.directory).transpile(SOURCE);
+        Files.write(this.classEntry(), new byte[] { 1, 2, 3 });
+
+        ArtifactCache cache = new ArtifactCache(this.directory);
+        cache.transpile(SOURCE);
+        assertEquals(this.directorySize(), cache.size());
+    }
+
+    @Test
+    void staleTemporaryFilesAreDeletedOnOpen() throws Exception {
+        Path stale = Files.write(this.directory.resolve("stale.class.tmp"), new byte[16]),
+                fresh = Files.write(this.directory.resolve("fresh.class.tmp"), new byte[16]);
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+
+        new ArtifactCache(this.directory);
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(fresh)); // may still be being written by another process
+    }
+
+    @Test
+    void toolchainVersionIsOnlyDerivedByDefault() throws Exception {
+        assertEquals("custom", new ArtifactCache(this.directory, ArtifactCache.DEFAULT_MAX_SIZE, "custom").getToolchainVersion());
+
+        String version = ArtifactCache.defaultToolchainVersion();
+        assertTrue(version.endsWith("+binary." + BINARY_PROGRAM_VERSION), version);
+        assertEquals(version, new ArtifactCache(this.directory).getToolchainVersion());
+    }
+
+    private long directorySize() throws Exception {
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            return paths.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private Path classEntry() throws Exception {
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            return paths.filter(path -> path.toString().endsWith(".class")).findFirst().orElseThrow();
+        }
+    }
+}
@@ -20,4 +20,5 @@ dependencies {
     implementation(project(":Interpreter"))
     implementation(project(":Parser"))
     implementation(project(":Transpiler"))
+    implementation(project(":VM"))
 }
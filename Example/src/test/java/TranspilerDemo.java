@@ -70,5 +70,6 @@ public class TranspilerDemo {
             """);
         Transpiler transpiler = new Transpiler(tokens);
         transpiler.toFile(Paths.get("example.jar"));
+        transpiler.load().run(); // or run it in-memory, without writing a JAR
     }
 }
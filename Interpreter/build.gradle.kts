@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("java-test-fixtures")
 }
 
 // Toolchains:
@@ -24,8 +25,26 @@ val annotationImplementation: Configuration by configurations.creating {
 dependencies {
     // Project dependencies:
     implementation(project(":AST"))
+    implementation(project(":Analysis"))
+    implementation(project(":Optimizer"))
+    implementation(project(":Parser"))
+    implementation(project(":Transpiler"))
 
     // Annotations:
     annotationImplementation("org.projectlombok:lombok:1.18.36")
     implementation("org.jetbrains:annotations:26.0.2")
+
+    // Testing:
+    testFixturesImplementation(project(":AST"))
+    testFixturesImplementation(project(":Parser"))
+    testFixturesImplementation(project(":Transpiler"))
+    testFixturesImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testFixturesImplementation("org.junit.jupiter:junit-jupiter-api")
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
@@ -0,0 +1,111 @@
+package me.darragh.javatinybasic.interpreter;
+
+import lombok.Getter;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.parser.Parser;
+import me.darragh.javatinybasic.parser.ParserInvalidLineException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * An interactive editing session, in which a program is built up and changed one numbered line at a time.
+ * <br/>
+ * Each edit parses and links only the edited line, then relinks the session's {@link Interpreter} in place. The other
+ * lines are not parsed or linked again, but the per-line tables of the program are still copied and rescanned, so an
+ * edit takes time proportional to the size of the program, only without the cost of parsing and linking it. Variables,
+ * pending RETURNs and unaffected FOR loops survive edits, so a suspended program can be resumed with
+ * {@link Interpreter#run(long)} after it is changed.
+ * <br/>
+ * Lines are stored without checking their targets, so a GOTO, GOSUB or IF statement may target a line which is
+ * entered later, or which has been removed. Such a target is only reported if the jump is executed.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+@Getter
+public final class EditingSession {
+    private final Interpreter interpreter;
+
+    public EditingSession(@NotNull InterpreterInputEvent inputEvent, @NotNull InterpreterOutputEvent outputEvent,
+                          @NotNull InterpreterFinishedEvent finishedEvent) {
+        this(List.of(), inputEvent, outputEvent, finishedEvent);
+    }
+
+    public EditingSession(@NotNull List<Token> tokens, @NotNull InterpreterInputEvent inputEvent,
+                          @NotNull InterpreterOutputEvent outputEvent, @NotNull InterpreterFinishedEvent finishedEvent) {
+        this.interpreter = new Interpreter(tokens, inputEvent, outputEvent, finishedEvent);
+    }
+
+    /**
+     * Enters a line as typed by the user: a line with a statement inserts or replaces the line with its number, whilst
+     * a line number on its own, or with a REM statement, removes it. Blank lines are ignored.
+     *
+     * @param line The line to enter.
+     * @throws ParserInvalidLineException If the line is invalid or cannot be parsed, including a line number below 1.
+     */
+    public void enter(@NotNull String line) throws ParserInvalidLineException {
+        line = line.strip();
+        if (line.isEmpty()) {
+            return;
+        }
+
+        int digits = 0;
+        while (digits < line.length() && line.charAt(digits) >= '0' && line.charAt(digits) <= '9') {
+            digits++;
+        }
+
+        Token token = digits < line.length() ? Parser.parseLine(line) : null;
+        if (token != null) {
+            this.put(token);
+            return;
+        }
+
+        // A line number on its own or a REM statement, neither of which is kept
+        int lineNumber;
+        try {
+            lineNumber = Integer.parseInt(line, 0, digits, 10);
+        } catch (NumberFormatException e) {
+            throw ParserInvalidLineException.create("Line number must be a positive integer: ", line, e);
+        }
+        if (lineNumber < 1) {
+            throw ParserInvalidLineException.create("Line number must be a positive integer: ", line);
+        }
+        this.remove(lineNumber);
+    }
+
+    /**
+     * Inserts the given line, or replaces the line with the same line number.
+     *
+     * @param token The line to insert or replace.
+     */
+    public void put(@NotNull Token token) {
+        this.interpreter.relink(this.getProgram().withLine(token));
+    }
+
+    /**
+     * Removes the given line.
+     *
+     * @param lineNumber The line number of the line to remove.
+     * @return Whether the line existed.
+     */
+    public boolean remove(int lineNumber) {
+        Program program = this.getProgram();
+        Program edited = program.withoutLine(lineNumber);
+        if (edited == program) {
+            return false;
+        }
+        this.interpreter.relink(edited);
+        return true;
+    }
+
+    /**
+     * Gets the current version of the program being edited.
+     * Each edit produces a new program, so the returned program is unaffected by later edits.
+     *
+     * @return The program.
+     */
+    public @NotNull Program getProgram() {
+        return this.interpreter.getProgram();
+    }
+}
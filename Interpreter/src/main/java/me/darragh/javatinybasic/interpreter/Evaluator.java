@@ -0,0 +1,23 @@
+package me.darragh.javatinybasic.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A compiled form of a {@link me.darragh.javatinybasic.ast.expression.ValueExpression}.
+ * <br/>
+ * Evaluators are built once by the {@link EvaluatorCompiler} when a {@link Program} is linked,
+ * so evaluating an expression is a direct call rather than a walk of the AST.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+@FunctionalInterface
+public interface Evaluator {
+    /**
+     * Evaluates the expression against the given variables.
+     *
+     * @param variables The variables of the running program.
+     * @return The value of the expression.
+     */
+    int evaluate(@NotNull Variables variables);
+}
@@ -0,0 +1,152 @@
+package me.darragh.javatinybasic.interpreter;
+
+import lombok.experimental.UtilityClass;
+import me.darragh.javatinybasic.ast.expression.LiteralValueExpression;
+import me.darragh.javatinybasic.ast.expression.MathematicalExpression;
+import me.darragh.javatinybasic.ast.expression.ValueExpression;
+import me.darragh.javatinybasic.ast.expression.VariableValueExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Compiles {@link ValueExpression}s into trees of specialised {@link Evaluator} nodes.
+ * <br/>
+ * Literals and variable reads become dedicated nodes, and arithmetic becomes a left-deep tree of binary nodes
+ * (mirroring the left-to-right evaluation of {@link MathematicalExpression}). Where one operand is a literal,
+ * it is fused into the node to avoid a call.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+@UtilityClass
+public class EvaluatorCompiler {
+    /**
+     * Compiles the given expression.
+     *
+     * @param expression The expression to compile.
+     * @param slotResolver Resolves variable names to slots.
+     * @return The compiled evaluator.
+     */
+    public static @NotNull Evaluator compile(@NotNull ValueExpression expression, @NotNull ToIntFunction<String> slotResolver) {
+        return switch (expression) {
+            case VariableValueExpression(String variableName) -> new Slot(slotResolver.applyAsInt(variableName));
+            case LiteralValueExpression(int value) -> new Literal(value);
+            case MathematicalExpression mathematicalExpression -> compileMathematical(mathematicalExpression, slotResolver);
+        };
+    }
+
+    private static Evaluator compileMathematical(MathematicalExpression expression, ToIntFunction<String> slotResolver) {
+        ValueExpression[] values = expression.valueExpressions();
+        LArithmeticOperator[] operators = expression.operators();
+
+        Evaluator result = compile(values[0], slotResolver);
+        for (int i = 0; i < operators.length; i++) {
+            result = compileBinary(operators[i], result, compile(values[i + 1], slotResolver));
+        }
+        return result;
+    }
+
+    private static Evaluator compileBinary(LArithmeticOperator operator, Evaluator left, Evaluator right) {
+        // Fuse literal operands into the node, swapping them to the right where the operator is commutative
+        if (left instanceof Literal literal && !(right instanceof Literal)
+                && (operator == LArithmeticOperator.ADD || operator == LArithmeticOperator.MULTIPLY)) {
+            left = right;
+            right = literal;
+        }
+
+        if (right instanceof Literal(int value)) {
+            return switch (operator) {
+                case ADD -> new AddLiteral(left, value);
+                case SUBTRACT -> new SubtractLiteral(left, value);
+                case MULTIPLY -> new MultiplyLiteral(left, value);
+                case DIVIDE -> value != 0 ? new DivideLiteral(left, value) : new Divide(left, right); // fails when evaluated
+            };
+        }
+
+        return switch (operator) {
+            case ADD -> new Add(left, right);
+            case SUBTRACT -> new Subtract(left, right);
+            case MULTIPLY -> new Multiply(left, right);
+            case DIVIDE -> new Divide(left, right);
+        };
+    }
+
+    //region Nodes
+    record Literal(int value) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.value;
+        }
+    }
+
+    record Slot(int slot) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return variables.get(this.slot);
+        }
+    }
+
+    record Add(Evaluator left, Evaluator right) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.left.evaluate(variables) + this.right.evaluate(variables);
+        }
+    }
+
+    record Subtract(Evaluator left, Evaluator right) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.left.evaluate(variables) - this.right.evaluate(variables);
+        }
+    }
+
+    record Multiply(Evaluator left, Evaluator right) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.left.evaluate(variables) * this.right.evaluate(variables);
+        }
+    }
+
+    record Divide(Evaluator left, Evaluator right) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            int dividend = this.left.evaluate(variables),
+                    divisor = this.right.evaluate(variables);
+            if (divisor == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            return dividend / divisor;
+        }
+    }
+
+    record AddLiteral(Evaluator left, int right) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.left.evaluate(variables) + this.right;
+        }
+    }
+
+    record SubtractLiteral(Evaluator left, int right) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.left.evaluate(variables) - this.right;
+        }
+    }
+
+    record MultiplyLiteral(Evaluator left, int right) implements Evaluator {
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.left.evaluate(variables) * this.right;
+        }
+    }
+
+    record DivideLiteral(Evaluator left, int right) implements Evaluator { // right is never zero
+        @Override
+        public int evaluate(@NotNull Variables variables) {
+            return this.left.evaluate(variables) / this.right;
+        }
+    }
+    //endregion
+}
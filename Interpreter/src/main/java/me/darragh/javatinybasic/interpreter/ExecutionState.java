@@ -0,0 +1,18 @@
+package me.darragh.javatinybasic.interpreter;
+
+/**
+ * The state of an {@link Interpreter} after running for a limited number of steps.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public enum ExecutionState {
+    /**
+     * The step budget ran out before the program ended; running again resumes where it left off.
+     */
+    SUSPENDED,
+    /**
+     * The program has ended.
+     */
+    FINISHED
+}
@@ -1,61 +1,105 @@
 package me.darragh.javatinybasic.interpreter;
 
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import me.darragh.javatinybasic.analysis.ControlFlowGraph;
 import me.darragh.javatinybasic.ast.Token;
 import me.darragh.javatinybasic.ast.expression.*;
-import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
 import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
-import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
 import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
-import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
 import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
+import me.darragh.javatinybasic.interpreter.io.OutputSink;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Interpreter for the Java Tiny BASIC language.
+ * <br/>
+ * An interpreter holds the state of a single execution of a {@link Program}. The program itself is immutable,
+ * so it may be linked once and shared between any number of interpreters, including across threads. An edited copy of
+ * the program can be swapped in with {@link #relink(Program)}, keeping the state of the execution.
+ * <br/>
+ * With {@link #enableBlockExecution()}, whole basic blocks of the program's {@link ControlFlowGraph} are executed at a
+ * time, so only the line which ends each block is tracked.
+ * <br/>
+ * A FOR evaluates its start, end and step values once, when the loop is entered, and pushes a frame holding the end
+ * and step onto a primitive stack of active loops. A NEXT continues the active loop over its variable, which is almost
+ * always the innermost, so it only adds the step, compares against the end and jumps back to the body. Executing a FOR
+ * whose variable already has an active loop restarts it, and a NEXT retires any loops left open inside its own.
+ * <br/>
+ * GOSUB pushes the instruction index to return to onto a primitive stack, which holds at most
+ * {@link #setMaxReturnDepth(int) a maximum number} of pending RETURNs. A GOSUB followed by a RETURN is executed as a
+ * jump, as the RETURN would only go straight back to whatever called it, so tail-recursive subroutines run in
+ * constant space.
+ * <br/>
+ * Both stacks are private to the interpreter; only their depths are exposed, with {@link #getLoopDepth()} and
+ * {@link #getReturnDepth()}.
  *
  * @author darraghd493
  * @since 1.0.0
  */
-@Data
 public class Interpreter {
-    private static int INVALID_LINE_NUMBER = -1;
-
-    //region Cache
-    private final Map<Integer, Token> tokens;
-    private final List<Integer> lineNumbers;
-    //endregion
-
-    private final Map<String, Integer> variables;
-    private final Map<String, ForData> forLoopPointers;
-    private final Deque<Integer> returnStack = new ArrayDeque<>();
-    private int currentLineNumber;
-    private int temporaryLineNumber; // for GOSUB
+    /**
+     * The default number of GOSUBs which may be waiting for a RETURN at once.
+     */
+    public static final int DEFAULT_MAX_RETURN_DEPTH = 65536;
+
+    private static final int INITIAL_RETURN_STACK_SIZE = 16;
+    private static final int FRAME_SIZE = 4, // ints per loop frame
+            FRAME_HEADER = 0,
+            FRAME_SLOT = 1,
+            FRAME_END = 2,
+            FRAME_STEP = 3;
+
+    @Getter
+    private Program program; // only replaced by relink
+
+    @Getter
+    private Variables variables;
+    private int[] loopFrames; // the active FOR loops, innermost last; a variable has at most one
+    @Getter
+    private int loopDepth;
+    private int[] returnStack = new int[INITIAL_RETURN_STACK_SIZE]; // the indices to return to, innermost last
+    private int[] returnLines = new int[INITIAL_RETURN_STACK_SIZE]; // the line numbers of their GOSUBs, for relink
+    @Getter
+    private int returnDepth;
+    @Getter
+    private int maxReturnDepth = DEFAULT_MAX_RETURN_DEPTH; // validated by its setter
+    private int currentIndex;
+    private @Nullable TieredCompiler tieredCompiler;
+    private long regionBudget = Long.MAX_VALUE; // the iterations compiled loops may take, within run(long)
+    private long regionSteps; // the iterations compiled loops took during the last step
+    private final int[] regionBudgetCell = new int[1];
+    @Getter
+    private boolean blockExecution;
+    private @Nullable ControlFlowGraph controlFlowGraph; // set when executing whole basic blocks, whilst every target resolves
+    @Getter
+    @Setter
+    private @Nullable OutputSink outputSink; // replaces the output event when set
 
     //region Constructor
     public Interpreter(@NotNull List<Token> tokens, @NotNull InterpreterInputEvent inputEvent,
                        @NotNull InterpreterOutputEvent outputEvent, @NotNull InterpreterFinishedEvent finishedEvent) {
-        // Cache the tokens and line numbers for quick access
-        this.tokens = tokens.stream()
-                .sorted(Comparator.comparing(Token::lineNumber))
-                .collect(Collectors.toMap(
-                        Token::lineNumber,
-                        token -> token,
-                        (a, b) -> a,
-                        LinkedHashMap::new));
-        this.lineNumbers = new ArrayList<>(this.tokens.keySet());
-
-        // Prepare the variables map
-        this.variables = new HashMap<>();
-        this.forLoopPointers = new HashMap<>();
+        // Link the tokens once, resolving line numbers to instruction indices
+        this(Program.link(tokens), inputEvent, outputEvent, finishedEvent);
+    }
+
+    public Interpreter(@NotNull Program program, @NotNull InterpreterInputEvent inputEvent,
+                       @NotNull InterpreterOutputEvent outputEvent, @NotNull InterpreterFinishedEvent finishedEvent) {
+        this.program = program;
+
+        // Prepare the variable slots, which are private to this interpreter
+        this.variables = this.program.createVariables();
+        this.loopFrames = new int[this.program.getVariableCount() * FRAME_SIZE];
 
         // Set up the event handlers
         this.inputEvent = inputEvent;
         this.outputEvent = outputEvent;
         this.finishedEvent = finishedEvent;
+
+        this.wipe();
     }
     //endregion
 
@@ -69,40 +113,190 @@ public class Interpreter {
     public void run() {
         this.wipe();
 
-        while (this.step())
-            ;
+        try {
+            if (this.controlFlowGraph != null) {
+                while (this.stepBlock())
+                    ;
+            } else {
+                while (this.step())
+                    ;
+            }
+        } catch (RuntimeException exception) {
+            this.flushAfter(exception);
+            throw exception;
+        }
 
-        this.finishedEvent.onFinished();
+        this.finish();
+    }
+
+    /**
+     * Runs the program from where it left off, for at most the given number of steps.
+     * Unlike {@link #run()}, the program is not restarted - call {@link #wipe()} first to do so.
+     * <br/>
+     * Each iteration of a loop compiled by the {@link TieredCompiler} counts as a step, and the compiled loop exits back
+     * to the interpreter once the steps run out, so even a loop which never ends is suspended in time.
+     *
+     * @param maxSteps The maximum number of statements to execute.
+     * @return {@link ExecutionState#FINISHED} if the program ended, otherwise {@link ExecutionState#SUSPENDED}.
+     */
+    public @NotNull ExecutionState run(long maxSteps) {
+        if (this.currentIndex == Program.NO_INSTRUCTION) {
+            return ExecutionState.FINISHED;
+        }
+
+        try {
+            for (long i = 0; i < maxSteps; ) {
+                // Whole blocks are only executed whilst they fit within the remaining steps
+                int length = this.controlFlowGraph != null ? this.remainingBlockLength() : 1;
+                if (length > maxSteps - i) {
+                    length = 1;
+                }
+
+                // Any compiled loop entered along the way may take the rest
+                this.regionBudget = maxSteps - i - length;
+                this.regionSteps = 0;
+                boolean running = length > 1 ? this.stepBlock() : this.step();
+                if (!running) {
+                    this.finish();
+                    return ExecutionState.FINISHED;
+                }
+                i += length + this.regionSteps;
+            }
+            return ExecutionState.SUSPENDED;
+        } catch (RuntimeException exception) {
+            this.flushAfter(exception);
+            throw exception;
+        } finally {
+            this.regionBudget = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Executes the rest of the current basic block of the program, i.e. every line up to and including the next one
+     * which may jump. Lines before the last are executed one after another, without tracking the current line, so this
+     * is faster than stepping through them one at a time.
+     * <br/>
+     * Requires {@link #enableBlockExecution()}, otherwise this steps a single line.
+     *
+     * @return Whether the program is still running.
+     */
+    public boolean stepBlock() {
+        int index = this.currentIndex;
+        ControlFlowGraph controlFlowGraph = this.controlFlowGraph;
+        if (index == Program.NO_INSTRUCTION || controlFlowGraph == null) {
+            return this.step();
+        }
+
+        int last = controlFlowGraph.block(controlFlowGraph.blockIndexOf(index)).last();
+        try {
+            for (; index < last; index++) {
+                this.execute(index, this.program.instruction(index), this.program.evaluators(index));
+            }
+        } catch (RuntimeException e) {
+            this.currentIndex = index; // the failing line, as when stepping
+            throw e;
+        }
+        this.currentIndex = last;
+        return this.step();
     }
 
     public boolean step() {
-        int lineNumber = this.temporaryLineNumber != INVALID_LINE_NUMBER ? this.getNextLineNumber(this.temporaryLineNumber) : this.currentLineNumber;
-        Token token = this.tokens.get(lineNumber);
-        if (token == null) {
-            throw new IllegalStateException("No token found for line number: " + lineNumber);
+        int index = this.currentIndex;
+        if (index == Program.NO_INSTRUCTION) {
+            return false;
         }
-        this.temporaryLineNumber = INVALID_LINE_NUMBER; // Reset temporary line number after use
+        Token token = this.program.instruction(index);
+        Evaluator[] evaluators = this.program.evaluators(index);
 
         switch (token.statement()) {
-            case LET -> {
-                LETExpression letExpression = (LETExpression) token.expression();
-                assert letExpression != null;
+            case LET, PRINT, INPUT, FOR -> this.execute(index, token, evaluators);
+            case IF -> {
+                IFExpression ifExpression = (IFExpression) token.expression();
+                assert ifExpression != null;
+
+                int valueA = evaluators[0].evaluate(this.variables),
+                        valueB = evaluators[1].evaluate(this.variables);
+
+                if (this.testRelationalOperator(ifExpression.relationalOperator(), valueA, valueB)) {
+                    return this.jump(index, this.program.target(index));
+                }
+            }
+            case NEXT -> {
+                int slot = this.program.variableSlot(index),
+                        frame = this.findLoopFrame(slot);
+                if (frame == Program.NO_INSTRUCTION) {
+                    VariableNameExpression variableExpression = (VariableNameExpression) token.expression();
+                    assert variableExpression != null;
+                    throw new IllegalStateException("NEXT without matching FOR for variable: " + variableExpression.variableName());
+                }
+
+                int[] loopFrames = this.loopFrames;
+                int step = loopFrames[frame + FRAME_STEP],
+                        value = this.variables.get(slot) + step;
+                this.variables.set(slot, value);
+
+                if (step > 0 ? value > loopFrames[frame + FRAME_END] : value < loopFrames[frame + FRAME_END]) {
+                    this.loopDepth = frame / FRAME_SIZE; // retire the loop, along with any left open inside it
+                } else {
+                    this.loopDepth = frame / FRAME_SIZE + 1;
+                    return this.loopBack(index, loopFrames[frame + FRAME_HEADER]);
+                }
+            }
+            case GOTO -> {
+                return this.jump(index, this.targetOf(index, evaluators));
+            }
+            case GOSUB -> {
+                int target = this.targetOf(index, evaluators);
+                if (!this.program.isTailCall(index)) {
+                    this.pushReturn(index);
+                }
+                this.currentIndex = target;
+                return true;
+            }
+            case RETURN -> {
+                if (this.returnDepth == 0) {
+                    throw new IllegalStateException("RETURN without GOSUB");
+                }
+                this.currentIndex = this.returnStack[--this.returnDepth];
+                return this.currentIndex != Program.NO_INSTRUCTION;
+            }
+            case END -> {
+                this.currentIndex = Program.NO_INSTRUCTION;
+                return false;
+            }
+        }
 
-                String variableName = letExpression.getVariableName();
+        // Progress to the next line
+        this.currentIndex = this.program.successor(index);
+        return this.currentIndex != Program.NO_INSTRUCTION;
+    }
 
-                int value = this.evaluateValueExpression(letExpression.getValue());
-                this.variables.put(variableName, value);
+    /**
+     * Executes a statement which never jumps, i.e. one which may appear part way through a basic block.
+     */
+    private void execute(int index, Token token, Evaluator[] evaluators) {
+        switch (token.statement()) {
+            case LET -> {
+                int value = evaluators[0].evaluate(this.variables);
+                this.variables.set(this.program.variableSlot(index), value);
             }
             case PRINT -> {
+                if (this.outputSink != null) {
+                    this.print(this.outputSink, evaluators, this.program.literals(index));
+                    return;
+                }
+
                 PRINTExpression printExpression = (PRINTExpression) token.expression();
                 assert printExpression != null;
 
+                Expression[] values = printExpression.values();
                 List<String> objects = new ArrayList<>();
-                for (Expression expression : printExpression.getValues()) {
-                    if (expression instanceof ValueExpression valueExpression) {
-                        objects.add(String.valueOf(this.evaluateValueExpression(valueExpression)));
-                    } else if (expression instanceof StringValueExpression stringValueExpression) {
-                        objects.add(stringValueExpression.getValue());
+                for (int i = 0; i < values.length; i++) {
+                    Expression expression = values[i];
+                    if (evaluators[i] != null) {
+                        objects.add(String.valueOf(evaluators[i].evaluate(this.variables)));
+                    } else if (expression instanceof StringValueExpression(String value)) {
+                        objects.add(value);
                     } else {
                         throw new IllegalStateException("Unsupported expression type: " + expression);
                     }
@@ -112,171 +306,282 @@ public class Interpreter {
                 this.outputEvent.onOutput(output);
             }
             case INPUT -> {
-                VariableNameExpression variableExpression = (VariableNameExpression) token.expression();
-                assert variableExpression != null;
-                this.variables.put(
-                        variableExpression.getVariableName(),
+                this.variables.set(
+                        this.program.variableSlot(index),
                         this.inputEvent.getInput()
                 );
             }
-            case IF -> {
-                IFExpression ifExpression = (IFExpression) token.expression();
-                assert ifExpression != null;
-
-                int valueA = evaluateValueExpression(ifExpression.getValueA()),
-                        valueB = evaluateValueExpression(ifExpression.getValueB());
+            case FOR -> {
+                // The bounds are evaluated once, before the variable is set
+                int slot = this.program.variableSlot(index),
+                        startValue = evaluators[0].evaluate(this.variables),
+                        endValue = evaluators[1].evaluate(this.variables),
+                        stepValue = evaluators[2].evaluate(this.variables);
+
+                if (stepValue == 0) {
+                    throw new IllegalStateException("Step value cannot be zero in FOR loop: " + token.expression());
+                }
 
-                if (this.testRelationalOperator(ifExpression.getRelationalOperator(), valueA, valueB)) {
-                    this.currentLineNumber = ifExpression.getLineNumberToGoto();
-                    return true;
+                // An active loop over the same variable is restarted, retiring any loops left open inside it
+                int frame = this.findLoopFrame(slot);
+                if (frame == Program.NO_INSTRUCTION) {
+                    frame = this.loopDepth * FRAME_SIZE;
                 }
+                this.pushLoopFrame(frame, index, slot, endValue, stepValue);
+                this.variables.set(slot, startValue);
             }
-            case FOR -> {
-                // TODO: Verify
-                FORExpression forExpression = (FORExpression) token.expression();
-                assert forExpression != null;
+            default -> throw new IllegalStateException("Unexpected statement in a basic block: " + token.statement());
+        }
+    }
 
-                String variableName = forExpression.getVariableName();
+    public void wipe() {
+        this.currentIndex = this.program.size() > 0 ? 0 : Program.NO_INSTRUCTION;
+        this.variables.clear();
+        this.loopDepth = 0;
+        this.returnDepth = 0;
+    }
 
-                if (!this.forLoopPointers.containsKey(variableName)) {
-                    int startValue = this.evaluateValueExpression(forExpression.getStartValue()),
-                            stepValue = this.evaluateValueExpression(forExpression.getStepValue());
+    /**
+     * Switches the interpreter to an edited version of its program, such as one produced by {@link Program#withLine(Token)},
+     * keeping the state of the execution so that it can be resumed with {@link #run(long)}.
+     * <br/>
+     * Variables are carried over by name. The next line is carried over by line number, moving on to the following line if
+     * it was removed, and a pending RETURN goes on to whichever line now follows its GOSUB. An active FOR loop is only kept if its FOR line is unchanged, along
+     * with the end and step values it was entered with, and any compiled loops are discarded.
+     * <br/>
+     * The interpreter must not be running whilst it is relinked.
+     *
+     * @param program The edited program.
+     */
+    public void relink(@NotNull Program program) {
+        Program previous = this.program;
+        Variables variables = program.createVariables();
+        for (int slot = 0; slot < previous.getVariableCount(); slot++) {
+            int newSlot = program.findSlot(previous.variableName(slot));
+            if (newSlot != Program.NO_INSTRUCTION && this.variables.isDefined(slot)) {
+                variables.set(newSlot, this.variables.get(slot));
+            }
+        }
 
-                    if (stepValue == 0) {
-                        throw new IllegalStateException("Step value cannot be zero in FOR loop: " + forExpression);
-                    }
+        int[] loopFrames = new int[program.getVariableCount() * FRAME_SIZE];
+        int loopDepth = 0;
+        for (int frame = 0; frame < this.loopDepth * FRAME_SIZE; frame += FRAME_SIZE) {
+            int header = this.loopFrames[frame + FRAME_HEADER],
+                    index = program.indexOf(previous.lineNumber(header));
+            if (index != Program.NO_INSTRUCTION && program.instruction(index) == previous.instruction(header)) {
+                int newFrame = loopDepth++ * FRAME_SIZE;
+                loopFrames[newFrame + FRAME_HEADER] = index;
+                loopFrames[newFrame + FRAME_SLOT] = program.variableSlot(index);
+                loopFrames[newFrame + FRAME_END] = this.loopFrames[frame + FRAME_END];
+                loopFrames[newFrame + FRAME_STEP] = this.loopFrames[frame + FRAME_STEP];
+            }
+        }
 
-                    this.variables.put(variableName, startValue);
-                    this.forLoopPointers.put(variableName, new ForData(
-                            this.currentLineNumber,
-                            forExpression.getEndValue(),
-                            forExpression.getStepValue()
-                    ));
+        for (int i = 0; i < this.returnDepth; i++) {
+            this.returnStack[i] = successorIndexOf(program, this.returnLines[i]);
+        }
 
-                    this.variables.put(variableName, startValue);
-                }
-            }
-            case NEXT -> {
-                // TODO: Verify
-                VariableNameExpression variableExpression = (VariableNameExpression) token.expression();
-                assert variableExpression != null;
+        this.currentIndex = relinkIndex(previous, program, this.currentIndex);
+        this.program = program;
+        this.variables = variables;
+        this.loopFrames = loopFrames;
+        this.loopDepth = loopDepth;
+        if (this.tieredCompiler != null) {
+            this.tieredCompiler = new TieredCompiler(program, this.tieredCompiler.getThreshold());
+        }
+        if (this.blockExecution) {
+            this.controlFlowGraph = program.hasUnresolvedTargets() ? null : program.controlFlowGraph();
+        }
+    }
 
-                String variableName = variableExpression.getVariableName();
-                if (!this.forLoopPointers.containsKey(variableName)) {
-                    throw new IllegalStateException("NEXT without matching FOR for variable: " + variableName);
-                }
+    /**
+     * Sets the number of GOSUBs which may be waiting for a RETURN at once, beyond which a GOSUB fails. GOSUBs which are
+     * executed as jumps, as they are followed by a RETURN, do not count towards it.
+     *
+     * @param maxReturnDepth The maximum depth of the return stack.
+     * @throws IllegalArgumentException If the depth is not positive.
+     */
+    public void setMaxReturnDepth(int maxReturnDepth) {
+        if (maxReturnDepth < 1) {
+            throw new IllegalArgumentException("Maximum return depth must be positive: " + maxReturnDepth);
+        }
+        this.maxReturnDepth = maxReturnDepth;
+    }
 
-                int currentValue = this.variables.get(variableName),
-                        stepValue = this.evaluateValueExpression(this.forLoopPointers.get(variableName).stepValue);
+    /**
+     * Enables tiered compilation, so loops are compiled to bytecode once they have been executed
+     * the given number of times.
+     *
+     * @param threshold The number of backward jumps to a loop header before it is compiled.
+     */
+    public void enableTieredCompilation(int threshold) {
+        this.tieredCompiler = new TieredCompiler(this.program, threshold);
+    }
 
-                currentValue += stepValue;
-                this.variables.put(variableName, currentValue);
+    /**
+     * Enables block execution, so {@link #run()} executes whole basic blocks of the program's
+     * {@link ControlFlowGraph} at a time, rather than a single line at a time. Whilst an edited program
+     * {@link Program#hasUnresolvedTargets() has unresolved targets}, it is executed a line at a time instead.
+     *
+     * @throws IllegalStateException If the program is lazy.
+     */
+    public void enableBlockExecution() {
+        this.controlFlowGraph = this.program.hasUnresolvedTargets() ? null : this.program.controlFlowGraph();
+        this.blockExecution = true;
+    }
 
-                int endValue = this.evaluateValueExpression(this.forLoopPointers.get(variableName).endValue);
+    /**
+     * Gets the line number of the instruction which will be executed next.
+     *
+     * @return The current line number, or {@link Program#NO_INSTRUCTION} if the program has finished.
+     */
+    public int getCurrentLineNumber() {
+        return this.currentIndex != Program.NO_INSTRUCTION ? this.program.lineNumber(this.currentIndex) : Program.NO_INSTRUCTION;
+    }
 
-                if ((stepValue > 0 && currentValue > endValue) || (stepValue < 0 && currentValue < endValue)) {
-                    this.forLoopPointers.remove(variableName);
-                } else {
-                    this.currentLineNumber = this.forLoopPointers.get(variableName).lineNumber;
-                    return true;
-                }
-            }
-            case GOTO -> {
-                LineNumberExpression lineNumberExpression = (LineNumberExpression) token.expression();
-                assert lineNumberExpression != null;
-                this.currentLineNumber = lineNumberExpression.getLineNumber();
-                return true;
-            }
-            case GOSUB -> {
-                LineNumberExpression lineNumberExpression = (LineNumberExpression) token.expression();
-                assert lineNumberExpression != null;
-                this.returnStack.push(this.getNextLineNumber(this.currentLineNumber));
-                this.currentLineNumber = lineNumberExpression.getLineNumber();
-                return true;
-            }
-            case RETURN -> {
-                if (returnStack.isEmpty()) {
-                    throw new IllegalStateException("RETURN without GOSUB");
-                }
-                currentLineNumber = returnStack.pop();
-                return true;
-            }
-            case END -> {
-                return false;
+    //region Helper Methods
+    private void finish() {
+        if (this.outputSink != null) {
+            this.outputSink.flush();
+        }
+        this.finishedEvent.onFinished();
+    }
+
+    private void flushAfter(RuntimeException failure) {
+        // Whatever was printed before the failure is still written out, without hiding the failure if that fails too
+        if (this.outputSink != null) {
+            try {
+                this.outputSink.flush();
+            } catch (RuntimeException exception) {
+                failure.addSuppressed(exception);
             }
         }
+    }
 
-        // Progress to the next line
-        this.currentLineNumber = this.getNextLineNumber(this.currentLineNumber);
-        return this.currentLineNumber != INVALID_LINE_NUMBER;
+    private int remainingBlockLength() {
+        assert this.controlFlowGraph != null;
+        int index = this.currentIndex;
+        return index != Program.NO_INSTRUCTION ? this.controlFlowGraph.block(this.controlFlowGraph.blockIndexOf(index)).end() - index : 1;
     }
 
-    public void wipe() {
-        this.currentLineNumber = this.lineNumbers.getFirst();
-        this.temporaryLineNumber = INVALID_LINE_NUMBER;
-        this.variables.clear();
-        this.forLoopPointers.clear();
+    private static int relinkIndex(Program previous, Program program, int index) {
+        return index != Program.NO_INSTRUCTION ? program.ceilingIndexOf(previous.lineNumber(index)) : Program.NO_INSTRUCTION;
     }
 
-    //region Helper Methods
-    private int getNextLineNumber(int lineNumber) {
-        int nextLineIndex = this.lineNumbers.indexOf(lineNumber) + 1;
-        if (nextLineIndex < this.lineNumbers.size()) {
-            return this.lineNumbers.get(nextLineIndex);
-        } else {
-            return INVALID_LINE_NUMBER;
+    private static int successorIndexOf(Program program, int lineNumber) {
+        // The first line after the given one, whether it still exists or not, so that lines inserted after it are run
+        return lineNumber != Integer.MAX_VALUE ? program.ceilingIndexOf(lineNumber + 1) : Program.NO_INSTRUCTION;
+    }
+
+    private int targetOf(int index, Evaluator[] evaluators) {
+        // Only a computed GOTO or GOSUB has an evaluator, for the line number to go to
+        return evaluators != null ? this.program.computedTarget(index, evaluators[0].evaluate(this.variables)) : this.program.target(index);
+    }
+
+    private boolean jump(int source, int target) {
+        if (target <= source && this.tieredCompiler != null) {
+            target = this.enterCompiledRegion(source, target, target);
         }
+        this.currentIndex = target;
+        return target != Program.NO_INSTRUCTION;
     }
 
-    private boolean testRelationalOperator(LRelationalOperator relationalOperator, int valueA, int valueB) {
-        return switch (relationalOperator) {
-            case EQUAL -> valueA == valueB;
-            case NOT_EQUAL -> valueA != valueB;
-            case LESS_THAN ->  valueA < valueB;
-            case LESS_THAN_OR_EQUAL ->  valueA <= valueB;
-            case GREATER_THAN ->  valueA > valueB;
-            case GREATER_THAN_OR_EQUAL ->  valueA >= valueB;
-        };
+    private boolean loopBack(int source, int header) {
+        // The FOR itself is skipped, as executing it again would restart the loop
+        int target = this.program.successor(header);
+        if (header < source && this.tieredCompiler != null) {
+            target = this.enterCompiledRegion(source, header, target);
+        }
+        this.currentIndex = target;
+        return target != Program.NO_INSTRUCTION;
     }
 
-    private int evaluateValueExpression(ValueExpression expression) {
-        if (expression.getVariableName() != null) {
-            if (this.variables.containsKey(expression.getVariableName())) {
-                return this.variables.get(expression.getVariableName());
-            } else {
-                throw new IllegalStateException("Variable not found: " + expression.getVariableName());
+    private int enterCompiledRegion(int source, int header, int target) {
+        assert this.tieredCompiler != null;
+        TieredCompiler.CompiledRegion region = this.tieredCompiler.onBackwardJump(source, header);
+        if (region == null || this.regionBudget <= 0 || !region.canEnter(this.variables)) {
+            return target;
+        }
+        if (region.loopSlot() == Program.NO_INSTRUCTION) {
+            return this.executeRegion(region, 0, 0);
+        }
+
+        // A FOR header is only skipped when looping back to it, with its loop the innermost one active
+        int frame = (this.loopDepth - 1) * FRAME_SIZE;
+        if (target == header || frame < 0 || this.loopFrames[frame + FRAME_HEADER] != header) {
+            return target;
+        }
+        return this.executeRegion(region, this.loopFrames[frame + FRAME_END], this.loopFrames[frame + FRAME_STEP]);
+    }
+
+    private int executeRegion(TieredCompiler.CompiledRegion region, int end, int step) {
+        // Each backward jump the region takes counts as a step against the budget
+        int budget = (int) Math.min(this.regionBudget, Integer.MAX_VALUE);
+        this.regionBudgetCell[0] = budget;
+        int resume = region.execute(this.variables, end, step, this.regionBudgetCell);
+        this.regionSteps += budget - this.regionBudgetCell[0];
+        this.regionBudget -= budget - this.regionBudgetCell[0];
+        return resume;
+    }
+
+    private void pushReturn(int index) {
+        int depth = this.returnDepth;
+        if (depth >= this.maxReturnDepth) {
+            throw new IllegalStateException("GOSUB on line %s exceeds the maximum return depth of %s".formatted(this.program.lineNumber(index), this.maxReturnDepth));
+        }
+        if (depth == this.returnStack.length) {
+            int length = (int) Math.min(depth * 2L, this.maxReturnDepth);
+            this.returnStack = Arrays.copyOf(this.returnStack, length);
+            this.returnLines = Arrays.copyOf(this.returnLines, length);
+        }
+        this.returnStack[depth] = this.program.successor(index);
+        this.returnLines[depth] = this.program.lineNumber(index);
+        this.returnDepth = depth + 1;
+    }
+
+    private int findLoopFrame(int slot) {
+        // Searching from the innermost loop, a NEXT normally finds its own straight away
+        int[] loopFrames = this.loopFrames;
+        for (int frame = (this.loopDepth - 1) * FRAME_SIZE; frame >= 0; frame -= FRAME_SIZE) {
+            if (loopFrames[frame + FRAME_SLOT] == slot) {
+                return frame;
             }
-        } else if (expression.getLiteralNumberValue() != null) {
-            return expression.getLiteralNumberValue();
-        } else if (expression.getMathematicalExpression() != null) {
-            return this.evaluateMathematicalExpression(expression.getMathematicalExpression());
-        } else {
-            throw new IllegalStateException("Invalid ValueExpression: " + expression);
         }
+        return Program.NO_INSTRUCTION;
     }
 
-    private int evaluateMathematicalExpression(MathematicalExpression expression) {
-        int result = this.evaluateValueExpression(expression.getValueExpressions()[0]);
-        for (int i = 0; i < expression.getOperators().length; i++) {
-            LArithmeticOperator operator = expression.getOperators()[i];
-            int nextValue = this.evaluateValueExpression(expression.getValueExpressions()[i + 1]);
-
-            switch (operator) {
-                case ADD -> result += nextValue;
-                case SUBTRACT -> result -= nextValue;
-                case MULTIPLY -> result *= nextValue;
-                case DIVIDE -> {
-                    if (nextValue == 0) {
-                        throw new ArithmeticException("Division by zero");
-                    }
-                    result /= nextValue;
-                }
+    private void pushLoopFrame(int frame, int header, int slot, int endValue, int stepValue) {
+        int[] loopFrames = this.loopFrames;
+        loopFrames[frame + FRAME_HEADER] = header;
+        loopFrames[frame + FRAME_SLOT] = slot;
+        loopFrames[frame + FRAME_END] = endValue;
+        loopFrames[frame + FRAME_STEP] = stepValue;
+        this.loopDepth = frame / FRAME_SIZE + 1;
+    }
+
+    private void print(OutputSink outputSink, Evaluator[] evaluators, byte[][] literals) {
+        for (int i = 0; i < evaluators.length; i++) {
+            if (i > 0) {
+                outputSink.writeByte((byte) ' ');
+            }
+            if (evaluators[i] != null) {
+                outputSink.writeInt(evaluators[i].evaluate(this.variables));
+            } else {
+                outputSink.writeBytes(literals[i]);
             }
         }
-        return result;
+        outputSink.endLine();
     }
-    //endregion
 
-    private record ForData(int lineNumber, ValueExpression endValue, ValueExpression stepValue) { // Used for FOR loop data
+    private boolean testRelationalOperator(LRelationalOperator relationalOperator, int valueA, int valueB) {
+        return switch (relationalOperator) {
+            case EQUAL -> valueA == valueB;
+            case NOT_EQUAL -> valueA != valueB;
+            case LESS_THAN ->  valueA < valueB;
+            case LESS_THAN_OR_EQUAL ->  valueA <= valueB;
+            case GREATER_THAN ->  valueA > valueB;
+            case GREATER_THAN_OR_EQUAL ->  valueA >= valueB;
+        };
     }
+    //endregion
 }
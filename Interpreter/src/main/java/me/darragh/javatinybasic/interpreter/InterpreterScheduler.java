@@ -0,0 +1,180 @@
+package me.darragh.javatinybasic.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Multiplexes many {@link Interpreter}s over a small, fixed pool of carrier threads.
+ * <br/>
+ * Interpreters run in slices of a fixed number of steps (their quantum) with {@link Interpreter#run(long)}, and are
+ * then requeued. Slices are handed out by stride scheduling: each interpreter advances a virtual clock by an amount
+ * inversely proportional to its priority, and the interpreter furthest behind runs next. A program which never ends
+ * therefore only ever holds a carrier for one slice at a time, and can be stopped by cancelling its future or by
+ * giving it a step limit.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class InterpreterScheduler implements AutoCloseable {
+    public static final int DEFAULT_PRIORITY = 1;
+    public static final int DEFAULT_QUANTUM = 10_000;
+
+    private static final long STRIDE = 1L << 20;
+
+    private final PriorityQueue<Task> ready = new PriorityQueue<>(Comparator
+            .comparingLong((Task task) -> task.pass)
+            .thenComparingLong(task -> task.sequence));
+    private final Thread[] carriers;
+    private long sequence, virtualTime;
+    private boolean closed;
+
+    public InterpreterScheduler(int carrierCount) {
+        if (carrierCount < 1) {
+            throw new IllegalArgumentException("Carrier count must be positive: " + carrierCount);
+        }
+        this.carriers = new Thread[carrierCount];
+        for (int i = 0; i < carrierCount; i++) {
+            this.carriers[i] = Thread.ofPlatform()
+                    .daemon()
+                    .name("tiny-basic-scheduler-" + i)
+                    .start(this::carry);
+        }
+    }
+
+    /**
+     * Runs the given interpreter from the start, with the default priority and quantum and no step limit.
+     *
+     * @param interpreter The interpreter to run, which must not be used elsewhere until the future completes.
+     * @return A future completed with the interpreter once the program finishes.
+     */
+    public @NotNull CompletableFuture<Interpreter> submit(@NotNull Interpreter interpreter) {
+        return this.submit(interpreter, DEFAULT_PRIORITY, DEFAULT_QUANTUM, Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs the given interpreter from the start.
+     *
+     * @param interpreter The interpreter to run, which must not be used elsewhere until the future completes.
+     * @param priority The share of the carriers given to the interpreter, relative to the others; at least 1.
+     * @param quantum The number of steps run at a time before the carrier is handed to another interpreter.
+     * @param stepLimit The total number of steps the program may run before it is stopped.
+     * @return A future completed with the interpreter once the program finishes, or exceptionally if it fails or
+     * exceeds its step limit. Cancelling the future stops the program at the end of its current slice.
+     */
+    public @NotNull CompletableFuture<Interpreter> submit(@NotNull Interpreter interpreter, int priority, int quantum, long stepLimit) {
+        if (priority < 1 || quantum < 1 || stepLimit < 1) {
+            throw new IllegalArgumentException("Priority, quantum and step limit must be positive: %s, %s, %s".formatted(priority, quantum, stepLimit));
+        }
+
+        interpreter.wipe();
+        Task task = new Task(interpreter, STRIDE / priority, quantum, stepLimit);
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("Scheduler has been closed");
+            }
+            task.pass = this.virtualTime; // start level with the interpreters already running
+            this.enqueue(task);
+        }
+        return task.future;
+    }
+
+    /**
+     * Stops the carriers once their current slices end, cancelling any interpreters which have not finished.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+        for (Thread carrier : this.carriers) {
+            try {
+                carrier.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        synchronized (this) {
+            Task task;
+            while ((task = this.ready.poll()) != null) {
+                task.future.cancel(false);
+            }
+        }
+    }
+
+    //region Helper Methods
+    private void carry() {
+        Task task;
+        while ((task = this.take()) != null) {
+            if (task.future.isDone()) {
+                continue; // cancelled
+            }
+
+            long steps = Math.min(task.quantum, task.remainingSteps);
+            ExecutionState state;
+            try {
+                state = task.interpreter.run(steps);
+            } catch (Throwable e) { // even an Error only ends its own program, so the others keep running
+                task.future.completeExceptionally(e);
+                continue;
+            }
+            task.remainingSteps -= steps;
+
+            if (state == ExecutionState.FINISHED) {
+                task.future.complete(task.interpreter);
+            } else if (task.remainingSteps == 0) {
+                task.future.completeExceptionally(new IllegalStateException("Step limit exceeded: " + task.stepLimit));
+            } else if (!task.future.isDone()) {
+                synchronized (this) {
+                    task.pass += task.stride;
+                    this.enqueue(task);
+                }
+            }
+        }
+    }
+
+    private synchronized Task take() {
+        while (this.ready.isEmpty() && !this.closed) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        if (this.closed) {
+            return null;
+        }
+
+        Task task = this.ready.poll();
+        this.virtualTime = task.pass;
+        return task;
+    }
+
+    private void enqueue(Task task) {
+        task.sequence = this.sequence++;
+        this.ready.add(task);
+        this.notify();
+    }
+    //endregion
+
+    private static final class Task {
+        private final Interpreter interpreter;
+        private final long stride;
+        private final int quantum;
+        private final long stepLimit;
+        private final CompletableFuture<Interpreter> future = new CompletableFuture<>();
+        private long remainingSteps, pass, sequence;
+
+        private Task(Interpreter interpreter, long stride, int quantum, long stepLimit) {
+            this.interpreter = interpreter;
+            this.stride = stride;
+            this.quantum = quantum;
+            this.stepLimit = stepLimit;
+            this.remainingSteps = stepLimit;
+        }
+    }
+}
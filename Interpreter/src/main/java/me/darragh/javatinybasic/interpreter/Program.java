@@ -0,0 +1,752 @@
+package me.darragh.javatinybasic.interpreter;
+
+import me.darragh.javatinybasic.analysis.ControlFlowGraph;
+import me.darragh.javatinybasic.ast.JumpTable;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import me.darragh.javatinybasic.optimizer.Optimizer;
+import me.darragh.javatinybasic.parser.LineIndex;
+import me.darragh.javatinybasic.parser.ParserInvalidLineException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A linked form of a Tiny BASIC program, built once from a list of {@link Token}s.
+ * <br/>
+ * Every line is resolved to a dense instruction index, sorted by line number. Fall-through successors
+ * and GOTO/GOSUB/IF targets are resolved to indices ahead of time, so no line number lookups are needed
+ * whilst executing. Variable names are likewise resolved to slots, for use with {@link Variables}, and each GOSUB
+ * followed by a RETURN is marked as a tail call. The target of a computed GOTO or GOSUB, such as {@code GOTO A * 10},
+ * is only known once it is evaluated, so it is looked up in a {@link JumpTable} built the first time one is executed.
+ * <br/>
+ * Programs are immutable and hold no execution state, so they are safe to share between threads. Editing a single
+ * line with {@link #withLine(Token)} or {@link #withoutLine(int)} produces a new program which shares the linked form
+ * of every other line, so only the edited line is linked again. An edited program may jump to lines which do not exist
+ * yet, which is only reported if the jump is executed.
+ * <br/>
+ * A program can also be linked lazily from a {@link LineIndex} with {@link #lazy(LineIndex)}, in which case each line
+ * is only parsed and linked once it is first reached. Linked lines are kept in a bounded cache, so a huge program
+ * which mostly never runs costs little more than its index. Variables are only given slots as the lines using them are
+ * linked, so the variable storage of each interpreter grows as the program runs. Lazy programs cannot be edited.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class Program {
+    /**
+     * Represents the absence of an instruction, i.e. the end of the program or a statement without a target.
+     */
+    public static final int NO_INSTRUCTION = -1;
+
+    /**
+     * The default number of linked lines a lazy program keeps.
+     */
+    public static final int DEFAULT_LAZY_CACHE_SIZE = 4096;
+
+    private static final int UNRESOLVED = -2; // the target of an edited line, whose line does not exist
+
+    private final Token[] instructions;
+    private final int[] lineNumbers;
+    private final int[] successors;
+    private final int[] targets;
+    private final int unresolvedTargets;
+    private final int[] variableSlots;
+    private final BitSet tailCalls;
+    private final Evaluator[][] evaluators;
+    private final byte[][][] literals;
+
+    private final String[] variableNames;
+    private final Map<String, Integer> slots;
+    private final @Nullable LazyLines lazyLines;
+    private JumpTable jumpTable; // built on first use; racing threads build equal tables, which is harmless
+    private ControlFlowGraph controlFlowGraph; // likewise
+
+    private Program(Token[] instructions, int[] lineNumbers, int[] successors, int[] targets,
+                    int[] variableSlots, Evaluator[][] evaluators, byte[][][] literals, Map<String, Integer> slots) {
+        this(instructions, lineNumbers, successors, targets, variableSlots, evaluators, literals, slots, null);
+    }
+
+    private Program(Token[] instructions, int[] lineNumbers, int[] successors, int[] targets, int[] variableSlots,
+                    Evaluator[][] evaluators, byte[][][] literals, Map<String, Integer> slots, @Nullable LazyLines lazyLines) {
+        this.instructions = instructions;
+        this.lineNumbers = lineNumbers;
+        this.successors = successors;
+        this.targets = targets;
+        this.unresolvedTargets = targets != null ? countUnresolved(targets) : 0;
+        this.variableSlots = variableSlots;
+        this.tailCalls = lazyLines == null ? findTailCalls(instructions) : null;
+        this.evaluators = evaluators;
+        this.literals = literals;
+        this.variableNames = slots.keySet().toArray(new String[0]);
+        this.slots = slots;
+        this.lazyLines = lazyLines;
+    }
+
+    /**
+     * Links the given tokens into a {@link Program}.
+     * Duplicate line numbers keep the first occurrence, matching the order of the source.
+     *
+     * @param tokens The tokens to link.
+     * @return The linked program.
+     * @throws IllegalArgumentException If a GOTO, GOSUB or IF statement targets a line that does not exist.
+     */
+    public static @NotNull Program link(@NotNull List<Token> tokens) {
+        // Sort and de-duplicate the tokens by line number
+        Map<Integer, Token> sorted = new TreeMap<>();
+        for (Token token : tokens) {
+            sorted.putIfAbsent(token.lineNumber(), token);
+        }
+
+        int size = sorted.size();
+        Token[] instructions = sorted.values().toArray(new Token[0]);
+        int[] lineNumbers = new int[size];
+        Map<Integer, Integer> indices = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            lineNumbers[i] = instructions[i].lineNumber();
+            indices.put(lineNumbers[i], i);
+        }
+
+        // Resolve successors, targets and variable slots
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        int[] successors = new int[size],
+                targets = new int[size],
+                variableSlots = new int[size];
+        Evaluator[][] evaluators = new Evaluator[size][];
+        byte[][][] literals = new byte[size][][];
+        for (int i = 0; i < size; i++) {
+            Token token = instructions[i];
+            successors[i] = i + 1 < size ? i + 1 : NO_INSTRUCTION;
+            int targetLineNumber = targetLineNumberOf(token);
+            targets[i] = targetLineNumber != NO_INSTRUCTION ? resolveTarget(indices.get(targetLineNumber), token, targetLineNumber) : NO_INSTRUCTION;
+            variableSlots[i] = allocateSlots(slots, token);
+            evaluators[i] = compileEvaluators(slots, token);
+            literals[i] = encodeLiterals(token);
+        }
+
+        return new Program(instructions, lineNumbers, successors, targets, variableSlots, evaluators, literals, slots);
+    }
+
+    /**
+     * Optimises the given tokens with the {@link Optimizer}, then links them into a {@link Program}.
+     * Use {@link Optimizer#optimize(List)} directly to see what was changed.
+     *
+     * @param tokens The tokens to optimise and link.
+     * @return The linked program.
+     * @throws IllegalArgumentException If a GOTO, GOSUB or IF statement targets a line that does not exist.
+     */
+    public static @NotNull Program optimized(@NotNull List<Token> tokens) {
+        return link(Optimizer.optimize(tokens).tokens());
+    }
+
+    public static @NotNull Program lazy(@NotNull LineIndex index) {
+        return lazy(index, DEFAULT_LAZY_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a program which parses and links each line of the given index only once it is first reached.
+     * <br/>
+     * As lines are linked on demand, a line which cannot be parsed, or which targets a line that does not exist, is
+     * only reported when it is reached, with an {@link IllegalStateException}. The variables used by the program are
+     * not known until it has run, so the single letter variables are given slots up front and any others are given the
+     * next free slots as they are reached.
+     *
+     * @param index The index of the lines to link.
+     * @param cacheSize The number of linked lines to keep, rounded up to a power of two.
+     * @return The lazily linked program.
+     */
+    public static @NotNull Program lazy(@NotNull LineIndex index, int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+        }
+
+        Map<String, Integer> slots = new LinkedHashMap<>();
+        for (char name = 'A'; name <= 'Z'; name++) {
+            allocateSlot(slots, String.valueOf(name));
+        }
+        return new Program(null, index.lineNumbers(), null, null, null, null, null, slots, new LazyLines(index, slots, cacheSize));
+    }
+
+    /**
+     * Creates a copy of the program with the given line inserted, or replacing the line with the same line number.
+     * <br/>
+     * Only the given line is linked. Variables keep their slots, with any new variables given the next free slots,
+     * and the instruction indices of the following lines shift up by one if the line is inserted. The line may target
+     * a line which does not exist yet, and any lines which were waiting for it now target it.
+     *
+     * @param token The line to insert or replace.
+     * @return The edited program.
+     * @throws IllegalStateException If the program is lazy.
+     */
+    public @NotNull Program withLine(@NotNull Token token) {
+        this.requireLinked();
+        int index = Arrays.binarySearch(this.lineNumbers, token.lineNumber());
+        return index >= 0 ? this.splice(index, 1, token) : this.splice(-(index + 1), 0, token);
+    }
+
+    /**
+     * Creates a copy of the program with the given line removed.
+     * The instruction indices of the following lines shift down by one, and any lines which targeted it are left
+     * targeting a line which does not exist.
+     *
+     * @param lineNumber The line number of the line to remove.
+     * @return The edited program, or this program if the line does not exist.
+     * @throws IllegalStateException If the program is lazy.
+     */
+    public @NotNull Program withoutLine(int lineNumber) {
+        this.requireLinked();
+        int index = this.indexOf(lineNumber);
+        return index != NO_INSTRUCTION ? this.splice(index, 1, null) : this;
+    }
+
+    /**
+     * Gets the number of instructions in the program.
+     *
+     * @return The number of instructions.
+     */
+    public int size() {
+        return this.lineNumbers.length;
+    }
+
+    /**
+     * Gets the token at the given instruction index.
+     *
+     * @param index The instruction index.
+     * @return The token at the index.
+     * @throws IllegalStateException If the program is lazy and the line cannot be parsed.
+     */
+    public @NotNull Token instruction(int index) {
+        if (this.lazyLines != null) {
+            return this.lazyLines.get(index).token();
+        }
+        return this.instructions[index];
+    }
+
+    /**
+     * Gets the line number of the given instruction index.
+     *
+     * @param index The instruction index.
+     * @return The line number of the instruction.
+     */
+    public int lineNumber(int index) {
+        return this.lineNumbers[index];
+    }
+
+    /**
+     * Gets the instruction index which follows the given instruction index when falling through.
+     *
+     * @param index The instruction index.
+     * @return The index of the successor, or {@link #NO_INSTRUCTION} if it is the last instruction.
+     */
+    public int successor(int index) {
+        if (this.lazyLines != null) {
+            return index + 1 < this.lineNumbers.length ? index + 1 : NO_INSTRUCTION;
+        }
+        return this.successors[index];
+    }
+
+    /**
+     * Gets the resolved jump target of a GOTO, GOSUB or IF instruction.
+     *
+     * @param index The instruction index.
+     * @return The index of the target, or {@link #NO_INSTRUCTION} if the instruction does not jump or its target is computed.
+     * @throws IllegalStateException If the program was edited, and the target does not exist.
+     */
+    public int target(int index) {
+        if (this.lazyLines != null) {
+            return this.lazyLines.get(index).target();
+        }
+        int target = this.targets[index];
+        if (target == UNRESOLVED) {
+            Token token = this.instructions[index];
+            throw new IllegalStateException(missingTarget(token, targetLineNumberOf(token)));
+        }
+        return target;
+    }
+
+    /**
+     * Checks whether any line of an edited program targets a line which does not exist.
+     *
+     * @return Whether any target is unresolved.
+     */
+    public boolean hasUnresolvedTargets() {
+        return this.unresolvedTargets > 0;
+    }
+
+    /**
+     * Resolves the target of a computed GOTO or GOSUB instruction, whose line number is the first of its evaluators.
+     *
+     * @param index The instruction index.
+     * @param lineNumber The evaluated line number to go to.
+     * @return The index of the target.
+     * @throws IllegalStateException If the line does not exist.
+     */
+    int computedTarget(int index, int lineNumber) {
+        JumpTable jumpTable = this.jumpTable;
+        if (jumpTable == null) {
+            this.jumpTable = jumpTable = JumpTable.ofIndices(this.lineNumbers);
+        }
+
+        int target = jumpTable.get(lineNumber);
+        if (target == JumpTable.NO_TARGET) {
+            throw new IllegalStateException("%s on line %s targets a line that does not exist: %s".formatted(this.instruction(index).statement(), this.lineNumber(index), lineNumber));
+        }
+        return target;
+    }
+
+    /**
+     * Gets the control-flow graph of the program, which is built the first time it is needed. Its instruction indices
+     * are those of the program.
+     *
+     * @return The control-flow graph.
+     * @throws IllegalStateException If the program is lazy, as every line would have to be parsed, or if it
+     * {@link #hasUnresolvedTargets() has unresolved targets}.
+     */
+    public @NotNull ControlFlowGraph controlFlowGraph() {
+        if (this.lazyLines != null) {
+            throw new IllegalStateException("Lazy programs have no control-flow graph");
+        }
+        if (this.unresolvedTargets > 0) {
+            throw new IllegalStateException("Programs with unresolved targets have no control-flow graph");
+        }
+
+        ControlFlowGraph controlFlowGraph = this.controlFlowGraph;
+        if (controlFlowGraph == null) {
+            this.controlFlowGraph = controlFlowGraph = ControlFlowGraph.of(Arrays.asList(this.instructions));
+        }
+        return controlFlowGraph;
+    }
+
+    /**
+     * Gets the slot of the variable assigned by a LET, INPUT, FOR or NEXT instruction.
+     *
+     * @param index The instruction index.
+     * @return The slot of the variable, or {@link #NO_INSTRUCTION} if the instruction does not assign a variable.
+     */
+    public int variableSlot(int index) {
+        if (this.lazyLines != null) {
+            return this.lazyLines.get(index).variableSlot();
+        }
+        return this.variableSlots[index];
+    }
+
+    /**
+     * Gets whether a GOSUB instruction is in tail position, i.e. followed by a RETURN. Whatever the subroutine returns
+     * to would return straight away, so the GOSUB can be executed as a jump, letting the subroutine's own RETURN go
+     * back to the caller's caller. The lines of a lazy program are not all parsed, so none are in tail position.
+     *
+     * @param index The instruction index.
+     * @return Whether the instruction is a GOSUB followed by a RETURN.
+     */
+    public boolean isTailCall(int index) {
+        return this.tailCalls != null && this.tailCalls.get(index);
+    }
+
+    /**
+     * Gets the compiled value expressions of an instruction, in the order they appear in the statement:
+     * <ul>
+     *  <li>LET: the value.</li>
+     *  <li>PRINT: each printed value, with {@code null} in place of string literals.</li>
+     *  <li>IF: both sides of the comparison.</li>
+     *  <li>FOR: the start, end and step values.</li>
+     *  <li>Computed GOTO and GOSUB: the line number to go to.</li>
+     * </ul>
+     *
+     * @param index The instruction index.
+     * @return The compiled evaluators of the instruction.
+     */
+    Evaluator[] evaluators(int index) {
+        if (this.lazyLines != null) {
+            return this.lazyLines.get(index).evaluators();
+        }
+        return this.evaluators[index];
+    }
+
+    /**
+     * Gets the UTF-8 encoded string literals of a PRINT instruction, with {@code null} in place of values.
+     *
+     * @param index The instruction index.
+     * @return The encoded literals of the instruction, or {@code null} if it is not a PRINT.
+     */
+    byte[][] literals(int index) {
+        if (this.lazyLines != null) {
+            return this.lazyLines.get(index).literals();
+        }
+        return this.literals[index];
+    }
+
+    /**
+     * Gets the slot of the given variable name.
+     *
+     * @param variableName The name of the variable.
+     * @return The slot of the variable.
+     * @throws IllegalStateException If the variable is not used by the program.
+     */
+    public int slotOf(@NotNull String variableName) {
+        int slot = this.findSlot(variableName);
+        if (slot == NO_INSTRUCTION) {
+            throw new IllegalStateException("Variable not found: " + variableName);
+        }
+        return slot;
+    }
+
+    /**
+     * Gets the number of distinct variables used by the program.
+     * For a lazy program, this only counts the variables of the lines linked so far.
+     *
+     * @return The number of variable slots.
+     */
+    public int getVariableCount() {
+        return this.lazyLines != null ? this.lazyLines.variableNames.length : this.variableNames.length;
+    }
+
+    /**
+     * Creates empty variable storage with a slot for each variable used by the program.
+     *
+     * @return The variable storage.
+     */
+    public @NotNull Variables createVariables() {
+        return this.lazyLines != null
+                ? new Variables(this.getVariableCount(), this::variableName)
+                : new Variables(this.variableNames);
+    }
+
+    /**
+     * Finds the instruction index of the given line number.
+     *
+     * @param lineNumber The line number to find.
+     * @return The instruction index, or {@link #NO_INSTRUCTION} if the line does not exist.
+     */
+    public int indexOf(int lineNumber) {
+        int index = Arrays.binarySearch(this.lineNumbers, lineNumber);
+        return index >= 0 ? index : NO_INSTRUCTION;
+    }
+
+    /**
+     * Finds the instruction index of the given line number, or of the first line after it if it does not exist.
+     *
+     * @param lineNumber The line number to find.
+     * @return The instruction index, or {@link #NO_INSTRUCTION} if no line is at or after the line number.
+     */
+    int ceilingIndexOf(int lineNumber) {
+        int index = Arrays.binarySearch(this.lineNumbers, lineNumber);
+        if (index < 0) {
+            index = -(index + 1);
+        }
+        return index < this.lineNumbers.length ? index : NO_INSTRUCTION;
+    }
+
+    /**
+     * Gets the name of the variable in the given slot.
+     *
+     * @param slot The slot of the variable.
+     * @return The name of the variable.
+     */
+    @NotNull String variableName(int slot) {
+        return this.lazyLines != null ? this.lazyLines.variableNames[slot] : this.variableNames[slot];
+    }
+
+    /**
+     * Finds the slot of the given variable name.
+     *
+     * @param variableName The name of the variable.
+     * @return The slot of the variable, or {@link #NO_INSTRUCTION} if the variable is not used by the program.
+     */
+    int findSlot(@NotNull String variableName) {
+        if (this.lazyLines != null) {
+            synchronized (this.slots) {
+                return this.slots.getOrDefault(variableName, NO_INSTRUCTION);
+            }
+        }
+        return this.slots.getOrDefault(variableName, NO_INSTRUCTION);
+    }
+
+    //region Editing
+    private void requireLinked() {
+        if (this.lazyLines != null) {
+            throw new IllegalStateException("Lazy programs cannot be edited");
+        }
+    }
+
+    private Program splice(int index, int removed, @Nullable Token token) {
+        int inserted = token != null ? 1 : 0,
+                size = this.size() - removed + inserted;
+
+        Token[] instructions = splice(this.instructions, index, removed, inserted);
+        int[] lineNumbers = splice(this.lineNumbers, index, removed, inserted),
+                targets = splice(this.targets, index, removed, inserted),
+                variableSlots = splice(this.variableSlots, index, removed, inserted);
+        Evaluator[][] evaluators = splice(this.evaluators, index, removed, inserted);
+        byte[][][] literals = splice(this.literals, index, removed, inserted);
+
+        int[] successors = new int[size];
+        for (int i = 0; i < size; i++) {
+            successors[i] = i + 1 < size ? i + 1 : NO_INSTRUCTION;
+        }
+
+        // Shift the targets of the other lines past the edit, unresolving those of a removed line
+        for (int i = 0; i < size; i++) {
+            if (i == index && token != null || targets[i] < 0) {
+                continue;
+            }
+            if (token == null && targets[i] == index) {
+                targets[i] = UNRESOLVED;
+            } else if (targets[i] >= index + removed) {
+                targets[i] += inserted - removed;
+            }
+        }
+
+        // Link the new line
+        Map<String, Integer> slots = this.slots;
+        if (token != null) {
+            slots = new LinkedHashMap<>(this.slots);
+            instructions[index] = token;
+            lineNumbers[index] = token.lineNumber();
+            int targetLineNumber = targetLineNumberOf(token);
+            if (targetLineNumber != NO_INSTRUCTION) {
+                int target = Arrays.binarySearch(lineNumbers, targetLineNumber);
+                targets[index] = target >= 0 ? target : UNRESOLVED;
+            } else {
+                targets[index] = NO_INSTRUCTION;
+            }
+
+            // Resolve any lines which were waiting for the new line
+            if (removed == 0 && this.unresolvedTargets > 0) {
+                for (int i = 0; i < size; i++) {
+                    if (targets[i] == UNRESOLVED && i != index && targetLineNumberOf(instructions[i]) == token.lineNumber()) {
+                        targets[i] = index;
+                    }
+                }
+            }
+            variableSlots[index] = allocateSlots(slots, token);
+            evaluators[index] = compileEvaluators(slots, token);
+            literals[index] = encodeLiterals(token);
+        }
+
+        return new Program(instructions, lineNumbers, successors, targets, variableSlots, evaluators, literals, slots);
+    }
+
+    private static <T> T[] splice(T[] array, int index, int removed, int inserted) {
+        T[] result = Arrays.copyOf(array, array.length - removed + inserted);
+        System.arraycopy(array, index + removed, result, index + inserted, array.length - index - removed);
+        return result;
+    }
+
+    private static int[] splice(int[] array, int index, int removed, int inserted) {
+        int[] result = Arrays.copyOf(array, array.length - removed + inserted);
+        System.arraycopy(array, index + removed, result, index + inserted, array.length - index - removed);
+        return result;
+    }
+    //endregion
+
+    private static int countUnresolved(int[] targets) {
+        int count = 0;
+        for (int target : targets) {
+            if (target == UNRESOLVED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static BitSet findTailCalls(Token[] instructions) {
+        BitSet tailCalls = new BitSet(instructions.length);
+        for (int i = 0; i + 1 < instructions.length; i++) {
+            if (instructions[i].statement() == LStatement.GOSUB && instructions[i + 1].statement() == LStatement.RETURN) {
+                tailCalls.set(i);
+            }
+        }
+        return tailCalls;
+    }
+
+    private static int allocateSlots(Map<String, Integer> slots, Token token) {
+        return switch (token.expression()) {
+            case LETExpression(String variableName, ValueExpression value) -> {
+                allocateSlots(slots, value);
+                yield allocateSlot(slots, variableName);
+            }
+            case PRINTExpression(Expression[] values) -> {
+                for (Expression value : values) {
+                    if (value instanceof ValueExpression valueExpression) {
+                        allocateSlots(slots, valueExpression);
+                    }
+                }
+                yield NO_INSTRUCTION;
+            }
+            case IFExpression ifExpression -> {
+                allocateSlots(slots, ifExpression.valueA());
+                allocateSlots(slots, ifExpression.valueB());
+                yield NO_INSTRUCTION;
+            }
+            case FORExpression(String variableName, ValueExpression startValue, ValueExpression endValue, ValueExpression stepValue) -> {
+                allocateSlots(slots, startValue);
+                allocateSlots(slots, endValue);
+                allocateSlots(slots, stepValue);
+                yield allocateSlot(slots, variableName);
+            }
+            case VariableNameExpression(String variableName) -> allocateSlot(slots, variableName); // INPUT and NEXT
+            case ValueExpression value -> { // computed GOTO and GOSUB
+                allocateSlots(slots, value);
+                yield NO_INSTRUCTION;
+            }
+            case null, default -> NO_INSTRUCTION;
+        };
+    }
+
+    private static Evaluator[] compileEvaluators(Map<String, Integer> slots, Token token) {
+        return switch (token.expression()) {
+            case LETExpression letExpression -> new Evaluator[] {
+                    compileEvaluator(slots, letExpression.value())
+            };
+            case PRINTExpression(Expression[] values) -> {
+                Evaluator[] evaluators = new Evaluator[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] instanceof ValueExpression valueExpression) {
+                        evaluators[i] = compileEvaluator(slots, valueExpression);
+                    }
+                }
+                yield evaluators;
+            }
+            case IFExpression ifExpression -> new Evaluator[] {
+                    compileEvaluator(slots, ifExpression.valueA()),
+                    compileEvaluator(slots, ifExpression.valueB())
+            };
+            case FORExpression forExpression -> new Evaluator[] {
+                    compileEvaluator(slots, forExpression.startValue()),
+                    compileEvaluator(slots, forExpression.endValue()),
+                    compileEvaluator(slots, forExpression.stepValue())
+            };
+            case ValueExpression value -> new Evaluator[] { // computed GOTO and GOSUB
+                    compileEvaluator(slots, value)
+            };
+            case null, default -> null;
+        };
+    }
+
+    private static byte[][] encodeLiterals(Token token) {
+        if (token.statement() != LStatement.PRINT) {
+            return null;
+        }
+
+        Expression[] values = ((PRINTExpression) Objects.requireNonNull(token.expression())).values();
+        byte[][] literals = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof StringValueExpression(String value)) {
+                literals[i] = value.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return literals;
+    }
+
+    private static Evaluator compileEvaluator(Map<String, Integer> slots, ValueExpression expression) {
+        return EvaluatorCompiler.compile(expression, slots::get);
+    }
+
+    private static void allocateSlots(Map<String, Integer> slots, ValueExpression expression) {
+        switch (expression) {
+            case VariableValueExpression(String variableName) -> allocateSlot(slots, variableName);
+            case MathematicalExpression mathematicalExpression -> {
+                for (ValueExpression valueExpression : mathematicalExpression.valueExpressions()) {
+                    allocateSlots(slots, valueExpression);
+                }
+            }
+            case LiteralValueExpression ignored -> {}
+        }
+    }
+
+    private static int allocateSlot(Map<String, Integer> slots, String variableName) {
+        return slots.computeIfAbsent(variableName, name -> slots.size());
+    }
+
+    private static int targetLineNumberOf(Token token) {
+        return switch (token.statement()) {
+            case GOTO, GOSUB -> token.expression() instanceof LineNumberExpression(int lineNumber) ? lineNumber : NO_INSTRUCTION; // computed targets are resolved when executed
+            case IF -> ((IFExpression) Objects.requireNonNull(token.expression())).lineNumberToGoto();
+            default -> NO_INSTRUCTION;
+        };
+    }
+
+    private static int resolveTarget(@Nullable Integer index, Token token, int lineNumber) {
+        if (index == null) {
+            throw new IllegalArgumentException(missingTarget(token, lineNumber));
+        }
+        return index;
+    }
+
+    private static String missingTarget(Token token, int lineNumber) {
+        return "%s on line %s targets a line that does not exist: %s".formatted(token.statement(), token.lineNumber(), lineNumber);
+    }
+
+    //region Lazy linking
+    /**
+     * A direct-mapped cache of the lines of a lazy program, each linked when it is first needed or after it is evicted.
+     * Linked lines are immutable, so threads racing to link the same line simply link it twice. The slots of the
+     * variables are shared by every line, so they are only allocated and resolved whilst holding their lock.
+     */
+    private static final class LazyLines {
+        private static final int MAX_CACHE_SIZE = 1 << 30;
+
+        private final LineIndex index;
+        private final Map<String, Integer> slots; // guarded by itself
+        private volatile String[] variableNames; // replaced whenever a slot is allocated
+        private final LinkedLine[] cache;
+        private final int mask;
+
+        private LazyLines(LineIndex index, Map<String, Integer> slots, int cacheSize) {
+            int size = cacheSize > 1 ? Integer.highestOneBit(Math.min(cacheSize - 1, MAX_CACHE_SIZE - 1)) << 1 : 1;
+            this.index = index;
+            this.slots = slots;
+            this.variableNames = slots.keySet().toArray(new String[0]);
+            this.cache = new LinkedLine[size];
+            this.mask = size - 1;
+        }
+
+        private LinkedLine get(int index) {
+            LinkedLine line = this.cache[index & this.mask];
+            if (line == null || line.index() != index) {
+                line = this.link(index);
+                this.cache[index & this.mask] = line;
+            }
+            return line;
+        }
+
+        private LinkedLine link(int index) {
+            Token token;
+            try {
+                token = this.index.parse(index);
+            } catch (ParserInvalidLineException e) {
+                throw new IllegalStateException("Line %s cannot be parsed".formatted(this.index.lineNumber(index)), e);
+            }
+
+            int targetLineNumber = targetLineNumberOf(token), target = NO_INSTRUCTION;
+            if (targetLineNumber != NO_INSTRUCTION) {
+                target = this.index.indexOf(targetLineNumber);
+                if (target == NO_INSTRUCTION) { // only found once the program is running, as for an edited program
+                    throw new IllegalStateException(missingTarget(token, targetLineNumber));
+                }
+            }
+
+            int variableSlot;
+            Evaluator[] evaluators;
+            synchronized (this.slots) {
+                variableSlot = allocateSlots(this.slots, token);
+                evaluators = compileEvaluators(this.slots, token);
+                if (this.slots.size() != this.variableNames.length) {
+                    this.variableNames = this.slots.keySet().toArray(new String[0]);
+                }
+            }
+            return new LinkedLine(index, token, target, variableSlot, evaluators, encodeLiterals(token));
+        }
+    }
+
+    private record LinkedLine(int index, Token token, int target, int variableSlot, Evaluator[] evaluators, byte[][] literals) {
+    }
+    //endregion
+}
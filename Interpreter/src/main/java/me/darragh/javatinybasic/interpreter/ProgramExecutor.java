@@ -0,0 +1,62 @@
+package me.darragh.javatinybasic.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@link Interpreter}s concurrently, by default with one virtual thread per execution.
+ * <br/>
+ * Each execution gets its own interpreter, whilst the linked {@link Program} is shared, so the same program can be run
+ * for many callers at once without being parsed or linked again.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class ProgramExecutor implements AutoCloseable {
+    private final ExecutorService executorService;
+
+    public ProgramExecutor() {
+        this(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public ProgramExecutor(@NotNull ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Runs the given program in a new interpreter.
+     *
+     * @param program The program to run.
+     * @param inputEvent The input event of the execution.
+     * @param outputEvent The output event of the execution.
+     * @return A future completed with the interpreter once the program finishes, or exceptionally if it fails.
+     */
+    public @NotNull CompletableFuture<Interpreter> submit(@NotNull Program program, @NotNull InterpreterInputEvent inputEvent,
+                                                          @NotNull InterpreterOutputEvent outputEvent) {
+        return this.submit(new Interpreter(program, inputEvent, outputEvent, () -> {}));
+    }
+
+    /**
+     * Runs the given interpreter from the start.
+     *
+     * @param interpreter The interpreter to run, which must not be used elsewhere until the future completes.
+     * @return A future completed with the interpreter once the program finishes, or exceptionally if it fails.
+     */
+    public @NotNull CompletableFuture<Interpreter> submit(@NotNull Interpreter interpreter) {
+        return CompletableFuture.supplyAsync(() -> {
+            interpreter.run();
+            return interpreter;
+        }, this.executorService);
+    }
+
+    /**
+     * Stops accepting executions and waits for those already submitted to finish.
+     */
+    @Override
+    public void close() {
+        this.executorService.close();
+    }
+}
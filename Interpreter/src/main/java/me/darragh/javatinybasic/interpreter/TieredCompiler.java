@@ -0,0 +1,193 @@
+package me.darragh.javatinybasic.interpreter;
+
+import lombok.Getter;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import me.darragh.javatinybasic.transpiler.RegionTranspiler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * Profiles backward jumps in the {@link Interpreter} and compiles hot loop regions to bytecode with the
+ * {@link RegionTranspiler}, defining the result as a hidden class.
+ * <br/>
+ * A region spans from the target of a backward jump (the loop header) to the jump itself. Compiled regions operate on
+ * the interpreter's variable slots directly and return the instruction index to resume interpreting at, so anything
+ * they do not support simply falls back to the interpreter.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class TieredCompiler {
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    private static final MethodType REGION_METHOD_TYPE = MethodType.methodType(int.class, int[].class, int.class, int.class, int[].class);
+    private static final String REGION_CLASS_NAME = TieredCompiler.class.getPackageName().replace('.', '/') + "/CompiledRegion_";
+
+    private final Program program;
+    @Getter
+    private final int threshold;
+
+    private final int[] counters;
+    private final CompiledRegion[] regions;
+    private final BitSet failed = new BitSet();
+    @Getter
+    private int compiledRegionCount;
+
+    public TieredCompiler(@NotNull Program program) {
+        this(program, DEFAULT_THRESHOLD);
+    }
+
+    public TieredCompiler(@NotNull Program program, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        }
+        this.program = program;
+        this.threshold = threshold;
+        this.counters = new int[program.size()];
+        this.regions = new CompiledRegion[program.size()];
+    }
+
+    /**
+     * Records a backward jump, compiling the loop region once it becomes hot.
+     *
+     * @param source The instruction index of the jump.
+     * @param target The instruction index of the loop header.
+     * @return The compiled region for the loop header, or {@code null} if it has not been compiled.
+     */
+    public @Nullable CompiledRegion onBackwardJump(int source, int target) {
+        CompiledRegion region = this.regions[target];
+        if (region != null || this.failed.get(target)) {
+            return region;
+        }
+        if (++this.counters[target] < this.threshold) {
+            return null;
+        }
+
+        try {
+            region = this.compile(target, source);
+            this.regions[target] = region;
+            this.compiledRegionCount++;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            this.failed.set(target); // stay in the interpreter, even if the generated class fails to verify
+        }
+        return region;
+    }
+
+    private CompiledRegion compile(int header, int latch) throws ReflectiveOperationException {
+        List<Token> tokens = new ArrayList<>(latch - header + 1);
+        for (int i = header; i <= latch; i++) {
+            tokens.add(this.program.instruction(i));
+        }
+
+        byte[] bytes = RegionTranspiler.transpile(
+                REGION_CLASS_NAME + this.program.lineNumber(header),
+                tokens,
+                header,
+                this.program.successor(latch),
+                this.program::indexOf,
+                this.program::slotOf
+        );
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        MethodHandle handle = lookup.findStatic(lookup.lookupClass(), RegionTranspiler.METHOD_NAME, REGION_METHOD_TYPE);
+
+        // Every variable touched by the region must be defined on entry
+        Set<Integer> slots = new TreeSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (i == 0 || token.statement() != LStatement.FOR) { // nested loops are left to the interpreter
+                this.collectSlots(token, slots);
+            }
+        }
+
+        Token first = tokens.getFirst();
+        int loopSlot = first.statement() == LStatement.FOR ? this.program.variableSlot(header) : Program.NO_INSTRUCTION;
+        return new CompiledRegion(header, latch, handle, slots.stream().mapToInt(Integer::intValue).toArray(), loopSlot);
+    }
+
+    private void collectSlots(Token token, Set<Integer> slots) {
+        Expression expression = token.expression();
+        switch (token.statement()) {
+            case LET -> {
+                LETExpression letExpression = (LETExpression) Objects.requireNonNull(expression);
+                slots.add(this.program.slotOf(letExpression.variableName()));
+                this.collectSlots(letExpression.value(), slots);
+            }
+            case IF -> {
+                IFExpression ifExpression = (IFExpression) Objects.requireNonNull(expression);
+                this.collectSlots(ifExpression.valueA(), slots);
+                this.collectSlots(ifExpression.valueB(), slots);
+            }
+            case FOR -> { // the end and step values are passed in, so only the variable is touched
+                FORExpression forExpression = (FORExpression) Objects.requireNonNull(expression);
+                slots.add(this.program.slotOf(forExpression.variableName()));
+            }
+            default -> {}
+        }
+    }
+
+    private void collectSlots(ValueExpression expression, Set<Integer> slots) {
+        switch (expression) {
+            case VariableValueExpression(String variableName) -> slots.add(this.program.slotOf(variableName));
+            case MathematicalExpression mathematicalExpression -> {
+                for (ValueExpression valueExpression : mathematicalExpression.valueExpressions()) {
+                    this.collectSlots(valueExpression, slots);
+                }
+            }
+            case LiteralValueExpression ignored -> {}
+        }
+    }
+
+    /**
+     * A loop region which has been compiled to a hidden class.
+     *
+     * @param header The instruction index of the loop header.
+     * @param latch The instruction index of the backward jump which triggered compilation.
+     * @param handle The compiled {@code int run(int[] variables, int end, int step, int[] budget)} method.
+     * @param slots The variable slots which must be defined on entry.
+     * @param loopSlot The slot of the FOR loop variable if the header is a FOR, otherwise {@link Program#NO_INSTRUCTION}.
+     */
+    public record CompiledRegion(int header, int latch, MethodHandle handle, int[] slots, int loopSlot) {
+        /**
+         * Checks whether the region can be entered with the given variables.
+         *
+         * @param variables The variables of the running program.
+         * @return Whether every variable touched by the region is defined.
+         */
+        public boolean canEnter(@NotNull Variables variables) {
+            for (int slot : this.slots) {
+                if (!variables.isDefined(slot)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Executes the region until it leaves the loop, reaches something it does not support or runs out of budget.
+         *
+         * @param variables The variables of the running program.
+         * @param end The end value the FOR loop was entered with, if the header is a FOR.
+         * @param step The step value the FOR loop was entered with, if the header is a FOR.
+         * @param budget A single element holding the number of backward jumps the region may take before it exits,
+         *               which is left holding the number it did not take.
+         * @return The instruction index to resume interpreting at.
+         */
+        public int execute(@NotNull Variables variables, int end, int step, int @NotNull [] budget) {
+            try {
+                return (int) this.handle.invokeExact(variables.values(), end, step, budget);
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Compiled region failed: " + this.header, throwable);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.darragh.javatinybasic.interpreter;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Primitive storage for the variables of a running program.
+ * <br/>
+ * Variable names are resolved to slots when the {@link Program} is linked, so values are stored in an
+ * {@code int[]} alongside a bitmap which tracks whether each slot has been assigned. The storage grows when a slot
+ * beyond it is assigned, as a lazily linked program only gives a variable its slot once a line using it is reached.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class Variables {
+    private final IntFunction<String> names;
+    private int[] values;
+    private long[] defined;
+
+    public Variables(@NotNull String[] names) {
+        this(names.length, slot -> names[slot]);
+    }
+
+    Variables(int size, @NotNull IntFunction<String> names) {
+        this.names = names;
+        this.values = new int[size];
+        this.defined = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * Gets the value of the given slot.
+     *
+     * @param slot The slot of the variable.
+     * @return The value of the variable.
+     * @throws IllegalStateException If the variable has not been assigned.
+     */
+    public int get(int slot) {
+        if (!this.isDefined(slot)) {
+            throw new IllegalStateException("Variable not found: " + this.names.apply(slot));
+        }
+        return this.values[slot];
+    }
+
+    /**
+     * Sets the value of the given slot, marking it as defined.
+     *
+     * @param slot The slot of the variable.
+     * @param value The value to assign.
+     */
+    public void set(int slot, int value) {
+        if (slot >= this.values.length) {
+            this.grow(slot);
+        }
+        this.values[slot] = value;
+        this.defined[slot >>> 6] |= 1L << slot;
+    }
+
+    /**
+     * Checks whether the given slot has been assigned.
+     *
+     * @param slot The slot of the variable.
+     * @return Whether the variable is defined.
+     */
+    public boolean isDefined(int slot) {
+        return slot < this.values.length && (this.defined[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Gets the backing array of values, for compiled code which operates on the slots directly.
+     *
+     * @return The backing array of values.
+     */
+    int[] values() {
+        return this.values;
+    }
+
+    /**
+     * Clears all variables, marking every slot as undefined.
+     */
+    public void clear() {
+        Arrays.fill(this.values, 0);
+        Arrays.fill(this.defined, 0L);
+    }
+
+    /**
+     * Creates a snapshot of the defined variables, keyed by name.
+     * This allocates and is intended for debugging, not for use whilst executing.
+     *
+     * @return An unmodifiable map of variable names to values.
+     */
+    public @NotNull Map<String, Integer> toMap() {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for (int slot = 0; slot < this.values.length; slot++) {
+            if (this.isDefined(slot)) {
+                map.put(this.names.apply(slot), this.values[slot]);
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private void grow(int slot) {
+        int size = Math.max(slot + 1, this.values.length * 2);
+        this.values = Arrays.copyOf(this.values, size);
+        this.defined = Arrays.copyOf(this.defined, (size + 63) >>> 6);
+    }
+
+    @Override
+    public String toString() {
+        return this.toMap().toString();
+    }
+}
@@ -0,0 +1,169 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An {@link InputSource} which parses whitespace-separated decimal integers from a byte channel.
+ * <br/>
+ * Input is read a buffer at a time and parsed by hand, avoiding the regular expressions and allocations
+ * of {@link java.util.Scanner}.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class AsciiInputSource implements InputSource {
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean endOfStream;
+    private RuntimeException failure; // deferred until the integers read before it have been returned
+
+    private AsciiInputSource(ReadableByteChannel channel, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(capacity).flip(); // start empty
+    }
+
+    //region Factory Methods
+    /**
+     * Creates a source which reads from the given channel.
+     *
+     * @param channel The channel to read from.
+     * @param capacity The size of the buffer, in bytes.
+     * @return The source.
+     */
+    public static @NotNull AsciiInputSource of(@NotNull ReadableByteChannel channel, int capacity) {
+        return new AsciiInputSource(channel, capacity);
+    }
+
+    /**
+     * Creates a source which reads from the given stream, with the default capacity.
+     *
+     * @param stream The stream to read from.
+     * @return The source.
+     */
+    public static @NotNull AsciiInputSource of(@NotNull InputStream stream) {
+        return new AsciiInputSource(Channels.newChannel(stream), DEFAULT_CAPACITY);
+    }
+    //endregion
+
+    @Override
+    public int getInput() {
+        this.throwFailure();
+        int next = this.skipWhitespace();
+        if (next == -1) {
+            throw new IllegalStateException("No more input");
+        }
+        return this.parseInt(next);
+    }
+
+    @Override
+    public int read(int[] destination, int offset, int length) {
+        this.throwFailure();
+        int count = 0;
+        try {
+            while (count < length) {
+                int next = this.skipWhitespace();
+                if (next == -1) {
+                    break;
+                }
+                destination[offset + count] = this.parseInt(next);
+                count++;
+            }
+        } catch (RuntimeException e) {
+            if (count == 0) {
+                throw e;
+            }
+            this.failure = e;
+        }
+        return count == 0 && length > 0 ? -1 : count;
+    }
+
+    //region Helper Methods
+    private void throwFailure() {
+        RuntimeException failure = this.failure;
+        if (failure != null) {
+            this.failure = null;
+            throw failure;
+        }
+    }
+
+    private int parseInt(int first) {
+        boolean negative = first == '-';
+        int next = negative ? this.nextByte() : first;
+        if (next < '0' || next > '9') {
+            throw new IllegalStateException("Invalid input, expected a digit: " + describe(next));
+        }
+
+        // Accumulate negatively, so that Integer.MIN_VALUE can be represented
+        int value = 0;
+        do {
+            int digit = next - '0';
+            if (value < (Integer.MIN_VALUE + digit) / 10) {
+                throw new IllegalStateException("Input is out of range for an integer");
+            }
+            value = value * 10 - digit;
+            next = this.nextByte();
+        } while (next >= '0' && next <= '9');
+
+        if (next != -1 && next > ' ') {
+            throw new IllegalStateException("Invalid input, expected whitespace: " + describe(next));
+        }
+        if (!negative) {
+            if (value == Integer.MIN_VALUE) {
+                throw new IllegalStateException("Input is out of range for an integer");
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    private int skipWhitespace() {
+        int next;
+        do {
+            next = this.nextByte();
+        } while (next != -1 && next <= ' ');
+        return next;
+    }
+
+    private int nextByte() {
+        if (!this.buffer.hasRemaining() && !this.fill()) {
+            return -1;
+        }
+        return this.buffer.get() & 0xFF;
+    }
+
+    private boolean fill() {
+        if (this.endOfStream) {
+            return false;
+        }
+        this.buffer.clear();
+        try {
+            int read;
+            do {
+                read = this.channel.read(this.buffer);
+            } while (read == 0);
+            this.endOfStream = read == -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read input", e);
+        } finally {
+            this.buffer.flip();
+        }
+        return this.buffer.hasRemaining();
+    }
+
+    private static String describe(int next) {
+        return next == -1 ? "end of input" : "'" + (char) next + "'";
+    }
+    //endregion
+}
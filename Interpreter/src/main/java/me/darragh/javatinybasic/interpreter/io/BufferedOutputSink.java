@@ -0,0 +1,173 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An {@link OutputSink} which encodes output into a reusable byte buffer, writing it to a
+ * {@link WritableByteChannel} or {@link OutputStream} according to its {@link FlushPolicy}.
+ * <br/>
+ * Lines are terminated with {@code '\n'}. Nothing is allocated per write once the sink has been created.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class BufferedOutputSink implements OutputSink {
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final int MAX_INT_LENGTH = 11; // "-2147483648"
+
+    private final Backend backend;
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+    @Getter
+    private final FlushPolicy flushPolicy;
+
+    private BufferedOutputSink(Backend backend, int capacity, FlushPolicy flushPolicy) {
+        if (capacity < MAX_INT_LENGTH + 1) {
+            throw new IllegalArgumentException("Capacity is too small: " + capacity);
+        }
+        this.backend = backend;
+        this.buffer = ByteBuffer.allocate(capacity);
+        this.bytes = this.buffer.array();
+        this.flushPolicy = flushPolicy;
+    }
+
+    //region Factory Methods
+    /**
+     * Creates a sink which writes to the given channel.
+     *
+     * @param channel The channel to write to.
+     * @param capacity The size of the buffer, in bytes.
+     * @param flushPolicy When to write the buffer to the channel.
+     * @return The sink.
+     */
+    public static @NotNull BufferedOutputSink of(@NotNull WritableByteChannel channel, int capacity, @NotNull FlushPolicy flushPolicy) {
+        return new BufferedOutputSink(buffer -> {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }, capacity, flushPolicy);
+    }
+
+    /**
+     * Creates a sink which writes to the given stream.
+     * The stream is flushed whenever the sink is.
+     *
+     * @param stream The stream to write to.
+     * @param capacity The size of the buffer, in bytes.
+     * @param flushPolicy When to write the buffer to the stream.
+     * @return The sink.
+     */
+    public static @NotNull BufferedOutputSink of(@NotNull OutputStream stream, int capacity, @NotNull FlushPolicy flushPolicy) {
+        return new BufferedOutputSink(buffer -> {
+            stream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            stream.flush();
+        }, capacity, flushPolicy);
+    }
+
+    /**
+     * Creates a sink which writes to the given stream, with the default capacity, flushing once the buffer is full.
+     *
+     * @param stream The stream to write to.
+     * @return The sink.
+     */
+    public static @NotNull BufferedOutputSink of(@NotNull OutputStream stream) {
+        return of(stream, DEFAULT_CAPACITY, FlushPolicy.FULL);
+    }
+    //endregion
+
+    @Override
+    public void writeInt(int value) {
+        this.ensureCapacity(MAX_INT_LENGTH);
+
+        int position = this.buffer.position();
+        if (value < 0) {
+            this.bytes[position++] = '-';
+        }
+
+        // Write the digits backwards, working with a negative value so that Integer.MIN_VALUE is handled
+        int negative = value < 0 ? value : -value;
+        int end = position + stringSize(negative);
+        int index = end;
+        do {
+            int quotient = negative / 10;
+            this.bytes[--index] = (byte) ('0' + (quotient * 10 - negative));
+            negative = quotient;
+        } while (negative != 0);
+
+        this.buffer.position(end);
+    }
+
+    @Override
+    public void writeByte(byte value) {
+        this.ensureCapacity(1);
+        this.buffer.put(value);
+    }
+
+    @Override
+    public void writeBytes(byte @NotNull [] bytes) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!this.buffer.hasRemaining()) {
+                this.drain();
+            }
+            int length = Math.min(bytes.length - offset, this.buffer.remaining());
+            this.buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    @Override
+    public void endLine() {
+        this.writeByte((byte) '\n');
+        if (this.flushPolicy == FlushPolicy.LINE) {
+            this.flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (this.buffer.position() > 0) {
+            this.drain();
+        }
+    }
+
+    //region Helper Methods
+    private void ensureCapacity(int length) {
+        if (this.buffer.remaining() < length) {
+            this.drain();
+        }
+    }
+
+    private void drain() {
+        this.buffer.flip();
+        try {
+            this.backend.write(this.buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write output", e);
+        } finally {
+            this.buffer.clear();
+        }
+    }
+
+    private static int stringSize(int negative) {
+        int size = 1;
+        for (int bound = -10; size < 10 && negative <= bound; bound *= 10) {
+            size++;
+        }
+        return size;
+    }
+    //endregion
+
+    @FunctionalInterface
+    private interface Backend {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+}
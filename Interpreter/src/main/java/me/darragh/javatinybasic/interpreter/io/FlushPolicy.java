@@ -0,0 +1,18 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+/**
+ * Determines when a {@link BufferedOutputSink} writes its buffer to the underlying destination.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public enum FlushPolicy {
+    /**
+     * Flush at the end of every line, for interactive programs.
+     */
+    LINE,
+    /**
+     * Flush only once the buffer is full, or when explicitly flushed.
+     */
+    FULL
+}
@@ -0,0 +1,34 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import me.darragh.javatinybasic.interpreter.InterpreterInputEvent;
+
+/**
+ * A source of integers for INPUT statements which can also be read in bulk.
+ * <br/>
+ * As an {@link InterpreterInputEvent}, it can be passed straight to the interpreter.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public interface InputSource extends InterpreterInputEvent {
+    /**
+     * Reads the next integer.
+     *
+     * @return The next integer.
+     * @throws IllegalStateException If the source has been exhausted.
+     */
+    @Override
+    int getInput();
+
+    /**
+     * Reads up to {@code length} integers into the given array.
+     * If the source fails part way through, the integers read before the failure are returned first, and the failure
+     * is thrown by the next read.
+     *
+     * @param destination The array to read into.
+     * @param offset The index of the array to start writing at.
+     * @param length The maximum number of integers to read.
+     * @return The number of integers read, or {@code -1} if the source has been exhausted.
+     */
+    int read(int[] destination, int offset, int length);
+}
@@ -0,0 +1,91 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An {@link InputSource} which reads from an {@link IntBuffer}, such as a wrapped array or a memory-mapped file.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class IntBufferInputSource implements InputSource {
+    private final IntBuffer buffer;
+
+    private IntBufferInputSource(IntBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    //region Factory Methods
+    /**
+     * Creates a source which reads the given values in order.
+     * The array is not copied.
+     *
+     * @param values The values to read.
+     * @return The source.
+     */
+    public static @NotNull IntBufferInputSource of(int @NotNull ... values) {
+        return new IntBufferInputSource(IntBuffer.wrap(values));
+    }
+
+    /**
+     * Creates a source which reads the remaining values of the given buffer.
+     * The buffer is duplicated, so its position is left untouched.
+     *
+     * @param buffer The buffer to read.
+     * @return The source.
+     */
+    public static @NotNull IntBufferInputSource of(@NotNull IntBuffer buffer) {
+        return new IntBufferInputSource(buffer.duplicate());
+    }
+
+    /**
+     * Creates a source which reads a binary file of 32-bit integers by mapping it into memory.
+     *
+     * @param path The file to read.
+     * @param order The byte order of the integers in the file.
+     * @return The source.
+     * @throws IllegalArgumentException If the length of the file is not a multiple of four bytes.
+     * @throws UncheckedIOException If the file cannot be mapped.
+     */
+    public static @NotNull IntBufferInputSource map(@NotNull Path path, @NotNull ByteOrder order) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % Integer.BYTES != 0) {
+                throw new IllegalArgumentException("File length is not a multiple of %s bytes: %s".formatted(Integer.BYTES, path));
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // remains valid once closed
+            return new IntBufferInputSource(mapped.order(order).asIntBuffer());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map input file " + path, e);
+        }
+    }
+    //endregion
+
+    @Override
+    public int getInput() {
+        if (!this.buffer.hasRemaining()) {
+            throw new IllegalStateException("No more input");
+        }
+        return this.buffer.get();
+    }
+
+    @Override
+    public int read(int[] destination, int offset, int length) {
+        int remaining = this.buffer.remaining();
+        if (remaining == 0) {
+            return -1;
+        }
+        int count = Math.min(length, remaining);
+        this.buffer.get(destination, offset, count);
+        return count;
+    }
+}
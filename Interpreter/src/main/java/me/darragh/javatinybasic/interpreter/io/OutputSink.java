@@ -0,0 +1,45 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the output of PRINT statements piece by piece, as an alternative to
+ * {@link me.darragh.javatinybasic.interpreter.InterpreterOutputEvent}.
+ * <br/>
+ * Values are written as they are evaluated, so no intermediate strings need to be built for each line.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public interface OutputSink {
+    /**
+     * Writes an integer value in decimal.
+     *
+     * @param value The value to write.
+     */
+    void writeInt(int value);
+
+    /**
+     * Writes a single byte, such as a separator.
+     *
+     * @param value The byte to write.
+     */
+    void writeByte(byte value);
+
+    /**
+     * Writes a pre-encoded string literal.
+     *
+     * @param bytes The UTF-8 encoded literal.
+     */
+    void writeBytes(byte @NotNull [] bytes);
+
+    /**
+     * Ends the current line.
+     */
+    void endLine();
+
+    /**
+     * Writes any buffered output to the underlying destination.
+     */
+    void flush();
+}
@@ -0,0 +1,160 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An {@link InputSource} which reads another source ahead of time on a background thread, in blocks.
+ * <br/>
+ * Blocks are recycled between the two threads, so nothing is allocated once the source is running.
+ * Any exception thrown by the underlying source is rethrown once the blocks read before it have been consumed.
+ * Once closed, reads end as though the source were exhausted, rather than waiting for the background thread.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class PrefetchingInputSource implements InputSource, AutoCloseable {
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    public static final int DEFAULT_DEPTH = 4;
+
+    private static final Block END = new Block(0);
+
+    private final BlockingQueue<Block> filled, free;
+    private final Thread thread;
+    private volatile RuntimeException failure;
+
+    private Block block;
+    private int position;
+    private boolean exhausted;
+
+    private PrefetchingInputSource(InputSource source, int blockSize, int depth) {
+        if (blockSize < 1 || depth < 1) {
+            throw new IllegalArgumentException("Block size and depth must be positive: %s, %s".formatted(blockSize, depth));
+        }
+        this.filled = new ArrayBlockingQueue<>(depth + 3); // room for every block and an end marker from each thread
+        this.free = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i <= depth; i++) {
+            this.free.add(new Block(blockSize));
+        }
+        this.block = END;
+        this.thread = Thread.ofPlatform()
+                .daemon()
+                .name("tiny-basic-input-prefetch")
+                .start(() -> this.prefetch(source));
+    }
+
+    //region Factory Methods
+    /**
+     * Creates a source which prefetches from the given source.
+     *
+     * @param source The source to read ahead of time.
+     * @param blockSize The number of integers read at a time.
+     * @param depth The number of blocks which may be read ahead.
+     * @return The source.
+     */
+    public static @NotNull PrefetchingInputSource of(@NotNull InputSource source, int blockSize, int depth) {
+        return new PrefetchingInputSource(source, blockSize, depth);
+    }
+
+    /**
+     * Creates a source which prefetches from the given source, with the default block size and depth.
+     *
+     * @param source The source to read ahead of time.
+     * @return The source.
+     */
+    public static @NotNull PrefetchingInputSource of(@NotNull InputSource source) {
+        return new PrefetchingInputSource(source, DEFAULT_BLOCK_SIZE, DEFAULT_DEPTH);
+    }
+    //endregion
+
+    @Override
+    public int getInput() {
+        if (this.position == this.block.length && !this.advance()) {
+            throw new IllegalStateException("No more input");
+        }
+        return this.block.values[this.position++];
+    }
+
+    @Override
+    public int read(int[] destination, int offset, int length) {
+        int count = 0;
+        while (count < length) {
+            if (this.position == this.block.length && !this.advance()) {
+                break;
+            }
+            int copied = Math.min(length - count, this.block.length - this.position);
+            System.arraycopy(this.block.values, this.position, destination, offset + count, copied);
+            this.position += copied;
+            count += copied;
+        }
+        return count == 0 && length > 0 ? -1 : count;
+    }
+
+    /**
+     * Stops reading ahead. Any values which have already been prefetched may still be read.
+     */
+    @Override
+    public void close() {
+        this.thread.interrupt();
+        this.filled.offer(END); // the thread may be blocked reading the underlying source
+    }
+
+    //region Helper Methods
+    private boolean advance() {
+        if (this.exhausted) {
+            return false;
+        }
+        if (this.block != END) {
+            this.free.add(this.block);
+        }
+
+        try {
+            this.block = this.filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for input", e);
+        }
+        this.position = 0;
+
+        if (this.block == END) {
+            this.exhausted = true;
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private void prefetch(InputSource source) {
+        try {
+            while (true) {
+                Block block = this.free.take();
+                int read = source.read(block.values, 0, block.values.length);
+                if (read == -1) {
+                    break;
+                }
+                block.length = read;
+                this.filled.put(block);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            this.failure = e; // the blocks read before it have already been published
+        } finally {
+            this.filled.offer(END);
+        }
+    }
+    //endregion
+
+    private static final class Block {
+        private final int[] values;
+        private int length;
+
+        private Block(int capacity) {
+            this.values = new int[capacity];
+        }
+    }
+}
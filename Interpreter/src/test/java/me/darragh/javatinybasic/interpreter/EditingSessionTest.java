@@ -0,0 +1,135 @@
+package me.darragh.javatinybasic.interpreter;
+
+import me.darragh.javatinybasic.parser.ParserInvalidLineException;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests editing a program a line at a time, which must allow jumps to lines which do not exist until they are executed.
+ */
+class EditingSessionTest {
+    @Test
+    void linesMayTargetLinesEnteredLater() throws Exception {
+        assertAllModes("2|", session -> {
+            enter(session, "10 GOTO 30");
+            enter(session, "20 PRINT 1");
+            enter(session, "30 PRINT 2");
+        });
+    }
+
+    @Test
+    void removingATargetedLineIsOnlyReportedWhenTheJumpIsExecuted() throws Exception {
+        assertAllModes("!! GOTO on line 10 targets a line that does not exist: 30", session -> {
+            enter(session, "10 GOTO 30");
+            enter(session, "20 PRINT 1");
+            enter(session, "30 PRINT 2");
+            assertTrue(session.remove(30));
+            assertTrue(session.getProgram().hasUnresolvedTargets());
+        });
+    }
+
+    @Test
+    void reenteringARemovedLineResolvesItsJumps() throws Exception {
+        assertAllModes("1|3|", session -> {
+            enter(session, "10 GOSUB 40");
+            enter(session, "20 PRINT 3");
+            enter(session, "30 END");
+            enter(session, "40 PRINT 1");
+            enter(session, "50 RETURN");
+            session.remove(40);
+            enter(session, "40 PRINT 1");
+            assertFalse(session.getProgram().hasUnresolvedTargets());
+        });
+    }
+
+    @Test
+    void jumpsToMissingLinesWhichAreNotTakenAreHarmless() throws Exception {
+        assertAllModes("1|", session -> {
+            enter(session, "10 IF 1 = 2 THEN 99");
+            enter(session, "20 PRINT 1");
+        });
+    }
+
+    @Test
+    void compiledLoopsLeaveMissingLinesToTheInterpreter() throws Exception {
+        assertAllModes("!! IF on line 30 targets a line that does not exist: 99", session -> {
+            enter(session, "10 LET I = 0");
+            enter(session, "20 LET I = I + 1");
+            enter(session, "30 IF I = 50 THEN 99");
+            enter(session, "40 IF I < 100 THEN 20");
+        });
+    }
+
+    @Test
+    void lineNumbersBelowOneAreRejected() {
+        EditingSession session = new EditingSession(() -> 0, line -> {}, () -> {});
+        enter(session, "10 PRINT 1");
+        for (String line : new String[] { "0", "00", "0 REM removed", "0 PRINT 1" }) {
+            ParserInvalidLineException exception = assertThrows(ParserInvalidLineException.class, () -> session.enter(line), line);
+            assertTrue(exception.getMessage().startsWith("Line number must be a positive integer:"), exception.getMessage());
+        }
+        assertEquals(1, session.getProgram().size());
+    }
+
+    @Test
+    void pendingReturnsResumeAfterTheirGosubLine() {
+        // Suspended within the subroutine, a line is inserted straight after the GOSUB
+        assertResumesInAllModes("inserted|back|", session -> enter(session, "15 PRINT \"inserted\""));
+
+        // Removing the GOSUB line as well still resumes after where it was
+        assertResumesInAllModes("inserted|back|", session -> {
+            enter(session, "15 PRINT \"inserted\"");
+            assertTrue(session.remove(10));
+        });
+    }
+
+    private static void assertAllModes(String expected, Consumer<EditingSession> edits) {
+        assertEquals(expected, run(edits, interpreter -> {}), "interpreted");
+        assertEquals(expected, run(edits, Interpreter::enableBlockExecution), "blocks");
+        assertEquals(expected, run(edits, interpreter -> interpreter.enableTieredCompilation(1)), "tiered");
+    }
+
+    private static String run(Consumer<EditingSession> edits, Consumer<Interpreter> mode) {
+        return ProgramOutput.interpret(output -> {
+            EditingSession session = new EditingSession(() -> 0, output, () -> {});
+            mode.accept(session.getInterpreter());
+            edits.accept(session);
+            return session.getInterpreter();
+        });
+    }
+
+    private static void assertResumesInAllModes(String expected, Consumer<EditingSession> edits) {
+        assertEquals(expected, resume(edits, interpreter -> {}), "interpreted");
+        assertEquals(expected, resume(edits, Interpreter::enableBlockExecution), "blocks");
+        assertEquals(expected, resume(edits, interpreter -> interpreter.enableTieredCompilation(1)), "tiered");
+    }
+
+    /**
+     * Runs a program until it is suspended within a subroutine, then edits it and runs it on to the end.
+     */
+    private static String resume(Consumer<EditingSession> edits, Consumer<Interpreter> mode) {
+        return ProgramOutput.collect(output -> {
+            EditingSession session = new EditingSession(() -> 0, output, () -> {});
+            Interpreter interpreter = session.getInterpreter();
+            mode.accept(interpreter);
+            enter(session, "10 GOSUB 100");
+            enter(session, "20 PRINT \"back\"");
+            enter(session, "30 END");
+            enter(session, "100 FOR I = 1 TO 1000");
+            enter(session, "110 NEXT I");
+            enter(session, "120 RETURN");
+            interpreter.wipe();
+            assertEquals(ExecutionState.SUSPENDED, interpreter.run(10));
+            assertEquals(1, interpreter.getReturnDepth());
+            edits.accept(session);
+            assertEquals(ExecutionState.FINISHED, interpreter.run(Long.MAX_VALUE));
+        });
+    }
+
+    private static void enter(EditingSession session, String line) {
+        assertDoesNotThrow(() -> session.enter(line));
+    }
+}
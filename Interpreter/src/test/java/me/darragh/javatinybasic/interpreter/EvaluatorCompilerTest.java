@@ -0,0 +1,88 @@
+package me.darragh.javatinybasic.interpreter;
+
+import me.darragh.javatinybasic.ast.expression.LiteralValueExpression;
+import me.darragh.javatinybasic.ast.expression.MathematicalExpression;
+import me.darragh.javatinybasic.ast.expression.ValueExpression;
+import me.darragh.javatinybasic.ast.expression.VariableValueExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import org.junit.jupiter.api.Test;
+
+import static me.darragh.javatinybasic.ast.langauge.LArithmeticOperator.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests compiling expressions into evaluators, which must evaluate strictly left to right, and only fuse a literal
+ * operand where doing so keeps the result.
+ */
+class EvaluatorCompilerTest {
+    private static final String[] NAMES = { "A", "B" };
+
+    @Test
+    void expressionsEvaluateLeftToRight() {
+        // (2 + A) * 3 - B / 2, with A = 4 and B = 6
+        Evaluator evaluator = compile(math(new ValueExpression[] { literal(2), variable("A"), literal(3), variable("B"), literal(2) },
+                ADD, MULTIPLY, SUBTRACT, DIVIDE));
+        assertEquals(6, evaluator.evaluate(variables(4, 6)));
+    }
+
+    @Test
+    void literalsAreFusedIntoTheirNode() {
+        assertInstanceOf(EvaluatorCompiler.AddLiteral.class, compile(math(variable("A"), ADD, literal(1))));
+        assertInstanceOf(EvaluatorCompiler.DivideLiteral.class, compile(math(variable("A"), DIVIDE, literal(2))));
+
+        // Only commutative operators may swap a literal on the left to the right
+        Evaluator multiply = compile(math(literal(3), MULTIPLY, variable("A")));
+        assertInstanceOf(EvaluatorCompiler.MultiplyLiteral.class, multiply);
+        assertEquals(15, multiply.evaluate(variables(5, 0)));
+        Evaluator subtract = compile(math(literal(3), SUBTRACT, variable("A")));
+        assertInstanceOf(EvaluatorCompiler.Subtract.class, subtract);
+        assertEquals(-2, subtract.evaluate(variables(5, 0)));
+    }
+
+    @Test
+    void divisionByZeroFailsWhenEvaluated() {
+        Evaluator literal = compile(math(variable("A"), DIVIDE, literal(0))),
+                variable = compile(math(variable("A"), DIVIDE, variable("B")));
+        assertEquals(3, variable.evaluate(variables(6, 2)));
+        assertThrows(ArithmeticException.class, () -> literal.evaluate(variables(6, 0)));
+        assertThrows(ArithmeticException.class, () -> variable.evaluate(variables(6, 0)));
+    }
+
+    @Test
+    void unassignedVariablesFailWhenRead() {
+        Evaluator evaluator = compile(math(literal(1), ADD, variable("B")));
+        Variables variables = new Variables(NAMES);
+        variables.set(0, 1);
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> evaluator.evaluate(variables));
+        assertEquals("Variable not found: B", exception.getMessage());
+    }
+
+    //region Helpers
+    private static Evaluator compile(ValueExpression expression) {
+        return EvaluatorCompiler.compile(expression, name -> name.equals("A") ? 0 : 1);
+    }
+
+    private static Variables variables(int a, int b) {
+        Variables variables = new Variables(NAMES);
+        variables.set(0, a);
+        variables.set(1, b);
+        return variables;
+    }
+
+    private static MathematicalExpression math(ValueExpression left, LArithmeticOperator operator, ValueExpression right) {
+        return math(new ValueExpression[] { left, right }, operator);
+    }
+
+    private static MathematicalExpression math(ValueExpression[] values, LArithmeticOperator... operators) {
+        return new MathematicalExpression(values, operators);
+    }
+
+    private static ValueExpression literal(int value) {
+        return new LiteralValueExpression(value);
+    }
+
+    private static ValueExpression variable(String name) {
+        return new VariableValueExpression(name);
+    }
+    //endregion
+}
@@ -0,0 +1,82 @@
+package me.darragh.javatinybasic.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.assertAllModes;
+
+/**
+ * Tests FOR/NEXT loops, which must behave the same whichever way a program is linked or executed.
+ */
+class ForLoopTest {
+    private static final String GOTO_INTO_LOOP = """
+            10 FOR I = 1 TO 2
+            20 GOTO 50
+            30 FOR I = 1 TO 2
+            40 PRINT 0
+            50 PRINT I
+            60 NEXT I
+            """;
+
+    private static final String SHARED_NEXT = """
+            10 FOR I = 1 TO 4
+            20 IF I > 2 THEN 50
+            30 PRINT I
+            40 NEXT I
+            50 PRINT I * 10
+            60 NEXT I
+            """;
+
+    @Test
+    void nextContinuesTheActiveLoopOverItsVariable() throws Exception {
+        assertAllModes("1|2|", GOTO_INTO_LOOP);
+    }
+
+    @Test
+    void nextSharedBetweenBranchesContinuesTheSameLoop() throws Exception {
+        assertAllModes("1|2|30|40|", SHARED_NEXT);
+    }
+
+    @Test
+    void boundsAreEvaluatedOnceOnEntry() throws Exception {
+        assertAllModes("1|2|3|6|", """
+                10 LET N = 3
+                20 FOR I = 1 TO N
+                30 LET N = N + 1
+                40 PRINT I
+                50 NEXT I
+                60 PRINT N
+                """);
+    }
+
+    @Test
+    void negativeStepCountsDown() throws Exception {
+        assertAllModes("3|1|-1|", """
+                10 LET S = 0 - 2
+                15 LET E = 0 - 1
+                20 FOR I = 3 TO E STEP S
+                30 PRINT I
+                40 NEXT I
+                """);
+    }
+
+    @Test
+    void forRestartsItsActiveLoop() throws Exception {
+        assertAllModes("1|1|2|3|", """
+                10 LET R = 0
+                20 FOR I = 1 TO 3
+                30 PRINT I
+                40 IF R = 1 THEN 70
+                50 LET R = 1
+                60 GOTO 20
+                70 NEXT I
+                """);
+    }
+
+    @Test
+    void nextWithoutForFails() throws Exception {
+        assertAllModes("1|!! NEXT without matching FOR for variable: J", """
+                10 PRINT 1
+                20 NEXT J
+                """);
+    }
+}
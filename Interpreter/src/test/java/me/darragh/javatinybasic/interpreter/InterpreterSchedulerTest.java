@@ -0,0 +1,96 @@
+package me.darragh.javatinybasic.interpreter;
+
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests running interpreters a slice at a time, which must preempt loops compiled by the {@link TieredCompiler}.
+ */
+class InterpreterSchedulerTest {
+    private static final String ENDLESS_LOOP = """
+            10 LET I = 0
+            20 LET I = I + 1
+            30 GOTO 20
+            """;
+
+    private static final String NESTED_LOOPS = """
+            10 LET T = 0
+            20 FOR I = 1 TO 40
+            30 FOR J = 1 TO I
+            40 LET T = T + J
+            50 NEXT J
+            60 PRINT T
+            70 NEXT I
+            """;
+
+    @Test
+    void compiledLoopIsSuspendedWhenItsStepsRunOut() throws Exception {
+        Interpreter interpreter = create(ENDLESS_LOOP, new StringBuilder());
+        interpreter.enableTieredCompilation(1);
+        interpreter.wipe();
+
+        CompletableFuture<ExecutionState> state = CompletableFuture.supplyAsync(() -> interpreter.run(100_000));
+        assertEquals(ExecutionState.SUSPENDED, state.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void slicedRunMatchesRun() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        create(NESTED_LOOPS, expected).run();
+
+        for (int slice : new int[] { 1, 2, 7, 100 }) {
+            StringBuilder output = new StringBuilder();
+            Interpreter interpreter = create(NESTED_LOOPS, output);
+            interpreter.enableTieredCompilation(1);
+            interpreter.wipe();
+            while (interpreter.run(slice) == ExecutionState.SUSPENDED)
+                ;
+            assertEquals(expected.toString(), output.toString(), "slice " + slice);
+        }
+    }
+
+    @Test
+    void endlessCompiledLoopDoesNotStarveOtherInterpreters() throws Exception {
+        StringBuilder output = new StringBuilder();
+        Interpreter endless = create(ENDLESS_LOOP, new StringBuilder());
+        endless.enableTieredCompilation(1);
+        Interpreter finite = create(NESTED_LOOPS, output);
+
+        try (InterpreterScheduler scheduler = new InterpreterScheduler(1)) {
+            CompletableFuture<Interpreter> endlessFuture = scheduler.submit(endless, 1, 1_000, 1_000_000);
+            CompletableFuture<Interpreter> finiteFuture = scheduler.submit(finite);
+
+            assertSame(finite, finiteFuture.get(10, TimeUnit.SECONDS));
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> endlessFuture.get(10, TimeUnit.SECONDS));
+            assertEquals("Step limit exceeded: 1000000", exception.getCause().getMessage());
+        }
+        assertTrue(output.toString().endsWith("|11480|"));
+    }
+
+    @Test
+    void errorInOneInterpreterDoesNotStopTheCarrier() throws Exception {
+        StringBuilder output = new StringBuilder();
+        Interpreter failing = new Interpreter(Program.link(Parser.parse("10 PRINT 1\n")), () -> 0, line -> {
+            throw new StackOverflowError();
+        }, () -> {});
+        Interpreter finite = create(NESTED_LOOPS, output);
+
+        try (InterpreterScheduler scheduler = new InterpreterScheduler(1)) {
+            CompletableFuture<Interpreter> failingFuture = scheduler.submit(failing);
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> failingFuture.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(StackOverflowError.class, exception.getCause());
+            assertSame(finite, scheduler.submit(finite).get(10, TimeUnit.SECONDS));
+        }
+        assertTrue(output.toString().endsWith("|11480|"));
+    }
+
+    private static Interpreter create(String source, StringBuilder output) throws Exception {
+        return new Interpreter(Program.link(Parser.parse(source)), () -> 0, line -> output.append(line).append('|'), () -> {});
+    }
+}
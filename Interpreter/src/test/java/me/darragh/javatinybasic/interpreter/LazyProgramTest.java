@@ -0,0 +1,85 @@
+package me.darragh.javatinybasic.interpreter;
+
+import me.darragh.javatinybasic.parser.LineIndex;
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.interpret;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests programs linked lazily, which only give variables their slots as the lines using them are reached.
+ */
+class LazyProgramTest {
+    @Test
+    void longVariableNamesAreGivenSlotsWhenReached() throws Exception {
+        assertMatchesEager("""
+                10 LET FOO = 1
+                20 LET BAR = 2
+                30 PRINT 3
+                """);
+    }
+
+    @Test
+    void longVariableNamesCanBeAssignedInCompiledLoops() throws Exception {
+        assertMatchesEager("""
+                10 FOR I = 1 TO 5
+                20 LET TOTAL = I * 2
+                30 NEXT I
+                40 PRINT I
+                """);
+    }
+
+    @Test
+    void missingTargetFailsWhenReached() throws Exception {
+        String source = """
+                10 PRINT 1
+                20 IF 1 = 1 THEN 99
+                30 PRINT 2
+                """;
+        assertEquals("1|!! IF on line 20 targets a line that does not exist: 99", interpret(Program.lazy(LineIndex.of(source))));
+        assertEquals("1|!! GOSUB on line 20 targets a line that does not exist: 99",
+                interpret(Program.lazy(LineIndex.of(source.replace("IF 1 = 1 THEN", "GOSUB")))));
+    }
+
+    @Test
+    void sharedProgramLinksSafelyAcrossThreads() throws Exception {
+        StringBuilder source = new StringBuilder("1 LET A = 0\n");
+        for (int i = 0; i < 200; i++) {
+            source.append(10 + i * 10).append(" LET ").append(name(i)).append(" = ").append(i).append('\n');
+            source.append(15 + i * 10).append(" LET A = A + ").append(i).append('\n');
+        }
+        source.append("5000 PRINT A\n");
+        String expected = interpret(Program.link(Parser.parse(source.toString())));
+
+        // A tiny cache links the lines again and again, with every thread allocating slots at once
+        Program program = Program.lazy(LineIndex.of(source.toString()), 2);
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> interpret(program)));
+            }
+            for (Future<String> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        }
+        assertEquals(26 + 200, program.getVariableCount());
+    }
+
+    private static void assertMatchesEager(String source) throws Exception {
+        String expected = interpret(Program.link(Parser.parse(source)));
+        assertEquals(expected, interpret(Program.lazy(LineIndex.of(source))), "lazy");
+        assertEquals(expected, interpret(Program.lazy(LineIndex.of(source)), interpreter -> interpreter.enableTieredCompilation(1)),
+                "tiered");
+    }
+
+    private static String name(int i) {
+        return "V" + (char) ('A' + i / 26) + (char) ('A' + i % 26);
+    }
+}
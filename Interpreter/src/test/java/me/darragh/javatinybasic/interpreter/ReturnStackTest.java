@@ -0,0 +1,116 @@
+package me.darragh.javatinybasic.interpreter;
+
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.assertAllModes;
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.interpret;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the return stack, which must hold no more than the maximum number of pending RETURNs, and none for a GOSUB
+ * which is straight away followed by a RETURN.
+ */
+class ReturnStackTest {
+    private static final String TAIL_RECURSION = """
+            10 LET N = 100000
+            20 GOSUB 100
+            30 PRINT "done", N
+            40 END
+            100 IF N = 0 THEN 130
+            110 LET N = N - 1
+            120 GOSUB 100
+            130 RETURN
+            """;
+
+    private static final String RECURSION = """
+            7 LET D = 0
+            10 GOSUB 100
+            20 PRINT "done", N
+            30 END
+            100 IF N = 0 THEN 140
+            110 LET N = N - 1
+            120 GOSUB 100
+            130 LET D = D + 1
+            140 RETURN
+            """;
+
+    @Test
+    void tailRecursionRunsInConstantSpace() throws Exception {
+        Program program = Program.link(Parser.parse(TAIL_RECURSION));
+        for (Consumer<Interpreter> mode : modes(1)) {
+            assertEquals("done 0|", interpret(program, mode));
+        }
+    }
+
+    @Test
+    void recursionIsLimitedToTheMaximumReturnDepth() throws Exception {
+        // The GOSUB on line 10 and those nine on line 120 fit, and a tenth does not
+        Program fits = Program.link(Parser.parse("5 LET N = 9\n" + RECURSION)),
+                overflows = Program.link(Parser.parse("5 LET N = 10\n" + RECURSION));
+        for (Consumer<Interpreter> mode : modes(10)) {
+            assertEquals("done 0|", interpret(fits, mode));
+            assertEquals("!! GOSUB on line 120 exceeds the maximum return depth of 10", interpret(overflows, mode));
+        }
+    }
+
+    @Test
+    void gosubWithoutReturnAfterItReturnsToTheNextLine() throws Exception {
+        assertAllModes("in|back|done 3|", """
+                10 GOSUB 100
+                20 PRINT "back"
+                30 LET D = 0
+                40 GOSUB 200
+                50 PRINT "done", D
+                60 END
+                100 PRINT "in"
+                110 RETURN
+                200 LET D = D + 1
+                210 IF D = 3 THEN 240
+                220 GOSUB 200
+                230 LET D = D + 0
+                240 RETURN
+                """);
+
+        // With nothing after it, the GOSUB returns to the end of the program
+        assertAllModes("in|", """
+                10 GOTO 110
+                100 PRINT "in"
+                105 RETURN
+                110 GOSUB 100
+                """);
+    }
+
+    @Test
+    void depthsAreReportedWhilstSuspended() throws Exception {
+        Interpreter interpreter = new Interpreter(Parser.parse("""
+                10 GOSUB 100
+                20 END
+                100 FOR I = 1 TO 10
+                110 NEXT I
+                120 RETURN
+                """), () -> 0, line -> {}, () -> {});
+        assertEquals(ExecutionState.SUSPENDED, interpreter.run(3));
+        assertEquals(1, interpreter.getReturnDepth());
+        assertEquals(1, interpreter.getLoopDepth());
+        assertEquals(ExecutionState.FINISHED, interpreter.run(100));
+        assertEquals(0, interpreter.getReturnDepth());
+        assertEquals(0, interpreter.getLoopDepth());
+    }
+
+    /**
+     * Gets the ways to run an eagerly linked program with the given maximum return depth. The lines of a lazy program
+     * are not all parsed, so its GOSUBs are never found in tail position.
+     */
+    private static List<Consumer<Interpreter>> modes(int maxReturnDepth) {
+        Consumer<Interpreter> limit = interpreter -> interpreter.setMaxReturnDepth(maxReturnDepth);
+        return List.of(
+                limit,
+                limit.andThen(Interpreter::enableBlockExecution),
+                limit.andThen(interpreter -> interpreter.enableTieredCompilation(1))
+        );
+    }
+}
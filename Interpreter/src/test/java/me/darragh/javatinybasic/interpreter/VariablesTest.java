@@ -0,0 +1,65 @@
+package me.darragh.javatinybasic.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the primitive variable storage, which must tell assigned slots from unassigned ones wherever they lie in its
+ * bitmap, and grow to hold slots beyond it.
+ */
+class VariablesTest {
+    @Test
+    void unassignedSlotsFailByName() {
+        Variables variables = new Variables(new String[] { "A", "B" });
+        variables.set(0, 0);
+        assertTrue(variables.isDefined(0));
+        assertFalse(variables.isDefined(1));
+        assertEquals(0, variables.get(0));
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> variables.get(1));
+        assertEquals("Variable not found: B", exception.getMessage());
+    }
+
+    @Test
+    void slotsAreTrackedAcrossBitmapWords() {
+        Variables variables = new Variables(130, slot -> "V" + slot);
+        for (int slot : new int[] { 0, 63, 64, 127, 129 }) {
+            variables.set(slot, slot * 10);
+        }
+        for (int slot = 0; slot < 130; slot++) {
+            boolean assigned = slot == 0 || slot == 63 || slot == 64 || slot == 127 || slot == 129;
+            assertEquals(assigned, variables.isDefined(slot), "slot " + slot);
+            if (assigned) {
+                assertEquals(slot * 10, variables.get(slot));
+            }
+        }
+    }
+
+    @Test
+    void assigningBeyondTheStorageGrowsIt() {
+        Variables variables = new Variables(1, slot -> "V" + slot);
+        variables.set(0, 1);
+        assertFalse(variables.isDefined(100));
+        variables.set(100, 2);
+        assertEquals(1, variables.get(0));
+        assertEquals(2, variables.get(100));
+        assertFalse(variables.isDefined(99));
+        assertFalse(variables.isDefined(1000));
+    }
+
+    @Test
+    void clearingUndefinesEverySlot() {
+        Variables variables = new Variables(new String[] { "A", "B", "C" });
+        variables.set(2, 3);
+        variables.set(0, 1);
+        assertEquals(Map.of("A", 1, "C", 3), variables.toMap());
+        assertEquals("{A=1, C=3}", variables.toString()); // in slot order
+
+        variables.clear();
+        assertFalse(variables.isDefined(0));
+        assertFalse(variables.isDefined(2));
+        assertEquals(Map.of(), variables.toMap());
+    }
+}
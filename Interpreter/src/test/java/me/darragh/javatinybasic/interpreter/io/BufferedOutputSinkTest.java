@@ -0,0 +1,57 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import me.darragh.javatinybasic.interpreter.Interpreter;
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests printing through a buffered sink, which must write out everything printed however the program ends.
+ */
+class BufferedOutputSinkTest {
+    private static final String FAILING = """
+            10 PRINT "before", 1
+            20 PRINT "then", 2
+            30 PRINT A
+            """;
+
+    @Test
+    void outputIsWrittenWhenTheProgramFinishes() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Interpreter interpreter = create("10 FOR I = 1 TO 3\n20 PRINT I\n30 NEXT I\n", stream);
+        interpreter.run();
+        assertEquals("1\n2\n3\n", stream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void outputIsWrittenWhenTheProgramFails() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Interpreter interpreter = create(FAILING, stream);
+        IllegalStateException exception = assertThrows(IllegalStateException.class, interpreter::run);
+        assertEquals("Variable not found: A", exception.getMessage());
+        assertEquals("before 1\nthen 2\n", stream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void outputIsWrittenWhenAResumedProgramFails() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Interpreter interpreter = create(FAILING, stream);
+        interpreter.enableBlockExecution();
+        interpreter.wipe();
+        assertThrows(IllegalStateException.class, () -> interpreter.run(10));
+        assertEquals("before 1\nthen 2\n", stream.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates an interpreter which prints only through a sink that is never flushed until it is full.
+     */
+    private static Interpreter create(String source, ByteArrayOutputStream stream) throws Exception {
+        Interpreter interpreter = new Interpreter(Parser.parse(source), () -> 0, line -> fail("printed to the output event"), () -> {});
+        interpreter.setOutputSink(BufferedOutputSink.of(stream, BufferedOutputSink.DEFAULT_CAPACITY, FlushPolicy.FULL));
+        return interpreter;
+    }
+}
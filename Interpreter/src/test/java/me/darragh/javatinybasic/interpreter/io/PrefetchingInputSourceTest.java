@@ -0,0 +1,65 @@
+package me.darragh.javatinybasic.interpreter.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests reading ahead of time, which must return everything read before a failure and never block once closed.
+ */
+class PrefetchingInputSourceTest {
+    @Test
+    void integersReadBeforeAFailureAreReturnedFirst() {
+        InputSource source = AsciiInputSource.of(new ByteArrayInputStream("1 2 x".getBytes(StandardCharsets.US_ASCII)));
+        try (PrefetchingInputSource prefetching = PrefetchingInputSource.of(source)) {
+            assertEquals(1, prefetching.getInput());
+            assertEquals(2, prefetching.getInput());
+            IllegalStateException exception = assertThrows(IllegalStateException.class, prefetching::getInput);
+            assertTrue(exception.getMessage().startsWith("Invalid input"), exception.getMessage());
+        }
+    }
+
+    @Test
+    void exhaustedSourceEndsInput() {
+        try (PrefetchingInputSource prefetching = PrefetchingInputSource.of(IntBufferInputSource.of(1, 2, 3), 2, 1)) {
+            int[] values = new int[4];
+            assertEquals(3, prefetching.read(values, 0, 4)); // across both blocks
+            assertArrayEquals(new int[] { 1, 2, 3, 0 }, values);
+            assertEquals(-1, prefetching.read(values, 0, 4));
+        }
+    }
+
+    @Test
+    void readsAfterCloseDoNotWaitForABlockedSource() throws Exception {
+        PrefetchingInputSource prefetching = PrefetchingInputSource.of(new BlockedInputSource());
+        prefetching.close();
+
+        CompletableFuture<Integer> read = CompletableFuture.supplyAsync(() -> prefetching.read(new int[1], 0, 1));
+        int count = read.get(10, TimeUnit.SECONDS);
+        assertEquals(-1, count);
+        assertThrows(IllegalStateException.class, prefetching::getInput);
+    }
+
+    /**
+     * A source which never returns, like a console nobody types into, and ignores interrupts.
+     */
+    private static final class BlockedInputSource implements InputSource {
+        @Override
+        public int getInput() {
+            return this.read(new int[1], 0, 1);
+        }
+
+        @Override
+        public int read(int[] destination, int offset, int length) {
+            while (true) {
+                LockSupport.park();
+            }
+        }
+    }
+}
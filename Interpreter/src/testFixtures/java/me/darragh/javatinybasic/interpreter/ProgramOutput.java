@@ -0,0 +1,105 @@
+package me.darragh.javatinybasic.interpreter;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.parser.LineIndex;
+import me.darragh.javatinybasic.parser.Parser;
+import me.darragh.javatinybasic.transpiler.Transpiler;
+import me.darragh.javatinybasic.transpiler.TranspiledProgram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs programs for tests, collecting what they print as a single string, with each line followed by {@code |}.
+ * <br/>
+ * A run which fails with an {@link IllegalStateException} ends with {@code !! } and its message, so that failures can be
+ * compared across every way of running a program just as output is.
+ */
+public final class ProgramOutput {
+    private ProgramOutput() {
+    }
+
+    /**
+     * Runs something which prints through the given output event.
+     *
+     * @param run Runs the program, printing through the event it is given.
+     * @return The output.
+     */
+    public static String collect(Consumer<InterpreterOutputEvent> run) {
+        StringBuilder output = new StringBuilder();
+        try {
+            run.accept(line -> output.append(line).append('|'));
+        } catch (IllegalStateException e) {
+            output.append("!! ").append(e.getMessage());
+        }
+        return output.toString();
+    }
+
+    /**
+     * Runs the interpreter created for the given output event.
+     *
+     * @param create Creates the interpreter, printing through the event it is given.
+     * @return The output.
+     */
+    public static String interpret(Function<InterpreterOutputEvent, Interpreter> create) {
+        return collect(output -> create.apply(output).run());
+    }
+
+    /**
+     * Interprets a program, reading 0 for every INPUT.
+     *
+     * @param program The program.
+     * @param mode Configures the interpreter before it is run, such as {@link Interpreter#enableBlockExecution()}.
+     * @return The output.
+     */
+    public static String interpret(Program program, Consumer<Interpreter> mode) {
+        return interpret(output -> {
+            Interpreter interpreter = new Interpreter(program, () -> 0, output, () -> {});
+            mode.accept(interpreter);
+            return interpreter;
+        });
+    }
+
+    public static String interpret(Program program) {
+        return interpret(program, interpreter -> {});
+    }
+
+    /**
+     * Transpiles and runs the given tokens, printing to a stream of their own rather than {@link System#out}.
+     *
+     * @param tokens The tokens of the program.
+     * @return The output.
+     */
+    public static String transpile(List<Token> tokens) {
+        TranspiledProgram program = new Transpiler(tokens).load();
+        return collect(output -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                program.run(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+            } finally {
+                bytes.toString(StandardCharsets.UTF_8).lines().forEach(output::onOutput);
+            }
+        });
+    }
+
+    /**
+     * Asserts that a program prints the same thing whichever way it is linked or executed.
+     *
+     * @param expected The expected output.
+     * @param source The source of the program.
+     */
+    public static void assertAllModes(String expected, String source) throws Exception {
+        Program program = Program.link(Parser.parse(source));
+        assertEquals(expected, interpret(program), "eager");
+        assertEquals(expected, interpret(Program.lazy(LineIndex.of(source))), "lazy");
+        assertEquals(expected, interpret(Program.optimized(Parser.parse(source))), "optimized");
+        assertEquals(expected, interpret(program, Interpreter::enableBlockExecution), "blocks");
+        assertEquals(expected, interpret(program, interpreter -> interpreter.enableTieredCompilation(1)), "tiered");
+    }
+}
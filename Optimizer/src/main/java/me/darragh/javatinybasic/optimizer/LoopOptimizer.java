@@ -0,0 +1,813 @@
+package me.darragh.javatinybasic.optimizer;
+
+import me.darragh.javatinybasic.analysis.BasicBlock;
+import me.darragh.javatinybasic.analysis.ControlFlowGraph;
+import me.darragh.javatinybasic.analysis.Edge;
+import me.darragh.javatinybasic.analysis.EdgeKind;
+import me.darragh.javatinybasic.analysis.NaturalLoop;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.TokenFactory;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * Moves work out of the natural loops of a program, found through its {@link ControlFlowGraph}.
+ * <br/>
+ * Arithmetic which only reads variables a loop never writes is computed once, into a temporary, by lines inserted just
+ * before the header of the loop. Every jump into the loop from elsewhere is redirected to those lines, so they run
+ * whenever the loop is entered. A multiplication of an induction variable, which a loop only changes by a constant
+ * amount each time, such as the variable of a FOR with a literal STEP, is replaced by a temporary which is increased
+ * alongside the variable, so {@code I * K} is kept up to date by adding {@code K * STEP} instead.
+ * <br/>
+ * Temporaries are named {@code $1}, {@code $2} and so on, which no parsed program can refer to. As the interpreter
+ * fails to read a variable which has never been set, nothing is computed ahead of time unless every variable it reads
+ * has been set on every way into the loop, and nothing which could divide by zero is moved at all.
+ * <br/>
+ * Lines are only inserted between existing line numbers, so a loop is left as it is when there is no room before it.
+ * Loops are optimised from the innermost outwards, and nothing is changed in a program with a computed GOTO or GOSUB,
+ * as it could enter a loop anywhere.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+final class LoopOptimizer {
+    private static final String TEMPORARY_PREFIX = "$";
+
+    private final NavigableMap<Integer, Token> lines;
+    private final List<Optimization> optimizations;
+    private int temporaries;
+
+    private LoopOptimizer(NavigableMap<Integer, Token> lines, List<Optimization> optimizations) {
+        this.lines = lines;
+        this.optimizations = optimizations;
+    }
+
+    /**
+     * Optimises every loop of the given lines in place.
+     *
+     * @param lines The lines of the program, by line number.
+     * @param optimizations Where every change is recorded.
+     */
+    static void optimize(NavigableMap<Integer, Token> lines, List<Optimization> optimizations) {
+        new LoopOptimizer(lines, optimizations).optimizeLoops();
+    }
+
+    private void optimizeLoops() {
+        Set<Integer> optimized = new HashSet<>(); // the first line of each loop's header
+        while (true) {
+            ControlFlowGraph graph;
+            try {
+                graph = ControlFlowGraph.of(List.copyOf(this.lines.values()));
+            } catch (IllegalArgumentException e) {
+                return; // left to fail when linked
+            }
+            if (graph.hasComputedJumps() || !isPaired(graph)) {
+                return;
+            }
+
+            List<NaturalLoop> remaining = graph.loops().stream()
+                    .filter(loop -> !optimized.contains(lineNumberOf(graph, graph.block(loop.header()).start())))
+                    .toList();
+            if (remaining.isEmpty()) {
+                return;
+            }
+
+            // Loops either nest or are disjoint, so the innermost loops can be optimised together
+            Map<String, Integer> variables = numberVariables(graph),
+                    assignments = countAssignments(graph);
+            BitSet[] assigned = findAssigned(graph, variables);
+            Map<Integer, List<Integer>> jumps = findJumps(graph);
+            for (NaturalLoop loop : remaining) {
+                if (remaining.stream().anyMatch(other -> other != loop && loop.contains(other.header()))) {
+                    continue;
+                }
+                optimized.add(lineNumberOf(graph, graph.block(loop.header()).start()));
+                new LoopContext(graph, loop, variables, assignments, assigned, jumps).optimize();
+            }
+        }
+    }
+
+    //region Analysis
+    private static Map<String, Integer> numberVariables(ControlFlowGraph graph) {
+        Map<String, Integer> variables = new HashMap<>();
+        for (int i = 0; i < graph.instructionCount(); i++) {
+            String variableName = writtenVariableOf(graph.instruction(i));
+            if (variableName != null) {
+                variables.putIfAbsent(variableName, variables.size());
+            }
+        }
+        return variables;
+    }
+
+    private static Map<String, Integer> countAssignments(ControlFlowGraph graph) {
+        Map<String, Integer> assignments = new HashMap<>();
+        for (int i = 0; i < graph.instructionCount(); i++) {
+            String variableName = writtenVariableOf(graph.instruction(i));
+            if (variableName != null) {
+                assignments.merge(variableName, 1, Integer::sum);
+            }
+        }
+        return assignments;
+    }
+
+    /**
+     * Gets whether every FOR is closed by a NEXT of its own variable, so the interpreter, which loops back to the FOR of
+     * the NEXT's variable, and the transpiler, which loops back to the FOR the NEXT closes in the source, agree.
+     */
+    private static boolean isPaired(ControlFlowGraph graph) {
+        Deque<String> open = new ArrayDeque<>();
+        for (int i = 0; i < graph.instructionCount(); i++) {
+            Token token = graph.instruction(i);
+            if (token.expression() instanceof FORExpression forExpression) {
+                open.push(forExpression.variableName());
+            } else if (token.statement() == LStatement.NEXT
+                    && (open.isEmpty() || !open.pop().equals(((VariableNameExpression) Objects.requireNonNull(token.expression())).variableName()))) {
+                return false;
+            }
+        }
+        return open.isEmpty();
+    }
+
+    /**
+     * Finds the variables which have certainly been set by the end of each block, however control reached it.
+     */
+    private static BitSet[] findAssigned(ControlFlowGraph graph, Map<String, Integer> variables) {
+        int size = graph.size();
+        BitSet[] assigned = new BitSet[size],
+                written = new BitSet[size];
+        BitSet all = new BitSet();
+        all.set(0, variables.size());
+        for (int i = 0; i < size; i++) {
+            BasicBlock block = graph.block(i);
+            written[i] = new BitSet();
+            for (int instruction = block.start(); instruction < block.end(); instruction++) {
+                String variableName = writtenVariableOf(graph.instruction(instruction));
+                if (variableName != null) {
+                    written[i].set(variables.get(variableName));
+                }
+            }
+            assigned[i] = (BitSet) all.clone(); // narrowed until nothing changes
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < size; i++) {
+                if (!graph.isReachable(i)) {
+                    continue;
+                }
+
+                BitSet in = i == 0 ? new BitSet() : (BitSet) all.clone();
+                for (Edge edge : graph.block(i).predecessors()) {
+                    if (graph.isReachable(edge.source())) {
+                        in.and(assigned[edge.source()]);
+                    }
+                }
+                in.or(written[i]);
+                if (!in.equals(assigned[i])) {
+                    assigned[i] = in;
+                    changed = true;
+                }
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Finds every line which jumps to each line, by line number.
+     */
+    private static Map<Integer, List<Integer>> findJumps(ControlFlowGraph graph) {
+        Map<Integer, List<Integer>> jumps = new HashMap<>();
+        for (int i = 0; i < graph.instructionCount(); i++) {
+            Token token = graph.instruction(i);
+            int target = targetLineNumberOf(token);
+            if (target != Optimizer.NO_LINE) {
+                jumps.computeIfAbsent(target, line -> new ArrayList<>()).add(token.lineNumber());
+            }
+        }
+        return jumps;
+    }
+    //endregion
+
+    /**
+     * The state of optimising a single loop.
+     * Every change is planned before any is made, so a loop without room for the lines it needs is left untouched.
+     */
+    private final class LoopContext {
+        private final ControlFlowGraph graph;
+        private final NaturalLoop loop;
+        private final Map<String, Integer> variables;
+        private final Map<String, Integer> assignments; // the number of lines setting each variable
+        private final BitSet[] assigned;
+        private final Map<Integer, List<Integer>> jumps;
+        private final NavigableMap<Integer, Token> lines = LoopOptimizer.this.lines;
+        private final List<Optimization> optimizations = LoopOptimizer.this.optimizations;
+
+        private final Set<Integer> loopLines = new HashSet<>();
+        private final Map<String, Integer> writes = new HashMap<>();
+        private final Set<String> entryAssigned = new HashSet<>();
+        private final Map<String, Induction> inductions = new HashMap<>();
+
+        // The plan
+        private final Map<MathematicalExpression, String> hoisted = new LinkedHashMap<>();
+        private final Map<Reduction, String> reduced = new LinkedHashMap<>();
+        private final Map<Integer, Token> rewritten = new TreeMap<>();
+        private final NavigableSet<Integer> moved = new TreeSet<>(); // lines computing a temporary which are moved out entirely
+        private final Map<String, Integer> sources = new HashMap<>(); // the line each temporary was first needed on
+        private int planned;
+
+        LoopContext(ControlFlowGraph graph, NaturalLoop loop, Map<String, Integer> variables,
+                    Map<String, Integer> assignments, BitSet[] assigned, Map<Integer, List<Integer>> jumps) {
+            this.graph = graph;
+            this.loop = loop;
+            this.variables = variables;
+            this.assignments = assignments;
+            this.assigned = assigned;
+            this.jumps = jumps;
+        }
+
+        void optimize() {
+            int header = this.graph.block(this.loop.header()).start(),
+                    headerLineNumber = lineNumberOf(this.graph, header);
+            if (header > 0 && this.loop.contains(this.graph.blockIndexOf(header - 1))) {
+                return; // the loop falls into its own header, so there is nowhere to put lines which only run on entry
+            }
+            for (Edge edge : this.graph.block(this.loop.header()).predecessors()) {
+                if (edge.kind() == EdgeKind.RETURN && this.loop.contains(edge.source())) {
+                    return; // a RETURN comes back to the line following its GOSUB, which would be the inserted lines
+                }
+            }
+            if (!this.findEntryAssigned()) {
+                return; // the loop can never be entered
+            }
+
+            for (int block : this.loop.blocks()) {
+                BasicBlock basicBlock = this.graph.block(block);
+                for (int i = basicBlock.start(); i < basicBlock.end(); i++) {
+                    Token token = this.graph.instruction(i);
+                    this.loopLines.add(token.lineNumber());
+                    String variableName = writtenVariableOf(token);
+                    if (variableName != null) {
+                        this.writes.merge(variableName, 1, Integer::sum);
+                    }
+                }
+            }
+            this.findInductions(header);
+
+            if (!this.plan(headerLineNumber, true)) {
+                this.reset();
+                if (!this.plan(headerLineNumber, false)) {
+                    return;
+                }
+            }
+            this.apply(headerLineNumber);
+        }
+
+        //region Analysis
+        private boolean findEntryAssigned() {
+            BitSet entry = null;
+            if (this.loop.header() == 0) {
+                entry = new BitSet(); // entered from the start of the program
+            }
+            for (Edge edge : this.graph.block(this.loop.header()).predecessors()) {
+                if (this.loop.contains(edge.source()) || !this.graph.isReachable(edge.source())) {
+                    continue;
+                }
+                if (entry == null) {
+                    entry = (BitSet) this.assigned[edge.source()].clone();
+                } else {
+                    entry.and(this.assigned[edge.source()]);
+                }
+            }
+            if (entry == null) {
+                return false;
+            }
+            for (Map.Entry<String, Integer> variable : this.variables.entrySet()) {
+                if (entry.get(variable.getValue())) {
+                    this.entryAssigned.add(variable.getKey());
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Finds the variables which the loop only changes by a constant amount, once each time around.
+         */
+        private void findInductions(int header) {
+            for (int lineNumber : this.loopLines) {
+                Token token = this.lines.get(lineNumber);
+                if (token.expression() instanceof LETExpression(String variableName, MathematicalExpression value)
+                        && this.writes.get(variableName) == 1 && this.entryAssigned.contains(variableName)) {
+                    int step = stepOf(variableName, value);
+                    if (step != 0) {
+                        this.inductions.put(variableName, new Induction(variableName, step, lineNumber, false,
+                                new VariableValueExpression(variableName)));
+                    }
+                }
+            }
+
+            // The variable of a FOR at the header, so long as the interpreter and transpiler can only ever agree on it
+            if (this.graph.instruction(header).expression() instanceof FORExpression(String variableName, ValueExpression startValue, ValueExpression endValue, LiteralValueExpression(int step))
+                    && step != 0 && this.writes.get(variableName) == 2 && this.loop.latches().size() == 1
+                    && isSafe(startValue) && readsOnly(startValue, this.entryAssigned)) {
+                BasicBlock latch = this.graph.block(this.loop.latches().getFirst());
+                Token next = this.graph.instruction(latch.last());
+                if (next.statement() != LStatement.NEXT
+                        || !((VariableNameExpression) Objects.requireNonNull(next.expression())).variableName().equals(variableName)) {
+                    return;
+                }
+                for (int i = 0; i < this.graph.instructionCount(); i++) {
+                    if (i != header && this.graph.instruction(i).expression() instanceof FORExpression forExpression
+                            && forExpression.variableName().equals(variableName)) {
+                        return; // the NEXT may return to another FOR
+                    }
+                }
+                for (int block : this.loop.blocks()) {
+                    for (Edge edge : this.graph.block(block).successors()) {
+                        boolean leaves = !this.loop.contains(edge.target()),
+                                loops = edge.target() == this.loop.header();
+                        boolean expected = leaves
+                                ? edge.source() == latch.index() && edge.kind() == EdgeKind.FALL_THROUGH
+                                    || edge.source() == this.loop.header() && edge.kind() == EdgeKind.EXIT
+                                : edge.source() == latch.index() && edge.kind() == EdgeKind.LOOP;
+                        if ((leaves || loops) && !expected) {
+                            // Leaving other than through the loop itself leaves the FOR running, whilst jumping back
+                            // to the FOR starts it again when transpiled, but not when interpreted
+                            return;
+                        }
+                    }
+                }
+                this.inductions.put(variableName, new Induction(variableName, step, next.lineNumber(), true, startValue));
+            }
+        }
+
+        private boolean isInvariant(ValueExpression value) {
+            return switch (value) {
+                case LiteralValueExpression literal -> true;
+                case VariableValueExpression(String variableName) -> variableName.startsWith(TEMPORARY_PREFIX)
+                        ? this.hoisted.containsValue(variableName)
+                        : !this.writes.containsKey(variableName) && this.entryAssigned.contains(variableName);
+                case MathematicalExpression mathematicalExpression -> false;
+            };
+        }
+        //endregion
+
+        //region Planning
+        private boolean plan(int headerLineNumber, boolean reduce) {
+            for (int lineNumber : new TreeSet<>(this.loopLines)) {
+                Token token = this.lines.get(lineNumber);
+                if (token.expression() instanceof LETExpression(String variableName, MathematicalExpression value)
+                        && variableName.startsWith(TEMPORARY_PREFIX) && this.assignments.get(variableName) == 1
+                        && this.isHoistable(value)) {
+                    // A temporary computed on the way into an inner loop, which this loop does not change either
+                    String existing = this.hoisted.putIfAbsent(value, variableName);
+                    if (existing == null) {
+                        this.sources.put(variableName, lineNumber);
+                        this.moved.add(lineNumber);
+                    } else {
+                        this.rewritten.put(lineNumber, TokenFactory.createLetToken(lineNumber, variableName,
+                                new VariableValueExpression(existing)));
+                    }
+                    continue;
+                }
+
+                Token optimized = rewriteValues(token, value -> this.optimizeValue(lineNumber, value,
+                        reduce && token.statement() != LStatement.FOR));
+                if (optimized != token) {
+                    this.rewritten.put(lineNumber, optimized);
+                }
+            }
+            if (this.rewritten.isEmpty() && this.moved.isEmpty()) {
+                return true;
+            }
+
+            // Make sure there is room for every line, as lines inserted just after one line and just before the next
+            // share the gap between them
+            Map<Integer, Integer> demands = new HashMap<>(); // by the line number before each gap
+            this.demand(demands, headerLineNumber, this.hoisted.size() + this.reduced.size(), true);
+            for (Reduction reduction : this.reduced.keySet()) {
+                this.demand(demands, reduction.induction().lineNumber(), 1, reduction.induction().before());
+            }
+            for (Map.Entry<Integer, Integer> demand : demands.entrySet()) {
+                Integer next = this.lines.higherKey(demand.getKey());
+                if ((next != null ? next : Integer.MAX_VALUE + 1L) - demand.getKey() - 1 < demand.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void demand(Map<Integer, Integer> demands, int lineNumber, int count, boolean before) {
+            Integer previous = before ? this.lines.lowerKey(lineNumber) : Integer.valueOf(lineNumber);
+            demands.merge(previous != null ? previous : 0, count, Integer::sum);
+        }
+
+        private void reset() {
+            this.hoisted.clear();
+            this.reduced.clear();
+            this.rewritten.clear();
+            this.moved.clear();
+            this.sources.clear();
+            this.planned = 0;
+        }
+
+        private ValueExpression optimizeValue(int lineNumber, ValueExpression value, boolean reduce) {
+            if (!(value instanceof MathematicalExpression mathematicalExpression)) {
+                return value;
+            }
+
+            List<ValueExpression> values = new ArrayList<>(List.of(mathematicalExpression.valueExpressions()));
+            List<LArithmeticOperator> operators = new ArrayList<>(List.of(mathematicalExpression.operators()));
+
+            // Hoist the longest invariant run from the start of the chain
+            int run = 0;
+            if (this.isInvariant(values.getFirst())) {
+                while (run < operators.size() && this.isInvariant(values.get(run + 1))
+                        && isSafe(operators.get(run), values.get(run + 1))) {
+                    run++;
+                }
+            }
+            if (run > 0 && !isLiteral(values.subList(0, run + 1))) {
+                String temporary = this.hoist(lineNumber, values.subList(0, run + 1), operators.subList(0, run));
+                values.subList(0, run + 1).clear();
+                operators.subList(0, run).clear();
+                values.addFirst(new VariableValueExpression(temporary));
+            }
+
+            // Merge later invariant runs of additions or of multiplications, e.g. I + A - B becomes I + (A - B)
+            for (int i = 0; i < operators.size(); i++) {
+                LArithmeticOperator first = operators.get(i);
+                int length = 0;
+                while (i + length < operators.size() && this.isInvariant(values.get(i + length + 1))
+                        && (first == LArithmeticOperator.MULTIPLY
+                            ? operators.get(i + length) == LArithmeticOperator.MULTIPLY
+                            : first != LArithmeticOperator.DIVIDE && Optimizer.isAdditive(operators.get(i + length)))) {
+                    length++;
+                }
+                if (length < 2 || isLiteral(values.subList(i + 1, i + length + 1))) {
+                    continue;
+                }
+
+                List<LArithmeticOperator> merged = new ArrayList<>(length - 1);
+                for (int j = i + 1; j < i + length; j++) {
+                    // Subtracting a run subtracts each of its values, so its signs are flipped
+                    merged.add(first == LArithmeticOperator.SUBTRACT ? flip(operators.get(j)) : operators.get(j));
+                }
+                String temporary = this.hoist(lineNumber, values.subList(i + 1, i + length + 1), merged);
+                values.subList(i + 1, i + length + 1).clear();
+                operators.subList(i + 1, i + length).clear();
+                values.add(i + 1, new VariableValueExpression(temporary));
+            }
+
+            // Replace a leading multiplication of an induction variable
+            if (reduce && !operators.isEmpty() && operators.getFirst() == LArithmeticOperator.MULTIPLY) {
+                Induction induction = null;
+                ValueExpression factor = null;
+                if (values.get(0) instanceof VariableValueExpression(String variableName) && this.isInvariant(values.get(1))) {
+                    induction = this.inductions.get(variableName);
+                    factor = values.get(1);
+                } else if (values.get(1) instanceof VariableValueExpression(String variableName) && this.isInvariant(values.get(0))) {
+                    induction = this.inductions.get(variableName);
+                    factor = values.get(0);
+                }
+                if (induction != null) {
+                    Reduction reduction = new Reduction(induction, factor);
+                    String temporary = this.reduced.get(reduction);
+                    if (temporary == null) {
+                        temporary = this.nextTemporary(lineNumber);
+                        this.reduced.put(reduction, temporary);
+                    }
+                    values.subList(0, 2).clear();
+                    operators.removeFirst();
+                    values.addFirst(new VariableValueExpression(temporary));
+                }
+            }
+
+            if (operators.isEmpty()) {
+                return values.getFirst();
+            }
+            MathematicalExpression optimized = new MathematicalExpression(
+                    values.toArray(new ValueExpression[0]),
+                    operators.toArray(new LArithmeticOperator[0])
+            );
+            return optimized.equals(value) ? value : optimized;
+        }
+
+        private boolean isHoistable(MathematicalExpression expression) {
+            ValueExpression[] values = expression.valueExpressions();
+            LArithmeticOperator[] operators = expression.operators();
+            if (!this.isInvariant(values[0])) {
+                return false;
+            }
+            for (int i = 0; i < operators.length; i++) {
+                if (!this.isInvariant(values[i + 1]) || !isSafe(operators[i], values[i + 1])) {
+                    return false;
+                }
+            }
+            return !isLiteral(List.of(values));
+        }
+
+        private String hoist(int lineNumber, List<ValueExpression> values, List<LArithmeticOperator> operators) {
+            ValueExpression value = values.size() == 1 ? values.getFirst() : new MathematicalExpression(
+                    values.toArray(new ValueExpression[0]),
+                    operators.toArray(new LArithmeticOperator[0])
+            );
+            if (!(value instanceof MathematicalExpression expression)) {
+                throw new IllegalStateException("Only arithmetic can be hoisted: " + Optimizer.format(value));
+            }
+            String temporary = this.hoisted.get(expression);
+            if (temporary == null) {
+                temporary = this.nextTemporary(lineNumber);
+                this.hoisted.put(expression, temporary);
+            }
+            return temporary;
+        }
+
+        private String nextTemporary(int lineNumber) {
+            String temporary = TEMPORARY_PREFIX + (LoopOptimizer.this.temporaries + ++this.planned);
+            this.sources.put(temporary, lineNumber);
+            return temporary;
+        }
+        //endregion
+
+        //region Applying
+        private void apply(int headerLineNumber) {
+            if (this.rewritten.isEmpty() && this.moved.isEmpty()) {
+                return;
+            }
+            LoopOptimizer.this.temporaries += this.planned;
+            this.rewritten.forEach(this.lines::put);
+
+            // Compute every temporary on the way into the loop, redirecting every jump into it from elsewhere
+            int count = this.hoisted.size() + this.reduced.size(),
+                    lineNumber = headerLineNumber - count;
+            this.redirect(headerLineNumber, lineNumber, false);
+            for (Map.Entry<MathematicalExpression, String> entry : this.hoisted.entrySet()) {
+                this.lines.put(lineNumber, TokenFactory.createLetToken(lineNumber, entry.getValue(), entry.getKey()));
+                this.optimizations.add(new Optimization(lineNumber, OptimizationKind.HOISTED_INVARIANT,
+                        "Hoisted %s on line %s out of the loop into %s".formatted(
+                                Optimizer.format(entry.getKey()), this.sources.get(entry.getValue()), entry.getValue())));
+                lineNumber++;
+            }
+            for (Map.Entry<Reduction, String> entry : this.reduced.entrySet()) {
+                Reduction reduction = entry.getKey();
+                Induction induction = reduction.induction();
+                this.lines.put(lineNumber, TokenFactory.createLetToken(lineNumber, entry.getValue(),
+                        multiply(induction.initial(), reduction.factor())));
+                this.optimizations.add(new Optimization(lineNumber, OptimizationKind.REDUCED_STRENGTH,
+                        "Replaced %s * %s on line %s with %s, which changes by %s whenever %s does".formatted(
+                                induction.variableName(), Optimizer.format(reduction.factor()), this.sources.get(entry.getValue()),
+                                entry.getValue(), formatAmount(reduction.factor(), induction.step()), induction.variableName())));
+                lineNumber++;
+            }
+
+            // Anything else which jumped to a moved line goes to whatever followed it
+            for (int moved : this.moved.descendingSet()) {
+                this.lines.remove(moved);
+                Integer next = this.lines.higherKey(moved);
+                if (next != null) {
+                    this.redirect(moved, next, true);
+                }
+            }
+
+            // Keep every reduced temporary up to date with its induction variable
+            Map<Induction, List<Map.Entry<Reduction, String>>> updates = new LinkedHashMap<>();
+            for (Map.Entry<Reduction, String> entry : this.reduced.entrySet()) {
+                updates.computeIfAbsent(entry.getKey().induction(), induction -> new ArrayList<>()).add(entry);
+            }
+            for (Map.Entry<Induction, List<Map.Entry<Reduction, String>>> update : updates.entrySet()) {
+                Induction induction = update.getKey();
+                int updateLineNumber = induction.before()
+                        ? induction.lineNumber() - update.getValue().size()
+                        : induction.lineNumber() + 1;
+                if (induction.before()) {
+                    this.redirect(induction.lineNumber(), updateLineNumber, true);
+                }
+                for (Map.Entry<Reduction, String> entry : update.getValue()) {
+                    this.lines.put(updateLineNumber, TokenFactory.createLetToken(updateLineNumber, entry.getValue(),
+                            increase(entry.getValue(), entry.getKey().factor(), induction.step())));
+                    updateLineNumber++;
+                }
+            }
+        }
+
+        /**
+         * Redirects jumps to the given line to another, either from everywhere or only from outside the loop.
+         */
+        private void redirect(int lineNumber, int target, boolean everywhere) {
+            for (int source : this.jumps.getOrDefault(lineNumber, List.of())) {
+                if (everywhere || !this.loopLines.contains(source)) {
+                    Token token = this.lines.get(source);
+                    if (targetLineNumberOf(token) == lineNumber) {
+                        this.lines.put(source, retarget(token, target));
+                    }
+                }
+            }
+        }
+        //endregion
+    }
+
+    /**
+     * A variable which a loop changes by a constant amount each time around, on a single line.
+     *
+     * @param variableName The variable.
+     * @param step The amount it changes by.
+     * @param lineNumber The line which changes it.
+     * @param before Whether temporaries are updated just before the line, as it is a NEXT which may jump away, rather
+     *               than just after.
+     * @param initial Its value on the way into the loop.
+     */
+    private record Induction(String variableName, int step, int lineNumber, boolean before, ValueExpression initial) {
+    }
+
+    /**
+     * A multiplication of an induction variable by an invariant factor.
+     */
+    private record Reduction(Induction induction, ValueExpression factor) {
+    }
+
+    //region Utility
+    private static @Nullable String writtenVariableOf(Token token) {
+        return switch (token.expression()) {
+            case LETExpression letExpression -> letExpression.variableName();
+            case FORExpression forExpression -> forExpression.variableName();
+            case VariableNameExpression(String variableName) -> variableName; // INPUT and NEXT
+            case null, default -> null;
+        };
+    }
+
+    /**
+     * Gets the constant amount a LET changes its own variable by, such as 2 for {@code LET I = I + 2}.
+     *
+     * @return The amount, or 0 if it does not.
+     */
+    private static int stepOf(String variableName, MathematicalExpression value) {
+        ValueExpression[] values = value.valueExpressions();
+        if (values.length != 2) {
+            return 0;
+        }
+        LArithmeticOperator operator = value.operators()[0];
+        VariableValueExpression variable = new VariableValueExpression(variableName);
+        if (values[0].equals(variable) && values[1] instanceof LiteralValueExpression(int step) && Optimizer.isAdditive(operator)) {
+            return operator == LArithmeticOperator.ADD ? step : -step;
+        }
+        if (values[1].equals(variable) && values[0] instanceof LiteralValueExpression(int step) && operator == LArithmeticOperator.ADD) {
+            return step;
+        }
+        return 0;
+    }
+
+    private static boolean isSafe(LArithmeticOperator operator, ValueExpression value) {
+        return operator != LArithmeticOperator.DIVIDE || value instanceof LiteralValueExpression(int divisor) && divisor != 0;
+    }
+
+    private static boolean isSafe(ValueExpression value) {
+        if (value instanceof MathematicalExpression mathematicalExpression) {
+            ValueExpression[] values = mathematicalExpression.valueExpressions();
+            LArithmeticOperator[] operators = mathematicalExpression.operators();
+            for (int i = 0; i < operators.length; i++) {
+                if (!isSafe(operators[i], values[i + 1])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean readsOnly(ValueExpression value, Set<String> variableNames) {
+        return switch (value) {
+            case LiteralValueExpression literal -> true;
+            case VariableValueExpression(String variableName) -> variableNames.contains(variableName);
+            case MathematicalExpression mathematicalExpression ->
+                    Arrays.stream(mathematicalExpression.valueExpressions()).allMatch(inner -> readsOnly(inner, variableNames));
+        };
+    }
+
+    private static boolean isLiteral(List<ValueExpression> values) {
+        return values.stream().allMatch(value -> value instanceof LiteralValueExpression);
+    }
+
+    private static LArithmeticOperator flip(LArithmeticOperator operator) {
+        return operator == LArithmeticOperator.ADD ? LArithmeticOperator.SUBTRACT : LArithmeticOperator.ADD;
+    }
+
+    /**
+     * Multiplies a value by a factor, appending to its chain if it is one, as chains are evaluated from left to right.
+     */
+    private static ValueExpression multiply(ValueExpression value, ValueExpression factor) {
+        if (value instanceof LiteralValueExpression(int literal)) {
+            if (factor instanceof LiteralValueExpression(int other)) {
+                return new LiteralValueExpression(literal * other);
+            } else if (literal == 1) {
+                return factor;
+            }
+        }
+
+        List<ValueExpression> values = new ArrayList<>();
+        List<LArithmeticOperator> operators = new ArrayList<>();
+        if (value instanceof MathematicalExpression mathematicalExpression) {
+            values.addAll(List.of(mathematicalExpression.valueExpressions()));
+            operators.addAll(List.of(mathematicalExpression.operators()));
+        } else {
+            values.add(value);
+        }
+        values.add(factor);
+        operators.add(LArithmeticOperator.MULTIPLY);
+        return new MathematicalExpression(values.toArray(new ValueExpression[0]), operators.toArray(new LArithmeticOperator[0]));
+    }
+
+    /**
+     * Increases a temporary by a factor multiplied by a step, such as {@code $1 + 8} or {@code K * 2 + $1}.
+     */
+    private static ValueExpression increase(String temporary, ValueExpression factor, int step) {
+        VariableValueExpression variable = new VariableValueExpression(temporary);
+        if (factor instanceof LiteralValueExpression(int literal)) {
+            int amount = literal * step;
+            boolean negative = amount < 0 && amount != Integer.MIN_VALUE;
+            return new MathematicalExpression(
+                    new ValueExpression[]{variable, new LiteralValueExpression(negative ? -amount : amount)},
+                    new LArithmeticOperator[]{negative ? LArithmeticOperator.SUBTRACT : LArithmeticOperator.ADD}
+            );
+        }
+        if (step == 1 || step == -1) {
+            return new MathematicalExpression(
+                    new ValueExpression[]{variable, factor},
+                    new LArithmeticOperator[]{step == 1 ? LArithmeticOperator.ADD : LArithmeticOperator.SUBTRACT}
+            );
+        }
+        return new MathematicalExpression(
+                new ValueExpression[]{factor, new LiteralValueExpression(step), variable},
+                new LArithmeticOperator[]{LArithmeticOperator.MULTIPLY, LArithmeticOperator.ADD}
+        );
+    }
+
+    private static String formatAmount(ValueExpression factor, int step) {
+        if (factor instanceof LiteralValueExpression(int literal)) {
+            return Integer.toString(literal * step);
+        }
+        return step == 1 ? Optimizer.format(factor) : "%s * %s".formatted(Optimizer.format(factor), step);
+    }
+
+    private static Token rewriteValues(Token token, UnaryOperator<ValueExpression> rewrite) {
+        int lineNumber = token.lineNumber();
+        return switch (token.expression()) {
+            case LETExpression(String variableName, ValueExpression value) -> {
+                ValueExpression rewritten = rewrite.apply(value);
+                yield rewritten != value ? TokenFactory.createLetToken(lineNumber, variableName, rewritten) : token;
+            }
+            case PRINTExpression(Expression[] values) -> {
+                Expression[] rewritten = values.clone();
+                boolean changed = false;
+                for (int i = 0; i < rewritten.length; i++) {
+                    if (rewritten[i] instanceof ValueExpression value) {
+                        rewritten[i] = rewrite.apply(value);
+                        changed |= rewritten[i] != value;
+                    }
+                }
+                yield changed ? TokenFactory.createPrintToken(lineNumber, rewritten) : token;
+            }
+            case IFExpression(ValueExpression valueA, ValueExpression valueB, LRelationalOperator relationalOperator, int lineNumberToGoto) -> {
+                ValueExpression rewrittenA = rewrite.apply(valueA),
+                        rewrittenB = rewrite.apply(valueB);
+                yield rewrittenA != valueA || rewrittenB != valueB
+                        ? TokenFactory.createIfToken(lineNumber, rewrittenA, rewrittenB, relationalOperator, lineNumberToGoto)
+                        : token;
+            }
+            case FORExpression(String variableName, ValueExpression startValue, ValueExpression endValue, ValueExpression stepValue) -> {
+                ValueExpression rewrittenStart = rewrite.apply(startValue),
+                        rewrittenEnd = rewrite.apply(endValue),
+                        rewrittenStep = rewrite.apply(stepValue);
+                yield rewrittenStart != startValue || rewrittenEnd != endValue || rewrittenStep != stepValue
+                        ? TokenFactory.createForToken(lineNumber, variableName, rewrittenStart, rewrittenEnd, rewrittenStep)
+                        : token;
+            }
+            case null, default -> token;
+        };
+    }
+
+    private static Token retarget(Token token, int target) {
+        if (token.expression() instanceof IFExpression(ValueExpression valueA, ValueExpression valueB, LRelationalOperator relationalOperator, int lineNumberToGoto)) {
+            return TokenFactory.createIfToken(token.lineNumber(), valueA, valueB, relationalOperator, target);
+        }
+        return Optimizer.createJumpToken(token.statement(), token.lineNumber(), target);
+    }
+
+    private static int targetLineNumberOf(Token token) {
+        return Optimizer.targetLineNumberOf(token);
+    }
+
+    private static int lineNumberOf(ControlFlowGraph graph, int instruction) {
+        return graph.instruction(instruction).lineNumber();
+    }
+    //endregion
+}
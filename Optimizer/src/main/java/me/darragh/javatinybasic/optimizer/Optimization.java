@@ -0,0 +1,19 @@
+package me.darragh.javatinybasic.optimizer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A single change made by the {@link Optimizer}.
+ *
+ * @param lineNumber The line number of the changed line.
+ * @param kind The kind of change.
+ * @param description A readable description of the change, such as {@code Folded 5 + 5 to 10}.
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public record Optimization(int lineNumber, @NotNull OptimizationKind kind, @NotNull String description) {
+    @Override
+    public String toString() {
+        return "%s: %s".formatted(this.lineNumber, this.description);
+    }
+}
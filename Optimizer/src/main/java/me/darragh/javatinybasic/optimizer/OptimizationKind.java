@@ -0,0 +1,30 @@
+package me.darragh.javatinybasic.optimizer;
+
+/**
+ * The kinds of change the {@link Optimizer} makes to a program.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public enum OptimizationKind {
+    /**
+     * Arithmetic on literals was evaluated ahead of time, such as {@code 5 + 5} becoming {@code 10}.
+     */
+    FOLDED_CONSTANT,
+    /**
+     * A jump to a line which only jumps elsewhere was redirected to where the chain of GOTOs ends.
+     */
+    THREADED_JUMP,
+    /**
+     * A line which can never be reached was removed.
+     */
+    REMOVED_LINE,
+    /**
+     * Arithmetic which a loop never changes was moved into a temporary computed on the way into the loop.
+     */
+    HOISTED_INVARIANT,
+    /**
+     * A multiplication of a loop's induction variable was replaced by a temporary increased alongside the variable.
+     */
+    REDUCED_STRENGTH
+}
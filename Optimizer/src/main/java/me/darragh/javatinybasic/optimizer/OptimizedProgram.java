@@ -0,0 +1,28 @@
+package me.darragh.javatinybasic.optimizer;
+
+import me.darragh.javatinybasic.ast.Token;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * The result of optimising a program with the {@link Optimizer}.
+ *
+ * @param tokens The optimised tokens, sorted by line number.
+ * @param optimizations Every change that was made, in the order the passes made them.
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public record OptimizedProgram(@NotNull List<Token> tokens, @NotNull List<Optimization> optimizations) {
+    /**
+     * Counts the changes of the given kind.
+     *
+     * @param kind The kind of change to count.
+     * @return The number of changes of that kind.
+     */
+    public int count(@NotNull OptimizationKind kind) {
+        return (int) this.optimizations.stream()
+                .filter(optimization -> optimization.kind() == kind)
+                .count();
+    }
+}
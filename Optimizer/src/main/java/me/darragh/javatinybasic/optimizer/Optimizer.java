@@ -0,0 +1,443 @@
+package me.darragh.javatinybasic.optimizer;
+
+import lombok.experimental.UtilityClass;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.TokenFactory;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Optimises a parsed program before it is linked or transpiled, reporting every change it makes.
+ * <br/>
+ * Four passes are made, in order:
+ * <ul>
+ *  <li>Constant folding evaluates arithmetic on literals ahead of time, so {@code LET A = 5 + 5} becomes
+ *  {@code LET A = 10}. Chains are evaluated from left to right, so only a leading run of literals is folded outright,
+ *  whilst later runs of additions or multiplications are merged, such as {@code A + 2 - 3} becoming {@code A - 1}. An
+ *  IF which is always true becomes a GOTO, and a computed GOTO or GOSUB which folds to an existing line becomes a
+ *  direct one. Division by zero is never folded, so it still fails when evaluated.</li>
+ *  <li>Jump threading redirects a GOTO, GOSUB or IF which targets a line that only jumps elsewhere, straight to where
+ *  the chain of GOTOs ends.</li>
+ *  <li>Dead-line elimination removes every line which cannot be reached from the first line or from the target of any
+ *  GOSUB. FOR and NEXT lines are always kept, as the transpiler pairs them by their order in the source, as is the
+ *  target of an IF which is never true, so the program still links. The line after the NEXT paired with a reachable
+ *  FOR is reachable too, as the transpiler skips straight to it when the loop would not run. Nothing is removed from a
+ *  program with a computed GOTO or GOSUB, which could reach any line, or with a jump to a line which does not exist,
+ *  which must still fail to link.</li>
+ *  <li>Loop optimisation hoists arithmetic which a loop never changes into temporaries computed on the way into it,
+ *  and replaces each multiplication of an induction variable, such as {@code I * K} within {@code FOR I = 1 TO N}, by a
+ *  temporary which is increased alongside it. See {@link LoopOptimizer}.</li>
+ * </ul>
+ * Arithmetic wraps around as it does when evaluated, so an optimised program behaves exactly as the original did.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+@UtilityClass
+public class Optimizer {
+    static final int NO_LINE = -1;
+
+    /**
+     * Optimises the given tokens.
+     * Duplicate line numbers keep the first occurrence, matching the order of the source.
+     *
+     * @param tokens The tokens to optimise.
+     * @return The optimised tokens, and every change that was made to them.
+     */
+    public static @NotNull OptimizedProgram optimize(@NotNull List<Token> tokens) {
+        NavigableMap<Integer, Token> lines = new TreeMap<>();
+        for (Token token : tokens) {
+            lines.putIfAbsent(token.lineNumber(), token);
+        }
+
+        List<Optimization> optimizations = new ArrayList<>();
+        foldConstants(lines, optimizations);
+        threadJumps(lines, optimizations);
+        eliminateDeadLines(lines, optimizations);
+        LoopOptimizer.optimize(lines, optimizations);
+        return new OptimizedProgram(List.copyOf(lines.values()), Collections.unmodifiableList(optimizations));
+    }
+
+    //region Constant Folding
+    private static void foldConstants(NavigableMap<Integer, Token> lines, List<Optimization> optimizations) {
+        for (Map.Entry<Integer, Token> entry : lines.entrySet()) {
+            entry.setValue(foldToken(entry.getValue(), lines, optimizations));
+        }
+    }
+
+    private static Token foldToken(Token token, NavigableMap<Integer, Token> lines, List<Optimization> optimizations) {
+        int lineNumber = token.lineNumber();
+        return switch (token.expression()) {
+            case LETExpression(String variableName, ValueExpression value) -> {
+                ValueExpression folded = fold(lineNumber, value, optimizations);
+                yield folded != value ? TokenFactory.createLetToken(lineNumber, variableName, folded) : token;
+            }
+            case PRINTExpression(Expression[] values) -> {
+                Expression[] folded = values.clone();
+                boolean changed = false;
+                for (int i = 0; i < folded.length; i++) {
+                    if (folded[i] instanceof ValueExpression value) {
+                        folded[i] = fold(lineNumber, value, optimizations);
+                        changed |= folded[i] != value;
+                    }
+                }
+                yield changed ? TokenFactory.createPrintToken(lineNumber, folded) : token;
+            }
+            case IFExpression(ValueExpression valueA, ValueExpression valueB, LRelationalOperator relationalOperator, int lineNumberToGoto) -> {
+                ValueExpression foldedA = fold(lineNumber, valueA, optimizations),
+                        foldedB = fold(lineNumber, valueB, optimizations);
+                if (foldedA instanceof LiteralValueExpression(int a) && foldedB instanceof LiteralValueExpression(int b)
+                        && test(relationalOperator, a, b)) {
+                    optimizations.add(new Optimization(lineNumber, OptimizationKind.FOLDED_CONSTANT,
+                            "IF %s %s %s is always true, so it always jumps to %s".formatted(a, relationalOperator.getSymbol(), b, lineNumberToGoto)));
+                    yield TokenFactory.createGotoToken(lineNumber, lineNumberToGoto);
+                }
+                yield foldedA != valueA || foldedB != valueB
+                        ? TokenFactory.createIfToken(lineNumber, foldedA, foldedB, relationalOperator, lineNumberToGoto)
+                        : token;
+            }
+            case FORExpression(String variableName, ValueExpression startValue, ValueExpression endValue, ValueExpression stepValue) -> {
+                ValueExpression foldedStart = fold(lineNumber, startValue, optimizations),
+                        foldedEnd = fold(lineNumber, endValue, optimizations),
+                        foldedStep = fold(lineNumber, stepValue, optimizations);
+                yield foldedStart != startValue || foldedEnd != endValue || foldedStep != stepValue
+                        ? TokenFactory.createForToken(lineNumber, variableName, foldedStart, foldedEnd, foldedStep)
+                        : token;
+            }
+            case ValueExpression target when token.statement() == LStatement.GOTO || token.statement() == LStatement.GOSUB -> {
+                ValueExpression folded = fold(lineNumber, target, optimizations);
+                if (folded instanceof LiteralValueExpression(int value) && value > 0 && lines.containsKey(value)) {
+                    yield createJumpToken(token.statement(), lineNumber, value);
+                } // a line which does not exist is left to fail when executed
+                yield folded != target
+                        ? token.statement() == LStatement.GOTO
+                            ? TokenFactory.createGotoToken(lineNumber, folded)
+                            : TokenFactory.createGosubToken(lineNumber, folded)
+                        : token;
+            }
+            case null, default -> token;
+        };
+    }
+
+    /**
+     * Folds the given value, recording the change if there is one.
+     *
+     * @return The folded value, or the given value itself if it could not be folded.
+     */
+    private static ValueExpression fold(int lineNumber, ValueExpression value, List<Optimization> optimizations) {
+        if (!(value instanceof MathematicalExpression mathematicalExpression)) {
+            return value;
+        }
+
+        ValueExpression folded = foldMathematical(mathematicalExpression);
+        if (folded.equals(value)) {
+            return value;
+        }
+        optimizations.add(new Optimization(lineNumber, OptimizationKind.FOLDED_CONSTANT,
+                "Folded %s to %s".formatted(format(value), format(folded))));
+        return folded;
+    }
+
+    private static ValueExpression foldMathematical(MathematicalExpression expression) {
+        ValueExpression[] values = expression.valueExpressions();
+        LArithmeticOperator[] operators = expression.operators();
+
+        List<ValueExpression> foldedValues = new ArrayList<>(values.length);
+        List<LArithmeticOperator> foldedOperators = new ArrayList<>(operators.length);
+        foldedValues.add(values[0]);
+        for (int i = 0; i < operators.length; i++) {
+            LArithmeticOperator operator = operators[i];
+            if (!(values[i + 1] instanceof LiteralValueExpression(int value))) {
+                foldedValues.add(values[i + 1]);
+                foldedOperators.add(operator);
+                continue;
+            }
+
+            int last = foldedValues.size() - 1;
+            if (foldedOperators.isEmpty() && foldedValues.get(0) instanceof LiteralValueExpression(int left)
+                    && !(operator == LArithmeticOperator.DIVIDE && value == 0)) {
+                // Everything so far is a literal, so it can be evaluated outright
+                foldedValues.set(0, new LiteralValueExpression(apply(operator, left, value)));
+            } else if (isIdentity(operator, value)) {
+                // Adding zero, or multiplying by one, leaves the result as it was
+            } else if (!foldedOperators.isEmpty() && foldedValues.get(last) instanceof LiteralValueExpression(int previous)
+                    && isAdditive(operator) && isAdditive(foldedOperators.get(last - 1))) {
+                // Merge with the previous addition or subtraction, e.g. A + 2 - 3 becomes A - 1
+                int sum = (foldedOperators.get(last - 1) == LArithmeticOperator.ADD ? previous : -previous)
+                        + (operator == LArithmeticOperator.ADD ? value : -value);
+                foldedValues.remove(last);
+                foldedOperators.remove(last - 1);
+                if (sum != 0) {
+                    boolean negative = sum < 0 && sum != Integer.MIN_VALUE;
+                    foldedValues.add(new LiteralValueExpression(negative ? -sum : sum));
+                    foldedOperators.add(negative ? LArithmeticOperator.SUBTRACT : LArithmeticOperator.ADD);
+                }
+            } else if (!foldedOperators.isEmpty() && foldedValues.get(last) instanceof LiteralValueExpression(int previous)
+                    && operator == LArithmeticOperator.MULTIPLY && foldedOperators.get(last - 1) == LArithmeticOperator.MULTIPLY) {
+                // Merge with the previous multiplication, e.g. A * 2 * 3 becomes A * 6
+                int product = previous * value;
+                foldedValues.remove(last);
+                foldedOperators.remove(last - 1);
+                if (product != 1) {
+                    foldedValues.add(new LiteralValueExpression(product));
+                    foldedOperators.add(LArithmeticOperator.MULTIPLY);
+                }
+            } else {
+                foldedValues.add(values[i + 1]);
+                foldedOperators.add(operator);
+            }
+        }
+
+        if (foldedOperators.isEmpty()) {
+            return foldedValues.get(0);
+        }
+        return new MathematicalExpression(
+                foldedValues.toArray(new ValueExpression[0]),
+                foldedOperators.toArray(new LArithmeticOperator[0])
+        );
+    }
+
+    private static int apply(LArithmeticOperator operator, int left, int right) {
+        return switch (operator) {
+            case ADD -> left + right;
+            case SUBTRACT -> left - right;
+            case MULTIPLY -> left * right;
+            case DIVIDE -> left / right;
+        };
+    }
+
+    private static boolean isIdentity(LArithmeticOperator operator, int value) {
+        return switch (operator) {
+            case ADD, SUBTRACT -> value == 0;
+            case MULTIPLY, DIVIDE -> value == 1;
+        };
+    }
+
+    static boolean isAdditive(LArithmeticOperator operator) {
+        return operator == LArithmeticOperator.ADD || operator == LArithmeticOperator.SUBTRACT;
+    }
+
+    private static boolean test(LRelationalOperator operator, int a, int b) {
+        return switch (operator) {
+            case EQUAL -> a == b;
+            case NOT_EQUAL -> a != b;
+            case LESS_THAN -> a < b;
+            case GREATER_THAN -> a > b;
+            case LESS_THAN_OR_EQUAL -> a <= b;
+            case GREATER_THAN_OR_EQUAL -> a >= b;
+        };
+    }
+    //endregion
+
+    //region Jump Threading
+    private static void threadJumps(NavigableMap<Integer, Token> lines, List<Optimization> optimizations) {
+        Map<Integer, Integer> resolved = new HashMap<>();
+        for (Map.Entry<Integer, Token> entry : lines.entrySet()) {
+            Token token = entry.getValue();
+            int lineNumber = token.lineNumber(),
+                    target = targetLineNumberOf(token);
+            if (target == NO_LINE) {
+                continue;
+            }
+
+            int threaded = resolveJump(lines, resolved, target);
+            if (threaded == target) {
+                continue;
+            }
+
+            if (token.expression() instanceof IFExpression(ValueExpression valueA, ValueExpression valueB, LRelationalOperator relationalOperator, int lineNumberToGoto)) {
+                entry.setValue(TokenFactory.createIfToken(lineNumber, valueA, valueB, relationalOperator, threaded));
+            } else {
+                entry.setValue(createJumpToken(token.statement(), lineNumber, threaded));
+            }
+            optimizations.add(new Optimization(lineNumber, OptimizationKind.THREADED_JUMP,
+                    "%s to %s now goes straight to %s".formatted(token.statement().getToken(), target, threaded)));
+        }
+    }
+
+    /**
+     * Finds where a jump to the given line ends up, following any chain of GOTOs.
+     * Every line along the chain is remembered, so each chain is only followed once.
+     */
+    private static int resolveJump(NavigableMap<Integer, Token> lines, Map<Integer, Integer> resolved, int lineNumber) {
+        List<Integer> chain = new ArrayList<>();
+        Set<Integer> visited = new HashSet<>();
+        int current = lineNumber;
+        while (true) {
+            Integer end = resolved.get(current);
+            if (end != null) {
+                current = end;
+                break;
+            }
+
+            Token token = lines.get(current);
+            if (token == null || token.statement() != LStatement.GOTO
+                    || !(token.expression() instanceof LineNumberExpression(int next))) {
+                break;
+            }
+            if (!visited.add(current)) {
+                // The chain loops forever, so wherever it is entered behaves the same; leave it as it is
+                chain.forEach(line -> resolved.put(line, line));
+                return lineNumber;
+            }
+            chain.add(current);
+            current = next;
+        }
+
+        for (int line : chain) {
+            resolved.put(line, current);
+        }
+        return current;
+    }
+    //endregion
+
+    //region Dead-Line Elimination
+    private static void eliminateDeadLines(NavigableMap<Integer, Token> lines, List<Optimization> optimizations) {
+        Token[] tokens = lines.values().toArray(new Token[0]);
+        Map<Integer, Integer> indices = new HashMap<>(tokens.length * 2);
+        for (int i = 0; i < tokens.length; i++) {
+            indices.put(tokens[i].lineNumber(), i);
+        }
+
+        // Resolve every target, giving up if a line could be reached in a way that cannot be known ahead of time
+        int[] targets = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].expression() instanceof ValueExpression) {
+                return; // a computed GOTO or GOSUB
+            }
+
+            int target = targetLineNumberOf(tokens[i]);
+            if (target != NO_LINE && !indices.containsKey(target)) {
+                return; // left to fail when linked
+            }
+            targets[i] = target != NO_LINE ? indices.get(target) : NO_LINE;
+        }
+
+        // Pair each FOR with the NEXT which closes it, as the transpiler does, as it skips past that NEXT if the loop
+        // would not run at all
+        int[] loopExits = new int[tokens.length];
+        Arrays.fill(loopExits, NO_LINE);
+        Deque<Integer> open = new ArrayDeque<>();
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].statement() == LStatement.FOR) {
+                open.push(i);
+            } else if (tokens[i].statement() == LStatement.NEXT && !open.isEmpty()) {
+                loopExits[open.pop()] = i + 1;
+            }
+        }
+
+        // Walk every line reachable from the entry point and from each GOSUB target
+        boolean[] reachable = new boolean[tokens.length];
+        Deque<Integer> pending = new ArrayDeque<>();
+        reach(reachable, pending, 0);
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].statement() == LStatement.GOSUB) {
+                reach(reachable, pending, targets[i]);
+            }
+        }
+        while (!pending.isEmpty()) {
+            int index = pending.pop();
+            Token token = tokens[index];
+            switch (token.statement()) {
+                case END, RETURN -> {
+                }
+                case GOTO -> reach(reachable, pending, targets[index]);
+                case GOSUB -> {
+                    reach(reachable, pending, targets[index]);
+                    reach(reachable, pending, index + 1); // where RETURN comes back to
+                }
+                case IF -> {
+                    if (!isNeverTrue((IFExpression) token.expression())) {
+                        reach(reachable, pending, targets[index]);
+                    }
+                    reach(reachable, pending, index + 1);
+                }
+                case FOR -> {
+                    reach(reachable, pending, index + 1);
+                    reach(reachable, pending, loopExits[index]); // even if the NEXT itself is never reached
+                }
+                default -> reach(reachable, pending, index + 1);
+            }
+        }
+
+        // An IF which is never true never jumps, but its target must still exist to be linked, as must any line it targets
+        boolean[] kept = reachable.clone();
+        for (int i = 0; i < tokens.length; i++) {
+            if (kept[i]) {
+                pending.push(i);
+            }
+        }
+        while (!pending.isEmpty()) {
+            int target = targets[pending.pop()];
+            if (target != NO_LINE && !kept[target]) {
+                kept[target] = true;
+                pending.push(target);
+            }
+        }
+
+        for (int i = 0; i < tokens.length; i++) {
+            LStatement statement = tokens[i].statement();
+            if (!kept[i] && statement != LStatement.FOR && statement != LStatement.NEXT) {
+                lines.remove(tokens[i].lineNumber());
+                optimizations.add(new Optimization(tokens[i].lineNumber(), OptimizationKind.REMOVED_LINE,
+                        "Removed unreachable %s".formatted(statement.getToken())));
+            }
+        }
+    }
+
+    private static void reach(boolean[] reachable, Deque<Integer> pending, int index) {
+        if (index >= 0 && index < reachable.length && !reachable[index]) {
+            reachable[index] = true;
+            pending.push(index);
+        }
+    }
+
+    private static boolean isNeverTrue(IFExpression ifExpression) {
+        return ifExpression.valueA() instanceof LiteralValueExpression(int a)
+                && ifExpression.valueB() instanceof LiteralValueExpression(int b)
+                && !test(ifExpression.relationalOperator(), a, b);
+    }
+    //endregion
+
+    //region Utility
+    static int targetLineNumberOf(Token token) {
+        return switch (token.expression()) {
+            case LineNumberExpression(int lineNumber) when token.statement() == LStatement.GOTO
+                    || token.statement() == LStatement.GOSUB -> lineNumber;
+            case IFExpression ifExpression -> ifExpression.lineNumberToGoto();
+            case null, default -> NO_LINE;
+        };
+    }
+
+    static Token createJumpToken(LStatement statement, int lineNumber, int lineNumberToGoto) {
+        return statement == LStatement.GOTO
+                ? TokenFactory.createGotoToken(lineNumber, lineNumberToGoto)
+                : TokenFactory.createGosubToken(lineNumber, lineNumberToGoto);
+    }
+
+    static String format(ValueExpression value) {
+        return switch (value) {
+            case LiteralValueExpression(int literal) -> Integer.toString(literal);
+            case VariableValueExpression(String variableName) -> variableName;
+            case MathematicalExpression mathematicalExpression -> {
+                ValueExpression[] values = mathematicalExpression.valueExpressions();
+                LArithmeticOperator[] operators = mathematicalExpression.operators();
+                StringBuilder builder = new StringBuilder(format(values[0]));
+                for (int i = 0; i < operators.length; i++) {
+                    builder.append(' ').append(operators[i].getSymbol()).append(' ').append(format(values[i + 1]));
+                }
+                yield builder.toString();
+            }
+        };
+    }
+    //endregion
+}
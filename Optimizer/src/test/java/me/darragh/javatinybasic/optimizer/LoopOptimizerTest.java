@@ -0,0 +1,146 @@
+package me.darragh.javatinybasic.optimizer;
+
+import me.darragh.javatinybasic.interpreter.Program;
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.interpret;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests moving work out of loops, which must never change what a program prints, even when compiled.
+ */
+class LoopOptimizerTest {
+    @Test
+    void valueAssignedInsideTheLoopIsNotHoisted() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("6|12|24|", """
+                10 LET K = 3
+                20 FOR I = 1 TO 3
+                30 LET A = K * 2
+                40 PRINT A
+                50 LET K = K * 2
+                60 NEXT I
+                """);
+        assertEquals(0, optimized.count(OptimizationKind.HOISTED_INVARIANT));
+        assertEquals(0, optimized.count(OptimizationKind.REDUCED_STRENGTH));
+    }
+
+    @Test
+    void valueInvariantInsideTheLoopIsHoisted() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("6|6|6|", """
+                10 LET K = 3
+                20 FOR I = 1 TO 3
+                30 LET A = K * 2
+                40 PRINT A
+                50 NEXT I
+                """);
+        assertEquals(1, optimized.count(OptimizationKind.HOISTED_INVARIANT));
+    }
+
+    @Test
+    void jumpToTheHeaderRunsTheHoistedLines() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("11|12|13|", """
+                10 LET K = 3
+                12 LET I = 5
+                14 IF K = 3 THEN 20
+                16 LET I = 1
+                20 PRINT K * 2 + I
+                30 LET I = I + 1
+                35 IF I < 8 THEN 20
+                """);
+        assertEquals(1, optimized.count(OptimizationKind.HOISTED_INVARIANT));
+    }
+
+    @Test
+    void gotoIntoTheLoopBodyLeavesTheLoopAlone() throws Exception {
+        // Line 70 changes K before going straight back into the body, past the line which reads it
+        OptimizedProgram optimized = assertSameOutput("6|6|10|10|", """
+                10 LET K = 3
+                20 FOR I = 1 TO 3
+                30 LET A = K * 2
+                40 PRINT A
+                45 IF K = 3 THEN 70
+                50 NEXT I
+                60 END
+                70 LET K = 5
+                80 GOTO 40
+                """);
+        assertEquals(0, optimized.count(OptimizationKind.HOISTED_INVARIANT));
+
+        optimized = assertSameOutput("3|6|9|", """
+                10 LET K = 3
+                12 LET I = 1
+                14 IF K = 3 THEN 25
+                20 LET A = K * 2
+                25 PRINT I * K
+                30 LET I = I + 1
+                35 IF I < 4 THEN 20
+                """);
+        assertEquals(0, optimized.count(OptimizationKind.HOISTED_INVARIANT));
+        assertEquals(0, optimized.count(OptimizationKind.REDUCED_STRENGTH));
+    }
+
+    @Test
+    void negativeStepIsReduced() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("27|21|15|9|3|", """
+                10 LET K = 3
+                15 LET I = 9
+                20 PRINT I * K
+                30 LET I = I - 2
+                40 IF I > 0 THEN 20
+                """);
+        assertEquals(1, optimized.count(OptimizationKind.REDUCED_STRENGTH));
+    }
+
+    @Test
+    void zeroStepIsNotReduced() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("3|3|3|", """
+                10 LET K = 3
+                15 LET I = 1
+                16 LET N = 0
+                20 PRINT I * K
+                30 LET I = I + 0
+                35 LET N = N + 1
+                40 IF N < 3 THEN 20
+                """);
+        assertEquals(0, optimized.count(OptimizationKind.REDUCED_STRENGTH));
+
+        optimized = assertSameOutput("!! Step value cannot be zero in FOR loop: ", """
+                10 LET K = 3
+                20 FOR I = 1 TO 3 STEP 0
+                30 PRINT I * K
+                40 NEXT I
+                """);
+        assertEquals(0, optimized.count(OptimizationKind.REDUCED_STRENGTH));
+    }
+
+    @Test
+    void reducedInductionVariableWrapsAsTheProductDoes() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("2146000000|2147000000|-2146967296|-2145967296|", """
+                10 LET K = 1000000
+                20 FOR I = 2146 TO 2149
+                30 PRINT I * K
+                40 NEXT I
+                """);
+        assertEquals(1, optimized.count(OptimizationKind.REDUCED_STRENGTH));
+
+        optimized = assertSameOutput("2147352576|2147418112|-2147483648|-2147418112|", """
+                10 LET K = 65536
+                15 LET I = 32766
+                20 PRINT I * K
+                30 LET I = I + 1
+                40 IF I < 32770 THEN 20
+                """);
+        assertEquals(1, optimized.count(OptimizationKind.REDUCED_STRENGTH));
+    }
+
+    private static OptimizedProgram assertSameOutput(String expected, String source) throws Exception {
+        OptimizedProgram optimized = Optimizer.optimize(Parser.parse(source));
+        String baseline = interpret(Program.link(Parser.parse(source)));
+        assertTrue(baseline.startsWith(expected), baseline);
+        assertEquals(baseline, interpret(Program.link(optimized.tokens())), "interpreted, optimised");
+        assertEquals(baseline, interpret(Program.link(optimized.tokens()), interpreter -> interpreter.enableTieredCompilation(1)),
+                "tiered, optimised");
+        return optimized;
+    }
+}
@@ -0,0 +1,99 @@
+package me.darragh.javatinybasic.optimizer;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.expression.LineNumberExpression;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import me.darragh.javatinybasic.interpreter.Program;
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.interpret;
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.transpile;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the optimiser, whose output must behave exactly as the original program does, whether it is interpreted or
+ * transpiled.
+ */
+class OptimizerTest {
+    @Test
+    void gotoChainIsThreadedToItsEnd() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("2|", "2|", """
+                10 GOTO 20
+                20 GOTO 30
+                30 GOTO 50
+                40 PRINT 1
+                50 PRINT 2
+                """);
+        assertJump(LStatement.GOTO, 50, token(optimized, 10));
+        assertTrue(optimized.count(OptimizationKind.THREADED_JUMP) > 0);
+    }
+
+    @Test
+    void ifWhichFoldsToAConstantJumpsOrFallsThrough() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("3|", "3|", """
+                10 IF 2 < 1 THEN 50
+                20 IF 1 < 2 THEN 40
+                30 PRINT 1
+                40 PRINT 3
+                50 END
+                """);
+        assertJump(LStatement.GOTO, 40, token(optimized, 20));
+        assertNull(token(optimized, 30));
+        assertNotNull(token(optimized, 50)); // the target of an IF which is never true must still link
+    }
+
+    @Test
+    void lineAfterALoopWhichNeverRunsIsKept() throws Exception {
+        // The interpreter always runs the body once, whilst transpiled code skips past the NEXT
+        OptimizedProgram optimized = assertSameOutput("5|", "99|", """
+                10 FOR I = 5 TO 1
+                20 PRINT I
+                30 END
+                40 NEXT I
+                50 PRINT 99
+                """);
+        assertNotNull(token(optimized, 50));
+    }
+
+    @Test
+    void deadLinesAroundAnUnreachableNextAreRemoved() throws Exception {
+        OptimizedProgram optimized = assertSameOutput("1|", "1|", """
+                10 GOTO 100
+                20 FOR I = 1 TO 2
+                30 PRINT I
+                40 NEXT I
+                50 PRINT 5
+                100 PRINT 1
+                """);
+        assertNull(token(optimized, 30));
+        assertNull(token(optimized, 50));
+        assertNotNull(token(optimized, 20)); // FOR and NEXT are always kept
+        assertNotNull(token(optimized, 40));
+    }
+
+    private static OptimizedProgram assertSameOutput(String interpreted, String transpiled, String source) throws Exception {
+        List<Token> tokens = Parser.parse(source);
+        OptimizedProgram optimized = Optimizer.optimize(tokens);
+        assertEquals(interpreted, interpret(Program.link(tokens)), "interpreted");
+        assertEquals(interpreted, interpret(Program.link(optimized.tokens())), "interpreted, optimised");
+        assertEquals(transpiled, transpile(tokens), "transpiled");
+        assertEquals(transpiled, transpile(optimized.tokens()), "transpiled, optimised");
+        return optimized;
+    }
+
+    private static void assertJump(LStatement statement, int lineNumber, Token token) {
+        assertNotNull(token);
+        assertEquals(statement, token.statement());
+        assertEquals(new LineNumberExpression(lineNumber), token.expression());
+    }
+
+    private static Token token(OptimizedProgram optimized, int lineNumber) {
+        return optimized.tokens().stream()
+                .filter(token -> token.lineNumber() == lineNumber)
+                .findFirst()
+                .orElse(null);
+    }
+}
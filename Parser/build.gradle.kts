@@ -28,4 +28,13 @@ dependencies {
     // Annotations:
     annotationImplementation("org.projectlombok:lombok:1.18.36")
     implementation("org.jetbrains:annotations:26.0.2")
+
+    // Testing:
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
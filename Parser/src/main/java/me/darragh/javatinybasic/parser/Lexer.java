@@ -1,34 +1,317 @@
 package me.darragh.javatinybasic.parser;
 
-import lombok.experimental.UtilityClass;
+import me.darragh.javatinybasic.ast.langauge.LReservedKeyword;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Lexically analyses a line of code in the Java Tiny Basic language, producing a list of tokens.
+ * <br/>
+ * The lexer is a single pass over the characters of the line. Rather than allocating a string per token, it records
+ * the kind and source offsets of each token in primitive arrays, which are reused for every line it scans. Numbers
+ * are parsed as they are scanned, and keywords are recognised with a perfect hash of their first and last characters.
+ * <br/>
+ * Characters which cannot start a token, such as whitespace, lowercase letters and unterminated quotes, are skipped.
  *
  * @author darraghd493
  * @since 1.0.0
  */
-@UtilityClass
-public class Lexer {
-    private static final Pattern TOKEN_PATTERN = Pattern.compile(
-            "\"[^\"]*\"" + // String literals
-                    "|[A-Z]+" + // Keywords/Variables
-                    "|\\d+" + // Numbers
-                    "|<=|>=|<>|=|<|>|\\+|-|\\*|/" + // Operators
-                    "|\\(|\\)|," // Special symbols
-    );
+public final class Lexer {
+    //region Token Kinds
+    public static final byte NUMBER = 0,
+            WORD = 1,
+            STRING = 2,
+            EQUAL = 3,
+            NOT_EQUAL = 4,
+            LESS_THAN = 5,
+            GREATER_THAN = 6,
+            LESS_THAN_OR_EQUAL = 7,
+            GREATER_THAN_OR_EQUAL = 8,
+            ADD = 9,
+            SUBTRACT = 10,
+            MULTIPLY = 11,
+            DIVIDE = 12,
+            OPEN_PARENTHESIS = 13,
+            CLOSE_PARENTHESIS = 14,
+            COMMA = 15;
+    //endregion
 
+    /**
+     * The value of a {@link #NUMBER} which does not fit in an int, or of a {@link #WORD} which is not a keyword.
+     */
+    public static final int NO_VALUE = -1;
+
+    //region Keywords
+    private static final int KEYWORD_TABLE_SIZE = 32;
+    private static final String[] KEYWORDS = new String[KEYWORD_TABLE_SIZE];
+    private static final LStatement[] KEYWORD_STATEMENTS = new LStatement[KEYWORD_TABLE_SIZE];
+    private static final LReservedKeyword[] KEYWORD_RESERVED = new LReservedKeyword[KEYWORD_TABLE_SIZE];
+
+    static {
+        for (LStatement statement : LStatement.values()) {
+            KEYWORD_STATEMENTS[registerKeyword(statement.getToken())] = statement;
+        }
+        for (LReservedKeyword keyword : LReservedKeyword.values()) {
+            KEYWORD_RESERVED[registerKeyword(keyword.getToken())] = keyword;
+        }
+    }
+    //endregion
+
+    private CharSequence source = "";
+    private int count;
+    private byte[] kinds = new byte[16];
+    private int[] starts = new int[16],
+            ends = new int[16],
+            values = new int[16];
+
+    /**
+     * Scans a line of code, replacing the tokens of the previously scanned line.
+     *
+     * @param source The text containing the line.
+     * @param start The index of the first character of the line.
+     * @param end The index after the last character of the line.
+     * @return The number of tokens scanned.
+     */
+    public int scan(@NotNull CharSequence source, int start, int end) {
+        return this.scan(source, start, end, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Scans the start of a line of code, stopping once the given number of tokens have been scanned.
+     *
+     * @param source The text containing the line.
+     * @param start The index of the first character of the line.
+     * @param end The index after the last character of the line.
+     * @param maxCount The maximum number of tokens to scan.
+     * @return The number of tokens scanned.
+     */
+    public int scan(@NotNull CharSequence source, int start, int end, int maxCount) {
+        this.source = source;
+        this.count = 0;
+
+        int i = start;
+        while (i < end && this.count < maxCount) {
+            char c = source.charAt(i);
+            int tokenStart = i;
+            if (c >= 'A' && c <= 'Z') {
+                do {
+                    i++;
+                } while (i < end && isLetter(source.charAt(i)));
+                this.add(WORD, tokenStart, i, keywordOf(source, tokenStart, i));
+            } else if (c >= '0' && c <= '9') {
+                long value = 0;
+                do {
+                    if (value <= Integer.MAX_VALUE) {
+                        value = value * 10 + (source.charAt(i) - '0');
+                    }
+                    i++;
+                } while (i < end && isDigit(source.charAt(i)));
+                this.add(NUMBER, tokenStart, i, value <= Integer.MAX_VALUE ? (int) value : NO_VALUE);
+            } else if (c == '"') {
+                int close = i + 1;
+                while (close < end && source.charAt(close) != '"') {
+                    close++;
+                }
+                if (close < end) {
+                    i = close + 1;
+                    this.add(STRING, tokenStart, i, NO_VALUE);
+                } else {
+                    i++; // unterminated, so skip the quote
+                }
+            } else {
+                char next = i + 1 < end ? source.charAt(i + 1) : '\0';
+                byte kind = switch (c) {
+                    case '<' -> next == '=' ? LESS_THAN_OR_EQUAL : next == '>' ? NOT_EQUAL : LESS_THAN;
+                    case '>' -> next == '=' ? GREATER_THAN_OR_EQUAL : GREATER_THAN;
+                    case '=' -> EQUAL;
+                    case '+' -> ADD;
+                    case '-' -> SUBTRACT;
+                    case '*' -> MULTIPLY;
+                    case '/' -> DIVIDE;
+                    case '(' -> OPEN_PARENTHESIS;
+                    case ')' -> CLOSE_PARENTHESIS;
+                    case ',' -> COMMA;
+                    default -> -1;
+                };
+                if (kind == -1) {
+                    i++; // not part of any token
+                    continue;
+                }
+                i += kind == LESS_THAN_OR_EQUAL || kind == NOT_EQUAL || kind == GREATER_THAN_OR_EQUAL ? 2 : 1;
+                this.add(kind, tokenStart, i, NO_VALUE);
+            }
+        }
+        return this.count;
+    }
+
+    //region Accessors
+    /**
+     * Gets the number of tokens in the last scanned line.
+     *
+     * @return The number of tokens.
+     */
+    public int count() {
+        return this.count;
+    }
+
+    /**
+     * Gets the kind of the given token.
+     *
+     * @param token The index of the token.
+     * @return The kind of the token, one of the token kind constants.
+     */
+    public byte kind(int token) {
+        return this.kinds[token];
+    }
+
+    /**
+     * Gets the value of the given token: the parsed value of a {@link #NUMBER}.
+     *
+     * @param token The index of the token.
+     * @return The value of the token, or {@link #NO_VALUE} if a number does not fit in an int.
+     */
+    public int number(int token) {
+        return this.values[token];
+    }
+
+    /**
+     * Gets the statement keyword of the given token.
+     *
+     * @param token The index of the token.
+     * @return The statement, or {@code null} if the token is not a statement keyword.
+     */
+    public @Nullable LStatement statement(int token) {
+        return this.kinds[token] == WORD && this.values[token] != NO_VALUE ? KEYWORD_STATEMENTS[this.values[token]] : null;
+    }
+
+    /**
+     * Gets the reserved keyword of the given token.
+     *
+     * @param token The index of the token.
+     * @return The reserved keyword, or {@code null} if the token is not a reserved keyword.
+     */
+    public @Nullable LReservedKeyword reservedKeyword(int token) {
+        return this.kinds[token] == WORD && this.values[token] != NO_VALUE ? KEYWORD_RESERVED[this.values[token]] : null;
+    }
+
+    /**
+     * Gets the length of the given token, in characters.
+     *
+     * @param token The index of the token.
+     * @return The length of the token.
+     */
+    public int length(int token) {
+        return this.ends[token] - this.starts[token];
+    }
+
+    /**
+     * Gets the first character of the given token.
+     *
+     * @param token The index of the token.
+     * @return The first character.
+     */
+    public char firstChar(int token) {
+        return this.source.charAt(this.starts[token]);
+    }
+
+    /**
+     * Gets the text of the given token.
+     *
+     * @param token The index of the token.
+     * @return The text of the token.
+     */
+    public @NotNull String text(int token) {
+        return this.source.subSequence(this.starts[token], this.ends[token]).toString();
+    }
+
+    /**
+     * Gets the text of a range of tokens, separated by single spaces.
+     *
+     * @param from The index of the first token.
+     * @param to The index after the last token.
+     * @return The joined text of the tokens.
+     */
+    public @NotNull String join(int from, int to) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                builder.append(' ');
+            }
+            builder.append(this.text(i));
+        }
+        return builder.toString();
+    }
+    //endregion
+
+    /**
+     * Splits a line into the text of its tokens.
+     *
+     * @param line The line to split.
+     * @return The text of each token, in order.
+     */
     public static List<String> tokenise(String line) {
-        Matcher matcher = TOKEN_PATTERN.matcher(line);
-        List<String> tokens = new ArrayList<>();
-        while (matcher.find()) {
-            tokens.add(matcher.group());
+        Lexer lexer = new Lexer();
+        int count = lexer.scan(line, 0, line.length());
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add(lexer.text(i));
         }
         return tokens;
     }
+
+    //region Helper Methods
+    private void add(byte kind, int start, int end, int value) {
+        if (this.count == this.kinds.length) {
+            int capacity = this.count * 2;
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.ends = Arrays.copyOf(this.ends, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.kinds[this.count] = kind;
+        this.starts[this.count] = start;
+        this.ends[this.count] = end;
+        this.values[this.count++] = value;
+    }
+
+    private static int keywordOf(CharSequence source, int start, int end) {
+        int slot = hash(source.charAt(start), source.charAt(end - 1), end - start);
+        String keyword = KEYWORDS[slot];
+        if (keyword == null || keyword.length() != end - start) {
+            return NO_VALUE;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (keyword.charAt(i) != source.charAt(start + i)) {
+                return NO_VALUE;
+            }
+        }
+        return slot;
+    }
+
+    private static int registerKeyword(String keyword) {
+        int slot = hash(keyword.charAt(0), keyword.charAt(keyword.length() - 1), keyword.length());
+        if (KEYWORDS[slot] != null) {
+            throw new IllegalStateException("Keyword hash collision: %s and %s".formatted(KEYWORDS[slot], keyword));
+        }
+        KEYWORDS[slot] = keyword;
+        return slot;
+    }
+
+    private static int hash(char first, char last, int length) {
+        return (length + first * 3 + (last << 3)) & (KEYWORD_TABLE_SIZE - 1);
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    //endregion
 }
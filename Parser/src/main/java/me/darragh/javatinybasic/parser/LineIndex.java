@@ -0,0 +1,203 @@
+package me.darragh.javatinybasic.parser;
+
+import me.darragh.javatinybasic.ast.ExpressionInterner;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static me.darragh.javatinybasic.parser.Lexer.NUMBER;
+
+/**
+ * An index of the lines of a Tiny BASIC source by line number, so that each line can be parsed only once it is needed.
+ * <br/>
+ * Building an index scans the source once for line breaks and line numbers, without parsing any statements. Lines are
+ * then parsed one at a time with {@link #parse(int)}, so a line which is never needed is never parsed, and an invalid
+ * statement is only reported once its line is parsed. Lines without a valid line number cannot be indexed, so they
+ * are reported straight away.
+ * <br/>
+ * Lines are indexed in line number order. As when a parsed program is linked, REM statements are left out, and only
+ * the first of several lines with the same line number is kept. The index holds on to the source, which must not
+ * change whilst it is in use.
+ * <br/>
+ * Indexes are immutable, so lines may be parsed from any number of threads.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class LineIndex {
+    private final CharSequence source;
+    private final int[] lineNumbers;
+    private final int[] starts;
+
+    private LineIndex(CharSequence source, int[] lineNumbers, int[] starts) {
+        this.source = source;
+        this.lineNumbers = lineNumbers;
+        this.starts = starts;
+    }
+
+    //region Indexing
+    /**
+     * Indexes the lines of the given source.
+     *
+     * @param source The source code to index.
+     * @return The index.
+     * @throws ParserInvalidLineException If any line does not start with a valid line number.
+     */
+    public static @NotNull LineIndex of(@NotNull CharSequence source) throws ParserInvalidLineException {
+        Lexer lexer = new Lexer();
+        int length = source.length(),
+                count = 0;
+        int[] lineNumbers = new int[1024],
+                starts = new int[1024];
+        boolean sorted = true;
+
+        for (int lineStart = 0; lineStart < length; ) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && source.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+
+            // Trim the line, skipping it if it is blank
+            int start = lineStart,
+                    end = lineEnd;
+            while (start < end && source.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && source.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            // Only the line number and statement are scanned
+            if (start < end) {
+                lexer.scan(source, start, end, 2);
+                if (lexer.count() < 2 || lexer.kind(0) != NUMBER || lexer.number(0) < 1) {
+                    Parser.parseLine(lexer, new ExpressionInterner(), source, start, end); // reports the line as parsing would
+                } else if (lexer.statement(1) != LStatement.REM) {
+                    if (count == lineNumbers.length) {
+                        lineNumbers = Arrays.copyOf(lineNumbers, count * 2);
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    sorted &= count == 0 || lexer.number(0) > lineNumbers[count - 1];
+                    lineNumbers[count] = lexer.number(0);
+                    starts[count++] = start;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (!sorted) {
+            return sort(source, lineNumbers, starts, count);
+        }
+        return new LineIndex(source, Arrays.copyOf(lineNumbers, count), Arrays.copyOf(starts, count));
+    }
+
+    /**
+     * Indexes the lines of a UTF-8 source file by mapping it into memory. The file is scanned in place, and stays
+     * mapped for as long as the index is in use, so lines are parsed straight from the mapped file.
+     *
+     * @param path The file to index.
+     * @return The index.
+     * @throws IOException If the file cannot be read, or is larger than 2 GiB.
+     * @throws ParserInvalidLineException If any line does not start with a valid line number.
+     */
+    public static @NotNull LineIndex map(@NotNull Path path) throws IOException, ParserInvalidLineException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is larger than %s bytes: %s".formatted(Integer.MAX_VALUE, path));
+            }
+            return of(new StreamingParser.ByteSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), 0, (int) size));
+        }
+    }
+
+    private static LineIndex sort(CharSequence source, int[] lineNumbers, int[] starts, int count) {
+        // Sort by line number, then by position in the source, so the first of any duplicates comes first
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) lineNumbers[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sortedLineNumbers = new int[count],
+                sortedStarts = new int[count];
+        int size = 0;
+        for (long key : keys) {
+            int lineNumber = (int) (key >>> 32);
+            if (size > 0 && sortedLineNumbers[size - 1] == lineNumber) {
+                continue;
+            }
+            sortedLineNumbers[size] = lineNumber;
+            sortedStarts[size++] = starts[(int) key];
+        }
+        return new LineIndex(source, Arrays.copyOf(sortedLineNumbers, size), Arrays.copyOf(sortedStarts, size));
+    }
+    //endregion
+
+    //region Accessors
+    /**
+     * Gets the number of indexed lines.
+     *
+     * @return The number of lines.
+     */
+    public int size() {
+        return this.lineNumbers.length;
+    }
+
+    /**
+     * Gets the line number of the given line.
+     *
+     * @param index The index of the line.
+     * @return The line number.
+     */
+    public int lineNumber(int index) {
+        return this.lineNumbers[index];
+    }
+
+    /**
+     * Gets the line numbers of every line, in ascending order.
+     *
+     * @return The line numbers, which are shared with the index and must not be modified.
+     */
+    public int @NotNull [] lineNumbers() {
+        return this.lineNumbers;
+    }
+
+    /**
+     * Finds the index of the given line number.
+     *
+     * @param lineNumber The line number to find.
+     * @return The index of the line, or {@code -1} if the line does not exist.
+     */
+    public int indexOf(int lineNumber) {
+        int index = Arrays.binarySearch(this.lineNumbers, lineNumber);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Parses the given line. Each call parses the line again, so callers should keep the tokens they need.
+     *
+     * @param index The index of the line.
+     * @return A Token representing the parsed line.
+     * @throws ParserInvalidLineException If the line is invalid or cannot be parsed.
+     */
+    public @NotNull Token parse(int index) throws ParserInvalidLineException {
+        int start = this.starts[index],
+                end = start;
+        while (end < this.source.length() && this.source.charAt(end) != '\n') {
+            end++;
+        }
+
+        Token token = Parser.parseLine(new Lexer(), new ExpressionInterner(), this.source, start, end);
+        if (token == null) {
+            throw new IllegalStateException("Line %s is no longer in the source".formatted(this.lineNumbers[index]));
+        }
+        return token;
+    }
+    //endregion
+}
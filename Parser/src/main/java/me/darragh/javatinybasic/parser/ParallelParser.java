@@ -0,0 +1,80 @@
+package me.darragh.javatinybasic.parser;
+
+import me.darragh.javatinybasic.ast.ExpressionInterner;
+import me.darragh.javatinybasic.ast.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses a range of a source on a {@link java.util.concurrent.ForkJoinPool}, splitting it in half at line boundaries
+ * until each chunk is small enough to parse sequentially.
+ * <br/>
+ * Every line is parsed, even after one fails, so that the failures of all chunks can be reported in source order.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+final class ParallelParser extends RecursiveTask<ParallelParser.Result> {
+    static final int CHUNK_SIZE = 1 << 16; // characters
+
+    private final String source;
+    private final int start, end;
+
+    ParallelParser(String source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected Result compute() {
+        if (this.end - this.start > CHUNK_SIZE) {
+            // A newline which ends the range leaves nothing to split off, so the range is parsed whole
+            int split = this.source.indexOf('\n', this.start + (this.end - this.start) / 2);
+            if (split != -1 && split < this.end - 1) {
+                ParallelParser left = new ParallelParser(this.source, this.start, split + 1),
+                        right = new ParallelParser(this.source, split + 1, this.end);
+                right.fork();
+                Result result = left.compute();
+                result.append(right.join());
+                return result;
+            }
+        }
+        return this.parseChunk();
+    }
+
+    private Result parseChunk() {
+        Result result = new Result();
+        Lexer lexer = new Lexer();
+        ExpressionInterner interner = new ExpressionInterner();
+        for (int lineStart = this.start; lineStart < this.end; ) {
+            int lineEnd = this.source.indexOf('\n', lineStart);
+            if (lineEnd == -1 || lineEnd > this.end) {
+                lineEnd = this.end;
+            }
+
+            try {
+                Token token = Parser.parseLine(lexer, interner, this.source, lineStart, lineEnd);
+                if (token != null) { // skip empty lines and REM statements
+                    result.tokens.add(token);
+                }
+            } catch (ParserInvalidLineException | RuntimeException e) {
+                result.failures.add(e);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return result;
+    }
+
+    static final class Result {
+        final List<Token> tokens = new ArrayList<>();
+        final List<Exception> failures = new ArrayList<>();
+
+        private void append(Result result) {
+            this.tokens.addAll(result.tokens);
+            this.failures.addAll(result.failures);
+        }
+    }
+}
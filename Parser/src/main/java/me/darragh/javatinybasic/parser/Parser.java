@@ -1,12 +1,11 @@
 package me.darragh.javatinybasic.parser;
 
 import lombok.Data;
-import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import me.darragh.javatinybasic.ast.ExpressionInterner;
 import me.darragh.javatinybasic.ast.Token;
 import me.darragh.javatinybasic.ast.TokenFactory;
 import me.darragh.javatinybasic.ast.expression.Expression;
-import me.darragh.javatinybasic.ast.expression.MathematicalExpression;
 import me.darragh.javatinybasic.ast.expression.StringValueExpression;
 import me.darragh.javatinybasic.ast.expression.ValueExpression;
 import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
@@ -16,9 +15,18 @@ import me.darragh.javatinybasic.ast.langauge.LStatement;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static me.darragh.javatinybasic.parser.Lexer.*;
 
 /**
  * Parses the source of a Tiny BASIC program into a list of tokens, identifying statement types, data types, etc.
@@ -29,11 +37,6 @@ import java.util.regex.Pattern;
 @Data
 @RequiredArgsConstructor
 public class Parser {
-    //region Patterns
-    private static final Pattern POSITIVE_NUMBER_PATTERN = Pattern.compile("^\\d+");
-    private static final Pattern VALID_VARIABLE_NAME_PATTERN = Pattern.compile("[A-Z]"); // Classic tiny BASIC variable names are single uppercase letters
-    //endregion
-
     private final @NotNull String source;
     private final @NotNull List<Token> tokens = new ArrayList<>();
 
@@ -41,15 +44,20 @@ public class Parser {
      * Parses the source code into tokens, processing each line and identifying the type of statement.
      */
     public void parse() throws ParserInvalidLineException {
-        List<String> lines = List.of(source.split("\n"));
-        for (String line : lines) {
-            line = line.trim();
-            if (line.isEmpty()) { // skip empty lines
-                continue;
+        Lexer lexer = new Lexer();
+        ExpressionInterner interner = new ExpressionInterner();
+        int length = this.source.length();
+        for (int lineStart = 0; lineStart < length; ) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && this.source.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+
+            Token token = parseLine(lexer, interner, this.source, lineStart, lineEnd);
+            if (token != null) { // skip empty lines and REM statements
+                this.tokens.add(token);
             }
-            Token token = parseLine(line);
-            if (token == null) continue; // skip REM statements
-            this.tokens.add(token);
+            lineStart = lineEnd + 1;
         }
     }
 
@@ -66,6 +74,86 @@ public class Parser {
         return parser.tokens;
     }
 
+    /**
+     * Parses source code incrementally from a reader, passing each token to the consumer as soon as its line is parsed.
+     * Only the current line is buffered, so the source never needs to be held in memory as a whole.
+     *
+     * @param reader The reader to parse from, which is not closed.
+     * @param consumer The consumer of the tokens, in source order.
+     * @throws IOException If the reader fails.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     */
+    public static void parse(@NotNull Reader reader, @NotNull Consumer<Token> consumer) throws IOException, ParserInvalidLineException {
+        StreamingParser.parse(reader, consumer);
+    }
+
+    /**
+     * Parses UTF-8 source code incrementally from a stream, passing each token to the consumer as soon as its line is
+     * parsed.
+     *
+     * @param stream The stream to parse from, which is not closed.
+     * @param consumer The consumer of the tokens, in source order.
+     * @throws IOException If the stream fails.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     */
+    public static void parse(@NotNull InputStream stream, @NotNull Consumer<Token> consumer) throws IOException, ParserInvalidLineException {
+        StreamingParser.parse(new InputStreamReader(stream, StandardCharsets.UTF_8), consumer);
+    }
+
+    /**
+     * Parses a UTF-8 source file by mapping it into memory, passing each token to the consumer as soon as its line is
+     * parsed. The file is scanned in place, without being decoded into a string.
+     *
+     * @param path The file to parse.
+     * @param consumer The consumer of the tokens, in source order.
+     * @throws IOException If the file cannot be read, or contains a line longer than 256 MiB.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     */
+    public static void parse(@NotNull Path path, @NotNull Consumer<Token> consumer) throws IOException, ParserInvalidLineException {
+        StreamingParser.parse(path, consumer);
+    }
+
+    /**
+     * Parses the entire source code into a list of tokens, splitting it into chunks of lines which are parsed in
+     * parallel on the common {@link ForkJoinPool}.
+     *
+     * @param source The source code to parse.
+     * @return A list of tokens representing the parsed source code, in the same order as {@link #parse(String)}.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     * @see #parseParallel(String, ForkJoinPool)
+     */
+    public static @NotNull List<Token> parseParallel(@NotNull String source) throws ParserInvalidLineException {
+        return parseParallel(source, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the entire source code into a list of tokens, splitting it into chunks of lines which are parsed in
+     * parallel on the given pool.
+     * <br/>
+     * If any lines are invalid, the failure of the first is thrown, just as {@link #parse(String)} would, with the
+     * failures of every later line attached as suppressed exceptions in source order.
+     *
+     * @param source The source code to parse.
+     * @param pool The pool to parse the chunks on.
+     * @return A list of tokens representing the parsed source code, in the same order as {@link #parse(String)}.
+     * @throws ParserInvalidLineException If any line in the source code is invalid or cannot be parsed.
+     */
+    public static @NotNull List<Token> parseParallel(@NotNull String source, @NotNull ForkJoinPool pool) throws ParserInvalidLineException {
+        ParallelParser.Result result = pool.invoke(new ParallelParser(source, 0, source.length()));
+        if (result.failures.isEmpty()) {
+            return result.tokens;
+        }
+
+        Exception failure = result.failures.getFirst();
+        for (int i = 1; i < result.failures.size(); i++) {
+            failure.addSuppressed(result.failures.get(i));
+        }
+        if (failure instanceof ParserInvalidLineException parserInvalidLineException) {
+            throw parserInvalidLineException;
+        }
+        throw (RuntimeException) failure;
+    }
+
     /**
      * Parses a single line of Tiny BASIC code into a Token.
      *
@@ -74,89 +162,126 @@ public class Parser {
      * @throws ParserInvalidLineException If the line is invalid or cannot be parsed.
      */
     public static @Nullable Token parseLine(@NotNull String line) throws ParserInvalidLineException {
-        List<String> parts = Lexer.tokenise(line);
-        if (parts.isEmpty()) {
+        Lexer lexer = new Lexer();
+        if (lexer.scan(line, 0, line.length()) == 0) {
             throw ParserInvalidLineException.create("Line cannot be empty: ", line);
         }
-        if (parts.size() < 2) {
-            throw ParserInvalidLineException.create("Line does not have {line number} {statement}: ", line);
+        return parseTokens(lexer, new ExpressionInterner(), line, 0, line.length());
+    }
+
+    /**
+     * Parses a line of Tiny BASIC code within a larger text, reusing the given lexer and interner.
+     *
+     * @param lexer The lexer to scan the line with.
+     * @param interner The interner to share the expressions of the line with those of previous lines.
+     * @param source The text containing the line.
+     * @param start The index of the first character of the line.
+     * @param end The index after the last character of the line.
+     * @return A Token representing the parsed line, or {@code null} for blank lines and REM statements.
+     * @throws ParserInvalidLineException If the line is invalid or cannot be parsed.
+     */
+    static @Nullable Token parseLine(@NotNull Lexer lexer, @NotNull ExpressionInterner interner, @NotNull CharSequence source, int start, int end) throws ParserInvalidLineException {
+        // Trim the line, skipping it if it is blank
+        while (start < end && source.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && source.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+
+        if (lexer.scan(source, start, end) == 0) {
+            throw ParserInvalidLineException.create("Line cannot be empty: ", source.subSequence(start, end).toString());
+        }
+        return parseTokens(lexer, interner, source, start, end);
+    }
+
+    private static @Nullable Token parseTokens(Lexer lexer, ExpressionInterner interner, CharSequence source, int start, int end) throws ParserInvalidLineException {
+        if (lexer.count() < 2) {
+            throw ParserInvalidLineException.create("Line does not have {line number} {statement}: ", source.subSequence(start, end).toString());
         }
 
         // Fetch line number
-        String lineNumberStr = parts.getFirst();
-        if (!lineNumberStr.matches(POSITIVE_NUMBER_PATTERN.pattern())) {
-            throw ParserInvalidLineException.create("Line number must be a positive integer: ", line);
+        if (lexer.kind(0) != NUMBER) {
+            throw ParserInvalidLineException.create("Line number must be a positive integer: ", source.subSequence(start, end).toString());
         }
 
-        int lineNumber;
-        try {
-            lineNumber = Integer.parseInt(lineNumberStr);
-        } catch (NumberFormatException e) {
-            throw ParserInvalidLineException.create("Line number must be a positive integer: ", line, e);
+        int lineNumber = lexer.number(0);
+        if (lineNumber == NO_VALUE) {
+            throw ParserInvalidLineException.create("Line number must be a positive integer: ", source.subSequence(start, end).toString(),
+                    new NumberFormatException("For input string: \"%s\"".formatted(lexer.text(0))));
         }
 
         if (lineNumber < 1) {
-            throw ParserInvalidLineException.create("Line number must be a positive integer: ", line);
+            throw ParserInvalidLineException.create("Line number must be a positive integer: ", source.subSequence(start, end).toString());
         }
 
         // Identify the statement type
-        LStatement statement = LStatement.fromToken(parts.get(1));
-        return switch (statement) {
+        LStatement statement = lexer.statement(1);
+        if (statement == null) {
+            throw new IllegalArgumentException("Unknown statement token: " + lexer.text(1));
+        }
+        Token token = switch (statement) {
             case REM -> null;
-            case LET -> generateLetToken(lineNumber, parts);
-            case PRINT -> generatePrintToken(lineNumber, parts);
-            case INPUT -> generateInputToken(lineNumber, parts);
-            case IF -> generateIfToken(lineNumber, parts);
-            case FOR -> generateForToken(lineNumber, parts);
-            case NEXT -> generateNextToken(lineNumber, parts);
-            case GOTO -> generateGotoToken(lineNumber, parts);
-            case GOSUB -> generateGosubToken(lineNumber, parts);
+            case LET -> generateLetToken(lineNumber, lexer, interner);
+            case PRINT -> generatePrintToken(lineNumber, lexer, interner);
+            case INPUT -> generateInputToken(lineNumber, lexer);
+            case IF -> generateIfToken(lineNumber, lexer, interner);
+            case FOR -> generateForToken(lineNumber, lexer, interner);
+            case NEXT -> generateNextToken(lineNumber, lexer);
+            case GOTO -> generateGotoToken(lineNumber, lexer, interner);
+            case GOSUB -> generateGosubToken(lineNumber, lexer, interner);
             case RETURN -> generateReturnToken(lineNumber);
             case END -> generateEndToken(lineNumber);
         };
+        return token != null ? interner.intern(token) : null;
     }
 
     //region Token Generators
-    private static @NotNull Token generateLetToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() < 5 || !parts.get(3).equals(LRelationalOperator.EQUAL.getSymbol())) {
+    private static @NotNull Token generateLetToken(int lineNumber, Lexer lexer, ExpressionInterner interner) throws ParserInvalidLineException {
+        int count = lexer.count();
+        if (count < 5 || lexer.kind(3) != EQUAL) {
             throw ParserInvalidLineException.create(
                     "LET statement must be in the form: {line number} LET {variable} %s {expression}".formatted(LRelationalOperator.EQUAL.getSymbol()),
-                    String.join(" ", parts)
+                    lexer.join(0, count)
             );
         }
 
-        String variableName = parts.get(2);
-        if (variableName.isEmpty()) {
-            throw ParserInvalidLineException.create("Variable name cannot be empty in LET statement: ", String.join(" ", parts));
-        }
-
         return TokenFactory.createLetToken(
                 lineNumber,
-                variableName,
-                parseValueExpression(parts.subList(4, parts.size()), true)
+                lexer.text(2),
+                parseValueExpression(lexer, interner, 4, count, true)
         );
     }
 
-    private static @NotNull Token generatePrintToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() < 3) {
+    private static @NotNull Token generatePrintToken(int lineNumber, Lexer lexer, ExpressionInterner interner) throws ParserInvalidLineException {
+        int count = lexer.count();
+        if (count < 3) {
             throw ParserInvalidLineException.create(
                     "PRINT statement must be in the form: {line number} PRINT {expression}",
-                    String.join(" ", parts)
+                    lexer.join(0, count)
             );
         }
 
-        String exprLine = String.join(" ", parts.subList(2, parts.size()));
-        List<String> exprParts = splitByCommaOutsideQuotes(exprLine);
-
+        // Split the values by the commas between them
         List<Expression> expressions = new ArrayList<>();
-        for (String exprPart : exprParts) {
-            String trimmed = exprPart.trim();
-            if (trimmed.startsWith("\"") && trimmed.endsWith("\"") && trimmed.length() >= 2) {
-                expressions.add(new StringValueExpression(trimmed.substring(1, trimmed.length() - 1)));
+        int valueStart = 2;
+        for (int i = 2; i <= count; i++) {
+            if (i < count && lexer.kind(i) != COMMA) {
+                continue;
+            }
+
+            if (valueStart == i) {
+                throw ParserInvalidLineException.create("Invalid variable name in value expression: ", lexer.join(0, count));
+            } else if (lexer.kind(valueStart) == STRING && lexer.kind(i - 1) == STRING) {
+                String value = lexer.join(valueStart, i);
+                expressions.add(interner.intern(new StringValueExpression(value.substring(1, value.length() - 1))));
             } else {
-                List<String> tokens = List.of(trimmed.split("\\s+"));
-                expressions.add(parseValueExpression(tokens, true));
+                expressions.add(parseValueExpression(lexer, interner, valueStart, i, true));
             }
+            valueStart = i + 1;
         }
 
         return TokenFactory.createPrintToken(
@@ -165,47 +290,43 @@ public class Parser {
         );
     }
 
-    private static @NotNull Token generateInputToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() < 3) {
+    private static @NotNull Token generateInputToken(int lineNumber, Lexer lexer) throws ParserInvalidLineException {
+        if (lexer.count() < 3) {
             throw ParserInvalidLineException.create(
                     "INPUT statement must be in the form: {line number} INPUT {variable}",
-                    String.join(" ", parts)
+                    lexer.join(0, lexer.count())
             );
         }
 
-        String variableName = parts.get(2);
-        if (variableName.isEmpty()) {
-            throw ParserInvalidLineException.create("Variable name cannot be empty in INPUT statement: ", String.join(" ", parts));
+        if (!isValidVariableName(lexer, 2)) {
+            throw ParserInvalidLineException.create("Invalid variable name in INPUT statement: ", lexer.join(0, lexer.count()));
         }
 
-        if (!isValidVariableName(variableName)) {
-            throw ParserInvalidLineException.create("Invalid variable name in INPUT statement: ", String.join(" ", parts));
-        }
-
-        return TokenFactory.createInputToken(lineNumber, variableName);
+        return TokenFactory.createInputToken(lineNumber, lexer.text(2));
     }
 
-    private static @NotNull Token generateIfToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() < 7) {
+    private static @NotNull Token generateIfToken(int lineNumber, Lexer lexer, ExpressionInterner interner) throws ParserInvalidLineException {
+        int count = lexer.count();
+        if (count < 7) {
             throw ParserInvalidLineException.create(
                     "IF statement must be in the form: {line number} IF {condition} THEN {line number}",
-                    String.join(" ", parts)
+                    lexer.join(0, count)
             );
         }
 
         // Find the THEN keyword
         int thenIndex = -1;
-        for (int i = 2; i < parts.size(); i++) {
-            if (parts.get(i).equalsIgnoreCase(LReservedKeyword.THEN.getToken())) {
+        for (int i = 2; i < count; i++) {
+            if (lexer.reservedKeyword(i) == LReservedKeyword.THEN) {
                 thenIndex = i;
                 break;
             }
         }
 
-        if (thenIndex < 3 || thenIndex >= parts.size() - 1) {
+        if (thenIndex < 3 || thenIndex >= count - 1) {
             throw ParserInvalidLineException.create(
                     "IF statement must contain a valid THEN keyword: ",
-                    String.join(" ", parts)
+                    lexer.join(0, count)
             );
         }
 
@@ -214,26 +335,23 @@ public class Parser {
         int operatorIndex = -1;
 
         for (int i = 2; i < thenIndex; i++) {
-            for (LRelationalOperator operator : LRelationalOperator.values()) {
-                if (parts.get(i).equalsIgnoreCase(operator.getSymbol())) {
-                    relationalOperator = operator;
-                    operatorIndex = i;
-                    break;
-                }
+            relationalOperator = toRelationalOperator(lexer.kind(i));
+            if (relationalOperator != null) {
+                operatorIndex = i;
+                break;
             }
-            if (relationalOperator != null) break;
         }
 
         if (relationalOperator == null || operatorIndex == 2 || operatorIndex >= thenIndex - 1) {
             throw ParserInvalidLineException.create(
                     "IF statement must contain a valid relational operator before THEN: ",
-                    String.join(" ", parts)
+                    lexer.join(0, count)
             );
         }
 
         // Parse the value expressions on either side of the operator
-        ValueExpression valueA = parseValueExpression(parts.subList(2, operatorIndex)),
-                valueB = parseValueExpression(parts.subList(operatorIndex + 1, thenIndex));
+        ValueExpression valueA = parseValueExpression(lexer, interner, 2, operatorIndex, true),
+                valueB = parseValueExpression(lexer, interner, operatorIndex + 1, thenIndex, true);
 
         // Parse the line number to GOTO
         return TokenFactory.createIfToken(
@@ -241,92 +359,95 @@ public class Parser {
                 valueA,
                 valueB,
                 relationalOperator,
-                parseTokenGotoLineNumber(parts, parts.get(thenIndex + 1))
+                parseTokenGotoLineNumber(lexer, thenIndex + 1)
         );
     }
 
-    private static @NotNull Token generateForToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() < 7 || !parts.get(5).equals(LReservedKeyword.TO.getToken())) {
+    private static @NotNull Token generateForToken(int lineNumber, Lexer lexer, ExpressionInterner interner) throws ParserInvalidLineException {
+        int count = lexer.count();
+        if (count < 7 || lexer.reservedKeyword(5) != LReservedKeyword.TO) {
             throw ParserInvalidLineException.create(
                     "FOR statement must be in the form: {line number} FOR {variable} = {start} TO {end} [STEP {step}]",
-                    String.join(" ", parts)
+                    lexer.join(0, count)
             );
         }
 
-        String variableName = parts.get(2);
-        if (variableName.isEmpty() || !isValidVariableName(variableName)) {
-            throw ParserInvalidLineException.create("Invalid variable name in FOR statement: ", String.join(" ", parts));
+        if (!isValidVariableName(lexer, 2)) {
+            throw ParserInvalidLineException.create("Invalid variable name in FOR statement: ", lexer.join(0, count));
         }
 
-        ValueExpression startValue = parseValueExpression(
-                parts.subList(4, 5), false
-        );
-        ValueExpression endValue = parseValueExpression(
-                parts.subList(6, 7), false
-        );
+        ValueExpression startValue = parseValueExpression(lexer, interner, 4, 5, false);
+        ValueExpression endValue = parseValueExpression(lexer, interner, 6, 7, false);
 
-        ValueExpression stepValue = new ValueExpression(1); // Default step value
+        ValueExpression stepValue = interner.literal(1); // Default step value
 
-        if (parts.size() >= 9 && parts.get(7).equals(LReservedKeyword.STEP.getToken())) {
-            stepValue = parseValueExpression(
-                    parts.subList(8, 9), false
-            );
+        if (count >= 9 && lexer.reservedKeyword(7) == LReservedKeyword.STEP) {
+            stepValue = parseValueExpression(lexer, interner, 8, 9, false);
         }
 
         return TokenFactory.createForToken(
                 lineNumber,
-                variableName,
+                lexer.text(2),
                 startValue,
                 endValue,
                 stepValue
         );
     }
 
-    private static @NotNull Token generateNextToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() != 3) {
+    private static @NotNull Token generateNextToken(int lineNumber, Lexer lexer) throws ParserInvalidLineException {
+        if (lexer.count() != 3) {
             throw ParserInvalidLineException.create(
                     "NEXT statement must be in the form: {line number} GOTO {variable}",
-                    String.join(" ", parts)
+                    lexer.join(0, lexer.count())
             );
         }
 
-        String variableName = parts.get(2);
-        if (variableName.isEmpty() || !isValidVariableName(variableName)) {
-            throw ParserInvalidLineException.create("Invalid variable name in NEXT statement: ", String.join(" ", parts));
+        if (!isValidVariableName(lexer, 2)) {
+            throw ParserInvalidLineException.create("Invalid variable name in NEXT statement: ", lexer.join(0, lexer.count()));
         }
         return TokenFactory.createNextToken(
                 lineNumber,
-                variableName
+                lexer.text(2)
         );
     }
 
-    private static @NotNull Token generateGotoToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() != 3) {
+    private static @NotNull Token generateGotoToken(int lineNumber, Lexer lexer, ExpressionInterner interner) throws ParserInvalidLineException {
+        if (lexer.count() < 3) {
             throw ParserInvalidLineException.create(
                     "GOTO statement must be in the form: {line number} GOTO {line number}",
-                    String.join(" ", parts)
+                    lexer.join(0, lexer.count())
             );
         }
 
-        String lineNumberToGotoStr = parts.get(2);
+        if (isComputedLineNumber(lexer)) {
+            return TokenFactory.createGotoToken(
+                    lineNumber,
+                    parseValueExpression(lexer, interner, 2, lexer.count(), true)
+            );
+        }
         return TokenFactory.createGotoToken(
                 lineNumber,
-                parseTokenGotoLineNumber(parts, lineNumberToGotoStr)
+                parseTokenGotoLineNumber(lexer, 2)
         );
     }
 
-    private static @NotNull Token generateGosubToken(int lineNumber, List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() != 3) {
+    private static @NotNull Token generateGosubToken(int lineNumber, Lexer lexer, ExpressionInterner interner) throws ParserInvalidLineException {
+        if (lexer.count() < 3) {
             throw ParserInvalidLineException.create(
                     "GOSUB statement must be in the form: {line number} GOTO {line number}",
-                    String.join(" ", parts)
+                    lexer.join(0, lexer.count())
             );
         }
 
-        String lineNumberToGotoStr = parts.get(2);
+        if (isComputedLineNumber(lexer)) {
+            return TokenFactory.createGosubToken(
+                    lineNumber,
+                    parseValueExpression(lexer, interner, 2, lexer.count(), true)
+            );
+        }
         return TokenFactory.createGosubToken(
                 lineNumber,
-                parseTokenGotoLineNumber(parts, lineNumberToGotoStr)
+                parseTokenGotoLineNumber(lexer, 2)
         );
     }
 
@@ -338,84 +459,83 @@ public class Parser {
         return TokenFactory.createEndToken(lineNumber);
     }
 
-    private static int parseTokenGotoLineNumber(List<String> parts, String lineNumberPart) throws ParserInvalidLineException {
-        if (!lineNumberPart.matches(POSITIVE_NUMBER_PATTERN.pattern())) {
-            throw ParserInvalidLineException.create("Line number to GOSUB must be a positive integer: ", String.join(" ", parts));
+    /**
+     * A GOTO or GOSUB to anything but a single number, such as {@code GOTO A * 10}, is computed when it is executed.
+     */
+    private static boolean isComputedLineNumber(Lexer lexer) {
+        return lexer.count() > 3 || lexer.kind(2) != NUMBER;
+    }
+
+    private static int parseTokenGotoLineNumber(Lexer lexer, int token) throws ParserInvalidLineException {
+        if (lexer.kind(token) != NUMBER) {
+            throw ParserInvalidLineException.create("Line number to GOSUB must be a positive integer: ", lexer.join(0, lexer.count()));
         }
-        int lineNumberToGoto;
-        try {
-            lineNumberToGoto = Integer.parseInt(lineNumberPart);
-        } catch (NumberFormatException e) {
-            throw ParserInvalidLineException.create("Line number to GOTO must be a positive integer: ", String.join(" ", parts), e);
+        int lineNumberToGoto = lexer.number(token);
+        if (lineNumberToGoto == NO_VALUE) {
+            throw ParserInvalidLineException.create("Line number to GOTO must be a positive integer: ", lexer.join(0, lexer.count()),
+                    new NumberFormatException("For input string: \"%s\"".formatted(lexer.text(token))));
         }
         if (lineNumberToGoto < 1) {
-            throw ParserInvalidLineException.create("Line number to GOTO must be a positive integer: ", String.join(" ", parts));
+            throw ParserInvalidLineException.create("Line number to GOTO must be a positive integer: ", lexer.join(0, lexer.count()));
         }
         return lineNumberToGoto;
     }
     //endregion
 
     //region Expression Generators
-    private static ValueExpression parseValueExpression(@NonNull List<String> parts) throws ParserInvalidLineException {
-        return parseValueExpression(parts, true);
-    }
-
-    private static ValueExpression parseValueExpression(@NotNull List<String> parts, boolean supportMathematical) throws ParserInvalidLineException {
-        int size = parts.size();
+    private static ValueExpression parseValueExpression(Lexer lexer, ExpressionInterner interner, int from, int to, boolean supportMathematical) throws ParserInvalidLineException {
+        int size = to - from;
         if (size == 0) {
-            throw ParserInvalidLineException.create("Value expression cannot be empty: ", String.join(" ", parts));
+            throw ParserInvalidLineException.create("Value expression cannot be empty: ", lexer.join(0, lexer.count()));
         } else if (size == 1) {
-            String part = parts.getFirst();
-            if (part.matches(POSITIVE_NUMBER_PATTERN.pattern())) {
-                return new ValueExpression(Integer.parseInt(part));
+            if (lexer.kind(from) == NUMBER) {
+                int value = lexer.number(from);
+                if (value == NO_VALUE) {
+                    throw ParserInvalidLineException.create("Number is too large: ", lexer.text(from));
+                }
+                return interner.literal(value);
             } else {
-                if (!isValidVariableName(part)) {
-                    throw ParserInvalidLineException.create("Invalid variable name in value expression: ", String.join(" ", parts));
+                if (!isValidVariableName(lexer, from)) {
+                    throw ParserInvalidLineException.create("Invalid variable name in value expression: ", lexer.text(from));
                 }
-                return new ValueExpression(part);
+                return interner.variable(lexer.text(from));
             }
         } else {
             if (!supportMathematical) {
-                throw ParserInvalidLineException.create("Mathematical expressions are not supported in this context: ", String.join(" ", parts));
+                throw ParserInvalidLineException.create("Mathematical expressions are not supported in this context: ", lexer.join(from, to));
             }
-            return new ValueExpression(parseMathematicalExpression(parts));
+            return parseMathematicalExpression(lexer, interner, from, to);
         }
     }
 
-    private static MathematicalExpression parseMathematicalExpression(@NotNull List<String> parts) throws ParserInvalidLineException {
-        if (parts.size() < 3) {
-            throw ParserInvalidLineException.create("Mathematical expression must have at least 3 parts: ", String.join(" ", parts));
+    private static ValueExpression parseMathematicalExpression(Lexer lexer, ExpressionInterner interner, int from, int to) throws ParserInvalidLineException {
+        if (to - from < 3) {
+            throw ParserInvalidLineException.create("Mathematical expression must have at least 3 parts: ", lexer.join(from, to));
         }
 
         List<ValueExpression> valueExpressions = new ArrayList<>();
         List<LArithmeticOperator> arithmeticOperators = new ArrayList<>();
         boolean expectingOperator = false;
 
-        for (String s : parts) {
-            String part = s.trim();
-            if (part.isEmpty()) {
-                continue;
-            }
+        for (int i = from; i < to; i++) {
             if (expectingOperator) {
-                LArithmeticOperator operator = LArithmeticOperator.fromSymbol(part);
+                LArithmeticOperator operator = toArithmeticOperator(lexer.kind(i));
+                if (operator == null) {
+                    throw new IllegalArgumentException("Unknown expression symbol: " + lexer.text(i));
+                }
                 arithmeticOperators.add(operator);
                 expectingOperator = false;
             } else {
-                // Use List with single element for recursive call
-                valueExpressions.add(parseValueExpression(List.of(part), false));
+                valueExpressions.add(parseValueExpression(lexer, interner, i, i + 1, false));
                 expectingOperator = true;
             }
         }
 
-        if (valueExpressions.isEmpty()) {
-            throw ParserInvalidLineException.create("Mathematical expression must contain at least one value: ", String.join(" ", parts));
-        }
-
         if (!expectingOperator) {
-            throw ParserInvalidLineException.create("Mathematical expression cannot end with an operator: ", String.join(" ", parts));
+            throw ParserInvalidLineException.create("Mathematical expression cannot end with an operator: ", lexer.join(from, to));
         }
 
-        return new MathematicalExpression(
+        return interner.mathematical(
                 valueExpressions.toArray(new ValueExpression[0]),
                 arithmeticOperators.toArray(new LArithmeticOperator[0])
         );
@@ -424,38 +544,30 @@ public class Parser {
 
     //region Utility Methods
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    private static boolean isValidVariableName(@NotNull String variableName) {
-        return variableName.length() == 1 && VALID_VARIABLE_NAME_PATTERN.matcher(variableName).matches();
+    private static boolean isValidVariableName(Lexer lexer, int token) {
+        return lexer.kind(token) == WORD && lexer.length(token) == 1; // Classic tiny BASIC variable names are single uppercase letters
     }
 
-    private static List<String> splitByCommaOutsideQuotes(String input) throws ParserInvalidLineException {
-        List<String> parts = new ArrayList<>();
-        StringBuilder current = new StringBuilder();
-        boolean inQuotes = false;
-
-        for (int i = 0; i < input.length(); i++) {
-            char c = input.charAt(i);
-            if (c == '"') {
-                if (i > 0 && input.charAt(i - 1) == '\\') {
-                    current.append(c);
-                } else {
-                    inQuotes = !inQuotes;
-                    current.append(c);
-                }
-            } else if (c == ',' && !inQuotes) {
-                parts.add(current.toString());
-                current.setLength(0);
-            } else {
-                current.append(c);
-            }
-        }
-
-        if (inQuotes) {
-            throw ParserInvalidLineException.create("Unterminated string literal in PRINT statement: ", input);
-        }
+    private static @Nullable LRelationalOperator toRelationalOperator(byte kind) {
+        return switch (kind) {
+            case EQUAL -> LRelationalOperator.EQUAL;
+            case NOT_EQUAL -> LRelationalOperator.NOT_EQUAL;
+            case LESS_THAN -> LRelationalOperator.LESS_THAN;
+            case GREATER_THAN -> LRelationalOperator.GREATER_THAN;
+            case LESS_THAN_OR_EQUAL -> LRelationalOperator.LESS_THAN_OR_EQUAL;
+            case GREATER_THAN_OR_EQUAL -> LRelationalOperator.GREATER_THAN_OR_EQUAL;
+            default -> null;
+        };
+    }
 
-        parts.add(current.toString());
-        return parts;
+    private static @Nullable LArithmeticOperator toArithmeticOperator(byte kind) {
+        return switch (kind) {
+            case ADD -> LArithmeticOperator.ADD;
+            case SUBTRACT -> LArithmeticOperator.SUBTRACT;
+            case MULTIPLY -> LArithmeticOperator.MULTIPLY;
+            case DIVIDE -> LArithmeticOperator.DIVIDE;
+            default -> null;
+        };
     }
     //endregion
 }
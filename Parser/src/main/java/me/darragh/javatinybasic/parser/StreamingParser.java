@@ -0,0 +1,139 @@
+package me.darragh.javatinybasic.parser;
+
+import lombok.experimental.UtilityClass;
+import me.darragh.javatinybasic.ast.ExpressionInterner;
+import me.darragh.javatinybasic.ast.Token;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Parses sources incrementally, a line at a time, so that the whole text never needs to be held as a {@link String}.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+@UtilityClass
+class StreamingParser {
+    private static final int READER_BUFFER_SIZE = 8192;
+    private static final long MAPPED_WINDOW_SIZE = 1L << 28; // 256 MiB
+
+    /**
+     * Parses the lines read from the given reader, growing its buffer only for lines longer than it.
+     */
+    static void parse(Reader reader, Consumer<Token> consumer) throws IOException, ParserInvalidLineException {
+        Lexer lexer = new Lexer();
+        ExpressionInterner interner = new ExpressionInterner();
+        char[] buffer = new char[READER_BUFFER_SIZE];
+        CharBuffer sequence = CharBuffer.wrap(buffer);
+        int length = 0;
+
+        while (true) {
+            int read = reader.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                emit(lexer, interner, sequence, 0, length, consumer); // the last line may not end with a newline
+                return;
+            }
+            length += read;
+
+            // Parse every complete line in the buffer
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (buffer[i] == '\n') {
+                    emit(lexer, interner, sequence, lineStart, i, consumer);
+                    lineStart = i + 1;
+                }
+            }
+
+            // Keep the incomplete line, growing the buffer if it fills it
+            length -= lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, length);
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                sequence = CharBuffer.wrap(buffer);
+            }
+        }
+    }
+
+    /**
+     * Parses a file by mapping it into memory, a window of lines at a time.
+     * The file is scanned as bytes in place; only the text of names and literals is decoded, as UTF-8.
+     */
+    static void parse(Path path, Consumer<Token> consumer) throws IOException, ParserInvalidLineException {
+        Lexer lexer = new Lexer();
+        ExpressionInterner interner = new ExpressionInterner();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; ) {
+                long windowSize = Math.min(size - position, MAPPED_WINDOW_SIZE);
+                ByteSequence window = new ByteSequence(channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize), 0, (int) windowSize);
+
+                // Only parse up to the last complete line, unless this is the end of the file
+                int end = window.length();
+                if (position + windowSize < size) {
+                    end = window.lastIndexOf('\n') + 1;
+                    if (end == 0) {
+                        throw new IOException("Line is longer than %s bytes in %s".formatted(MAPPED_WINDOW_SIZE, path));
+                    }
+                }
+
+                int lineStart = 0;
+                for (int i = 0; i < end; i++) {
+                    if (window.charAt(i) == '\n') {
+                        emit(lexer, interner, window, lineStart, i, consumer);
+                        lineStart = i + 1;
+                    }
+                }
+                emit(lexer, interner, window, lineStart, end, consumer);
+                position += end;
+            }
+        }
+    }
+
+    private static void emit(Lexer lexer, ExpressionInterner interner, CharSequence source, int start, int end, Consumer<Token> consumer) throws ParserInvalidLineException {
+        Token token = Parser.parseLine(lexer, interner, source, start, end);
+        if (token != null) { // skip empty lines and REM statements
+            consumer.accept(token);
+        }
+    }
+
+    /**
+     * A view of bytes as characters, one per byte. Tokens are ASCII, so the lexer can scan the bytes directly,
+     * whilst extracted text is decoded as UTF-8.
+     */
+    record ByteSequence(ByteBuffer buffer, int offset, int length) implements CharSequence {
+        @Override
+        public char charAt(int index) {
+            return (char) (this.buffer.get(this.offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSequence(this.buffer, this.offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[this.length];
+            this.buffer.get(this.offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int lastIndexOf(char c) {
+            for (int i = this.length - 1; i >= 0; i--) {
+                if (this.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package me.darragh.javatinybasic.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests splitting a source into chunks to parse in parallel, which must only ever split between lines, and report
+ * the failures of every chunk in source order.
+ */
+class ParallelParserTest {
+    @Test
+    void sourcesSmallerThanAChunkAreParsedWhole() throws Exception {
+        String source = "10 PRINT 1\n\n20 REM skipped\n30 END";
+        assertEquals(Parser.parse(source), Parser.parseParallel(source));
+    }
+
+    @Test
+    void linesLongerThanAChunkAreNotSplit() throws Exception {
+        String line = "10 PRINT " + "12345, ".repeat(ParallelParser.CHUNK_SIZE / 7) + "0";
+        assertTrue(line.length() > ParallelParser.CHUNK_SIZE);
+
+        // On its own there is nowhere to split, and between short lines the split must move to the end of the line
+        for (String source : new String[] { line, line + "\n" + line.replace("10", "20"), "5 END\n" + line + "\n20 END\n" }) {
+            ForkJoinPool pool = new ForkJoinPool(2);
+            try {
+                assertEquals(Parser.parse(source), Parser.parseParallel(source, pool));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void failuresOfEveryChunkAreReportedInOrder() {
+        // A failing line near the end of each of four chunks
+        StringBuilder source = new StringBuilder();
+        int lineNumber = 0;
+        for (int chunk = 1; chunk <= 4; chunk++) {
+            while (source.length() < chunk * ParallelParser.CHUNK_SIZE - 100) {
+                source.append(lineNumber += 10).append(" LET A = A + 1\n");
+            }
+            source.append(lineNumber += 10).append(" LET A =\n");
+        }
+
+        ParserInvalidLineException exception = assertThrows(ParserInvalidLineException.class, () -> Parser.parseParallel(source.toString()));
+        assertEquals(3, exception.getSuppressed().length);
+        Throwable[] failures = new Throwable[4];
+        failures[0] = exception;
+        System.arraycopy(exception.getSuppressed(), 0, failures, 1, 3);
+        int previous = 0;
+        for (Throwable failure : failures) {
+            int failed = Integer.parseInt(failure.getMessage().replaceAll("^.*?(\\d+) LET A =$", "$1"));
+            assertTrue(failed > previous, failure.getMessage());
+            previous = failed;
+        }
+    }
+}
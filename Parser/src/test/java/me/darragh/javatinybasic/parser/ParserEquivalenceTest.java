@@ -0,0 +1,132 @@
+package me.darragh.javatinybasic.parser;
+
+import me.darragh.javatinybasic.ast.Token;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the parallel and streaming parsers, which must produce exactly the tokens and failures of the sequential
+ * parser, wherever their chunks and buffers happen to split the source.
+ */
+class ParserEquivalenceTest {
+    private static final long SEED = 20250611L;
+    private static final String[] VARIABLES = { "A", "B", "I", "N", "Z" };
+    private static final String[] ARITHMETIC_OPERATORS = { "+", "-", "*", "/" };
+    private static final String[] RELATIONAL_OPERATORS = { "=", "<>", "<", ">", "<=", ">=" };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyParserProducesTheSameTokens() throws Exception {
+        // Several parallel chunks, and a line longer than the reader's buffer
+        Random random = new Random(SEED);
+        String source = "1 PRINT " + String.join(", ", random.ints(3000, 0, 1000).mapToObj(String::valueOf).toList()) + "\n"
+                + generate(random, ParallelParser.CHUNK_SIZE * 3);
+        List<Token> expected = Parser.parse(source);
+        assertTrue(expected.size() > 1000, "too few tokens: " + expected.size());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, Parser.parseParallel(source, pool), "parallel");
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Token> read = new ArrayList<>();
+        Parser.parse(new StringReader(source), read::add);
+        assertEquals(expected, read, "reader");
+
+        List<Token> streamed = new ArrayList<>();
+        Parser.parse(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), streamed::add);
+        assertEquals(expected, streamed, "stream");
+
+        Path path = Files.writeString(this.directory.resolve("program.bas"), source);
+        List<Token> mapped = new ArrayList<>();
+        Parser.parse(path, mapped::add);
+        assertEquals(expected, mapped, "mapped file");
+    }
+
+    @Test
+    void everyParserReportsTheSameFailure() throws Exception {
+        String source = generate(new Random(SEED + 1), ParallelParser.CHUNK_SIZE * 2)
+                + "99990 PRINT A, , B\n"
+                + generate(new Random(SEED + 2), ParallelParser.CHUNK_SIZE)
+                + "99991 LET A =\n";
+        ParserInvalidLineException expected = assertThrows(ParserInvalidLineException.class, () -> Parser.parse(source));
+        assertTrue(expected.getMessage().endsWith("99990 PRINT A , , B"), expected.getMessage());
+
+        ParserInvalidLineException parallel = assertThrows(ParserInvalidLineException.class, () -> Parser.parseParallel(source));
+        assertEquals(expected.getMessage(), parallel.getMessage(), "parallel");
+        assertEquals(1, parallel.getSuppressed().length);
+        assertTrue(parallel.getSuppressed()[0].getMessage().endsWith("99991 LET A ="), parallel.getSuppressed()[0].getMessage());
+
+        ParserInvalidLineException read = assertThrows(ParserInvalidLineException.class, () -> Parser.parse(new StringReader(source), token -> {}));
+        assertEquals(expected.getMessage(), read.getMessage(), "reader");
+
+        Path path = Files.writeString(this.directory.resolve("invalid.bas"), source);
+        ParserInvalidLineException mapped = assertThrows(ParserInvalidLineException.class, () -> Parser.parse(path, token -> {}));
+        assertEquals(expected.getMessage(), mapped.getMessage(), "mapped file");
+    }
+
+    //region Generation
+    /**
+     * Generates valid lines, along with blank lines and comments, until the source is at least the given length.
+     */
+    private static String generate(Random random, int length) {
+        StringBuilder source = new StringBuilder();
+        for (int lineNumber = 10; source.length() < length; lineNumber += 10) {
+            source.append(switch (random.nextInt(12)) {
+                case 0 -> "";
+                case 1 -> lineNumber + " REM " + "notes ".repeat(random.nextInt(4));
+                case 2 -> lineNumber + " LET " + variable(random) + " = " + expression(random);
+                case 3 -> lineNumber + " PRINT \"Σ é, " + random.nextInt(100) + "\", " + expression(random);
+                case 4 -> lineNumber + " INPUT " + variable(random);
+                case 5 -> lineNumber + " IF " + expression(random) + " " + pick(random, RELATIONAL_OPERATORS) + " "
+                        + expression(random) + " THEN " + (random.nextInt(1000) + 1) * 10;
+                case 6 -> lineNumber + " FOR " + variable(random) + " = " + value(random) + " TO " + value(random)
+                        + (random.nextBoolean() ? " STEP " + value(random) : "");
+                case 7 -> lineNumber + " NEXT " + variable(random);
+                case 8 -> lineNumber + (random.nextBoolean() ? " GOTO " : " GOSUB ")
+                        + (random.nextBoolean() ? String.valueOf((random.nextInt(1000) + 1) * 10) : expression(random));
+                case 9 -> lineNumber + (random.nextBoolean() ? " RETURN" : " END");
+                case 10 -> lineNumber + " PRINT " + expression(random) + ", " + variable(random) + ", \"\"";
+                default -> lineNumber + " LET " + variable(random) + " = " + value(random);
+            }).append('\n');
+        }
+        return source.toString();
+    }
+
+    private static String expression(Random random) {
+        StringBuilder expression = new StringBuilder(value(random));
+        for (int i = random.nextInt(4); i > 0; i--) {
+            expression.append(' ').append(pick(random, ARITHMETIC_OPERATORS)).append(' ').append(value(random));
+        }
+        return expression.toString();
+    }
+
+    private static String value(Random random) {
+        return random.nextBoolean() ? variable(random) : String.valueOf(random.nextInt(100_000));
+    }
+
+    private static String variable(Random random) {
+        return pick(random, VARIABLES);
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+    //endregion
+}
@@ -0,0 +1,88 @@
+package me.darragh.javatinybasic.parser;
+
+import me.darragh.javatinybasic.ast.Token;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the streaming parsers, which must pass on each line as soon as it is complete, and decode the text of files
+ * scanned as bytes.
+ */
+class StreamingParserTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void linesArePassedOnBeforeTheRestIsRead() {
+        // The reader fails once the first two lines, and part of the third, have been read
+        Reader reader = new Reader() {
+            private final Reader source = new StringReader("10 LET A = 1\n20 PRINT A\n30 PR");
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = this.source.read(buffer, offset, length);
+                if (read == -1) {
+                    throw new IOException("Disconnected");
+                }
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        List<Token> tokens = new ArrayList<>();
+        IOException exception = assertThrows(IOException.class, () -> Parser.parse(reader, tokens::add));
+        assertEquals("Disconnected", exception.getMessage());
+        assertEquals(List.of(10, 20), tokens.stream().map(Token::lineNumber).toList());
+    }
+
+    @Test
+    void readsOfAnyLengthProduceTheSameTokens() throws Exception {
+        String source = "10 PRINT \"one\", 1\n\n20 REM skipped\n30 LET B = 2 * 3\n40 END";
+        List<Token> expected = Parser.parse(source);
+
+        // A character at a time, so that every line is split across reads
+        Reader reader = new StringReader(source) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+        List<Token> tokens = new ArrayList<>();
+        Parser.parse(reader, tokens::add);
+        assertEquals(expected, tokens);
+    }
+
+    @Test
+    void mappedFilesDecodeTextAsUtf8() throws Exception {
+        String source = "10 PRINT \"Σ é ✓\", 1\n20 PRINT \"naïve\"";
+        Path path = Files.writeString(this.directory.resolve("unicode.bas"), source);
+        List<Token> tokens = new ArrayList<>();
+        Parser.parse(path, tokens::add);
+        assertEquals(Parser.parse(source), tokens);
+
+        Path empty = Files.writeString(this.directory.resolve("empty.bas"), "");
+        Parser.parse(empty, token -> fail("parsed a token from an empty file"));
+    }
+
+    @Test
+    void parsingStopsAtTheFirstInvalidLine() throws Exception {
+        Path path = Files.writeString(this.directory.resolve("invalid.bas"), "10 PRINT 1\n20 LET A =\n30 PRINT 2\n");
+        List<Token> tokens = new ArrayList<>();
+        ParserInvalidLineException exception = assertThrows(ParserInvalidLineException.class, () -> Parser.parse(path, tokens::add));
+        assertTrue(exception.getMessage().endsWith("20 LET A ="), exception.getMessage());
+        assertEquals(List.of(10), tokens.stream().map(Token::lineNumber).toList());
+    }
+}
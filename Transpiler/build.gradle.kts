@@ -24,6 +24,8 @@ val annotationImplementation: Configuration by configurations.creating {
 dependencies {
     // Project dependencies:
     implementation(project(":AST"))
+    implementation(project(":Analysis"))
+    implementation(project(":Optimizer"))
 
     // Annotations:
     annotationImplementation("org.projectlombok:lombok:1.18.36")
@@ -32,4 +34,16 @@ dependencies {
     // ASM:
     implementation("org.ow2.asm:asm:9.8")
     implementation("org.ow2.asm:asm-tree:9.8")
+
+    // Testing:
+    testImplementation(project(":Interpreter"))
+    testImplementation(testFixtures(project(":Interpreter")))
+    testImplementation(project(":Parser"))
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
@@ -0,0 +1,327 @@
+package me.darragh.javatinybasic.transpiler;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Transpiles a contiguous region of a linked program, typically a hot loop, into a class which can be
+ * defined in-process by an interpreter.
+ * <br/>
+ * <h2>Useful notes:</h2>
+ * <ul>
+ *  <li>The class has a single method, {@code public static int run(int[] variables, int end, int step, int[] budget)},
+ *  which operates directly on the interpreter's variable slots and returns the instruction index to resume interpreting at.</li>
+ *  <li>{@code budget[0]} holds the number of backward jumps the region may take, and is written back with what is
+ *  left on exit. Once it runs out, the next backward jump exits to its target instead, so the caller can preempt a
+ *  loop which would otherwise never return.</li>
+ *  <li>Statements which are not supported (PRINT, INPUT, GOSUB, RETURN, END, computed GOTO and nested FOR/NEXT) become side exits,
+ *  returning their own index so the interpreter executes them instead.</li>
+ *  <li>If the first statement is a FOR, it is treated as the loop header: it is assumed to be active on entry, with
+ *  the end and step values it was entered with passed in, and its NEXT jumps straight back into the body. When the
+ *  loop would finish, the increment is undone and the NEXT is left to the interpreter, so it can retire the loop. Any
+ *  other jump to the FOR would restart the loop, so it is left to the interpreter too.</li>
+ *  <li>A division by zero, or a jump to a line which does not exist, exits before the statement has any effect, so the
+ *  interpreter reports the error.</li>
+ *  <li>All variables read or written by the region must be defined on entry, which the caller must check.</li>
+ * </ul>
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class RegionTranspiler {
+    public static final String METHOD_NAME = "run";
+    public static final String METHOD_DESCRIPTOR = "([III[I)I";
+
+    private static final int VARIABLES_LOCAL = 0,
+            END_LOCAL = 1,
+            STEP_LOCAL = 2,
+            BUDGET_ARRAY_LOCAL = 3,
+            BUDGET_LOCAL = 4;
+
+    private final List<Token> tokens;
+    private final int firstIndex;
+    private final IntUnaryOperator indexOfLine;
+    private final ToIntFunction<String> slotOf;
+
+    private final LabelNode[] labels;
+    private final Map<Integer, LabelNode> exits = new TreeMap<>();
+    private final Map<Integer, LabelNode> backEdges = new TreeMap<>();
+
+    private RegionTranspiler(List<Token> tokens, int firstIndex, IntUnaryOperator indexOfLine, ToIntFunction<String> slotOf) {
+        this.tokens = tokens;
+        this.firstIndex = firstIndex;
+        this.indexOfLine = indexOfLine;
+        this.slotOf = slotOf;
+        this.labels = new LabelNode[tokens.size()];
+        for (int i = 0; i < this.labels.length; i++) {
+            this.labels[i] = new LabelNode(new Label());
+        }
+    }
+
+    /**
+     * Transpiles the given region into class bytes.
+     *
+     * @param className The internal name of the class to generate, e.g. {@code com/example/Region_10}.
+     * @param tokens The tokens of the region, in instruction order.
+     * @param firstIndex The instruction index of the first token.
+     * @param exitIndex The instruction index to resume at if the last token falls through.
+     * @param indexOfLine Resolves a line number to its instruction index, or to a negative value if it does not exist.
+     * @param slotOf Resolves a variable name to its slot.
+     * @return The bytes of the generated class.
+     */
+    public static byte @NotNull [] transpile(@NotNull String className, @NotNull List<Token> tokens, int firstIndex, int exitIndex,
+                                             @NotNull IntUnaryOperator indexOfLine, @NotNull ToIntFunction<String> slotOf) {
+        ClassNode classNode = new ClassNode();
+        classNode.name = className;
+        classNode.access = ACC_PUBLIC | ACC_FINAL;
+        classNode.version = V17;
+        classNode.superName = "java/lang/Object";
+
+        MethodNode methodNode = new MethodNode(
+                ACC_PUBLIC | ACC_STATIC,
+                METHOD_NAME,
+                METHOD_DESCRIPTOR,
+                null,
+                null
+        );
+        methodNode.instructions = new RegionTranspiler(tokens, firstIndex, indexOfLine, slotOf).generate(exitIndex);
+        classNode.methods.add(methodNode);
+
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    //region Instruction Generation
+    private InsnList generate(int exitIndex) {
+        InsnList list = new InsnList();
+
+        FORExpression header = this.tokens.getFirst().statement() == LStatement.FOR
+                ? (FORExpression) this.tokens.getFirst().expression()
+                : null;
+
+        // Keep the budget in a local whilst the region runs
+        list.add(new VarInsnNode(ALOAD, BUDGET_ARRAY_LOCAL));
+        list.add(new InsnNode(ICONST_0));
+        list.add(new InsnNode(IALOAD));
+        list.add(new VarInsnNode(ISTORE, BUDGET_LOCAL));
+
+        for (int i = 0; i < this.tokens.size(); i++) {
+            Token token = this.tokens.get(i);
+            int index = this.firstIndex + i;
+            list.add(this.labels[i]);
+            list.add(new LineNumberNode(token.lineNumber(), this.labels[i]));
+
+            switch (token.statement()) {
+                case LET -> {
+                    LETExpression letExpression = (LETExpression) Objects.requireNonNull(token.expression());
+                    list.add(new VarInsnNode(ALOAD, VARIABLES_LOCAL));
+                    list.add(pushInt(this.slotOf.applyAsInt(letExpression.variableName())));
+                    list.add(this.generateValueExpression(letExpression.value(), index));
+                    list.add(new InsnNode(IASTORE));
+                }
+                case IF -> {
+                    IFExpression ifExpression = (IFExpression) Objects.requireNonNull(token.expression());
+                    list.add(this.generateValueExpression(ifExpression.valueA(), index));
+                    list.add(this.generateValueExpression(ifExpression.valueB(), index));
+                    int opcode = switch (ifExpression.relationalOperator()) {
+                        case EQUAL -> IF_ICMPEQ;
+                        case NOT_EQUAL -> IF_ICMPNE;
+                        case LESS_THAN -> IF_ICMPLT;
+                        case GREATER_THAN -> IF_ICMPGT;
+                        case LESS_THAN_OR_EQUAL -> IF_ICMPLE;
+                        case GREATER_THAN_OR_EQUAL -> IF_ICMPGE;
+                    };
+                    list.add(new JumpInsnNode(opcode, this.labelOf(this.indexOfLine.applyAsInt(ifExpression.lineNumberToGoto()), index)));
+                }
+                case GOTO -> {
+                    if (token.expression() instanceof LineNumberExpression(int lineNumber)) {
+                        list.add(new JumpInsnNode(GOTO, this.labelOf(this.indexOfLine.applyAsInt(lineNumber), index)));
+                    } else { // computed, so left to the interpreter
+                        list.add(this.generateExit(index));
+                    }
+                }
+                case FOR -> {
+                    if (i != 0) { // nested loops are left to the interpreter
+                        list.add(this.generateExit(index));
+                    }
+                }
+                case NEXT -> {
+                    VariableNameExpression variableExpression = (VariableNameExpression) Objects.requireNonNull(token.expression());
+                    if (header != null && header.variableName().equals(variableExpression.variableName())) {
+                        list.add(this.generateLoopBack(header, index));
+                    } else {
+                        list.add(this.generateExit(index));
+                    }
+                }
+                default -> list.add(this.generateExit(index));
+            }
+        }
+
+        // Fall through out of the region
+        list.add(this.generateExit(exitIndex));
+
+        // Backward jumps, which take from the budget and exit to their target once it runs out
+        this.backEdges.forEach((index, label) -> {
+            list.add(label);
+            list.add(new IincInsnNode(BUDGET_LOCAL, -1));
+            list.add(new VarInsnNode(ILOAD, BUDGET_LOCAL));
+            list.add(new JumpInsnNode(IFLE, this.exits.computeIfAbsent(index, key -> new LabelNode(new Label()))));
+            list.add(new JumpInsnNode(GOTO, this.labels[index - this.firstIndex]));
+        });
+
+        // Side exits for jumps which leave the region
+        this.exits.forEach((index, label) -> {
+            list.add(label);
+            list.add(this.generateExit(index));
+        });
+        return list;
+    }
+
+    private InsnList generateLoopBack(FORExpression header, int index) {
+        InsnList list = new InsnList();
+        int slot = this.slotOf.applyAsInt(header.variableName());
+        LabelNode finished = new LabelNode(new Label()),
+                negativeStep = new LabelNode(new Label()),
+                body = this.labelOf(this.firstIndex + (1 < this.labels.length ? 1 : 0), index);
+
+        // variable += step
+        list.add(new VarInsnNode(ALOAD, VARIABLES_LOCAL));
+        list.add(pushInt(slot));
+        list.add(this.generateSlotLoad(slot));
+        list.add(new VarInsnNode(ILOAD, STEP_LOCAL));
+        list.add(new InsnNode(IADD));
+        list.add(new InsnNode(IASTORE));
+
+        // Test against the end value, only checking the sign of the step if it is not a literal
+        int stepSign = header.stepValue() instanceof LiteralValueExpression(int step) ? Integer.signum(step) : 0;
+        if (stepSign == 0) {
+            list.add(new VarInsnNode(ILOAD, STEP_LOCAL));
+            list.add(new JumpInsnNode(IFLE, negativeStep));
+        }
+        if (stepSign >= 0) {
+            list.add(this.generateSlotLoad(slot));
+            list.add(new VarInsnNode(ILOAD, END_LOCAL));
+            list.add(new JumpInsnNode(IF_ICMPLE, body));
+            if (stepSign == 0) {
+                list.add(new JumpInsnNode(GOTO, finished));
+            }
+        }
+        if (stepSign <= 0) {
+            list.add(negativeStep);
+            list.add(this.generateSlotLoad(slot));
+            list.add(new VarInsnNode(ILOAD, END_LOCAL));
+            list.add(new JumpInsnNode(IF_ICMPGE, body));
+        }
+
+        // Undo the increment and let the interpreter retire the loop
+        list.add(finished);
+        list.add(new VarInsnNode(ALOAD, VARIABLES_LOCAL));
+        list.add(pushInt(slot));
+        list.add(this.generateSlotLoad(slot));
+        list.add(new VarInsnNode(ILOAD, STEP_LOCAL));
+        list.add(new InsnNode(ISUB));
+        list.add(new InsnNode(IASTORE));
+        list.add(this.generateExit(index));
+        return list;
+    }
+
+    private InsnList generateExit(int index) {
+        InsnList list = new InsnList();
+        list.add(new VarInsnNode(ALOAD, BUDGET_ARRAY_LOCAL));
+        list.add(new InsnNode(ICONST_0));
+        list.add(new VarInsnNode(ILOAD, BUDGET_LOCAL));
+        list.add(new InsnNode(IASTORE));
+        list.add(pushInt(index));
+        list.add(new InsnNode(IRETURN));
+        return list;
+    }
+    //endregion
+
+    //region Helper Methods
+    private InsnList generateValueExpression(ValueExpression valueExpression, int index) {
+        return switch (valueExpression) {
+            case MathematicalExpression mathematicalExpression -> this.generateMathematicalExpression(mathematicalExpression, index);
+            case VariableValueExpression(String variableName) -> this.generateSlotLoad(this.slotOf.applyAsInt(variableName));
+            case LiteralValueExpression(int value) -> {
+                InsnList list = new InsnList();
+                list.add(pushInt(value));
+                yield list;
+            }
+        };
+    }
+
+    private InsnList generateMathematicalExpression(MathematicalExpression mathematicalExpression, int index) {
+        InsnList list = new InsnList();
+        ValueExpression[] values = mathematicalExpression.valueExpressions();
+        LArithmeticOperator[] operators = mathematicalExpression.operators();
+
+        list.add(this.generateValueExpression(values[0], index));
+        for (int i = 1; i < values.length; i++) {
+            list.add(this.generateValueExpression(values[i], index));
+            switch (operators[i - 1]) {
+                case ADD -> list.add(new InsnNode(IADD));
+                case SUBTRACT -> list.add(new InsnNode(ISUB));
+                case MULTIPLY -> list.add(new InsnNode(IMUL));
+                case DIVIDE -> {
+                    // Exit before the statement has any effect, so the interpreter raises the error
+                    LabelNode divide = new LabelNode(new Label());
+                    list.add(new InsnNode(DUP));
+                    list.add(new JumpInsnNode(IFNE, divide));
+                    list.add(this.generateExit(index));
+                    list.add(divide);
+                    list.add(new InsnNode(IDIV));
+                }
+            }
+        }
+        return list;
+    }
+
+    private InsnList generateSlotLoad(int slot) {
+        InsnList list = new InsnList();
+        list.add(new VarInsnNode(ALOAD, VARIABLES_LOCAL));
+        list.add(pushInt(slot));
+        list.add(new InsnNode(IALOAD));
+        return list;
+    }
+
+    private LabelNode labelOf(int index, int source) {
+        if (index < 0) {
+            return this.exits.computeIfAbsent(source, key -> new LabelNode(new Label()));
+        }
+        int position = index - this.firstIndex;
+        if (position > 0 && position < this.labels.length || position == 0 && this.tokens.getFirst().statement() != LStatement.FOR) {
+            return index <= source
+                    ? this.backEdges.computeIfAbsent(index, key -> new LabelNode(new Label()))
+                    : this.labels[position];
+        }
+        return this.exits.computeIfAbsent(index, key -> new LabelNode(new Label()));
+    }
+
+    private static AbstractInsnNode pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            return new InsnNode(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return new IntInsnNode(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            return new IntInsnNode(SIPUSH, value);
+        }
+        return new LdcInsnNode(value);
+    }
+    //endregion
+}
@@ -0,0 +1,98 @@
+package me.darragh.javatinybasic.transpiler;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A transpiled Tiny BASIC program which has been defined in its own class loader within the current JVM.
+ * <br/>
+ * The program may be run any number of times; its variables are reset before each run. As the variables are held
+ * in static fields, a single instance must not be run from more than one thread at once - {@link Transpiler#load()}
+ * again to obtain an independent copy.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+@Getter
+public final class TranspiledProgram {
+    private static final MethodType MAIN_METHOD_TYPE = MethodType.methodType(void.class, String[].class);
+    private static final MethodType RESET_METHOD_TYPE = MethodType.methodType(void.class);
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    private final Class<?> programClass;
+    private final MethodHandle mainHandle;
+    private final MethodHandle resetHandle;
+    private final MethodHandle outHandle;
+
+    private TranspiledProgram(Class<?> programClass, MethodHandle mainHandle, MethodHandle resetHandle, MethodHandle outHandle) {
+        this.programClass = programClass;
+        this.mainHandle = mainHandle;
+        this.resetHandle = resetHandle;
+        this.outHandle = outHandle;
+    }
+
+    /**
+     * Defines a program from the class file bytes produced by {@link Transpiler#toBytes()}, in a fresh class loader.
+     * This allows generated classes to be stored and loaded again later without transpiling the program again.
+     *
+     * @param bytes The class file bytes.
+     * @return The loaded program.
+     */
+    public static @NotNull TranspiledProgram define(byte @NotNull [] bytes) {
+        return define(Transpiler.CLASS_NAME, bytes);
+    }
+
+    static TranspiledProgram define(String className, byte[] bytes) {
+        Class<?> programClass = new ProgramClassLoader(TranspiledProgram.class.getClassLoader()).define(className, bytes);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            return new TranspiledProgram(
+                    programClass,
+                    lookup.findStatic(programClass, "main", MAIN_METHOD_TYPE),
+                    lookup.findStatic(programClass, Transpiler.RESET_METHOD_NAME, RESET_METHOD_TYPE),
+                    lookup.findStaticSetter(programClass, Transpiler.OUT_FIELD_NAME, PrintStream.class)
+            );
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to load transpiled class " + className, e);
+        }
+    }
+
+    /**
+     * Runs the program from the start, printing to {@link System#out}, returning once it ends.
+     */
+    public void run() {
+        this.run(System.out);
+    }
+
+    /**
+     * Runs the program from the start, printing to the given stream, returning once it ends.
+     *
+     * @param out The stream which PRINT writes to.
+     */
+    public void run(@NotNull PrintStream out) {
+        try {
+            this.outHandle.invokeExact(out);
+            this.resetHandle.invokeExact();
+            this.mainHandle.invokeExact(NO_ARGUMENTS);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Transpiled program failed", throwable);
+        }
+    }
+
+    private static final class ProgramClassLoader extends ClassLoader {
+        private ProgramClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String className, byte[] bytes) {
+            return this.defineClass(className, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -2,6 +2,10 @@ package me.darragh.javatinybasic.transpiler;
 
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import me.darragh.javatinybasic.analysis.BasicBlock;
+import me.darragh.javatinybasic.analysis.ControlFlowGraph;
+import me.darragh.javatinybasic.analysis.Edge;
+import me.darragh.javatinybasic.ast.JumpTable;
 import me.darragh.javatinybasic.ast.Token;
 import me.darragh.javatinybasic.ast.expression.*;
 import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
@@ -10,6 +14,7 @@ import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
 import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
 import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
 import me.darragh.javatinybasic.ast.langauge.LStatement;
+import me.darragh.javatinybasic.optimizer.Optimizer;
 import org.jetbrains.annotations.NotNull;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
@@ -32,19 +37,35 @@ import static org.objectweb.asm.Opcodes.*;
  * <h2>Useful notes:</h2>
  * <ul>
  *  <li>All variables stored will be of {@link Integer} type.</li>
+ *  <li>PRINT writes to a static {@link java.io.PrintStream} field, which is {@link System#out} unless the program is run
+ *  with {@link TranspiledProgram#run(java.io.PrintStream)}.</li>
  *  <li>GOTO uses goto, an internal JVM bytecode for bytecode.</li>
- *  <li>GOSUB acts as a subroutine, and therefore would be embedded as methods: {generated name from line number}#()V.</li>
+ *  <li>GOSUB pushes the index of its return site onto an int stack and jumps to the subroutine, and RETURN pops it and
+ *  jumps back with a tableswitch over every return site.</li>
+ *  <li>A computed GOTO or GOSUB, such as {@code GOTO A * 10}, jumps to a shared dispatch over every line number, which
+ *  uses a tableswitch if the line numbers are dense enough, so dispatch takes constant time however many lines there
+ *  are, and a lookupswitch otherwise.</li>
+ *  <li>Lines are generated from the program's {@link ControlFlowGraph}, so lines which can never be reached are left
+ *  out, a GOTO to the following line is dropped, and a RETURN which only one GOSUB can have called jumps straight back
+ *  to it rather than through the tableswitch.</li>
  * </ul>
  *
  * @author darraghd493
  * @since 1.0.0
  */
-// TODO: Improve code quality and generation
 @Data
 @RequiredArgsConstructor
 public class Transpiler {
-    private static final String CLASS_NAME = "Transpiled_BASIC_Main";
+    static final String CLASS_NAME = "Transpiled_BASIC_Main";
     private static final String SCANNER_FIELD_NAME = "scanner";
+    static final String OUT_FIELD_NAME = "out";
+    static final String RESET_METHOD_NAME = "reset";
+
+    private static final int RETURN_STACK_LOCAL = 2,
+            RETURN_DEPTH_LOCAL = 3,
+            LINE_NUMBER_LOCAL = 4;
+    private static final int INITIAL_RETURN_STACK_SIZE = 16;
+    private static final int MAX_TABLESWITCH_SIZE = 4096; // keeps the method well within its 64 KiB limit
 
     //region Cache
     private final Map<Integer, Token> tokens;
@@ -52,12 +73,20 @@ public class Transpiler {
     //endregion
 
     //region Class Data
-    private final List<String> variableNames = new ArrayList<>(),
-            subroutineNames = new ArrayList<>();
+    private final List<String> variableNames = new ArrayList<>();
     private final Map<Integer, LabelNode> labelNodes = new LinkedHashMap<>();
     private final List<LabelPlacement> needLabelNodes = new ArrayList<>();
     private final Deque<LoopContext> loopStack = new ArrayDeque<>();
+    private final List<LabelNode> returnSites = new ArrayList<>();
+    private final LabelNode returnDispatch = new LabelNode(new Label()),
+            lineDispatch = new LabelNode(new Label());
+    private final Map<Integer, LabelNode> returnSiteLabels = new HashMap<>(); // by the index of the block returned to
     private boolean usesScanner;
+    private boolean usesLineDispatch;
+    private boolean usesReturnDispatch;
+
+    private ControlFlowGraph controlFlowGraph;
+    private boolean[] generatedBlocks;
 
     private ClassNode classNode;
     private boolean generated;
@@ -76,6 +105,16 @@ public class Transpiler {
         this.lineNumbers = new ArrayList<>(this.tokens.keySet());
         this.generated = false;
     }
+
+    /**
+     * Creates a transpiler for the given tokens once they have been optimised with the {@link Optimizer}.
+     *
+     * @param tokens The tokens to optimise and transpile.
+     * @return The transpiler.
+     */
+    public static @NotNull Transpiler optimized(@NotNull List<Token> tokens) {
+        return new Transpiler(Optimizer.optimize(tokens).tokens());
+    }
     //endregion
 
     /**
@@ -104,6 +143,23 @@ public class Transpiler {
         this.generateMethodInstructions(mainMethodNode, this.tokens.values().stream().toList());
         this.classNode.methods.add(mainMethodNode);
 
+        // Generate the reset method, allowing the class to be run more than once
+        MethodNode resetMethodNode = new MethodNode( // public static void reset();
+                ACC_PUBLIC | ACC_STATIC, // public static
+                RESET_METHOD_NAME, // reset
+                "()V", // void out
+                null,
+                null
+        );
+        InsnList resetMethodInstructions = new InsnList();
+        for (String variableName : this.variableNames) {
+            resetMethodInstructions.add(new InsnNode(ICONST_0));
+            resetMethodInstructions.add(new FieldInsnNode(PUTSTATIC, CLASS_NAME, variableName, "I"));
+        }
+        resetMethodInstructions.add(new InsnNode(RETURN));
+        resetMethodNode.instructions = resetMethodInstructions;
+        this.classNode.methods.add(resetMethodNode);
+
         // Generate the <cinit> method
         MethodNode initMethodNode = new MethodNode(
                 ACC_PUBLIC | ACC_STATIC, // public
@@ -113,11 +169,19 @@ public class Transpiler {
                 null
         );
         InsnList initMethodInstructions = new InsnList();
-        boolean initMethodUsed = false;
 
-        if (this.usesScanner) {
-            initMethodUsed = true;
+        // Create the output field, which starts as System.out and may be replaced before the program is run
+        this.classNode.fields.add(new FieldNode(
+                ACC_PUBLIC | ACC_STATIC,
+                OUT_FIELD_NAME,
+                "Ljava/io/PrintStream;",
+                null,
+                null
+        ));
+        initMethodInstructions.add(new FieldInsnNode(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;"));
+        initMethodInstructions.add(new FieldInsnNode(PUTSTATIC, CLASS_NAME, OUT_FIELD_NAME, "Ljava/io/PrintStream;"));
 
+        if (this.usesScanner) {
             // Create the Scanner field
             FieldNode fieldNode = new FieldNode(
                     ACC_PRIVATE | ACC_STATIC | ACC_FINAL,
@@ -136,27 +200,48 @@ public class Transpiler {
             initMethodInstructions.add(new FieldInsnNode(PUTSTATIC, CLASS_NAME, SCANNER_FIELD_NAME, "Ljava/util/Scanner;"));
         }
 
-        if (initMethodUsed) {
-            initMethodInstructions.add(new InsnNode(RETURN));
-            initMethodNode.instructions = initMethodInstructions;
-            this.classNode.methods.add(initMethodNode);
-        }
+        initMethodInstructions.add(new InsnNode(RETURN));
+        initMethodNode.instructions = initMethodInstructions;
+        this.classNode.methods.add(initMethodNode);
 
         // Update label references
         this.needLabelNodes.forEach(placement ->
                 placement.jumpInsnNode.label = placement.targetLabel != null ? placement.targetLabel : this.labelNodes.get(placement.lineNumber));
+        this.generated = true;
     }
 
     /**
-     * Exports the generated Java Bytecode to a JAR file at the specified path.
+     * Gets the generated Java Bytecode as the contents of a class file.
      *
-     * @param path The path where the JAR file will be created.
+     * @return The class file bytes.
      */
-    public void toFile(@NotNull Path path) {
+    public byte[] toBytes() {
         if (!this.generated) {
             this.generate();
         }
 
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        this.classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Defines the generated Java Bytecode in a fresh class loader within the current JVM, without writing to disk.
+     * <br/>
+     * Each call defines a new copy of the class, so separately loaded programs do not share variables.
+     *
+     * @return The loaded program.
+     */
+    public @NotNull TranspiledProgram load() {
+        return TranspiledProgram.define(CLASS_NAME, this.toBytes());
+    }
+
+    /**
+     * Exports the generated Java Bytecode to a JAR file at the specified path.
+     *
+     * @param path The path where the JAR file will be created.
+     */
+    public void toFile(@NotNull Path path) {
         if (Files.exists(path)) {
             try {
                 Files.delete(path);
@@ -166,10 +251,9 @@ public class Transpiler {
         }
 
         try (JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(path))) {
-            ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
-            this.classNode.accept(classWriter);
+            byte[] bytes = this.toBytes();
             jarOutputStream.putNextEntry(new JarEntry(CLASS_NAME + ".class"));
-            jarOutputStream.write(classWriter.toByteArray());
+            jarOutputStream.write(bytes);
             jarOutputStream.closeEntry();
             jarOutputStream.flush();
             jarOutputStream.putNextEntry(new JarEntry("META-INF/MANIFEST.MF"));
@@ -183,11 +267,30 @@ public class Transpiler {
 
     //region Method Instructions Generation
     private void generateMethodInstructions(@NotNull MethodNode methodNode, @NotNull List<Token> tokens) {
+        // The control-flow graph also checks that every jump targets a line that exists
+        this.controlFlowGraph = ControlFlowGraph.of(tokens);
+        this.generatedBlocks = this.findGeneratedBlocks(tokens);
         InsnList list = new InsnList();
 
+        // Subroutines share the method, with their return sites on a stack
+        boolean usesGosub = tokens.stream().anyMatch(token -> token.statement() == LStatement.GOSUB);
+        if (usesGosub) {
+            list.add(new IntInsnNode(BIPUSH, INITIAL_RETURN_STACK_SIZE));
+            list.add(new IntInsnNode(NEWARRAY, T_INT));
+            list.add(new VarInsnNode(ASTORE, RETURN_STACK_LOCAL));
+            list.add(new InsnNode(ICONST_0));
+            list.add(new VarInsnNode(ISTORE, RETURN_DEPTH_LOCAL));
+        }
+
+        // A RETURN can only jump straight back if every GOSUB returns to a line
+        boolean directReturns = !tokens.isEmpty() && tokens.getLast().statement() != LStatement.GOSUB;
+
         for (int i = 0; i < tokens.size(); i++) {
+            int block = this.controlFlowGraph.blockIndexOf(i);
+            if (!this.generatedBlocks[block]) {
+                continue;
+            }
             Token token = tokens.get(i);
-            System.out.printf("%s\t%s%n", token.lineNumber(), token.statement()); // TODO: Remove in production
 
             LabelNode labelNode = new LabelNode(new Label());
             LineNumberNode lineNumberNode = new LineNumberNode(token.lineNumber(), labelNode);
@@ -203,9 +306,13 @@ public class Transpiler {
                 case IF -> this.generateIfInstructions(token, labelList);
                 case FOR -> this.generateForInstructions(token, labelList);
                 case NEXT -> this.generateNextInstructions(labelList);
-                case GOTO -> this.generateGotoInstructions(token, labelList);
-                case GOSUB -> this.generateGosubInstructions(tokens, token, labelList);
-                case RETURN -> this.generateReturnInstructions(labelList);
+                case GOTO -> {
+                    if (!this.isJumpToNextLine(token, tokens, i)) {
+                        this.generateGotoInstructions(token, labelList);
+                    }
+                }
+                case GOSUB -> this.generateGosubInstructions(token, block, labelList);
+                case RETURN -> this.generateReturnInstructions(block, usesGosub, directReturns, labelList);
                 case END -> this.generateEndInstructions(labelList);
                 default -> {}
             }
@@ -216,6 +323,12 @@ public class Transpiler {
         }
 
         list.add(new InsnNode(RETURN));
+        if (this.usesReturnDispatch) {
+            list.add(this.generateReturnDispatch());
+        }
+        if (this.usesLineDispatch) {
+            list.add(this.generateLineDispatch());
+        }
         methodNode.instructions = list;
     }
 
@@ -223,10 +336,10 @@ public class Transpiler {
         LETExpression letExpression = (LETExpression) token.expression();
         assert letExpression != null : "LET expression should not be null";
 
-        String variableName = letExpression.getVariableName();
+        String variableName = letExpression.variableName();
         this.generateVariable(variableName);
 
-        list.add(this.generateValueExpression(letExpression.getValue()));
+        list.add(this.generateValueExpression(letExpression.value()));
         list.add(new FieldInsnNode(PUTSTATIC, CLASS_NAME, variableName, "I"));
     }
 
@@ -234,51 +347,48 @@ public class Transpiler {
         PRINTExpression printExpression = (PRINTExpression) token.expression();
         assert printExpression != null : "PRINT expression should not be null";
 
-        if (printExpression.getValues().length > 1) {
+        if (printExpression.values().length > 1) {
             // Create the string builder
             list.add(new TypeInsnNode(NEW, "java/lang/StringBuilder"));
             list.add(new InsnNode(DUP));
             list.add(new MethodInsnNode(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V"));
             list.add(new VarInsnNode(ASTORE, 1));
 
-            // Append each value to the StringBuilder
-            for (Expression expression : printExpression.getValues()) {
+            // Append each value to the StringBuilder, separated by spaces
+            Expression[] values = printExpression.values();
+            for (int i = 0; i < values.length; i++) {
+                String separator = i > 0 ? " " : "";
                 list.add(new VarInsnNode(ALOAD, 1));
-                if (expression instanceof ValueExpression valueExpression) {
+                if (values[i] instanceof ValueExpression valueExpression) {
+                    if (i > 0) {
+                        list.add(new LdcInsnNode(" "));
+                        list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false));
+                    }
                     list.add(this.generateValueExpression(valueExpression));
                     list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(I)Ljava/lang/StringBuilder;", false));
-                    list.add(new LdcInsnNode(" "));
-                    list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false));
-                } else if (expression instanceof StringValueExpression stringValueExpression) {
-                    list.add(new LdcInsnNode(stringValueExpression.getValue() + " "));
+                } else if (values[i] instanceof StringValueExpression(String value)) {
+                    list.add(new LdcInsnNode(separator + value));
                     list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false));
                 } else {
-                    throw new IllegalStateException("Unsupported expression type: " + expression);
+                    throw new IllegalStateException("Unsupported expression type: " + values[i]);
                 }
                 list.add(new InsnNode(POP));
             }
 
-            // TODO: Remove the last space added by the loop
-//            list.add(new VarInsnNode(ALOAD, 1));
-//            list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "length", "()I", false));
-//            list.add(new InsnNode(ICONST_1));
-//            list.add(new InsnNode(ISUB));
-//            list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "setLength", "(I)V", false));
-
             // Print the StringBuilder content
-            list.add(new FieldInsnNode(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;"));
+            list.add(new FieldInsnNode(GETSTATIC, CLASS_NAME, OUT_FIELD_NAME, "Ljava/io/PrintStream;"));
             list.add(new VarInsnNode(ALOAD, 1));
             list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false));
             list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false));
         } else {
-            Expression expression = printExpression.getValues()[0];
-            if (expression instanceof ValueExpression) {
-                list.add(new FieldInsnNode(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;"));
-                list.add(this.generateValueExpression((ValueExpression) expression));
+            Expression expression = printExpression.values()[0];
+            if (expression instanceof ValueExpression valueExpression) {
+                list.add(new FieldInsnNode(GETSTATIC, CLASS_NAME, OUT_FIELD_NAME, "Ljava/io/PrintStream;"));
+                list.add(this.generateValueExpression(valueExpression));
                 list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false));
-            } else if (expression instanceof StringValueExpression) {
-                list.add(new FieldInsnNode(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;"));
-                list.add(new LdcInsnNode(((StringValueExpression) expression).getValue()));
+            } else if (expression instanceof StringValueExpression(String value)) {
+                list.add(new FieldInsnNode(GETSTATIC, CLASS_NAME, OUT_FIELD_NAME, "Ljava/io/PrintStream;"));
+                list.add(new LdcInsnNode(value));
                 list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false));
             } else {
                 throw new IllegalStateException("Unsupported expression type: " + expression);
@@ -292,7 +402,7 @@ public class Transpiler {
         VariableNameExpression variableNameExpression = (VariableNameExpression) token.expression();
         assert variableNameExpression != null : "Variable name expression should not be null";
 
-        String variableName = variableNameExpression.getVariableName();
+        String variableName = variableNameExpression.variableName();
         this.generateVariable(variableName);
 
         list.add(new FieldInsnNode(GETSTATIC, CLASS_NAME, SCANNER_FIELD_NAME, "Ljava/util/Scanner;"));
@@ -300,28 +410,28 @@ public class Transpiler {
         list.add(new FieldInsnNode(PUTSTATIC, CLASS_NAME, variableName, "I"));
     }
 
-    private void generateIfInstructions(@NotNull Token token, @NotNull InsnList list) { // TODO: Verify
+    private void generateIfInstructions(@NotNull Token token, @NotNull InsnList list) {
         IFExpression ifExpression = (IFExpression) token.expression();
         assert ifExpression != null : "If expression should not be null";
 
         // Load the values to compare
-        list.add(this.generateValueExpression(ifExpression.getValueA()));
-        list.add(this.generateValueExpression(ifExpression.getValueB()));
+        list.add(this.generateValueExpression(ifExpression.valueA()));
+        list.add(this.generateValueExpression(ifExpression.valueB()));
 
         // Create conditional jump
         JumpInsnNode jumpIfTrue;
-        switch (ifExpression.getRelationalOperator()) {
+        switch (ifExpression.relationalOperator()) {
             case EQUAL -> jumpIfTrue = new JumpInsnNode(IF_ICMPEQ, null);
             case NOT_EQUAL -> jumpIfTrue = new JumpInsnNode(IF_ICMPNE, null);
             case LESS_THAN -> jumpIfTrue = new JumpInsnNode(IF_ICMPLT, null);
             case GREATER_THAN -> jumpIfTrue = new JumpInsnNode(IF_ICMPGT, null);
             case LESS_THAN_OR_EQUAL -> jumpIfTrue = new JumpInsnNode(IF_ICMPLE, null);
             case GREATER_THAN_OR_EQUAL -> jumpIfTrue = new JumpInsnNode(IF_ICMPGE, null);
-            default -> throw new IllegalStateException("Unexpected relational operator: " + ifExpression.getRelationalOperator());
+            default -> throw new IllegalStateException("Unexpected relational operator: " + ifExpression.relationalOperator());
         }
 
         this.needLabelNodes.add(new LabelPlacement(
-                ifExpression.getLineNumberToGoto(), jumpIfTrue
+                ifExpression.lineNumberToGoto(), jumpIfTrue
         ));
         list.add(jumpIfTrue);
     }
@@ -330,22 +440,22 @@ public class Transpiler {
         FORExpression forExpression = (FORExpression)token.expression();
         assert forExpression != null;
 
-        String variableName = forExpression.getVariableName();
+        String variableName = forExpression.variableName();
         this.generateVariable(variableName);
 
         // init: var = start
-        list.add(this.generateValueExpression(forExpression.getStartValue()));
+        list.add(this.generateValueExpression(forExpression.startValue()));
         list.add(new FieldInsnNode(PUTSTATIC, CLASS_NAME, variableName, "I"));
 
         // labels & push
         LabelNode start = new LabelNode(new Label());
         LabelNode end   = new LabelNode(new Label());
-        loopStack.push(new LoopContext(variableName, end, start, forExpression.getStepValue()));
+        loopStack.push(new LoopContext(variableName, end, start, forExpression.stepValue()));
 
         list.add(start);
         // if var > end goto end
         list.add(new FieldInsnNode(GETSTATIC, CLASS_NAME, variableName, "I"));
-        list.add(this.generateValueExpression(forExpression.getEndValue()));
+        list.add(this.generateValueExpression(forExpression.endValue()));
         JumpInsnNode exit = new JumpInsnNode(IF_ICMPGT, null);
         list.add(exit);
         needLabelNodes.add(new LabelPlacement(-1, exit, end));
@@ -368,60 +478,214 @@ public class Transpiler {
     }
 
     private void generateGotoInstructions(@NotNull Token token, @NotNull InsnList list) {
-        LineNumberExpression lineNumberExpression = (LineNumberExpression) token.expression();
-        assert lineNumberExpression != null : "LineNumberExpression should not be null";
+        this.generateJump(token, list);
+    }
 
-        JumpInsnNode jumpInsnNode = new JumpInsnNode(GOTO, null);
-        list.add(jumpInsnNode);
-        this.needLabelNodes.add(new LabelPlacement(
-                lineNumberExpression.getLineNumber(), jumpInsnNode
-        ));
+    private void generateGosubInstructions(@NotNull Token token, int block, @NotNull InsnList list) {
+        // Evaluate a computed target first, so a failure leaves the stack untouched
+        if (token.expression() instanceof ValueExpression valueExpression) {
+            list.add(this.generateValueExpression(valueExpression));
+            list.add(new VarInsnNode(ISTORE, LINE_NUMBER_LOCAL));
+        }
+
+        // Grow the return stack if it is full
+        LabelNode push = new LabelNode(new Label());
+        list.add(new VarInsnNode(ILOAD, RETURN_DEPTH_LOCAL));
+        list.add(new VarInsnNode(ALOAD, RETURN_STACK_LOCAL));
+        list.add(new InsnNode(ARRAYLENGTH));
+        list.add(new JumpInsnNode(IF_ICMPLT, push));
+        list.add(new VarInsnNode(ALOAD, RETURN_STACK_LOCAL));
+        list.add(new VarInsnNode(ILOAD, RETURN_DEPTH_LOCAL));
+        list.add(new InsnNode(ICONST_1));
+        list.add(new InsnNode(ISHL));
+        list.add(new MethodInsnNode(INVOKESTATIC, "java/util/Arrays", "copyOf", "([II)[I", false));
+        list.add(new VarInsnNode(ASTORE, RETURN_STACK_LOCAL));
+
+        // Push the return site, then jump to the subroutine
+        LabelNode returnSite = this.returnSiteLabel(block + 1);
+        list.add(push);
+        list.add(new VarInsnNode(ALOAD, RETURN_STACK_LOCAL));
+        list.add(new VarInsnNode(ILOAD, RETURN_DEPTH_LOCAL));
+        list.add(new LdcInsnNode(this.returnSites.size()));
+        list.add(new InsnNode(IASTORE));
+        list.add(new IincInsnNode(RETURN_DEPTH_LOCAL, 1));
+        this.returnSites.add(returnSite);
+
+        if (token.expression() instanceof ValueExpression) {
+            list.add(new JumpInsnNode(GOTO, this.lineDispatch));
+            this.usesLineDispatch = true;
+        } else {
+            this.generateJump(token, list);
+        }
+        list.add(returnSite);
     }
 
-    private void generateGosubInstructions(@NotNull List<Token> tokens, @NotNull Token token, @NotNull InsnList list) {
-        LineNumberExpression lineNumberExpression = (LineNumberExpression) token.expression();
-        assert lineNumberExpression != null : "LineNumberExpression should not be null";
+    private void generateReturnInstructions(int block, boolean usesGosub, boolean directReturns, @NotNull InsnList list) {
+        if (!usesGosub) {
+            list.add(generateThrow("RETURN without GOSUB"));
+            return;
+        }
 
-        int startLineNumber = lineNumberExpression.getLineNumber();
-        String subroutineName = "subroutine_" + startLineNumber;
-        if (!this.subroutineNames.contains(subroutineName)) { // Create the subroutine if needed
-            this.subroutineNames.add(subroutineName);
+        // Only the GOSUBs which are generated can have pushed a return site
+        List<Edge> returns = this.controlFlowGraph.block(block).successors().stream()
+                .filter(edge -> this.generatedBlocks[edge.target() - 1])
+                .toList();
+        if (!directReturns || returns.size() != 1) {
+            list.add(new JumpInsnNode(GOTO, this.returnDispatch));
+            this.usesReturnDispatch = true;
+            return;
+        }
 
-            // Create a method for the subroutine
-            MethodNode subroutineMethod = new MethodNode(
-                    ACC_PRIVATE | ACC_STATIC,
-                    subroutineName,
-                    "()V",
-                    null,
-                    null
-            );
+        // Only one GOSUB can have called this RETURN, so pop its return site and jump straight back to it
+        LabelNode noGosub = new LabelNode(new Label());
+        list.add(new VarInsnNode(ILOAD, RETURN_DEPTH_LOCAL));
+        list.add(new JumpInsnNode(IFEQ, noGosub));
+        list.add(new IincInsnNode(RETURN_DEPTH_LOCAL, -1));
+        list.add(new JumpInsnNode(GOTO, this.returnSiteLabel(returns.getFirst().target())));
+        list.add(noGosub);
+        list.add(generateThrow("RETURN without GOSUB"));
+    }
 
-            // TODO: Clean up
-            List<Token> subroutineTokens = new ArrayList<>(); // Tokens of line number + 1 -> return
-            for (Token token1 : tokens) {
-                if (token1.lineNumber() >= startLineNumber) {
-                    subroutineTokens.add(token1);
-                    if (token1.statement().equals(LStatement.RETURN)) break;
-                }
+    private void generateEndInstructions(@NotNull InsnList list) {
+        list.add(new InsnNode(RETURN));
+    }
+
+    private void generateJump(@NotNull Token token, @NotNull InsnList list) {
+        switch (token.expression()) {
+            case LineNumberExpression(int lineNumber) -> {
+                JumpInsnNode jumpInsnNode = new JumpInsnNode(GOTO, null);
+                list.add(jumpInsnNode);
+                this.needLabelNodes.add(new LabelPlacement(
+                        lineNumber, jumpInsnNode
+                ));
             }
+            case ValueExpression valueExpression -> {
+                list.add(this.generateValueExpression(valueExpression));
+                list.add(new VarInsnNode(ISTORE, LINE_NUMBER_LOCAL));
+                list.add(new JumpInsnNode(GOTO, this.lineDispatch));
+                this.usesLineDispatch = true;
+            }
+            case null, default -> throw new IllegalStateException("Unsupported expression for %s: %s".formatted(token.statement(), token.expression()));
+        }
+    }
+
+    /**
+     * Pops a return site and jumps back to it, with a tableswitch over the return sites.
+     */
+    private InsnList generateReturnDispatch() {
+        InsnList list = new InsnList();
+        LabelNode noGosub = new LabelNode(new Label());
+        list.add(this.returnDispatch);
+        if (this.returnSites.isEmpty()) { // no GOSUB can be reached
+            list.add(generateThrow("RETURN without GOSUB"));
+            return list;
+        }
+        list.add(new VarInsnNode(ILOAD, RETURN_DEPTH_LOCAL));
+        list.add(new JumpInsnNode(IFEQ, noGosub));
+        list.add(new IincInsnNode(RETURN_DEPTH_LOCAL, -1));
+        list.add(new VarInsnNode(ALOAD, RETURN_STACK_LOCAL));
+        list.add(new VarInsnNode(ILOAD, RETURN_DEPTH_LOCAL));
+        list.add(new InsnNode(IALOAD));
+        list.add(new TableSwitchInsnNode(0, this.returnSites.size() - 1, noGosub, this.returnSites.toArray(new LabelNode[0])));
+        list.add(noGosub);
+        list.add(generateThrow("RETURN without GOSUB"));
+        return list;
+    }
+
+    /**
+     * Jumps to the line number held by a computed GOTO or GOSUB, with a tableswitch if the line numbers are dense
+     * enough and a lookupswitch otherwise.
+     */
+    private InsnList generateLineDispatch() {
+        int[] lineNumbers = this.lineNumbers.stream().mapToInt(Integer::intValue).toArray();
+        LabelNode missing = new LabelNode(new Label());
 
-            this.generateMethodInstructions(subroutineMethod, subroutineTokens);
-            this.classNode.methods.add(subroutineMethod);
+        InsnList list = new InsnList();
+        list.add(this.lineDispatch);
+        list.add(new VarInsnNode(ILOAD, LINE_NUMBER_LOCAL));
+        int min = lineNumbers[0],
+                max = lineNumbers[lineNumbers.length - 1];
+        if (JumpTable.isDense(min, max, lineNumbers.length) && max - min < MAX_TABLESWITCH_SIZE) {
+            LabelNode[] labels = new LabelNode[max - min + 1];
+            Arrays.fill(labels, missing);
+            for (int lineNumber : lineNumbers) {
+                labels[lineNumber - min] = this.labelNodes.get(lineNumber);
+            }
+            list.add(new TableSwitchInsnNode(min, max, missing, labels));
         } else {
-            throw new IllegalStateException("Subroutine with name " + subroutineName + " already exists.");
+            LabelNode[] labels = new LabelNode[lineNumbers.length];
+            for (int i = 0; i < lineNumbers.length; i++) {
+                labels[i] = this.labelNodes.get(lineNumbers[i]);
+            }
+            list.add(new LookupSwitchInsnNode(missing, lineNumbers, labels));
         }
 
-        // Call the subroutine
-        list.add(new MethodInsnNode(INVOKESTATIC, CLASS_NAME, subroutineName, "()V", false));
+        // IllegalStateException("...: " + lineNumber)
+        list.add(missing);
+        list.add(new TypeInsnNode(NEW, "java/lang/IllegalStateException"));
+        list.add(new InsnNode(DUP));
+        list.add(new TypeInsnNode(NEW, "java/lang/StringBuilder"));
+        list.add(new InsnNode(DUP));
+        list.add(new LdcInsnNode("Computed GOTO or GOSUB targets a line that does not exist: "));
+        list.add(new MethodInsnNode(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(Ljava/lang/String;)V", false));
+        list.add(new VarInsnNode(ILOAD, LINE_NUMBER_LOCAL));
+        list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(I)Ljava/lang/StringBuilder;", false));
+        list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false));
+        list.add(new MethodInsnNode(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "(Ljava/lang/String;)V", false));
+        list.add(new InsnNode(ATHROW));
+        return list;
     }
 
-    private void generateReturnInstructions(@NotNull InsnList list) {
-        list.add(new InsnNode(RETURN));
+    /**
+     * Finds the blocks to generate: every reachable block, and every block with a FOR or NEXT, as loops are paired by
+     * their order in the source, along with any block those may continue to.
+     */
+    private boolean[] findGeneratedBlocks(List<Token> tokens) {
+        boolean[] generated = new boolean[this.controlFlowGraph.size()];
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (BasicBlock block : this.controlFlowGraph.blocks()) {
+            boolean loop = false;
+            for (int i = block.start(); i < block.end(); i++) {
+                LStatement statement = tokens.get(i).statement();
+                loop |= statement == LStatement.FOR || statement == LStatement.NEXT;
+            }
+            if (loop || this.controlFlowGraph.isReachable(block.index())) {
+                generated[block.index()] = true;
+                pending.push(block.index());
+            }
+        }
+        while (!pending.isEmpty()) {
+            for (Edge edge : this.controlFlowGraph.block(pending.pop()).successors()) {
+                if (!generated[edge.target()]) {
+                    generated[edge.target()] = true;
+                    pending.push(edge.target());
+                }
+            }
+        }
+        return generated;
     }
 
-    private void generateEndInstructions(@NotNull InsnList list) {
-        list.add(new InsnNode(ICONST_0));
-        list.add(new MethodInsnNode(INVOKESTATIC, "java/lang/System", "exit", "(I)V", false));
+    private boolean isJumpToNextLine(Token token, List<Token> tokens, int index) {
+        int next = index + 1;
+        while (next < tokens.size() && !this.generatedBlocks[this.controlFlowGraph.blockIndexOf(next)]) {
+            next++;
+        }
+        return token.expression() instanceof LineNumberExpression(int lineNumber)
+                && next < tokens.size() && tokens.get(next).lineNumber() == lineNumber;
+    }
+
+    private LabelNode returnSiteLabel(int block) {
+        return this.returnSiteLabels.computeIfAbsent(block, index -> new LabelNode(new Label()));
+    }
+
+    private static InsnList generateThrow(String message) {
+        InsnList list = new InsnList();
+        list.add(new TypeInsnNode(NEW, "java/lang/IllegalStateException"));
+        list.add(new InsnNode(DUP));
+        list.add(new LdcInsnNode(message));
+        list.add(new MethodInsnNode(INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "(Ljava/lang/String;)V", false));
+        list.add(new InsnNode(ATHROW));
+        return list;
     }
     //endregion
 
@@ -429,8 +693,8 @@ public class Transpiler {
     private InsnList generateMathematicalEquation(MathematicalExpression mathematicalExpression) {
         InsnList list = new InsnList();
 
-        ValueExpression[] values = mathematicalExpression.getValueExpressions();
-        LArithmeticOperator[] operators = mathematicalExpression.getOperators();
+        ValueExpression[] values = mathematicalExpression.valueExpressions();
+        LArithmeticOperator[] operators = mathematicalExpression.operators();
 
         if (values.length == 0) {
             return list;
@@ -453,16 +717,16 @@ public class Transpiler {
     }
 
     private InsnList generateValueExpression(ValueExpression valueExpression) {
-        if (valueExpression.getMathematicalExpression() != null) { // redirect to generateMathematicalEquation
-            return this.generateMathematicalEquation(valueExpression.getMathematicalExpression());
-        }
         InsnList list = new InsnList();
-        if (valueExpression.getVariableName() != null) {
-            String variableName = valueExpression.getVariableName();
-            this.generateVariable(variableName);
-            list.add(new FieldInsnNode(GETSTATIC, CLASS_NAME, variableName, "I"));
-        } else {
-            list.add(new LdcInsnNode(valueExpression.getLiteralNumberValue()));
+        switch (valueExpression) {
+            case MathematicalExpression mathematicalExpression -> {
+                return this.generateMathematicalEquation(mathematicalExpression);
+            }
+            case VariableValueExpression(String variableName) -> {
+                this.generateVariable(variableName);
+                list.add(new FieldInsnNode(GETSTATIC, CLASS_NAME, variableName, "I"));
+            }
+            case LiteralValueExpression(int value) -> list.add(new LdcInsnNode(value));
         }
         return list;
     }
@@ -0,0 +1,36 @@
+package me.darragh.javatinybasic.transpiler;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.interpreter.Program;
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.interpret;
+import static me.darragh.javatinybasic.interpreter.ProgramOutput.transpile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the transpiler, whose programs must print exactly what the interpreter prints.
+ */
+class TranspilerTest {
+    @Test
+    void printSeparatesValuesWithSingleSpaces() throws Exception {
+        assertSameOutput("a|1|a 1|1 a|1 2 3|a b 3|", """
+                10 LET A = 1
+                20 PRINT "a"
+                30 PRINT A
+                40 PRINT "a", A
+                50 PRINT A, "a"
+                60 PRINT A, A + 1, A * 3
+                70 PRINT "a", "b", A + 2
+                """);
+    }
+
+    private static void assertSameOutput(String expected, String source) throws Exception {
+        List<Token> tokens = Parser.parse(source);
+        assertEquals(expected, interpret(Program.link(tokens)), "interpreted");
+        assertEquals(expected, transpile(tokens), "transpiled");
+    }
+}
@@ -0,0 +1,565 @@
+package me.darragh.javatinybasic.vm;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.ast.expression.*;
+import me.darragh.javatinybasic.ast.expression.statement.FORExpression;
+import me.darragh.javatinybasic.ast.expression.statement.IFExpression;
+import me.darragh.javatinybasic.ast.expression.statement.LETExpression;
+import me.darragh.javatinybasic.ast.expression.statement.PRINTExpression;
+import me.darragh.javatinybasic.ast.langauge.LArithmeticOperator;
+import me.darragh.javatinybasic.ast.langauge.LRelationalOperator;
+import me.darragh.javatinybasic.ast.langauge.LStatement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+import static me.darragh.javatinybasic.vm.VMOpcodes.*;
+
+/**
+ * Lowers a list of {@link Token}s into a {@link VMProgram}.
+ * <br/>
+ * <h2>Useful notes:</h2>
+ * <ul>
+ *  <li>Each variable is assigned a register, followed by a triple for the end and step values of each FOR loop and
+ *  whether it has been entered; temporaries are allocated after them and reused per line.</li>
+ *  <li>Literal operands are encoded inline as immediates.</li>
+ *  <li>Jump targets are resolved to absolute offsets, so missing lines are rejected at compile time.</li>
+ *  <li>FOR/NEXT pairs are matched statically, in line order. The end and step values are evaluated once, by the FOR,
+ *  as in the interpreter, so a NEXT only adds, compares and jumps.</li>
+ *  <li>A variable which may be read before it is assigned, on some path through the program, is checked where it
+ *  is read and marked where it is assigned, so it fails as in the interpreter. Every other variable is read
+ *  directly.</li>
+ * </ul>
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class VMCompiler {
+    private static final int NO_REGISTER = -1;
+
+    private int[] code = new int[256];
+    private int size;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final Map<String, Integer> variables = new LinkedHashMap<>();
+    private int loopRegisters, usedLoopRegisters;
+    private int temporaries, maxTemporaries;
+
+    private final Map<Integer, Integer> lineOffsets = new HashMap<>();
+    private final List<Fixup> fixups = new ArrayList<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+
+    private final BitSet checkedVariables = new BitSet(); // those which may be read before they are assigned
+    private final BitSet unassigned = new BitSet(); // those which may not yet be assigned, within the current line
+
+    private VMCompiler() {
+    }
+
+    /**
+     * Compiles the given tokens into a {@link VMProgram}.
+     * Duplicate line numbers keep the first occurrence, matching the interpreter.
+     *
+     * @param tokens The tokens to compile.
+     * @return The compiled program.
+     * @throws IllegalArgumentException If a jump targets a line which does not exist, or a NEXT has no matching FOR.
+     */
+    public static @NotNull VMProgram compile(@NotNull List<Token> tokens) {
+        Map<Integer, Token> sorted = new TreeMap<>();
+        for (Token token : tokens) {
+            sorted.putIfAbsent(token.lineNumber(), token);
+        }
+        return new VMCompiler().compileTokens(sorted.values());
+    }
+
+    private VMProgram compileTokens(Collection<Token> tokens) {
+        // Assign each variable a register ahead of time, so temporaries can follow them
+        for (Token token : tokens) {
+            this.collectVariables(token);
+        }
+
+        // Find the variables which may be read before they are assigned
+        Token[] lines = tokens.toArray(new Token[0]);
+        BitSet[] assignedOnEntry = this.findAssignedOnEntry(lines);
+        for (int i = 0; i < lines.length; i++) {
+            BitSet reads = this.readsOf(lines[i]);
+            reads.andNot(assignedOnEntry[i]);
+            this.checkedVariables.or(reads);
+        }
+
+        int[] lineNumbers = new int[lines.length],
+                lineOffsets = new int[lines.length];
+        for (int line = 0; line < lines.length; line++) {
+            Token token = lines[line];
+            lineNumbers[line] = token.lineNumber();
+            lineOffsets[line] = this.size;
+            this.lineOffsets.put(token.lineNumber(), this.size);
+            this.temporaries = 0;
+            this.unassigned.set(0, this.variables.size());
+            this.unassigned.andNot(assignedOnEntry[line]);
+            this.compileToken(token);
+        }
+        this.emit(END); // falling off the end of the program
+
+        // Resolve the jump targets
+        for (Fixup fixup : this.fixups) {
+            Integer offset = this.lineOffsets.get(fixup.lineNumber);
+            if (offset == null) {
+                throw new IllegalArgumentException("%s on line %s targets a line that does not exist: %s".formatted(fixup.token.statement(), fixup.token.lineNumber(), fixup.lineNumber));
+            }
+            this.code[fixup.position] = offset;
+        }
+
+        return new VMProgram(
+                Arrays.copyOf(this.code, this.size),
+                this.strings.toArray(new String[0]),
+                this.variables.keySet().toArray(new String[0]),
+                this.variables.size() + this.loopRegisters + this.maxTemporaries,
+                lineNumbers,
+                lineOffsets
+        );
+    }
+
+    //region Statement Lowering
+    private void compileToken(Token token) {
+        Expression expression = token.expression();
+        switch (token.statement()) {
+            case LET -> {
+                LETExpression letExpression = (LETExpression) Objects.requireNonNull(expression);
+                int variable = this.variable(letExpression.variableName());
+                this.compileExpression(letExpression.value(), variable);
+                this.define(variable);
+            }
+            case PRINT -> this.compilePrint((PRINTExpression) Objects.requireNonNull(expression));
+            case INPUT -> {
+                int variable = this.variable(((VariableNameExpression) Objects.requireNonNull(expression)).variableName());
+                this.emit(INPUT, variable);
+                this.define(variable);
+            }
+            case IF -> this.compileIf(token, (IFExpression) Objects.requireNonNull(expression));
+            case FOR -> {
+                FORExpression forExpression = (FORExpression) Objects.requireNonNull(expression);
+                int variable = this.variable(forExpression.variableName()),
+                        start = this.compileExpression(forExpression.startValue(), NO_REGISTER),
+                        end = this.compileExpression(forExpression.endValue(), this.loopRegister()),
+                        step = this.compileExpression(forExpression.stepValue(), this.loopRegister()),
+                        entered = this.loopRegister();
+                this.emit(FOR, variable, start, step, entered);
+                this.define(variable);
+                this.loops.push(new Loop(variable, end, step, entered, this.size));
+            }
+            case NEXT -> {
+                String variableName = ((VariableNameExpression) Objects.requireNonNull(expression)).variableName();
+                Loop loop = this.closeLoop(this.variable(variableName));
+                if (loop == null) {
+                    throw new IllegalArgumentException("NEXT without matching FOR for variable: " + variableName);
+                }
+                this.emit(NEXT, loop.variable, loop.step, loop.end, loop.entered, loop.bodyOffset);
+            }
+            case GOTO -> {
+                if (expression instanceof ValueExpression valueExpression) {
+                    this.emit(JMPX, this.compileExpression(valueExpression, NO_REGISTER));
+                } else {
+                    this.emitJump(token, JMP, ((LineNumberExpression) Objects.requireNonNull(expression)).lineNumber());
+                }
+            }
+            case GOSUB -> {
+                if (expression instanceof ValueExpression valueExpression) {
+                    this.emit(GOSUBX, this.compileExpression(valueExpression, NO_REGISTER));
+                } else {
+                    this.emitJump(token, GOSUB, ((LineNumberExpression) Objects.requireNonNull(expression)).lineNumber());
+                }
+            }
+            case RETURN -> this.emit(RETURN);
+            case END -> this.emit(END);
+            default -> {}
+        }
+    }
+
+    private void compilePrint(PRINTExpression printExpression) {
+        // Adjacent string literals and separators are merged into a single pooled string
+        StringBuilder pending = new StringBuilder();
+        Expression[] values = printExpression.values();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                pending.append(' ');
+            }
+            if (values[i] instanceof StringValueExpression(String value)) {
+                pending.append(value);
+            } else if (values[i] instanceof ValueExpression valueExpression) {
+                if (!pending.isEmpty()) {
+                    this.emit(PRINT_STR, this.string(pending.toString()));
+                    pending.setLength(0);
+                }
+                this.emit(PRINT_INT, this.compileExpression(valueExpression, NO_REGISTER));
+            } else {
+                throw new IllegalStateException("Unsupported expression type: " + values[i]);
+            }
+        }
+        if (!pending.isEmpty()) {
+            this.emit(PRINT_STR, this.string(pending.toString()));
+        }
+        this.emit(PRINT_LINE);
+    }
+
+    private void compileIf(Token token, IFExpression ifExpression) {
+        ValueExpression valueA = ifExpression.valueA(),
+                valueB = ifExpression.valueB();
+        LRelationalOperator operator = ifExpression.relationalOperator();
+
+        // Prefer the immediate form, mirroring the comparison if the literal is on the left
+        if (valueA instanceof LiteralValueExpression && !(valueB instanceof LiteralValueExpression)) {
+            ValueExpression swap = valueA;
+            valueA = valueB;
+            valueB = swap;
+            operator = mirror(operator);
+        }
+
+        int a = this.compileExpression(valueA, NO_REGISTER);
+        if (valueB instanceof LiteralValueExpression(int literal)) {
+            this.emit(immediateJumpOpcode(operator), a, literal, 0);
+        } else {
+            this.emit(jumpOpcode(operator), a, this.compileExpression(valueB, NO_REGISTER), 0);
+        }
+        this.fixups.add(new Fixup(this.size - 1, ifExpression.lineNumberToGoto(), token));
+    }
+
+    /**
+     * Finds the variables which are assigned on every path to each line, so that only the others need to be checked
+     * when they are read.
+     * <br/>
+     * As a variable is never unassigned, a line which is only reached after another has run may assume whatever that
+     * line assigned. A GOSUB is therefore treated as continuing to the next line, which is where its RETURN goes, and
+     * a FOR as continuing into its body, which is where its NEXT goes. A computed GOTO or GOSUB may reach any line.
+     */
+    private BitSet[] findAssignedOnEntry(Token[] lines) {
+        Map<Integer, Integer> indices = new HashMap<>();
+        for (int i = 0; i < lines.length; i++) {
+            indices.put(lines[i].lineNumber(), i);
+        }
+
+        // Each line's predecessors, besides the computed jumps which may reach every line
+        List<List<Integer>> predecessors = new ArrayList<>();
+        for (int i = 0; i < lines.length; i++) {
+            predecessors.add(new ArrayList<>());
+        }
+        BitSet computedJumps = new BitSet();
+        for (int i = 0; i < lines.length; i++) {
+            Expression expression = lines[i].expression();
+            Integer target = switch (expression) {
+                case IFExpression ifExpression -> indices.get(ifExpression.lineNumberToGoto());
+                case LineNumberExpression(int lineNumber) -> indices.get(lineNumber);
+                case null, default -> null;
+            };
+            if (target != null) {
+                predecessors.get(target).add(i);
+            }
+
+            LStatement statement = lines[i].statement();
+            if ((statement == LStatement.GOTO || statement == LStatement.GOSUB) && expression instanceof ValueExpression) {
+                computedJumps.set(i);
+            }
+            if (i + 1 < lines.length && statement != LStatement.GOTO && statement != LStatement.RETURN && statement != LStatement.END) {
+                predecessors.get(i + 1).add(i);
+            }
+        }
+
+        // Narrow from every variable until nothing changes, as assignments only ever add to what is assigned
+        BitSet all = new BitSet();
+        all.set(0, this.variables.size());
+        BitSet[] onEntry = new BitSet[lines.length],
+                onExit = new BitSet[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            onEntry[i] = (BitSet) all.clone();
+            onExit[i] = (BitSet) all.clone();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            BitSet computed = (BitSet) all.clone();
+            computedJumps.stream().forEach(i -> computed.and(onExit[i]));
+
+            for (int i = 0; i < lines.length; i++) {
+                BitSet entry = i == 0 ? new BitSet() : (BitSet) computed.clone();
+                for (int predecessor : predecessors.get(i)) {
+                    entry.and(onExit[predecessor]);
+                }
+                BitSet exit = (BitSet) entry.clone();
+                int assigned = this.assignedBy(lines[i]);
+                if (assigned != NO_REGISTER) {
+                    exit.set(assigned);
+                }
+
+                changed |= !exit.equals(onExit[i]);
+                onEntry[i] = entry;
+                onExit[i] = exit;
+            }
+        }
+        return onEntry;
+    }
+
+    private Loop closeLoop(int variable) {
+        // A NEXT closes the innermost loop over its variable, along with any loops left open inside it
+        for (Iterator<Loop> iterator = this.loops.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().variable == variable) {
+                Loop loop;
+                do {
+                    loop = this.loops.pop();
+                } while (loop.variable != variable);
+                return loop;
+            }
+        }
+        return null;
+    }
+    //endregion
+
+    //region Expression Lowering
+    /**
+     * Lowers an expression, returning the register which holds its value.
+     *
+     * @param expression The expression to lower.
+     * @param destination The register to write the value to, or {@link #NO_REGISTER} to use any register.
+     * @return The register holding the value.
+     */
+    private int compileExpression(ValueExpression expression, int destination) {
+        switch (expression) {
+            case VariableValueExpression(String variableName) -> {
+                int register = this.variable(variableName);
+                if (this.unassigned.get(register)) {
+                    this.emit(CHECK, register);
+                    this.unassigned.clear(register); // a line only reads its variables before it assigns one
+                }
+                if (destination != NO_REGISTER && destination != register) {
+                    this.emit(MOVE, destination, register);
+                    return destination;
+                }
+                return register;
+            }
+            case LiteralValueExpression(int value) -> {
+                int register = destination != NO_REGISTER ? destination : this.temporary();
+                this.emit(CONST, register, value);
+                return register;
+            }
+            case MathematicalExpression mathematicalExpression -> {
+                return this.compileMathematical(mathematicalExpression, destination);
+            }
+        }
+    }
+
+    private int compileMathematical(MathematicalExpression expression, int destination) {
+        ValueExpression[] values = expression.valueExpressions();
+        LArithmeticOperator[] operators = expression.operators();
+
+        // Intermediate results must not be written to the destination, as it may be read by a later operand
+        int accumulator = this.compileExpression(values[0], NO_REGISTER);
+        boolean accumulatorTemporary = !(values[0] instanceof VariableValueExpression);
+        for (int i = 0; i < operators.length; i++) {
+            int target = i == operators.length - 1 && destination != NO_REGISTER ? destination
+                    : accumulatorTemporary ? accumulator : this.temporary();
+
+            ValueExpression value = values[i + 1];
+            if (value instanceof LiteralValueExpression(int literal) && !(operators[i] == LArithmeticOperator.DIVIDE && literal == 0)) {
+                this.emit(immediateArithmeticOpcode(operators[i]), target, accumulator, literal);
+            } else {
+                this.emit(arithmeticOpcode(operators[i]), target, accumulator, this.compileExpression(value, NO_REGISTER));
+            }
+
+            accumulator = target;
+            accumulatorTemporary = target != destination;
+        }
+        return accumulator;
+    }
+    //endregion
+
+    //region Helper Methods
+    private void collectVariables(Token token) {
+        Expression expression = token.expression();
+        switch (token.statement()) {
+            case LET -> {
+                LETExpression letExpression = (LETExpression) Objects.requireNonNull(expression);
+                this.variable(letExpression.variableName());
+                this.collectVariables(letExpression.value());
+            }
+            case PRINT -> {
+                for (Expression value : ((PRINTExpression) Objects.requireNonNull(expression)).values()) {
+                    if (value instanceof ValueExpression valueExpression) {
+                        this.collectVariables(valueExpression);
+                    }
+                }
+            }
+            case IF -> {
+                IFExpression ifExpression = (IFExpression) Objects.requireNonNull(expression);
+                this.collectVariables(ifExpression.valueA());
+                this.collectVariables(ifExpression.valueB());
+            }
+            case FOR -> {
+                FORExpression forExpression = (FORExpression) Objects.requireNonNull(expression);
+                this.variable(forExpression.variableName());
+                this.loopRegisters += 3;
+                this.collectVariables(forExpression.startValue());
+                this.collectVariables(forExpression.endValue());
+                this.collectVariables(forExpression.stepValue());
+            }
+            case INPUT, NEXT -> this.variable(((VariableNameExpression) Objects.requireNonNull(expression)).variableName());
+            default -> {}
+        }
+    }
+
+    private void collectVariables(ValueExpression expression) {
+        switch (expression) {
+            case VariableValueExpression(String variableName) -> this.variable(variableName);
+            case MathematicalExpression mathematicalExpression -> {
+                for (ValueExpression valueExpression : mathematicalExpression.valueExpressions()) {
+                    this.collectVariables(valueExpression);
+                }
+            }
+            case LiteralValueExpression ignored -> {}
+        }
+    }
+
+    private BitSet readsOf(Token token) {
+        BitSet reads = new BitSet();
+        switch (token.expression()) {
+            case LETExpression letExpression -> this.collectReads(letExpression.value(), reads);
+            case PRINTExpression printExpression -> {
+                for (Expression value : printExpression.values()) {
+                    if (value instanceof ValueExpression valueExpression) {
+                        this.collectReads(valueExpression, reads);
+                    }
+                }
+            }
+            case IFExpression ifExpression -> {
+                this.collectReads(ifExpression.valueA(), reads);
+                this.collectReads(ifExpression.valueB(), reads);
+            }
+            case FORExpression forExpression -> {
+                this.collectReads(forExpression.startValue(), reads);
+                this.collectReads(forExpression.endValue(), reads);
+                this.collectReads(forExpression.stepValue(), reads);
+            }
+            case ValueExpression valueExpression -> this.collectReads(valueExpression, reads); // a computed GOTO or GOSUB
+            case null, default -> {} // a NEXT reads its variable, but only once its FOR has assigned it
+        }
+        return reads;
+    }
+
+    private void collectReads(ValueExpression expression, BitSet reads) {
+        switch (expression) {
+            case VariableValueExpression(String variableName) -> reads.set(this.variable(variableName));
+            case MathematicalExpression mathematicalExpression -> {
+                for (ValueExpression valueExpression : mathematicalExpression.valueExpressions()) {
+                    this.collectReads(valueExpression, reads);
+                }
+            }
+            case LiteralValueExpression ignored -> {}
+        }
+    }
+
+    private int assignedBy(Token token) {
+        return switch (token.statement()) {
+            case LET -> this.variable(((LETExpression) Objects.requireNonNull(token.expression())).variableName());
+            case FOR -> this.variable(((FORExpression) Objects.requireNonNull(token.expression())).variableName());
+            case INPUT -> this.variable(((VariableNameExpression) Objects.requireNonNull(token.expression())).variableName());
+            default -> NO_REGISTER;
+        };
+    }
+
+    private void define(int variable) {
+        if (this.checkedVariables.get(variable)) {
+            this.emit(DEFINE, variable);
+        }
+    }
+
+    private int variable(String variableName) {
+        return this.variables.computeIfAbsent(variableName, name -> this.variables.size());
+    }
+
+    private int loopRegister() {
+        return this.variables.size() + this.usedLoopRegisters++;
+    }
+
+    private int temporary() {
+        int register = this.variables.size() + this.loopRegisters + this.temporaries++;
+        this.maxTemporaries = Math.max(this.maxTemporaries, this.temporaries);
+        return register;
+    }
+
+    private int string(String value) {
+        return this.stringIndices.computeIfAbsent(value, key -> {
+            this.strings.add(key);
+            return this.strings.size() - 1;
+        });
+    }
+
+    private void emitJump(Token token, int opcode, int lineNumber) {
+        this.emit(opcode, 0);
+        this.fixups.add(new Fixup(this.size - 1, lineNumber, token));
+    }
+
+    private void emit(int opcode, int... operands) {
+        if (this.size + 1 + operands.length > this.code.length) {
+            this.code = Arrays.copyOf(this.code, Math.max(this.code.length * 2, this.size + 1 + operands.length));
+        }
+        this.code[this.size++] = opcode;
+        for (int operand : operands) {
+            this.code[this.size++] = operand;
+        }
+    }
+
+    private static int arithmeticOpcode(LArithmeticOperator operator) {
+        return switch (operator) {
+            case ADD -> ADD;
+            case SUBTRACT -> SUB;
+            case MULTIPLY -> MUL;
+            case DIVIDE -> DIV;
+        };
+    }
+
+    private static int immediateArithmeticOpcode(LArithmeticOperator operator) {
+        return switch (operator) {
+            case ADD -> ADDI;
+            case SUBTRACT -> SUBI;
+            case MULTIPLY -> MULI;
+            case DIVIDE -> DIVI;
+        };
+    }
+
+    private static int jumpOpcode(LRelationalOperator operator) {
+        return switch (operator) {
+            case EQUAL -> JEQ;
+            case NOT_EQUAL -> JNE;
+            case LESS_THAN -> JLT;
+            case GREATER_THAN -> JGT;
+            case LESS_THAN_OR_EQUAL -> JLE;
+            case GREATER_THAN_OR_EQUAL -> JGE;
+        };
+    }
+
+    private static int immediateJumpOpcode(LRelationalOperator operator) {
+        return switch (operator) {
+            case EQUAL -> JEQI;
+            case NOT_EQUAL -> JNEI;
+            case LESS_THAN -> JLTI;
+            case GREATER_THAN -> JGTI;
+            case LESS_THAN_OR_EQUAL -> JLEI;
+            case GREATER_THAN_OR_EQUAL -> JGEI;
+        };
+    }
+
+    private static LRelationalOperator mirror(LRelationalOperator operator) {
+        return switch (operator) {
+            case EQUAL, NOT_EQUAL -> operator;
+            case LESS_THAN -> LRelationalOperator.GREATER_THAN;
+            case GREATER_THAN -> LRelationalOperator.LESS_THAN;
+            case LESS_THAN_OR_EQUAL -> LRelationalOperator.GREATER_THAN_OR_EQUAL;
+            case GREATER_THAN_OR_EQUAL -> LRelationalOperator.LESS_THAN_OR_EQUAL;
+        };
+    }
+    //endregion
+
+    private record Fixup(int position, int lineNumber, Token token) { // Unresolved jump target
+    }
+
+    private record Loop(int variable, int end, int step, int entered, int bodyOffset) { // Open FOR loop, with the registers of its end and step values and whether it has been entered
+    }
+}
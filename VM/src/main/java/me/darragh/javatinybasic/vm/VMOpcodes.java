@@ -0,0 +1,115 @@
+package me.darragh.javatinybasic.vm;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * The instruction set of the {@link VirtualMachine}.
+ * <br/>
+ * Each instruction is an opcode followed by its operands, stored inline in an {@code int[]}.
+ * Operands are either registers ({@code r}), inline immediates ({@code imm}), indices into the string pool
+ * ({@code str}) or absolute instruction offsets ({@code pc}).
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+@UtilityClass
+public class VMOpcodes {
+    //region Data
+    public static final int CONST = 0; // CONST dst, imm
+    public static final int MOVE = 1; // MOVE dst, src
+    public static final int INPUT = 2; // INPUT dst
+    //endregion
+
+    //region Arithmetic
+    public static final int ADD = 3; // ADD dst, a, b
+    public static final int SUB = 4; // SUB dst, a, b
+    public static final int MUL = 5; // MUL dst, a, b
+    public static final int DIV = 6; // DIV dst, a, b
+    public static final int ADDI = 7; // ADDI dst, a, imm
+    public static final int SUBI = 8; // SUBI dst, a, imm
+    public static final int MULI = 9; // MULI dst, a, imm
+    public static final int DIVI = 10; // DIVI dst, a, imm (imm is never zero)
+    //endregion
+
+    //region Control Flow
+    public static final int JMP = 11; // JMP pc
+    public static final int JEQ = 12; // JEQ a, b, pc
+    public static final int JNE = 13; // JNE a, b, pc
+    public static final int JLT = 14; // JLT a, b, pc
+    public static final int JGT = 15; // JGT a, b, pc
+    public static final int JLE = 16; // JLE a, b, pc
+    public static final int JGE = 17; // JGE a, b, pc
+    public static final int JEQI = 18; // JEQI a, imm, pc
+    public static final int JNEI = 19; // JNEI a, imm, pc
+    public static final int JLTI = 20; // JLTI a, imm, pc
+    public static final int JGTI = 21; // JGTI a, imm, pc
+    public static final int JLEI = 22; // JLEI a, imm, pc
+    public static final int JGEI = 23; // JGEI a, imm, pc
+    public static final int GOSUB = 24; // GOSUB pc
+    public static final int RETURN = 25; // RETURN
+    public static final int END = 26; // END
+    //endregion
+
+    //region Loops
+    public static final int FOR = 27; // FOR var, start, step, entered
+    public static final int NEXT = 28; // NEXT var, step, end, entered, pc (step and end are set by the FOR, which sets entered)
+    //endregion
+
+    //region Output
+    public static final int PRINT_INT = 29; // PRINT_INT a
+    public static final int PRINT_STR = 30; // PRINT_STR str
+    public static final int PRINT_LINE = 31; // PRINT_LINE
+    //endregion
+
+    //region Computed Control Flow
+    public static final int JMPX = 32; // JMPX a (a holds a line number)
+    public static final int GOSUBX = 33; // GOSUBX a (a holds a line number)
+    //endregion
+
+    //region Variables
+    public static final int CHECK = 34; // CHECK var (fails unless var has been assigned)
+    public static final int DEFINE = 35; // DEFINE var (marks var as assigned)
+    //endregion
+
+    private static final String[] NAMES = {
+            "CONST", "MOVE", "INPUT",
+            "ADD", "SUB", "MUL", "DIV", "ADDI", "SUBI", "MULI", "DIVI",
+            "JMP", "JEQ", "JNE", "JLT", "JGT", "JLE", "JGE", "JEQI", "JNEI", "JLTI", "JGTI", "JLEI", "JGEI",
+            "GOSUB", "RETURN", "END",
+            "FOR", "NEXT",
+            "PRINT_INT", "PRINT_STR", "PRINT_LINE",
+            "JMPX", "GOSUBX",
+            "CHECK", "DEFINE"
+    };
+
+    private static final int[] OPERAND_COUNTS = {
+            2, 2, 1,
+            3, 3, 3, 3, 3, 3, 3, 3,
+            1, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3,
+            1, 0, 0,
+            4, 5,
+            1, 1, 0,
+            1, 1,
+            1, 1
+    };
+
+    /**
+     * Gets the mnemonic of the given opcode.
+     *
+     * @param opcode The opcode.
+     * @return The mnemonic of the opcode.
+     */
+    public static String nameOf(int opcode) {
+        return NAMES[opcode];
+    }
+
+    /**
+     * Gets the number of operands which follow the given opcode.
+     *
+     * @param opcode The opcode.
+     * @return The number of operands.
+     */
+    public static int operandCount(int opcode) {
+        return OPERAND_COUNTS[opcode];
+    }
+}
@@ -0,0 +1,114 @@
+package me.darragh.javatinybasic.vm;
+
+import me.darragh.javatinybasic.ast.JumpTable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static me.darragh.javatinybasic.vm.VMOpcodes.*;
+
+/**
+ * A Tiny BASIC program lowered to the register bytecode of the {@link VirtualMachine}.
+ * <br/>
+ * Programs are immutable once compiled by the {@link VMCompiler}, so one program may be executed by any number
+ * of {@link VirtualMachine}s at once.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public final class VMProgram {
+    final int[] code;
+    final String[] strings;
+    final String[] variableNames;
+    final int registerCount;
+
+    private final int[] lineNumbers;
+    private final int[] lineOffsets;
+    private final JumpTable lineTable;
+
+    VMProgram(int[] code, String[] strings, String[] variableNames, int registerCount, int[] lineNumbers, int[] lineOffsets) {
+        this.code = code;
+        this.strings = strings;
+        this.variableNames = variableNames;
+        this.registerCount = registerCount;
+        this.lineNumbers = lineNumbers;
+        this.lineOffsets = lineOffsets;
+        this.lineTable = JumpTable.of(lineNumbers, lineOffsets);
+    }
+
+    /**
+     * Resolves the line number of a computed jump to its offset in the instruction stream.
+     *
+     * @param lineNumber The line number to jump to.
+     * @return The offset of the line.
+     * @throws IllegalStateException If the line does not exist.
+     */
+    int offsetOf(int lineNumber) {
+        int offset = this.lineTable.get(lineNumber);
+        if (offset == JumpTable.NO_TARGET) {
+            throw new IllegalStateException("Computed GOTO or GOSUB targets a line that does not exist: " + lineNumber);
+        }
+        return offset;
+    }
+
+    /**
+     * Gets the length of the instruction stream, in ints.
+     *
+     * @return The length of the instruction stream.
+     */
+    public int size() {
+        return this.code.length;
+    }
+
+    /**
+     * Gets the number of registers required to execute the program.
+     * The first registers hold the variables, in the order of {@link #getVariableNames()}.
+     *
+     * @return The number of registers.
+     */
+    public int getRegisterCount() {
+        return this.registerCount;
+    }
+
+    /**
+     * Gets the names of the variables, indexed by register.
+     *
+     * @return A copy of the variable names.
+     */
+    public @NotNull String[] getVariableNames() {
+        return this.variableNames.clone();
+    }
+
+    /**
+     * Produces a human-readable listing of the instruction stream, annotated with the source line numbers.
+     *
+     * @return The disassembled program.
+     */
+    public @NotNull String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        int line = 0;
+        for (int pc = 0; pc < this.code.length; ) {
+            while (line < this.lineOffsets.length && this.lineOffsets[line] == pc) {
+                builder.append(this.lineNumbers[line++]).append(':').append('\n');
+            }
+
+            int opcode = this.code[pc];
+            builder.append("  %5d  %s".formatted(pc, nameOf(opcode)));
+            int operands = operandCount(opcode);
+            for (int i = 1; i <= operands; i++) {
+                builder.append(i == 1 ? " ".repeat(11 - nameOf(opcode).length()) : ", ").append(this.code[pc + i]);
+            }
+            if (opcode == PRINT_STR) {
+                builder.append("  ; \"").append(this.strings[this.code[pc + 1]]).append('"');
+            }
+            builder.append('\n');
+            pc += 1 + operands;
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "VMProgram{size=%s, registers=%s, variables=%s}".formatted(this.code.length, this.registerCount, Arrays.toString(this.variableNames));
+    }
+}
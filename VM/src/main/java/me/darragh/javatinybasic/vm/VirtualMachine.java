@@ -0,0 +1,216 @@
+package me.darragh.javatinybasic.vm;
+
+import lombok.Getter;
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.interpreter.InterpreterFinishedEvent;
+import me.darragh.javatinybasic.interpreter.InterpreterInputEvent;
+import me.darragh.javatinybasic.interpreter.InterpreterOutputEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static me.darragh.javatinybasic.vm.VMOpcodes.*;
+
+/**
+ * Executes a {@link VMProgram} with a tight dispatch loop over its instruction stream.
+ * <br/>
+ * This is an alternative backend to the {@link me.darragh.javatinybasic.interpreter.Interpreter}, sharing the same
+ * input, output and finished events. As in the interpreter, reading a variable which has not been assigned fails, though
+ * only the variables which the {@link VMCompiler} finds may be read before they are assigned are checked.
+ * <br/>
+ * The registers and return stack belong to the running program, so only {@link #getProgram()} is exposed.
+ *
+ * @author darraghd493
+ * @since 1.0.0
+ */
+public class VirtualMachine {
+    @Getter
+    private final VMProgram program;
+    private final int[] registers;
+    private final boolean[] defined; // whether each checked variable has been assigned
+    private int[] returnStack = new int[16];
+
+    //region Constructor
+    public VirtualMachine(@NotNull List<Token> tokens, @NotNull InterpreterInputEvent inputEvent,
+                          @NotNull InterpreterOutputEvent outputEvent, @NotNull InterpreterFinishedEvent finishedEvent) {
+        this(VMCompiler.compile(tokens), inputEvent, outputEvent, finishedEvent);
+    }
+
+    public VirtualMachine(@NotNull VMProgram program, @NotNull InterpreterInputEvent inputEvent,
+                          @NotNull InterpreterOutputEvent outputEvent, @NotNull InterpreterFinishedEvent finishedEvent) {
+        this.program = program;
+        this.registers = new int[program.registerCount];
+        this.defined = new boolean[program.variableNames.length];
+
+        // Set up the event handlers
+        this.inputEvent = inputEvent;
+        this.outputEvent = outputEvent;
+        this.finishedEvent = finishedEvent;
+    }
+    //endregion
+
+    //region Events
+    private final InterpreterInputEvent inputEvent;
+    private final InterpreterOutputEvent outputEvent;
+    private final InterpreterFinishedEvent finishedEvent;
+    //endregion
+
+    /**
+     * Runs the program from the start, firing the finished event once it ends.
+     */
+    public void run() {
+        Arrays.fill(this.registers, 0);
+        Arrays.fill(this.defined, false);
+        this.execute();
+        this.finishedEvent.onFinished();
+    }
+
+    private void execute() {
+        final int[] code = this.program.code;
+        final String[] strings = this.program.strings;
+        final int[] r = this.registers;
+        final boolean[] defined = this.defined;
+        int[] returnStack = this.returnStack;
+        int returnDepth = 0;
+        StringBuilder line = new StringBuilder();
+
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case CONST -> {
+                    r[code[pc + 1]] = code[pc + 2];
+                    pc += 3;
+                }
+                case MOVE -> {
+                    r[code[pc + 1]] = r[code[pc + 2]];
+                    pc += 3;
+                }
+                case INPUT -> {
+                    r[code[pc + 1]] = this.inputEvent.getInput();
+                    pc += 2;
+                }
+                case ADD -> {
+                    r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+                    pc += 4;
+                }
+                case SUB -> {
+                    r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+                    pc += 4;
+                }
+                case MUL -> {
+                    r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+                    pc += 4;
+                }
+                case DIV -> {
+                    int divisor = r[code[pc + 3]];
+                    if (divisor == 0) {
+                        throw new ArithmeticException("Division by zero");
+                    }
+                    r[code[pc + 1]] = r[code[pc + 2]] / divisor;
+                    pc += 4;
+                }
+                case ADDI -> {
+                    r[code[pc + 1]] = r[code[pc + 2]] + code[pc + 3];
+                    pc += 4;
+                }
+                case SUBI -> {
+                    r[code[pc + 1]] = r[code[pc + 2]] - code[pc + 3];
+                    pc += 4;
+                }
+                case MULI -> {
+                    r[code[pc + 1]] = r[code[pc + 2]] * code[pc + 3];
+                    pc += 4;
+                }
+                case DIVI -> {
+                    r[code[pc + 1]] = r[code[pc + 2]] / code[pc + 3];
+                    pc += 4;
+                }
+                case JMP -> pc = code[pc + 1];
+                case JEQ -> pc = r[code[pc + 1]] == r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JNE -> pc = r[code[pc + 1]] != r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JLT -> pc = r[code[pc + 1]] < r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JGT -> pc = r[code[pc + 1]] > r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JLE -> pc = r[code[pc + 1]] <= r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JGE -> pc = r[code[pc + 1]] >= r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JEQI -> pc = r[code[pc + 1]] == code[pc + 2] ? code[pc + 3] : pc + 4;
+                case JNEI -> pc = r[code[pc + 1]] != code[pc + 2] ? code[pc + 3] : pc + 4;
+                case JLTI -> pc = r[code[pc + 1]] < code[pc + 2] ? code[pc + 3] : pc + 4;
+                case JGTI -> pc = r[code[pc + 1]] > code[pc + 2] ? code[pc + 3] : pc + 4;
+                case JLEI -> pc = r[code[pc + 1]] <= code[pc + 2] ? code[pc + 3] : pc + 4;
+                case JGEI -> pc = r[code[pc + 1]] >= code[pc + 2] ? code[pc + 3] : pc + 4;
+                case GOSUB -> {
+                    if (returnDepth == returnStack.length) {
+                        returnStack = this.returnStack = Arrays.copyOf(returnStack, returnDepth * 2);
+                    }
+                    returnStack[returnDepth++] = pc + 2;
+                    pc = code[pc + 1];
+                }
+                case JMPX -> pc = this.program.offsetOf(r[code[pc + 1]]);
+                case GOSUBX -> {
+                    int target = this.program.offsetOf(r[code[pc + 1]]);
+                    if (returnDepth == returnStack.length) {
+                        returnStack = this.returnStack = Arrays.copyOf(returnStack, returnDepth * 2);
+                    }
+                    returnStack[returnDepth++] = pc + 2;
+                    pc = target;
+                }
+                case RETURN -> {
+                    if (returnDepth == 0) {
+                        throw new IllegalStateException("RETURN without GOSUB");
+                    }
+                    pc = returnStack[--returnDepth];
+                }
+                case END -> {
+                    return;
+                }
+                case FOR -> {
+                    int step = r[code[pc + 3]];
+                    if (step == 0) {
+                        throw new IllegalStateException("Step value cannot be zero in FOR loop: " + this.program.variableNames[code[pc + 1]]);
+                    }
+                    r[code[pc + 1]] = r[code[pc + 2]];
+                    r[code[pc + 4]] = 1;
+                    pc += 5;
+                }
+                case NEXT -> {
+                    if (r[code[pc + 4]] == 0) {
+                        throw new IllegalStateException("NEXT without matching FOR for variable: " + this.program.variableNames[code[pc + 1]]);
+                    }
+                    int step = r[code[pc + 2]],
+                            value = r[code[pc + 1]] += step;
+                    if (step > 0 ? value > r[code[pc + 3]] : value < r[code[pc + 3]]) {
+                        r[code[pc + 4]] = 0; // retire the loop
+                        pc += 6;
+                    } else {
+                        pc = code[pc + 5];
+                    }
+                }
+                case CHECK -> {
+                    if (!defined[code[pc + 1]]) {
+                        throw new IllegalStateException("Variable not found: " + this.program.variableNames[code[pc + 1]]);
+                    }
+                    pc += 2;
+                }
+                case DEFINE -> {
+                    defined[code[pc + 1]] = true;
+                    pc += 2;
+                }
+                case PRINT_INT -> {
+                    line.append(r[code[pc + 1]]);
+                    pc += 2;
+                }
+                case PRINT_STR -> {
+                    line.append(strings[code[pc + 1]]);
+                    pc += 2;
+                }
+                case PRINT_LINE -> {
+                    this.outputEvent.onOutput(line.toString());
+                    line.setLength(0);
+                    pc += 1;
+                }
+                default -> throw new IllegalStateException("Invalid opcode %s at offset %s".formatted(code[pc], pc));
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package me.darragh.javatinybasic.vm;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.interpreter.Program;
+import me.darragh.javatinybasic.interpreter.ProgramOutput;
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests computed GOTO and GOSUB, which must reach the same lines in the interpreter, the transpiled program and the
+ * virtual machine, whether the line numbers are dense or sparse.
+ */
+class ComputedJumpTest {
+    @Test
+    void denseTargetsMatchAcrossBackends() throws Exception {
+        assertBackendsAgree("1|2|3|4|5|done|", """
+                10 LET I = 1
+                20 GOSUB I * 10 + 100
+                30 LET I = I + 1
+                40 IF I <= 5 THEN 20
+                50 GOTO I * 0 + 60
+                60 PRINT "done"
+                70 END
+                110 PRINT 1
+                115 RETURN
+                120 PRINT 2
+                125 RETURN
+                130 PRINT 3
+                135 RETURN
+                140 PRINT 4
+                145 RETURN
+                150 PRINT 5
+                155 RETURN
+                """);
+    }
+
+    @Test
+    void sparseTargetsMatchAcrossBackends() throws Exception {
+        assertBackendsAgree("4096|8192|12288|done|", """
+                10 LET I = 1
+                20 LET T = I * 4096
+                30 GOSUB T
+                40 LET I = I + 1
+                50 IF I <= 3 THEN 20
+                60 LET T = 99999
+                70 GOTO T
+                4096 PRINT T
+                4097 RETURN
+                8192 PRINT T
+                8193 RETURN
+                12288 PRINT T
+                12289 RETURN
+                99999 PRINT "done"
+                """);
+    }
+
+    @Test
+    void missingTargetFailsInEveryBackend() throws Exception {
+        assertBackendsFail("targets a line that does not exist: 15", "10 LET A = 15\n20 GOTO A\n30 END\n");
+        assertBackendsFail("targets a line that does not exist: 150000", "10 LET A = 150000\n20 GOSUB A\n30 END\n");
+    }
+
+    private static void assertBackendsAgree(String expected, String source) throws Exception {
+        List<Token> tokens = Parser.parse(source);
+        assertEquals(expected, ProgramOutput.interpret(Program.link(tokens)), "interpreter");
+        assertEquals(expected, ProgramOutput.transpile(tokens), "transpiler");
+        assertEquals(expected, VirtualMachineOutput.run(tokens), "virtual machine");
+    }
+
+    private static void assertBackendsFail(String message, String source) throws Exception {
+        List<Token> tokens = Parser.parse(source);
+        for (String output : List.of(ProgramOutput.interpret(Program.link(tokens)), ProgramOutput.transpile(tokens), VirtualMachineOutput.run(tokens))) {
+            assertTrue(output.startsWith("!! ") && output.endsWith(message), output);
+        }
+    }
+}
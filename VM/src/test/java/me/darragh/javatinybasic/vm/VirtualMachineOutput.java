@@ -0,0 +1,26 @@
+package me.darragh.javatinybasic.vm;
+
+import me.darragh.javatinybasic.ast.Token;
+import me.darragh.javatinybasic.interpreter.ProgramOutput;
+
+import java.util.List;
+
+/**
+ * Runs programs on the virtual machine for tests, collecting what they print as {@link ProgramOutput} does, so that
+ * the output can be compared with the interpreter's.
+ */
+final class VirtualMachineOutput {
+    private VirtualMachineOutput() {
+    }
+
+    /**
+     * Compiles and runs the given tokens, reading 0 for every INPUT.
+     *
+     * @param tokens The tokens of the program.
+     * @return The output.
+     */
+    static String run(List<Token> tokens) {
+        VMProgram program = VMCompiler.compile(tokens);
+        return ProgramOutput.collect(output -> new VirtualMachine(program, () -> 0, output, () -> {}).run());
+    }
+}
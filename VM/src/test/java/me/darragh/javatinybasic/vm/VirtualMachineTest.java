@@ -0,0 +1,137 @@
+package me.darragh.javatinybasic.vm;
+
+import me.darragh.javatinybasic.interpreter.Program;
+import me.darragh.javatinybasic.interpreter.ProgramOutput;
+import me.darragh.javatinybasic.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the virtual machine, which must print and fail exactly as the interpreter does for the same program.
+ */
+class VirtualMachineTest {
+    @Test
+    void programsMatchTheInterpreter() throws Exception {
+        assertMatchesInterpreter("sum 30|7 -7 49|x 1 y 2|x 1 y 1|x 2 y 2|x 2 y 1|10|8|6|4|2|sub 3|done 0|", """
+                10 LET S = 0
+                20 FOR I = 1 TO 10
+                30 IF I / 2 * 2 <> I THEN 50
+                40 LET S = S + I
+                50 NEXT I
+                60 PRINT "sum", S
+                70 INPUT N
+                80 LET A = N + 7
+                90 PRINT A, N - A, A * A
+                95 LET M = 0 - 1
+                100 FOR X = 1 TO 2
+                110 FOR Y = 2 TO 1 STEP M
+                120 PRINT "x", X, "y", Y
+                130 NEXT Y
+                140 NEXT X
+                145 LET M = M * 2
+                150 FOR I = 10 TO 1 STEP M
+                160 PRINT I
+                170 NEXT I
+                180 GOSUB 300
+                190 PRINT "done", I
+                200 END
+                300 PRINT "sub", 3
+                310 RETURN
+                """);
+    }
+
+    @Test
+    void unassignedVariablesFailAsInTheInterpreter() throws Exception {
+        assertMatchesInterpreter("!! Variable not found: A", "10 PRINT A\n");
+        assertMatchesInterpreter("before|!! Variable not found: B", """
+                10 LET A = 1
+                20 PRINT "before"
+                30 LET C = A + B
+                """);
+
+        // Assigned on only one of the paths to the PRINT
+        assertMatchesInterpreter("!! Variable not found: A", """
+                10 INPUT N
+                20 IF N = 0 THEN 40
+                30 LET A = 1
+                40 PRINT A
+                """);
+
+        // Computed jumps may reach any line
+        assertMatchesInterpreter("!! Variable not found: B", """
+                10 LET T = 30
+                20 GOTO T
+                25 LET B = 1
+                30 PRINT B
+                """);
+    }
+
+    @Test
+    void variablesAssignedBeforeTheyAreReadAreChecked() throws Exception {
+        // Read on the second iteration, after the first assigned it
+        assertMatchesInterpreter("1|2|", """
+                10 FOR I = 1 TO 3
+                20 IF I = 1 THEN 40
+                30 PRINT A
+                40 LET A = I
+                50 NEXT I
+                """);
+
+        // Assigned by the subroutine, which the return follows
+        assertMatchesInterpreter("1 2|", """
+                10 LET A = 1
+                20 GOSUB 100
+                30 PRINT A, B
+                40 END
+                100 INPUT B
+                110 LET B = B + 2
+                120 RETURN
+                """);
+    }
+
+    @Test
+    void variablesWhichAreAlwaysAssignedAreNotChecked() throws Exception {
+        String source = """
+                10 INPUT N
+                20 LET S = 0
+                30 FOR I = 1 TO N + 100
+                40 LET S = S + I * N
+                50 NEXT I
+                60 GOSUB 100
+                70 PRINT S
+                80 END
+                100 LET S = S + 1
+                110 RETURN
+                """;
+        assertMatchesInterpreter("1|", source);
+        String disassembly = VMCompiler.compile(Parser.parse(source)).disassemble();
+        assertFalse(disassembly.contains("CHECK") || disassembly.contains("DEFINE"), disassembly);
+    }
+
+    @Test
+    void nextOutsideItsLoopFailsAsInTheInterpreter() throws Exception {
+        // The FOR is jumped over, so its loop was never entered
+        assertMatchesInterpreter("0|!! NEXT without matching FOR for variable: I", """
+                10 LET I = 0
+                20 GOTO 40
+                30 FOR I = 1 TO 3
+                40 PRINT I
+                50 NEXT I
+                """);
+
+        // The loop has already finished
+        assertMatchesInterpreter("!! NEXT without matching FOR for variable: I", """
+                10 LET N = 0
+                20 FOR I = 1 TO 2
+                30 NEXT I
+                40 LET N = N + 1
+                50 IF N < 2 THEN 30
+                """);
+    }
+
+    private static void assertMatchesInterpreter(String expected, String source) throws Exception {
+        assertEquals(expected, ProgramOutput.interpret(Program.link(Parser.parse(source))), "interpreter");
+        assertEquals(expected, VirtualMachineOutput.run(Parser.parse(source)), "virtual machine");
+    }
+}
@@ -1,9 +1,13 @@
 rootProject.name = "java-tiny-basic"
 
 include("AST")
+include("Analysis")
+include("Cache")
 include("Interpreter")
+include("Optimizer")
 include("Parser")
 
 include("Example")
 
-include("Transpiler")
\ No newline at end of file
+include("Transpiler")
+include("VM")
\ No newline at end of file